@@ -2,6 +2,7 @@ package com.codeforcommunity;
 
 import static com.codeforcommunity.rest.IRouter.end;
 
+import com.codeforcommunity.api.DeadlineExceededException;
 import com.codeforcommunity.rest.IRouter;
 import io.vertx.core.Vertx;
 import io.vertx.core.http.HttpMethod;
@@ -14,6 +15,7 @@ import io.vertx.ext.web.handler.BodyHandler;
 import io.vertx.ext.web.handler.CorsHandler;
 import io.vertx.ext.web.handler.LoggerHandler;
 import java.util.Set;
+import java.util.function.BooleanSupplier;
 
 /**
  * Our 'ServiceMain' for initializing the API server. Sets up routing and actually sets the server
@@ -21,9 +23,23 @@ import java.util.Set;
  */
 public class ApiMain {
   private final IRouter apiRouter;
+  /** Whether the server is ready for traffic, as reported by the "/ready" route. */
+  private final BooleanSupplier ready;
 
   public ApiMain(IRouter apiRouter) {
+    this(apiRouter, () -> true);
+  }
+
+  /**
+   * Create an API server that isn't ready for traffic as soon as it starts, like while its caches
+   * are being warmed up.
+   *
+   * @param apiRouter The router for the "/posts" routes.
+   * @param ready Whether the server is ready for traffic yet.
+   */
+  public ApiMain(IRouter apiRouter, BooleanSupplier ready) {
     this.apiRouter = apiRouter;
+    this.ready = ready;
   }
 
   /**
@@ -86,6 +102,9 @@ public class ApiMain {
      */
     home.handler(this::handleHome);
 
+    // Let a load balancer know whether to send us traffic yet.
+    router.get("/ready").handler(this::handleReady);
+
     // Mount a sub-router for routes that look like "/posts/*"
     router.mountSubRouter("/posts", apiRouter.initializeRouter(vertx));
 
@@ -123,6 +142,20 @@ public class ApiMain {
     response.end("Hello Jumpstarters!");
   }
 
+  /**
+   * Handles the "/ready" route, which a load balancer can check before sending the server any
+   * traffic. It's a 200 OK once the server is ready, and a 503 SERVICE UNAVAILABLE until then.
+   *
+   * @param ctx An object containing request data provided by a Vertx route handler.
+   */
+  private void handleReady(RoutingContext ctx) {
+    if (ready.getAsBoolean()) {
+      end(ctx.response(), 200, "Ready", "text/plain");
+    } else {
+      end(ctx.response(), 503, "Warming up", "text/plain");
+    }
+  }
+
   /**
    * A method to handle possible failures in this router. This provides an example of us using
    * {@link IRouter#end(HttpServerResponse, int, String, String)}.
@@ -133,6 +166,13 @@ public class ApiMain {
     // Get the Throwable/Exception.
     Throwable throwable = ctx.failure();
 
+    // If the request ran out of time, its database work has already been cancelled. Let the client
+    // know with a 504 GATEWAY TIMEOUT instead of treating it like a bug.
+    if (throwable instanceof DeadlineExceededException) {
+      end(ctx.response(), 504, throwable.getMessage());
+      return;
+    }
+
     // Create the error message and return it.
     String message = String.format("Internal server error caused by :%s", throwable.getMessage());
     // Print the stack trace for debugging purposes.
@@ -0,0 +1,17 @@
+package com.codeforcommunity.api;
+
+/**
+ * Thrown by an {@link IPostsProcessor} returned from {@link IPostsProcessor#withDeadline(long)}
+ * when the request's deadline runs out before its work could finish. Any database work that was in
+ * progress has been cancelled by the time this is thrown.
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+  public DeadlineExceededException(String message) {
+    super(message);
+  }
+
+  public DeadlineExceededException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
@@ -1,8 +1,12 @@
 package com.codeforcommunity.api;
 
+import com.codeforcommunity.dto.request.CommentSort;
 import com.codeforcommunity.dto.request.CreateCommentRequest;
 import com.codeforcommunity.dto.request.CreatePostRequest;
+import com.codeforcommunity.dto.response.AutocompleteResponse;
 import com.codeforcommunity.dto.response.CommentsResponse;
+import com.codeforcommunity.dto.response.PostSummary;
+import com.codeforcommunity.dto.response.PostsPageResponse;
 import com.codeforcommunity.dto.response.PostsResponse;
 import com.codeforcommunity.dto.response.SinglePostResponse;
 
@@ -16,6 +20,16 @@ import com.codeforcommunity.dto.response.SinglePostResponse;
  */
 public interface IPostsProcessor {
 
+  /**
+   * Returns a view of this processor whose work is bounded by the given deadline. Every database
+   * statement run through the returned processor is given whatever is left of the budget as its
+   * timeout, and is cancelled if it runs past it.
+   *
+   * @param deadlineNanos The absolute deadline, in {@link System#nanoTime()} units.
+   * @return A processor that throws {@link DeadlineExceededException} once the deadline passes.
+   */
+  IPostsProcessor withDeadline(long deadlineNanos);
+
   /**
    * Returns all posts for the front page.
    *
@@ -23,6 +37,28 @@ public interface IPostsProcessor {
    */
   PostsResponse getPosts();
 
+  /**
+   * Returns summaries of a page of posts, newest first. Accessed at the "/posts" route when it's
+   * given a "limit" or "offset".
+   *
+   * @param limit The maximum number of posts to return.
+   * @param offset The number of newest posts to skip.
+   * @return A PostsResponse containing the posts.
+   */
+  PostsResponse getNewestPosts(int limit, int offset);
+
+  /**
+   * Returns summaries of a page of the given author's posts, newest first. Accessed at the "/posts"
+   * route when it's given an "author".
+   *
+   * @param author The author of the posts.
+   * @param before The cursor returned with the previous page, or null for the first page.
+   * @param limit The maximum number of posts to return.
+   * @return A PostsPageResponse containing the author's posts and where the next page starts.
+   * @throws IllegalArgumentException If the cursor isn't one we handed out.
+   */
+  PostsPageResponse getPostsByAuthor(String author, String before, int limit);
+
   /**
    * Returns a specific post. Accessed at the "/posts/:post_id" route.
    *
@@ -31,6 +67,15 @@ public interface IPostsProcessor {
    */
   SinglePostResponse getSinglePost(int postId);
 
+  /**
+   * Returns the summary of a specific post, as it appears in the feed. Used to bring a single post
+   * in a cached feed up to date without loading the rest of the feed.
+   *
+   * @param postId The ID of the post to summarize.
+   * @return The post's summary.
+   */
+  PostSummary getPostSummary(int postId);
+
   /**
    * Returns a list of comments for a specific post. Accessed at the "/posts/:post_id/comments"
    * route.
@@ -40,6 +85,60 @@ public interface IPostsProcessor {
    */
   CommentsResponse getCommentsForPost(int postId);
 
+  /**
+   * Returns the first {@code limit} comments of a specific post in the given order. Accessed at the
+   * "/posts/:post_id/comments?sort=...&limit=..." route.
+   *
+   * @param postId The ID of the post to return comments for.
+   * @param sort The order to return the comments in.
+   * @param limit The maximum number of comments to return.
+   * @return The list of comments.
+   */
+  CommentsResponse getCommentsForPost(int postId, CommentSort sort, int limit);
+
+  /**
+   * Returns summaries of the posts whose title or body match the given query, best match first.
+   * Accessed at the "/posts/search" route.
+   *
+   * @param query The search terms.
+   * @param limit The maximum number of posts to return.
+   * @param offset The number of best matches to skip.
+   * @return A PostsResponse containing the matching posts.
+   */
+  PostsResponse searchPosts(String query, int limit, int offset);
+
+  /**
+   * Returns the titles of the most clapped posts whose titles start with the given prefix (ignoring
+   * case), to suggest as someone types into the search box. Accessed at the "/posts/autocomplete"
+   * route.
+   *
+   * @param prefix What's been typed so far.
+   * @param limit The maximum number of titles to return.
+   * @return An AutocompleteResponse containing the titles, most clapped first.
+   */
+  AutocompleteResponse autocompleteTitles(String prefix, int limit);
+
+  /**
+   * Returns summaries of the posts whose bodies are most like the given post's, most similar first.
+   * Accessed at the "/posts/:post_id/related" route.
+   *
+   * @param postId The ID of the post to find related posts for.
+   * @param limit The maximum number of posts to return.
+   * @return A PostsResponse containing the related posts.
+   */
+  PostsResponse getRelatedPosts(int postId, int limit);
+
+  /**
+   * Returns the comments (on any post) whose body matches the given query, best match first.
+   * Accessed at the "/posts/search/comments" route.
+   *
+   * @param query The search terms.
+   * @param limit The maximum number of comments to return.
+   * @param offset The number of best matches to skip.
+   * @return A CommentsResponse containing the matching comments.
+   */
+  CommentsResponse searchComments(String query, int limit, int offset);
+
   /**
    * Save the provided post to the database.
    *
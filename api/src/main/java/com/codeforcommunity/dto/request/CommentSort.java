@@ -0,0 +1,27 @@
+package com.codeforcommunity.dto.request;
+
+import java.util.Locale;
+
+/** The orders a post's comments can be requested in, with the {@code sort} query param. */
+public enum CommentSort {
+  /** Most clapped first. */
+  TOP,
+  /** Most recently created first. */
+  NEW;
+
+  /**
+   * Get the sort with the given query param value, ignoring case.
+   *
+   * @param value The value of the {@code sort} query param, like "top".
+   * @return The matching sort.
+   * @throws IllegalArgumentException If no sort has that name.
+   */
+  public static CommentSort fromQueryParam(String value) {
+    for (CommentSort sort : values()) {
+      if (sort.name().equals(value.toUpperCase(Locale.ROOT))) {
+        return sort;
+      }
+    }
+    throw new IllegalArgumentException("Query parameter sort must be one of: top, new.");
+  }
+}
@@ -0,0 +1,16 @@
+package com.codeforcommunity.dto.response;
+
+import java.util.List;
+
+/** A DTO (see {@link SinglePostResponse}) for the titles that complete what's been typed so far. */
+public class AutocompleteResponse {
+  private List<TitleSuggestion> suggestions;
+
+  public AutocompleteResponse(List<TitleSuggestion> suggestions) {
+    this.suggestions = List.copyOf(suggestions);
+  }
+
+  public List<TitleSuggestion> getSuggestions() {
+    return suggestions;
+  }
+}
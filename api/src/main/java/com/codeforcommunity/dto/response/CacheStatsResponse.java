@@ -0,0 +1,109 @@
+package com.codeforcommunity.dto.response;
+
+/**
+ * A DTO (see {@link SinglePostResponse}) describing how well the response cache is doing, along
+ * with the garbage collection numbers to judge its effect on the heap by.
+ */
+public class CacheStatsResponse {
+  private long hits;
+  private long staleHits;
+  private long misses;
+  private double hitRatio;
+  private long evictions;
+  private int entries;
+  private long storedBytes;
+  private long allocatedBytes;
+  private long capacityBytes;
+  private long heapUsedBytes;
+  private long gcCount;
+  private long gcTimeMillis;
+
+  public CacheStatsResponse(
+      long hits,
+      long staleHits,
+      long misses,
+      long evictions,
+      int entries,
+      long storedBytes,
+      long allocatedBytes,
+      long capacityBytes,
+      long heapUsedBytes,
+      long gcCount,
+      long gcTimeMillis) {
+    this.hits = hits;
+    this.staleHits = staleHits;
+    this.misses = misses;
+    this.hitRatio = hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    this.evictions = evictions;
+    this.entries = entries;
+    this.storedBytes = storedBytes;
+    this.allocatedBytes = allocatedBytes;
+    this.capacityBytes = capacityBytes;
+    this.heapUsedBytes = heapUsedBytes;
+    this.gcCount = gcCount;
+    this.gcTimeMillis = gcTimeMillis;
+  }
+
+  /** @return How many requests were answered from the cache. */
+  public long getHits() {
+    return hits;
+  }
+
+  /**
+   * @return How many of those requests were answered with a response old enough that it was loaded
+   *     again in the background.
+   */
+  public long getStaleHits() {
+    return staleHits;
+  }
+
+  /** @return How many requests had to be answered by the processor. */
+  public long getMisses() {
+    return misses;
+  }
+
+  /** @return The share of requests answered from the cache, from 0 to 1. */
+  public double getHitRatio() {
+    return hitRatio;
+  }
+
+  /** @return How many responses were dropped to make room for others. */
+  public long getEvictions() {
+    return evictions;
+  }
+
+  /** @return How many responses are cached. */
+  public int getEntries() {
+    return entries;
+  }
+
+  /** @return How many bytes the cached responses add up to. */
+  public long getStoredBytes() {
+    return storedBytes;
+  }
+
+  /** @return How many bytes of off-heap memory the cache has allocated. */
+  public long getAllocatedBytes() {
+    return allocatedBytes;
+  }
+
+  /** @return The most off-heap memory the cache can allocate. */
+  public long getCapacityBytes() {
+    return capacityBytes;
+  }
+
+  /** @return How many bytes of the heap are in use. */
+  public long getHeapUsedBytes() {
+    return heapUsedBytes;
+  }
+
+  /** @return How many garbage collections there have been since the server started. */
+  public long getGcCount() {
+    return gcCount;
+  }
+
+  /** @return How long those garbage collections took in all. */
+  public long getGcTimeMillis() {
+    return gcTimeMillis;
+  }
+}
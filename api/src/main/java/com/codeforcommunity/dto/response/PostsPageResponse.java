@@ -0,0 +1,21 @@
+package com.codeforcommunity.dto.response;
+
+import java.util.List;
+
+/**
+ * A {@link PostsResponse} holding one page of a feed, along with where the next page starts. To get
+ * the next page, send the same request again with {@code before} set to {@link #getNextCursor()}.
+ */
+public class PostsPageResponse extends PostsResponse {
+  private String nextCursor;
+
+  public PostsPageResponse(List<PostSummary> posts, String nextCursor) {
+    super(posts);
+    this.nextCursor = nextCursor;
+  }
+
+  /** @return Where the next page starts, or null if this is the last page. */
+  public String getNextCursor() {
+    return nextCursor;
+  }
+}
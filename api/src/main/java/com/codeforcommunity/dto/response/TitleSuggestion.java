@@ -0,0 +1,26 @@
+package com.codeforcommunity.dto.response;
+
+/** A DTO (see {@link SinglePostResponse}) for a post title suggested to complete a search. */
+public class TitleSuggestion {
+  private Integer id;
+  private String title;
+  private Integer clapCount;
+
+  public TitleSuggestion(Integer id, String title, Integer clapCount) {
+    this.id = id;
+    this.title = title;
+    this.clapCount = clapCount;
+  }
+
+  public Integer getId() {
+    return id;
+  }
+
+  public String getTitle() {
+    return title;
+  }
+
+  public Integer getClapCount() {
+    return clapCount;
+  }
+}
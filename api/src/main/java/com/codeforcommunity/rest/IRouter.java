@@ -1,6 +1,8 @@
 package com.codeforcommunity.rest;
 
+import com.codeforcommunity.rest.cache.VersionStamps;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpServerResponse;
 import io.vertx.ext.web.Router;
 
@@ -26,7 +28,7 @@ public interface IRouter {
    * @param statusCode The status code.
    */
   static void end(HttpServerResponse response, int statusCode) {
-    end(response, statusCode, null);
+    end(response, statusCode, (String) null);
   }
 
   /**
@@ -52,6 +54,83 @@ public interface IRouter {
    */
   static void end(
       HttpServerResponse response, int statusCode, String jsonBody, String contentType) {
+    setHeaders(response, statusCode, contentType);
+    if (jsonBody == null || jsonBody.equals("")) {
+      response.end();
+    } else {
+      response.end(jsonBody);
+    }
+  }
+
+  /**
+   * Ends the request with a JSON body that's already been encoded, like one from a cache. The bytes
+   * are written as they are, without being turned back into a String first.
+   *
+   * @param response The response object used to initiate the response.
+   * @param statusCode The status code.
+   * @param jsonBody The encoded body to return.
+   */
+  static void end(HttpServerResponse response, int statusCode, Buffer jsonBody) {
+    setHeaders(response, statusCode, "application/json");
+    response.end(jsonBody);
+  }
+
+  /**
+   * Ends the request with a JSON body, and with the headers that let the client check whether its
+   * copy is still current next time (see {@link VersionStamps}).
+   *
+   * @param response The response object used to initiate the response.
+   * @param statusCode The status code.
+   * @param jsonBody The body to return.
+   * @param stamp The version of what the body is about, read before the body was loaded. If it's
+   *     null, the body is sent without those headers.
+   */
+  static void end(
+      HttpServerResponse response, int statusCode, String jsonBody, VersionStamps.Stamp stamp) {
+    if (stamp != null) {
+      setValidatorHeaders(response, stamp);
+    }
+    end(response, statusCode, jsonBody);
+  }
+
+  /**
+   * Ends the request with an encoded JSON body, and with the headers that let the client check
+   * whether its copy is still current next time (see {@link VersionStamps}).
+   *
+   * @param response The response object used to initiate the response.
+   * @param statusCode The status code.
+   * @param jsonBody The encoded body to return.
+   * @param stamp The version of what the body is about, read before the body was loaded. If it's
+   *     null, the body is sent without those headers.
+   */
+  static void end(
+      HttpServerResponse response, int statusCode, Buffer jsonBody, VersionStamps.Stamp stamp) {
+    if (stamp != null) {
+      setValidatorHeaders(response, stamp);
+    }
+    end(response, statusCode, jsonBody);
+  }
+
+  /**
+   * Ends the request with a 304 Not Modified and no body, since the client's copy is still current.
+   *
+   * @param response The response object used to initiate the response.
+   * @param stamp The version the client's copy matched.
+   */
+  static void endNotModified(HttpServerResponse response, VersionStamps.Stamp stamp) {
+    setValidatorHeaders(response, stamp);
+    setHeaders(response, 304, "application/json");
+    response.end();
+  }
+
+  /**
+   * Set the response status code, content type, and CORS values.
+   *
+   * @param response The response object used to initiate the response.
+   * @param statusCode The status code.
+   * @param contentType The Content-Type of the body.
+   */
+  private static void setHeaders(HttpServerResponse response, int statusCode, String contentType) {
     response
         .setStatusCode(statusCode)
         .putHeader("Content-Type", contentType)
@@ -59,11 +138,23 @@ public interface IRouter {
         .putHeader("Access-Control-Allow-Methods", "DELETE, POST, GET, OPTIONS")
         .putHeader(
             "Access-Control-Allow-Headers",
-            "Content-Type, Access-Control-Allow-Headers, Authorization, X-Requested-With");
-    if (jsonBody == null || jsonBody.equals("")) {
-      response.end();
-    } else {
-      response.end(jsonBody);
-    }
+            "Content-Type, Access-Control-Allow-Headers, Authorization, X-Requested-With,"
+                + " If-None-Match");
+  }
+
+  /**
+   * Set the ETag and Last-Modified headers, along with a Cache-Control header telling the client to
+   * keep its copy but check it's still current (by sending the ETag back) before each use.
+   *
+   * @param response The response object used to initiate the response.
+   * @param stamp The version of what the response is about.
+   */
+  private static void setValidatorHeaders(HttpServerResponse response, VersionStamps.Stamp stamp) {
+    response
+        .putHeader("ETag", stamp.getEtag())
+        .putHeader("Last-Modified", stamp.getLastModified())
+        .putHeader("Cache-Control", "no-cache")
+        // Let scripts on other origins read the ETag, so they can send it back.
+        .putHeader("Access-Control-Expose-Headers", "ETag, Last-Modified");
   }
 }
@@ -1,24 +1,69 @@
 package com.codeforcommunity.rest;
 
 import static com.codeforcommunity.rest.IRouter.end;
+import static com.codeforcommunity.rest.IRouter.endNotModified;
 import static com.codeforcommunity.rest.RequestUtils.getJsonBodyAsClass;
+import static com.codeforcommunity.rest.RequestUtils.getOptionalQueryParam;
 import static com.codeforcommunity.rest.RequestUtils.getRequestParameterAsInt;
 
+import com.codeforcommunity.api.DeadlineExceededException;
 import com.codeforcommunity.api.IPostsProcessor;
+import com.codeforcommunity.dto.request.CommentSort;
 import com.codeforcommunity.dto.request.CreateCommentRequest;
 import com.codeforcommunity.dto.request.CreatePostRequest;
+import com.codeforcommunity.dto.response.AutocompleteResponse;
+import com.codeforcommunity.dto.response.CacheStatsResponse;
 import com.codeforcommunity.dto.response.CommentsResponse;
 import com.codeforcommunity.dto.response.PostsResponse;
-import com.codeforcommunity.dto.response.SinglePostResponse;
+import com.codeforcommunity.rest.cache.AccessStats;
+import com.codeforcommunity.rest.cache.FeedCache;
+import com.codeforcommunity.rest.cache.SlabCache;
+import com.codeforcommunity.rest.cache.VersionStamps;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.Json;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.Route;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.RoutingContext;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class PostsRouter implements IRouter {
+  /** How long a read route gets to respond if no deadline is configured. */
+  public static final long DEFAULT_READ_DEADLINE_MILLIS = 2000;
+  /** How long a write route gets to respond if no deadline is configured. */
+  public static final long DEFAULT_WRITE_DEADLINE_MILLIS = 5000;
+  /** How many results a paged route returns if the request doesn't ask for a number. */
+  static final int DEFAULT_PAGE_LIMIT = 20;
+  /** The most results a paged route will return at once. */
+  static final int MAX_PAGE_LIMIT = 100;
+
+  /** What identifies a single post among the responses cached about it. */
+  private static final String SINGLE_POST_KEY = "";
+  /** What identifies a post's comments (in the default order) among its cached responses. */
+  private static final String COMMENTS_KEY = "/comments";
+  /** What identifies the whole feed among the cached pages of it. */
+  private static final String ALL_POSTS_KEY = "all";
+
   /** Our processor! */
   private final IPostsProcessor processor;
+  /** The budget each GET route has before its database work is cancelled. */
+  private final long readDeadlineMillis;
+  /** The budget each POST/DELETE route has before its database work is cancelled. */
+  private final long writeDeadlineMillis;
+  /** Holds the encoded single posts and comment pages, or null if they aren't cached. */
+  private final SlabCache responseCache;
+  /** Holds the encoded pages of the feed, or null if they aren't cached. */
+  private final FeedCache feedCache;
+  /** The versions to answer conditional GETs with, or null if they aren't supported. */
+  private final VersionStamps versionStamps;
+  /** Counts the requests for each post, or null if they aren't counted. */
+  private final AccessStats accessStats;
 
   private Externals externs;
 
@@ -37,8 +82,53 @@ public class PostsRouter implements IRouter {
    * @param postsProcessor The processor.
    */
   public PostsRouter(IPostsProcessor postsProcessor) {
+    this(postsProcessor, DEFAULT_READ_DEADLINE_MILLIS, DEFAULT_WRITE_DEADLINE_MILLIS);
+  }
+
+  /**
+   * The constructor to use when the route deadlines are configured.
+   *
+   * @param postsProcessor The processor.
+   * @param readDeadlineMillis How long each GET route has to respond.
+   * @param writeDeadlineMillis How long each POST/DELETE route has to respond.
+   */
+  public PostsRouter(
+      IPostsProcessor postsProcessor, long readDeadlineMillis, long writeDeadlineMillis) {
+    this(postsProcessor, readDeadlineMillis, writeDeadlineMillis, null, null, null, null);
+  }
+
+  /**
+   * The constructor to use when responses are cached. This router tells the caches and version
+   * stamps about every change it makes, but changes made any other way (like by another node) have
+   * to be passed on to them by whoever hears about them.
+   *
+   * @param postsProcessor The processor.
+   * @param readDeadlineMillis How long each GET route has to respond.
+   * @param writeDeadlineMillis How long each POST/DELETE route has to respond.
+   * @param responseCache Holds the encoded single posts and comment pages, or null to not cache
+   *     them.
+   * @param feedCache Holds the encoded pages of the feed, or null to not cache them.
+   * @param versionStamps The versions of the posts, their comments and the feed, to answer
+   *     conditional GETs with, or null to always send the full response.
+   * @param accessStats Counts the requests for each post, to know which to {@link #warmPost(int)}
+   *     next time, or null to not count them.
+   */
+  public PostsRouter(
+      IPostsProcessor postsProcessor,
+      long readDeadlineMillis,
+      long writeDeadlineMillis,
+      SlabCache responseCache,
+      FeedCache feedCache,
+      VersionStamps versionStamps,
+      AccessStats accessStats) {
     this.externs = new Externals();
     this.processor = postsProcessor;
+    this.readDeadlineMillis = readDeadlineMillis;
+    this.writeDeadlineMillis = writeDeadlineMillis;
+    this.responseCache = responseCache;
+    this.feedCache = feedCache;
+    this.versionStamps = versionStamps;
+    this.accessStats = accessStats;
   }
 
   /**
@@ -48,8 +138,264 @@ public class PostsRouter implements IRouter {
    * @param externsOverride The overridden externals. This should *not* be the default one.
    */
   PostsRouter(IPostsProcessor postsProcessor, Externals externsOverride) {
+    this(postsProcessor, externsOverride, null, null, null);
+  }
+
+  /**
+   * The constructor we'll use when testing the caches. It allows us to override the Externals.
+   *
+   * @param postsProcessor The processor.
+   * @param externsOverride The overridden externals. This should *not* be the default one.
+   * @param responseCache Holds the encoded single posts and comment pages, or null.
+   * @param feedCache Holds the encoded pages of the feed, or null.
+   * @param versionStamps The versions to answer conditional GETs with, or null.
+   */
+  PostsRouter(
+      IPostsProcessor postsProcessor,
+      Externals externsOverride,
+      SlabCache responseCache,
+      FeedCache feedCache,
+      VersionStamps versionStamps) {
     this.externs = externsOverride;
     this.processor = postsProcessor;
+    this.readDeadlineMillis = DEFAULT_READ_DEADLINE_MILLIS;
+    this.writeDeadlineMillis = DEFAULT_WRITE_DEADLINE_MILLIS;
+    this.responseCache = responseCache;
+    this.feedCache = feedCache;
+    this.versionStamps = versionStamps;
+    this.accessStats = null;
+  }
+
+  /**
+   * Get a processor bounded by the read deadline, starting from now. Call this once at the start of
+   * handling a request so the whole request shares one budget.
+   *
+   * @return The deadline-bound processor.
+   */
+  private IPostsProcessor readProcessor() {
+    return processor.withDeadline(
+        System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(readDeadlineMillis));
+  }
+
+  /**
+   * Get a processor bounded by the write deadline, starting from now.
+   *
+   * @return The deadline-bound processor.
+   */
+  private IPostsProcessor writeProcessor() {
+    return processor.withDeadline(
+        System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(writeDeadlineMillis));
+  }
+
+  /**
+   * End a GET request about a single post with a cached response if there is one, or with the
+   * response from the processor (caching it for next time) if there isn't.
+   *
+   * @param ctx The {@link RoutingContext} of the request.
+   * @param postId The ID of the post the response is about. The response is dropped from the cache
+   *     whenever the post changes.
+   * @param key What identifies the response among the post's responses, like the route and its
+   *     query params.
+   * @param stamp The version of what the response is about, or null if there isn't one.
+   * @param load Gets the response from the processor. It's also called in the background to load a
+   *     stale response again, so it mustn't depend on the request. Any exception it throws is
+   *     passed on, and nothing is cached.
+   */
+  private void endCached(
+      RoutingContext ctx,
+      int postId,
+      String key,
+      VersionStamps.Stamp stamp,
+      Supplier<Object> load) {
+    if (endIfNotModified(ctx, stamp)) {
+      return;
+    }
+    if (responseCache == null) {
+      end(ctx.response(), 200, JsonObject.mapFrom(load.get()).encode(), stamp);
+      return;
+    }
+    end(ctx.response(), 200, cachedResponse(postId, key, load), stamp);
+  }
+
+  /**
+   * Get a cached response about a single post, loading and caching it if it isn't cached. The
+   * response cache must be turned on.
+   *
+   * @param postId The ID of the post the response is about.
+   * @param key What identifies the response among the post's responses.
+   * @param load Gets the response from the processor.
+   * @return The encoded response.
+   */
+  private Buffer cachedResponse(int postId, String key, Supplier<Object> load) {
+    // Encode straight to bytes, since that's what we keep.
+    return responseCache.get(postId, postId + key, () -> Json.encodeToBuffer(load.get()));
+  }
+
+  /**
+   * End a GET request for a page of the feed with the cached page if it's up to date, or with the
+   * page from the processor (caching it for next time) if it isn't.
+   *
+   * @param ctx The {@link RoutingContext} of the request.
+   * @param key What identifies the page.
+   * @param load Gets the page from the processor.
+   */
+  private void endFeed(RoutingContext ctx, String key, Supplier<PostsResponse> load) {
+    VersionStamps.Stamp stamp = stamp(stamps -> stamps.forFeed());
+    if (endIfNotModified(ctx, stamp)) {
+      return;
+    }
+    if (feedCache == null) {
+      end(ctx.response(), 200, JsonObject.mapFrom(load.get()).encode(), stamp);
+    } else {
+      end(ctx.response(), 200, cachedFeedPage(key, load), stamp);
+    }
+  }
+
+  /**
+   * Get a cached page of the feed, loading and caching it if it isn't cached. The feed cache must
+   * be turned on.
+   *
+   * @param key What identifies the page.
+   * @param load Gets the page from the processor.
+   * @return The encoded page.
+   */
+  private Buffer cachedFeedPage(String key, Supplier<PostsResponse> load) {
+    return feedCache.get(key, load, postId -> this.readProcessor().getPostSummary(postId));
+  }
+
+  /**
+   * Load the whole feed and its first page into the feed cache, before anyone asks for them. If the
+   * feed cache is turned off, they're still loaded, which gets the database ready for them.
+   *
+   * @throws DeadlineExceededException If loading them takes longer than a read route is allowed.
+   */
+  public void warmFeed() {
+    Supplier<PostsResponse> all = () -> this.readProcessor().getPosts();
+    Supplier<PostsResponse> firstPage =
+        () -> this.readProcessor().getNewestPosts(DEFAULT_PAGE_LIMIT, 0);
+    if (feedCache == null) {
+      all.get();
+      firstPage.get();
+    } else {
+      cachedFeedPage(ALL_POSTS_KEY, all);
+      cachedFeedPage("newest/" + DEFAULT_PAGE_LIMIT + "/0", firstPage);
+    }
+  }
+
+  /**
+   * Load a post and its comments into the response cache, before anyone asks for them. If the
+   * response cache is turned off, they're still loaded, which gets the database ready for them.
+   *
+   * @param postId The post's ID.
+   * @throws IllegalArgumentException If the post doesn't exist (any more).
+   * @throws DeadlineExceededException If loading it takes longer than a read route is allowed.
+   */
+  public void warmPost(int postId) {
+    Supplier<Object> post = () -> this.readProcessor().getSinglePost(postId);
+    Supplier<Object> comments = () -> this.readProcessor().getCommentsForPost(postId);
+    if (responseCache == null) {
+      post.get();
+      comments.get();
+    } else {
+      cachedResponse(postId, SINGLE_POST_KEY, post);
+      cachedResponse(postId, COMMENTS_KEY, comments);
+    }
+  }
+
+  /**
+   * Count a request for a post that exists, if requests are being counted.
+   *
+   * @param postId The post's ID.
+   */
+  private void recordAccess(int postId) {
+    if (accessStats != null) {
+      accessStats.record(postId);
+    }
+  }
+
+  /**
+   * Get the version of what a GET request is about, before loading it.
+   *
+   * @param which Picks the version from the stamps.
+   * @return The version, or null if conditional GETs aren't supported.
+   */
+  private VersionStamps.Stamp stamp(Function<VersionStamps, VersionStamps.Stamp> which) {
+    return versionStamps == null ? null : which.apply(versionStamps);
+  }
+
+  /**
+   * End a GET request with a 304 Not Modified if the ETag the client sent shows its copy is still
+   * current, without loading anything.
+   *
+   * @param ctx The {@link RoutingContext} of the request.
+   * @param stamp The current version of what the request is about, or null if there isn't one.
+   * @return Whether the request was ended.
+   */
+  private static boolean endIfNotModified(RoutingContext ctx, VersionStamps.Stamp stamp) {
+    if (stamp == null || !stamp.matches(ctx.request().getHeader("If-None-Match"))) {
+      return false;
+    }
+    endNotModified(ctx.response(), stamp);
+    return true;
+  }
+
+  /** Tell the caches and version stamps that this router created a post. */
+  private void postCreated() {
+    // The new post doesn't have any cached responses of its own yet, but it's in the feed.
+    if (feedCache != null) {
+      feedCache.invalidate();
+    }
+    if (versionStamps != null) {
+      versionStamps.feedChanged();
+    }
+  }
+
+  /**
+   * Tell the caches and version stamps that this router clapped for or deleted a post. (The stamps
+   * are bumped last, so that no one is sent a new ETag with an old cached response.)
+   *
+   * @param postId The post's ID.
+   * @param deleted Whether the post was deleted.
+   */
+  private void postChanged(int postId, boolean deleted) {
+    if (responseCache != null) {
+      responseCache.invalidate(postId);
+    }
+    if (feedCache != null) {
+      feedCache.invalidatePost(postId);
+      if (deleted) {
+        // The post is gone from the feed, too.
+        feedCache.invalidate();
+      }
+    }
+    if (versionStamps != null) {
+      versionStamps.postChanged(postId);
+      if (deleted) {
+        versionStamps.commentsChanged(postId);
+      }
+      versionStamps.feedChanged();
+    }
+  }
+
+  /**
+   * Tell the caches and version stamps that this router created, deleted or clapped for a comment.
+   *
+   * @param postId The ID of the comment's post.
+   * @param countChanged Whether the number of comments changed, which shows up in the feed.
+   */
+  private void commentsChanged(int postId, boolean countChanged) {
+    if (responseCache != null) {
+      responseCache.invalidate(postId);
+    }
+    if (countChanged && feedCache != null) {
+      feedCache.invalidatePost(postId);
+    }
+    if (versionStamps != null) {
+      versionStamps.commentsChanged(postId);
+      if (countChanged) {
+        versionStamps.feedChanged();
+      }
+    }
   }
 
   @Override
@@ -60,8 +406,17 @@ public class PostsRouter implements IRouter {
 
     // Register this router's routes.
     this.registerGetPostsRoute(router);
+    // The search and autocomplete routes have to be registered before "/:post_id", otherwise
+    // "search" would be matched as a post ID.
+    this.registerSearchPostsRoute(router);
+    this.registerSearchCommentsRoute(router);
+    this.registerAutocompleteRoute(router);
+    if (responseCache != null) {
+      this.registerCacheStatsRoute(router);
+    }
     this.registerGetSinglePostRoute(router);
     this.registerGetCommentsForPostRoute(router);
+    this.registerGetRelatedPostsRoute(router);
     this.registerPostPostsRoute(router);
     this.registerPostCommentsRoute(router);
     this.registerClapPostRoute(router);
@@ -94,17 +449,237 @@ public class PostsRouter implements IRouter {
    * Handle the "/posts" route. This gets called when someone accesses the route. It is set up once
    * in {@link #registerGetPostsRoute(Router)}, and then called many times after that.
    *
+   * <p>With no query params, every post is returned. Otherwise a page of the newest posts is
+   * returned, as "/posts?limit=...&offset=...", or a page of one author's newest posts, as
+   * "/posts?author=...&limit=...&before=...". An author's posts are paged with the "before" cursor
+   * returned with the previous page rather than an offset, so deep pages of a prolific author stay
+   * fast. Each param other than "author" is optional.
+   *
    * @param ctx The {@link RoutingContext} containing all relevant routing info.
    */
   private void handleGetPostsRoute(RoutingContext ctx) {
-    // Get all posts using the provided processor.
-    PostsResponse response = this.processor.getPosts();
+    if (ctx.queryParam("author").isEmpty()
+        && ctx.queryParam("limit").isEmpty()
+        && ctx.queryParam("offset").isEmpty()
+        && ctx.queryParam("before").isEmpty()) {
+      // Get all posts using the provided processor (unless they're cached), and return them.
+      endFeed(ctx, ALL_POSTS_KEY, () -> this.readProcessor().getPosts());
+      return;
+    }
+
+    try {
+      Optional<String> author = getOptionalQueryParam(ctx, "author", params -> params.get(0));
+      if (author.isPresent() && author.get().isBlank()) {
+        throw new IllegalArgumentException("Query parameter author cannot be empty.");
+      }
+      int limit = getPageLimit(ctx);
+
+      if (author.isPresent()) {
+        if (!ctx.queryParam("offset").isEmpty()) {
+          throw new IllegalArgumentException(
+              "Use the before cursor rather than offset to page through an author's posts.");
+        }
+        String before = getOptionalQueryParam(ctx, "before", params -> params.get(0)).orElse(null);
+        // There are too many authors (and cursors) to cache their pages, but they only change
+        // when the feed does, so the client can still be told its copy is current.
+        VersionStamps.Stamp stamp = stamp(stamps -> stamps.forFeed());
+        if (endIfNotModified(ctx, stamp)) {
+          return;
+        }
+        PostsResponse response = this.readProcessor().getPostsByAuthor(author.get(), before, limit);
+        end(ctx.response(), 200, JsonObject.mapFrom(response).encode(), stamp);
+      } else {
+        if (!ctx.queryParam("before").isEmpty()) {
+          throw new IllegalArgumentException("Query parameter before needs an author.");
+        }
+        int offset = getPageOffset(ctx);
+        endFeed(
+            ctx,
+            "newest/" + limit + "/" + offset,
+            () -> this.readProcessor().getNewestPosts(limit, offset));
+      }
+    } catch (IllegalArgumentException e) {
+      end(ctx.response(), 400, e.getMessage());
+    }
+  }
 
-    // Call our helper method to end the request, and provide a success status code with
-    // our response.
+  /**
+   * Register the "/posts/search" route.
+   *
+   * @param router The Router to register the route with.
+   */
+  private void registerSearchPostsRoute(Router router) {
+    Route route = router.get("/search");
+    route.handler(this::handleSearchPostsRoute);
+  }
+
+  /**
+   * Handle the "/posts/search?q=...&limit=...&offset=..." route.
+   *
+   * @param ctx The {@link RoutingContext} containing all relevant routing info.
+   */
+  private void handleSearchPostsRoute(RoutingContext ctx) {
+    try {
+      String query = getSearchQuery(ctx);
+      int limit = getPageLimit(ctx);
+      int offset = getPageOffset(ctx);
+
+      PostsResponse response = this.readProcessor().searchPosts(query, limit, offset);
+      end(ctx.response(), 200, JsonObject.mapFrom(response).encode());
+    } catch (IllegalArgumentException e) {
+      end(ctx.response(), 400, e.getMessage());
+    }
+  }
+
+  /**
+   * Register the "/posts/search/comments" route.
+   *
+   * @param router The Router to register the route with.
+   */
+  private void registerSearchCommentsRoute(Router router) {
+    Route route = router.get("/search/comments");
+    route.handler(this::handleSearchCommentsRoute);
+  }
+
+  /**
+   * Handle the "/posts/search/comments?q=...&limit=...&offset=..." route.
+   *
+   * @param ctx The {@link RoutingContext} containing all relevant routing info.
+   */
+  private void handleSearchCommentsRoute(RoutingContext ctx) {
+    try {
+      String query = getSearchQuery(ctx);
+      int limit = getPageLimit(ctx);
+      int offset = getPageOffset(ctx);
+
+      CommentsResponse response = this.readProcessor().searchComments(query, limit, offset);
+      end(ctx.response(), 200, JsonObject.mapFrom(response).encode());
+    } catch (IllegalArgumentException e) {
+      end(ctx.response(), 400, e.getMessage());
+    }
+  }
+
+  /**
+   * Register the "/posts/autocomplete" route.
+   *
+   * @param router The Router to register the route with.
+   */
+  private void registerAutocompleteRoute(Router router) {
+    Route route = router.get("/autocomplete");
+    route.handler(this::handleAutocompleteRoute);
+  }
+
+  /**
+   * Handle the "/posts/autocomplete?prefix=...&limit=..." route. The search box calls this on every
+   * keystroke, so it's answered from memory without touching the database.
+   *
+   * @param ctx The {@link RoutingContext} containing all relevant routing info.
+   */
+  private void handleAutocompleteRoute(RoutingContext ctx) {
+    try {
+      String prefix =
+          getOptionalQueryParam(ctx, "prefix", params -> params.get(0))
+              .filter(value -> !value.isBlank())
+              .orElseThrow(
+                  () -> new IllegalArgumentException("Query parameter prefix cannot be empty."));
+      int limit = getPageLimit(ctx);
+
+      AutocompleteResponse response = this.readProcessor().autocompleteTitles(prefix, limit);
+      end(ctx.response(), 200, JsonObject.mapFrom(response).encode());
+    } catch (IllegalArgumentException e) {
+      end(ctx.response(), 400, e.getMessage());
+    }
+  }
+
+  /**
+   * Register the "/posts/cache/stats" route.
+   *
+   * @param router The Router to register the route with.
+   */
+  private void registerCacheStatsRoute(Router router) {
+    Route route = router.get("/cache/stats");
+    route.handler(this::handleCacheStatsRoute);
+  }
+
+  /**
+   * Handle the "/posts/cache/stats" route, which reports how well the response cache is doing. The
+   * garbage collection numbers are for the whole server, so compare them with the cache turned on
+   * and off to see how much it helps.
+   *
+   * @param ctx The {@link RoutingContext} containing all relevant routing info.
+   */
+  private void handleCacheStatsRoute(RoutingContext ctx) {
+    long gcCount = 0;
+    long gcTimeMillis = 0;
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      // Each is -1 if the collector doesn't keep track of it.
+      gcCount += Math.max(0, collector.getCollectionCount());
+      gcTimeMillis += Math.max(0, collector.getCollectionTime());
+    }
+    CacheStatsResponse response =
+        new CacheStatsResponse(
+            responseCache.getHits(),
+            responseCache.getStaleHits(),
+            responseCache.getMisses(),
+            responseCache.getEvictions(),
+            responseCache.getEntryCount(),
+            responseCache.getStoredBytes(),
+            responseCache.getAllocatedBytes(),
+            responseCache.getCapacityBytes(),
+            ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed(),
+            gcCount,
+            gcTimeMillis);
     end(ctx.response(), 200, JsonObject.mapFrom(response).encode());
   }
 
+  /**
+   * Get the required, non-blank "q" query param of a search route.
+   *
+   * @param ctx The {@link RoutingContext} containing the request.
+   * @return The search query.
+   * @throws IllegalArgumentException If the query is missing or blank.
+   */
+  private static String getSearchQuery(RoutingContext ctx) {
+    return getOptionalQueryParam(ctx, "q", params -> params.get(0))
+        .filter(query -> !query.isBlank())
+        .orElseThrow(() -> new IllegalArgumentException("Query parameter q cannot be empty."));
+  }
+
+  /**
+   * Get the "limit" query param of a paged route, or {@link #DEFAULT_PAGE_LIMIT} if there isn't
+   * one.
+   *
+   * @param ctx The {@link RoutingContext} containing the request.
+   * @return The requested page size.
+   * @throws IllegalArgumentException If the limit isn't between 1 and {@link #MAX_PAGE_LIMIT}.
+   */
+  private static int getPageLimit(RoutingContext ctx) {
+    int limit =
+        getOptionalQueryParam(ctx, "limit", params -> Integer.parseInt(params.get(0)))
+            .orElse(DEFAULT_PAGE_LIMIT);
+    if (limit < 1 || limit > MAX_PAGE_LIMIT) {
+      throw new IllegalArgumentException(
+          "Query parameter limit must be between 1 and " + MAX_PAGE_LIMIT + ".");
+    }
+    return limit;
+  }
+
+  /**
+   * Get the "offset" query param of a paged route, or 0 if there isn't one.
+   *
+   * @param ctx The {@link RoutingContext} containing the request.
+   * @return The number of results to skip.
+   * @throws IllegalArgumentException If the offset is negative.
+   */
+  private static int getPageOffset(RoutingContext ctx) {
+    int offset =
+        getOptionalQueryParam(ctx, "offset", params -> Integer.parseInt(params.get(0))).orElse(0);
+    if (offset < 0) {
+      throw new IllegalArgumentException("Query parameter offset cannot be negative.");
+    }
+    return offset;
+  }
+
   /**
    * Get the "/posts/:post_id" route. The ":post_id" part allows us to access a value from that part
    * of the route. In this case, if someone were to access "/posts/256", we can get the "256" as a
@@ -128,10 +703,15 @@ public class PostsRouter implements IRouter {
     int postId = getRequestParameterAsInt(ctx.request(), "post_id");
 
     try {
-      // Get the specific post from the processor using the provided postId.
-      SinglePostResponse response = this.processor.getSinglePost(postId);
-      // Return the found object.
-      end(ctx.response(), 200, JsonObject.mapFrom(response).encode());
+      // Get the specific post from the processor using the provided postId (unless it's cached),
+      // and return it.
+      endCached(
+          ctx,
+          postId,
+          SINGLE_POST_KEY,
+          stamp(stamps -> stamps.forPost(postId)),
+          () -> this.readProcessor().getSinglePost(postId));
+      recordAccess(postId);
     } catch (IllegalArgumentException e) {
       // Return a 404 NOT FOUND if post does not exist.
       end(ctx.response(), 404, e.getMessage());
@@ -150,7 +730,8 @@ public class PostsRouter implements IRouter {
   }
 
   /**
-   * Handle the "/posts/:post_id/comments" route.
+   * Handle the "/posts/:post_id/comments" route. If a "sort" query param is given, only the first
+   * "limit" comments in that order are returned.
    *
    * @param ctx The {@link RoutingContext} containing all relevant routing info.
    */
@@ -158,11 +739,32 @@ public class PostsRouter implements IRouter {
     // Call a helper method to get the "post_id" route param from the routing context.
     int postId = getRequestParameterAsInt(ctx.request(), "post_id");
 
+    // Read the query params first, so a bad one is a 400 rather than a 404.
+    Optional<CommentSort> sort;
+    int limit;
     try {
-      // Get the list of comments.
-      CommentsResponse response = processor.getCommentsForPost(postId);
-      // Return the found comments.
-      end(ctx.response(), 200, JsonObject.mapFrom(response).encode());
+      sort =
+          getOptionalQueryParam(ctx, "sort", params -> params.get(0))
+              .map(CommentSort::fromQueryParam);
+      limit = getPageLimit(ctx);
+    } catch (IllegalArgumentException e) {
+      end(ctx.response(), 400, e.getMessage());
+      return;
+    }
+
+    try {
+      // Get the list of comments (unless it's cached), and return it.
+      String key = sort.map(value -> COMMENTS_KEY + "/" + value + "/" + limit).orElse(COMMENTS_KEY);
+      endCached(
+          ctx,
+          postId,
+          key,
+          stamp(stamps -> stamps.forComments(postId)),
+          () ->
+              sort.isPresent()
+                  ? this.readProcessor().getCommentsForPost(postId, sort.get(), limit)
+                  : this.readProcessor().getCommentsForPost(postId));
+      recordAccess(postId);
     } catch (IllegalArgumentException e) {
       // If an exception was thrown because there was no existing post with the given id, then end
       // with a 404 NOT FOUND.
@@ -170,6 +772,43 @@ public class PostsRouter implements IRouter {
     }
   }
 
+  /**
+   * Register the "/posts/:post_id/related" route.
+   *
+   * @param router The Router to register the route with.
+   */
+  private void registerGetRelatedPostsRoute(Router router) {
+    Route route = router.get("/:post_id/related");
+    route.handler(this::handleGetRelatedPostsRoute);
+  }
+
+  /**
+   * Handle the "/posts/:post_id/related?limit=..." route, which returns the posts whose bodies are
+   * most like the given post's.
+   *
+   * @param ctx The {@link RoutingContext} containing all relevant routing info.
+   */
+  private void handleGetRelatedPostsRoute(RoutingContext ctx) {
+    int postId = getRequestParameterAsInt(ctx.request(), "post_id");
+
+    // Read the limit first, so a bad one is a 400 rather than a 404.
+    int limit;
+    try {
+      limit = getPageLimit(ctx);
+    } catch (IllegalArgumentException e) {
+      end(ctx.response(), 400, e.getMessage());
+      return;
+    }
+
+    try {
+      PostsResponse response = this.readProcessor().getRelatedPosts(postId, limit);
+      end(ctx.response(), 200, JsonObject.mapFrom(response).encode());
+    } catch (IllegalArgumentException e) {
+      // Return a 404 NOT FOUND if post does not exist.
+      end(ctx.response(), 404, e.getMessage());
+    }
+  }
+
   /**
    * Register the POST "/posts" route.
    *
@@ -195,7 +834,8 @@ public class PostsRouter implements IRouter {
     }
 
     // Create the post using the processor.
-    processor.createPost(createPostRequest);
+    this.writeProcessor().createPost(createPostRequest);
+    postCreated();
     // Return successfully created response (201).
     end(ctx.response(), 201, "Post created.");
   }
@@ -223,7 +863,8 @@ public class PostsRouter implements IRouter {
     }
 
     try {
-      processor.createComment(postId, comment);
+      this.writeProcessor().createComment(postId, comment);
+      commentsChanged(postId, true);
       end(ctx.response(), 201, "Comment created.");
     } catch (IllegalArgumentException e) {
       end(ctx.response(), 400, e.getMessage());
@@ -249,7 +890,8 @@ public class PostsRouter implements IRouter {
     int postId = getRequestParameterAsInt(ctx.request(), "post_id");
 
     try {
-      processor.clapPost(postId);
+      this.writeProcessor().clapPost(postId);
+      postChanged(postId, false);
       end(ctx.response(), 204);
     } catch (IllegalArgumentException e) {
       end(ctx.response(), 400, e.getMessage());
@@ -276,7 +918,8 @@ public class PostsRouter implements IRouter {
     int commentId = getRequestParameterAsInt(ctx.request(), "comment_id");
 
     try {
-      processor.clapComment(postId, commentId);
+      this.writeProcessor().clapComment(postId, commentId);
+      commentsChanged(postId, false);
       end(ctx.response(), 204);
     } catch (IllegalArgumentException e) {
       end(ctx.response(), 400, e.getMessage());
@@ -302,7 +945,8 @@ public class PostsRouter implements IRouter {
     int postId = getRequestParameterAsInt(ctx.request(), "post_id");
 
     try {
-      processor.deletePost(postId);
+      this.writeProcessor().deletePost(postId);
+      postChanged(postId, true);
       end(ctx.response(), 204);
     } catch (IllegalArgumentException e) {
       end(ctx.response(), 404, e.getMessage());
@@ -329,7 +973,8 @@ public class PostsRouter implements IRouter {
     int commentId = getRequestParameterAsInt(ctx.request(), "comment_id");
 
     try {
-      processor.deleteComment(postId, commentId);
+      this.writeProcessor().deleteComment(postId, commentId);
+      commentsChanged(postId, true);
       end(ctx.response(), 204);
     } catch (IllegalArgumentException e) {
       end(ctx.response(), 404, e.getMessage());
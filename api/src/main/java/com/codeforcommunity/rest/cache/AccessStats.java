@@ -0,0 +1,163 @@
+package com.codeforcommunity.rest.cache;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts how often each post is asked for, so that the next time the server starts it knows which
+ * posts to load into the caches before any requests come in.
+ *
+ * <p>Right after a deploy, every cache is empty (the database's too), and the first few minutes of
+ * requests are all slow. Most of those requests are for the same few popular posts, so loading them
+ * ahead of time takes care of most of the slowness. Which posts those are is saved to a file every
+ * so often and when the server stops, and read back from it when the server starts.
+ *
+ * <p>Only a fixed number of posts are counted, and once that many are, other posts aren't. Every so
+ * often, every count is halved and the posts that drop to nothing are forgotten, so posts that used
+ * to be popular make way for the ones that are popular now. The counts read back from the file are
+ * halved too, for the same reason.
+ *
+ * <p>Every method is thread-safe.
+ */
+public class AccessStats {
+  /** How many times the capacity requests are counted between halvings. */
+  private static final int AGING_MULTIPLIER = 10;
+
+  private final int capacity;
+  /** How many requests have been counted since the counts were last halved. */
+  private long recordedSinceAging;
+  /** How many times each post has been asked for, give or take the halving. */
+  private final Map<Integer, Long> counts = new HashMap<>();
+
+  /**
+   * Create empty stats.
+   *
+   * @param capacity The most posts to count at once.
+   * @throws IllegalArgumentException If it's less than 1.
+   */
+  public AccessStats(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Access stats need to count at least 1 post.");
+    }
+    this.capacity = capacity;
+  }
+
+  /**
+   * Read the stats saved by {@link #save(Path, int)}, or create empty stats if nothing's been saved
+   * yet.
+   *
+   * @param file The file they were saved to.
+   * @param capacity The most posts to count at once.
+   * @return The stats.
+   * @throws IllegalStateException If the file exists but can't be read.
+   */
+  public static AccessStats load(Path file, int capacity) {
+    AccessStats stats = new AccessStats(capacity);
+    if (!Files.exists(file)) {
+      return stats;
+    }
+    try {
+      for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+        // Each line is a post's ID and its count. Skip anything else, like a line cut short by a
+        // crash in the middle of writing it.
+        String[] fields = line.trim().split("\\s+");
+        if (fields.length != 2) {
+          continue;
+        }
+        try {
+          long count = Long.parseLong(fields[1]) / 2;
+          if (count > 0 && stats.counts.size() < capacity) {
+            stats.counts.put(Integer.parseInt(fields[0]), count);
+          }
+        } catch (NumberFormatException e) {
+          // Skip it, like any other broken line.
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not read the access stats from " + file, e);
+    }
+    return stats;
+  }
+
+  /**
+   * Count a request for a post.
+   *
+   * @param postId The post's ID.
+   */
+  public synchronized void record(int postId) {
+    if (++recordedSinceAging >= (long) capacity * AGING_MULTIPLIER) {
+      age();
+    }
+    if (!counts.containsKey(postId) && counts.size() >= capacity) {
+      // There's no room for it until the next halving makes some.
+      return;
+    }
+    counts.merge(postId, 1L, Long::sum);
+  }
+
+  /** Halve every count, and forget the posts that drop to nothing. */
+  private void age() {
+    recordedSinceAging = 0;
+    counts.replaceAll((postId, count) -> count / 2);
+    counts.values().removeIf(count -> count == 0);
+  }
+
+  /**
+   * Get the most asked for posts.
+   *
+   * @param limit The most posts to return.
+   * @return The posts' IDs, most asked for first.
+   */
+  public synchronized List<Integer> getHottest(int limit) {
+    List<Map.Entry<Integer, Long>> entries = new ArrayList<>(counts.entrySet());
+    entries.sort(Map.Entry.<Integer, Long>comparingByValue().reversed());
+    List<Integer> hottest = new ArrayList<>();
+    for (int i = 0; i < Math.min(limit, entries.size()); i++) {
+      hottest.add(entries.get(i).getKey());
+    }
+    return hottest;
+  }
+
+  /**
+   * Save the most asked for posts and their counts, to be read back by {@link #load(Path, int)}.
+   * The file is replaced in one step, so a crash while saving leaves the old one in place.
+   *
+   * @param file The file to save them to.
+   * @param limit The most posts to save.
+   * @throws IllegalStateException If the file can't be written.
+   */
+  public void save(Path file, int limit) {
+    List<Integer> hottest;
+    Map<Integer, Long> snapshot;
+    synchronized (this) {
+      hottest = getHottest(limit);
+      snapshot = new HashMap<>(counts);
+    }
+
+    Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+    try {
+      Path parent = file.toAbsolutePath().getParent();
+      if (parent != null) {
+        Files.createDirectories(parent);
+      }
+      try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+        for (int postId : hottest) {
+          writer.write(postId + " " + snapshot.get(postId));
+          writer.newLine();
+        }
+      }
+      Files.move(
+          temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not save the access stats to " + file, e);
+    }
+  }
+}
@@ -0,0 +1,472 @@
+package com.codeforcommunity.rest.cache;
+
+import com.codeforcommunity.dto.response.PostSummary;
+import com.codeforcommunity.dto.response.PostsResponse;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.Json;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the pages of the post feed ("/posts") encoded and ready to send. The feed is the most
+ * requested thing we serve, and the same page goes out to everyone until a post changes, so there's
+ * no need to build and encode it again for every request.
+ *
+ * <p>A page is made of two parts, which change at very different rates:
+ *
+ * <ul>
+ *   <li>Which posts are on it, in what order. That only changes when a post is created or deleted,
+ *       and is tracked by the feed's version (see {@link #invalidate()}).
+ *   <li>Each post's summary, which changes with every clap and comment. Each summary is encoded on
+ *       its own, as a fragment of JSON, and tracked by when its post last changed (see {@link
+ *       #invalidatePost(int)}).
+ * </ul>
+ *
+ * <p>A page is sent as the fragments of its posts, concatenated inside the {@code {"posts":[...]}}
+ * that {@link PostsResponse} encodes to. So when someone claps for a post, only that post's summary
+ * is loaded and encoded again, and the page is put back together around it. The rest of the feed
+ * stays cached, however many claps and comments come in.
+ *
+ * <p>A change to a post marks just the cached pages that post is on (each post knows which those
+ * are). Until one of its posts changes, sending a page costs a map lookup and a socket write: the
+ * assembled bytes are shared by every response (Vert.x buffers can be written any number of times),
+ * and changes to posts on other pages don't make it look at its posts again. After a post is
+ * created or deleted, the pages are rebuilt in the background, so the next request for them is
+ * still a hit. A burst of changes only causes one rebuild at a time. A request that comes in before
+ * its page (or one of its fragments) is rebuilt builds it itself, so no one is sent a feed from
+ * before a change they've seen succeed.
+ *
+ * <p>Pages are also loaded again once they're old, in case a change was missed. Like {@link
+ * SlabCache}, that goes by two ages: a page older than the soft TTL is still sent, while it's
+ * loaded again in the background (once, however many requests come in); only a page older than the
+ * hard TTL makes the request wait for it.
+ *
+ * <p>There's a page for every limit and offset (or author) asked for, so only so many are kept.
+ * Once there are that many, the least recently sent page makes way for a new one.
+ */
+public class FeedCache {
+  /**
+   * How many slots the posts' change times are spread over. Posts that share a slot make each other
+   * look changed, which only costs an extra fragment being encoded now and then.
+   */
+  private static final int CHANGE_SLOTS = 4096;
+
+  private static final Buffer PAGE_START = Buffer.buffer("{\"posts\":[");
+  private static final Buffer PAGE_SEPARATOR = Buffer.buffer(",");
+  private static final Buffer PAGE_END = Buffer.buffer("]}");
+
+  /** A page of the feed, assembled from its posts' fragments. */
+  private static final class Page {
+    /** The feed's version when the page's posts were loaded. */
+    final long version;
+    /** The {@link #clock} when the page was assembled. */
+    final long assembledAt;
+    /** The {@link System#nanoTime()} when the page's posts were loaded. */
+    final long loadedAtNanos;
+    /** The IDs of the posts on the page, in order. */
+    final int[] postIds;
+    /** Set once one of the page's posts changes, so the page has to be put back together. */
+    volatile boolean postsChanged;
+    /** The {@link System#nanoTime()} when the page was last sent, for evicting it. */
+    volatile long lastUsedNanos;
+
+    final Buffer bytes;
+    /** Loads the page again. */
+    final Supplier<PostsResponse> load;
+    /** Loads the summary of one of the page's posts again. */
+    final IntFunction<PostSummary> loadPost;
+
+    Page(
+        long version,
+        long assembledAt,
+        long loadedAtNanos,
+        int[] postIds,
+        Buffer bytes,
+        Supplier<PostsResponse> load,
+        IntFunction<PostSummary> loadPost) {
+      this.version = version;
+      this.assembledAt = assembledAt;
+      this.loadedAtNanos = loadedAtNanos;
+      this.postIds = postIds;
+      this.bytes = bytes;
+      this.load = load;
+      this.loadPost = loadPost;
+      this.lastUsedNanos = System.nanoTime();
+    }
+  }
+
+  /** A post's summary, encoded. */
+  private static final class Fragment {
+    /** The {@link #clock} when the summary was loaded. */
+    final long loadedAt;
+
+    final Buffer bytes;
+
+    Fragment(long loadedAt, Buffer bytes) {
+      this.loadedAt = loadedAt;
+      this.bytes = bytes;
+    }
+  }
+
+  /** The most pages to keep, since there's a page for every limit and offset asked for. */
+  private final int maxPages;
+
+  private final long softTtlNanos;
+  private final long hardTtlNanos;
+  /** Goes up whenever a post is created or deleted. */
+  private final AtomicLong version = new AtomicLong();
+  /** Goes up whenever a post changes. */
+  private final AtomicLong clock = new AtomicLong();
+  /** The {@link #clock} when a post in each slot last changed. */
+  private final AtomicLongArray changedAt = new AtomicLongArray(CHANGE_SLOTS);
+
+  /** The cached pages. Only changed while holding this cache's lock, but read without it. */
+  private final ConcurrentHashMap<String, Page> pages = new ConcurrentHashMap<>();
+  /** The keys of the cached pages each post is on. Guarded by this cache's lock. */
+  private final Map<Integer, Set<String>> pagesByPost = new HashMap<>();
+
+  private final ConcurrentHashMap<Integer, Fragment> fragments = new ConcurrentHashMap<>();
+  /** Whether a rebuild is waiting to start. */
+  private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+  /** The keys of the stale pages being loaded again. */
+  private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+  private final ExecutorService rebuilder =
+      Executors.newSingleThreadExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "feed-cache-rebuild");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  /**
+   * Create a feed cache.
+   *
+   * @param maxPages The most pages to keep. Once there are that many, the least recently sent page
+   *     is dropped to make room for a new one.
+   * @param softTtlMillis How old a page can get before it's loaded again in the background.
+   * @param hardTtlMillis How old a page can get before it's no longer sent at all.
+   * @throws IllegalArgumentException If the soft TTL isn't positive, or the hard TTL is shorter
+   *     than the soft one.
+   */
+  public FeedCache(int maxPages, long softTtlMillis, long hardTtlMillis) {
+    if (maxPages < 1) {
+      throw new IllegalArgumentException("A feed cache needs room for at least 1 page.");
+    }
+    if (softTtlMillis < 1 || hardTtlMillis < softTtlMillis) {
+      throw new IllegalArgumentException(
+          "A cache needs a positive soft TTL, and a hard TTL at least as long.");
+    }
+    this.maxPages = maxPages;
+    this.softTtlNanos = TimeUnit.MILLISECONDS.toNanos(softTtlMillis);
+    this.hardTtlNanos = TimeUnit.MILLISECONDS.toNanos(hardTtlMillis);
+  }
+
+  /**
+   * Get a page of the feed, building and caching whatever isn't cached as it is now.
+   *
+   * @param key What identifies the page, like its limit and offset.
+   * @param load Loads the page. It's also called in the background to rebuild the page after posts
+   *     are created or deleted, so it mustn't depend on the request.
+   * @param loadPost Loads the summary of one of the page's posts, after it's changed. Like {@code
+   *     load}, it mustn't depend on the request.
+   * @return The encoded page.
+   */
+  public Buffer get(String key, Supplier<PostsResponse> load, IntFunction<PostSummary> loadPost) {
+    Page page = pages.get(key);
+    if (page == null || page.version != version.get()) {
+      return build(key, load, loadPost).bytes;
+    }
+    long nowNanos = System.nanoTime();
+    long age = nowNanos - page.loadedAtNanos;
+    if (age >= hardTtlNanos) {
+      return build(key, load, loadPost).bytes;
+    }
+    if (age >= softTtlNanos && refreshing.add(key)) {
+      rebuilder.execute(() -> refresh(key, page));
+    }
+
+    page.lastUsedNanos = nowNanos;
+    if (!page.postsChanged) {
+      return page.bytes;
+    }
+    return reassemble(key, page, clock.get()).bytes;
+  }
+
+  /**
+   * Load a page, encode each of its posts' summaries, and assemble them.
+   *
+   * @return The page.
+   */
+  private Page build(String key, Supplier<PostsResponse> load, IntFunction<PostSummary> loadPost) {
+    // Read the version and clock before loading the page, so that if the feed changes while we load
+    // it, the page (or fragment) is stored as already out of date.
+    long pageVersion = version.get();
+    long now = clock.get();
+    long loadedAtNanos = System.nanoTime();
+    List<PostSummary> posts = load.get().getPosts();
+
+    int[] postIds = new int[posts.size()];
+    List<Buffer> pieces = new ArrayList<>(posts.size());
+    for (int i = 0; i < posts.size(); i++) {
+      PostSummary post = posts.get(i);
+      Fragment fragment = new Fragment(now, Json.encodeToBuffer(post));
+      storeFragment(post.getId(), fragment);
+      postIds[i] = post.getId();
+      pieces.add(fragment.bytes);
+    }
+
+    Page page =
+        new Page(pageVersion, now, loadedAtNanos, postIds, assemble(pieces), load, loadPost);
+    store(key, page);
+    return page;
+  }
+
+  /**
+   * Put a page back together after some of its posts changed, encoding just their summaries again.
+   *
+   * @param now The {@link #clock}, read before checking which posts changed.
+   * @return The page.
+   */
+  private Page reassemble(String key, Page page, long now) {
+    List<Buffer> pieces = new ArrayList<>(page.postIds.length);
+    List<Integer> postIds = new ArrayList<>(page.postIds.length);
+    for (int postId : page.postIds) {
+      Fragment fragment = fragments.get(postId);
+      if (fragment == null || changedSince(postId, fragment.loadedAt)) {
+        long loadedAt = clock.get();
+        PostSummary post;
+        try {
+          post = page.loadPost.apply(postId);
+        } catch (IllegalArgumentException e) {
+          // It's just been deleted, and the page is about to be rebuilt without it.
+          continue;
+        }
+        fragment = new Fragment(loadedAt, Json.encodeToBuffer(post));
+        storeFragment(postId, fragment);
+      }
+      pieces.add(fragment.bytes);
+      postIds.add(postId);
+    }
+
+    Page reassembled =
+        new Page(
+            page.version,
+            now,
+            page.loadedAtNanos,
+            postIds.stream().mapToInt(Integer::intValue).toArray(),
+            assemble(pieces),
+            page.load,
+            page.loadPost);
+    store(key, reassembled);
+    return reassembled;
+  }
+
+  /** @return The pieces of JSON, as the array of posts in a {@link PostsResponse}. */
+  private static Buffer assemble(List<Buffer> pieces) {
+    int length = PAGE_START.length() + PAGE_END.length() + Math.max(0, pieces.size() - 1);
+    for (Buffer piece : pieces) {
+      length += piece.length();
+    }
+
+    Buffer page = Buffer.buffer(length).appendBuffer(PAGE_START);
+    for (int i = 0; i < pieces.size(); i++) {
+      if (i > 0) {
+        page.appendBuffer(PAGE_SEPARATOR);
+      }
+      page.appendBuffer(pieces.get(i));
+    }
+    return page.appendBuffer(PAGE_END);
+  }
+
+  /** @return Whether the post has changed since the given {@link #clock}. */
+  private boolean changedSince(int postId, long since) {
+    return changedAt.get(Math.floorMod(postId, CHANGE_SLOTS)) > since;
+  }
+
+  /**
+   * @return Whether any of the posts have changed since the given {@link #clock}. This looks at
+   *     every post, so it's only for when a page is stored, not every time it's sent.
+   */
+  private boolean anyChangedSince(int[] postIds, long since) {
+    for (int postId : postIds) {
+      if (changedSince(postId, since)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Record that a post in the feed changed (it was clapped for, or a comment was created or
+   * deleted), so that its summary is loaded again the next time a page it's on is asked for.
+   *
+   * @param postId The post's ID.
+   */
+  public void invalidatePost(int postId) {
+    long now = clock.incrementAndGet();
+    changedAt.accumulateAndGet(Math.floorMod(postId, CHANGE_SLOTS), now, Math::max);
+    fragments.remove(postId);
+    // A page being stored right now that we miss here sees the change time we just set (see
+    // store).
+    synchronized (this) {
+      for (String key : pagesByPost.getOrDefault(postId, Set.of())) {
+        Page page = pages.get(key);
+        if (page != null) {
+          page.postsChanged = true;
+        }
+      }
+    }
+  }
+
+  /**
+   * Record that a post was created or deleted, which changes which posts are on each page, and
+   * rebuild the cached pages in the background.
+   */
+  public void invalidate() {
+    version.incrementAndGet();
+    if (rebuildScheduled.compareAndSet(false, true)) {
+      rebuilder.execute(this::rebuild);
+    }
+  }
+
+  /** Drop everything cached, after we may have missed any number of changes. */
+  public void clear() {
+    long now = clock.incrementAndGet();
+    for (int slot = 0; slot < CHANGE_SLOTS; slot++) {
+      changedAt.accumulateAndGet(slot, now, Math::max);
+    }
+    fragments.clear();
+    synchronized (this) {
+      for (Page page : pages.values()) {
+        page.postsChanged = true;
+      }
+    }
+    invalidate();
+  }
+
+  /** Load a stale page again, in the background. */
+  private void refresh(String key, Page page) {
+    try {
+      build(key, page.load, page.loadPost);
+    } catch (RuntimeException e) {
+      // Keep sending the stale page, and try again on the next request.
+    } finally {
+      refreshing.remove(key);
+    }
+  }
+
+  private void rebuild() {
+    // Let the next change schedule another rebuild, since this one might read the version from
+    // before it.
+    rebuildScheduled.set(false);
+    long current = version.get();
+    for (Map.Entry<String, Page> entry : pages.entrySet()) {
+      Page page = entry.getValue();
+      if (page.version == current) {
+        continue;
+      }
+      try {
+        build(entry.getKey(), page.load, page.loadPost);
+      } catch (RuntimeException e) {
+        // Leave it to the next request for the page to build it (and report whatever went wrong).
+        remove(entry.getKey(), page);
+      }
+    }
+  }
+
+  private synchronized void store(String key, Page page) {
+    Page old = pages.get(key);
+    if (old != null && isNewer(old, page)) {
+      // Never replace a page with one loaded earlier.
+      return;
+    }
+    if (old == null && pages.size() >= maxPages) {
+      evictLeastRecentlyUsed();
+    }
+    pages.put(key, page);
+    if (old != null) {
+      unindex(key, old);
+    }
+    for (int postId : page.postIds) {
+      pagesByPost.computeIfAbsent(postId, id -> new HashSet<>()).add(key);
+    }
+    // A post may have changed after the page was assembled, before it could be marked here.
+    if (clock.get() != page.assembledAt && anyChangedSince(page.postIds, page.assembledAt)) {
+      page.postsChanged = true;
+    }
+  }
+
+  /** Drop a page, unless it's been replaced. */
+  private synchronized void remove(String key, Page page) {
+    if (pages.remove(key, page)) {
+      unindex(key, page);
+    }
+  }
+
+  /** Drop the page that was sent least recently. Only call this while holding the lock. */
+  private void evictLeastRecentlyUsed() {
+    String victim = null;
+    long oldest = 0;
+    for (Map.Entry<String, Page> entry : pages.entrySet()) {
+      long lastUsed = entry.getValue().lastUsedNanos;
+      if (victim == null || lastUsed - oldest < 0) {
+        victim = entry.getKey();
+        oldest = lastUsed;
+      }
+    }
+    if (victim != null) {
+      unindex(victim, pages.remove(victim));
+    }
+  }
+
+  /** Forget which posts a page was on. Only call this while holding the lock. */
+  private void unindex(String key, Page page) {
+    for (int postId : page.postIds) {
+      Set<String> keys = pagesByPost.get(postId);
+      if (keys != null && keys.remove(key) && keys.isEmpty()) {
+        pagesByPost.remove(postId);
+      }
+    }
+  }
+
+  /**
+   * @return Whether one page was loaded more recently than another. (Which of them was assembled
+   *     more recently doesn't matter, since any post that changed since is caught on the next hit.)
+   */
+  private static boolean isNewer(Page page, Page than) {
+    if (page.version != than.version) {
+      return page.version > than.version;
+    }
+    if (page.loadedAtNanos != than.loadedAtNanos) {
+      return page.loadedAtNanos - than.loadedAtNanos > 0;
+    }
+    return page.assembledAt > than.assembledAt;
+  }
+
+  private void storeFragment(int postId, Fragment fragment) {
+    // Don't cache a summary the post has changed since, or replace one loaded after it.
+    if (changedSince(postId, fragment.loadedAt)) {
+      return;
+    }
+    fragments.merge(
+        postId, fragment, (old, loaded) -> old.loadedAt > loaded.loadedAt ? old : loaded);
+    // The post may have changed while we stored it.
+    if (changedSince(postId, fragment.loadedAt)) {
+      fragments.remove(postId, fragment);
+    }
+  }
+}
@@ -0,0 +1,434 @@
+package com.codeforcommunity.rest.cache;
+
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.buffer.Buffer;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A size-bounded cache of already-encoded responses, kept off the Java heap.
+ *
+ * <p>Caching response objects on the heap means every hot post sits in the old generation, where it
+ * makes every full garbage collection slower. Instead, we encode each response to JSON once and
+ * copy the bytes into direct {@link ByteBuffer}s, which the garbage collector never looks inside.
+ * All that's left on the heap is a small entry per response saying where its bytes are.
+ *
+ * <p>The memory is allocated in slabs of {@link #SLAB_SIZE} bytes (only as they're needed, so an
+ * empty cache takes no memory), and each slab is cut into blocks of {@link #BLOCK_SIZE} bytes. A
+ * response takes as many blocks as it needs, wherever they happen to be free, so any freed block
+ * can be reused by a response of any size. When there aren't enough free blocks, the least recently
+ * used responses are evicted until there are.
+ *
+ * <p>Each response belongs to a group (like the ID of the post it's about), so every response about
+ * something that changed can be dropped at once with {@link #invalidate(int)}.
+ *
+ * <p>Responses are also loaded again once they're old, in case a change was missed (like a change
+ * notification from another node that never arrived). Rather than everyone waiting on the database
+ * at the moment a popular response expires, {@link #get(int, String, Supplier)} goes by two ages: a
+ * response older than the soft TTL is still sent straight away, while one request loads it again in
+ * the background; only a response older than the hard TTL makes requests wait for it to be loaded.
+ * A response that's hit at least once every soft TTL never makes anyone wait.
+ *
+ * <p>Direct memory counts against {@code -XX:MaxDirectMemorySize} (which defaults to the maximum
+ * heap size), not the heap. Every method is thread-safe.
+ */
+public class SlabCache {
+  /** How many bytes are allocated at a time. */
+  static final int SLAB_SIZE = 1 << 20;
+  /** How many bytes a response's bytes are stored in pieces of. */
+  static final int BLOCK_SIZE = 512;
+  /** How many blocks are in a slab. */
+  private static final int BLOCKS_PER_SLAB = SLAB_SIZE / BLOCK_SIZE;
+  /**
+   * The largest share of the cache a single response can take, so that one huge response can't
+   * flush out everything else.
+   */
+  private static final int MAX_ENTRY_SHARE = 8;
+  /** How many stamps the groups are spread over (see {@link #stamp(int)}). */
+  private static final int STAMP_STRIPES = 256;
+  /** How many responses can be loaded again in the background at once. */
+  private static final int REFRESH_THREADS = 2;
+
+  /** Where one response's bytes are. */
+  private static final class Entry {
+    final int group;
+    final int length;
+    /** The blocks holding the bytes, in order. */
+    final int[] blocks;
+    /** The {@link System#nanoTime()} when the response was stored. */
+    final long storedAtNanos;
+
+    Entry(int group, int length, int[] blocks, long storedAtNanos) {
+      this.group = group;
+      this.length = length;
+      this.blocks = blocks;
+      this.storedAtNanos = storedAtNanos;
+    }
+  }
+
+  /** The slabs allocated so far. */
+  private final ByteBuffer[] slabs;
+  /** How many blocks the cache can hold in all. */
+  private final int totalBlocks;
+  /** The blocks that have been used and freed again, as a stack. */
+  private final int[] freeBlocks;
+  /** How many blocks are on {@link #freeBlocks}. */
+  private int freeCount;
+  /** The next block that has never been used. Blocks from here on may not have a slab yet. */
+  private int nextUnusedBlock;
+
+  /** Every response, least recently used first. */
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+  /** The keys of the responses in each group. */
+  private final Map<Integer, Set<String>> keysByGroup = new HashMap<>();
+  /** Changed whenever a group is invalidated, so a response loaded before then isn't stored. */
+  private final long[] stamps = new long[STAMP_STRIPES];
+
+  private final long softTtlNanos;
+  private final long hardTtlNanos;
+  /** The keys of the responses being loaded again in the background. */
+  private final Set<String> refreshing = new HashSet<>();
+
+  private final ExecutorService refresher =
+      Executors.newFixedThreadPool(
+          REFRESH_THREADS,
+          runnable -> {
+            Thread thread = new Thread(runnable, "response-cache-refresh");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private long hits;
+  private long staleHits;
+  private long misses;
+  private long evictions;
+  private long storedBytes;
+
+  /**
+   * Create a cache.
+   *
+   * @param capacityBytes The most memory the cache can use, which is rounded down to a whole number
+   *     of blocks.
+   * @param softTtlMillis How old a response can get before it's loaded again in the background.
+   * @param hardTtlMillis How old a response can get before it's no longer sent at all.
+   * @throws IllegalArgumentException If the capacity is less than a single block, the soft TTL
+   *     isn't positive, or the hard TTL is shorter than the soft one.
+   */
+  public SlabCache(long capacityBytes, long softTtlMillis, long hardTtlMillis) {
+    if (capacityBytes < BLOCK_SIZE) {
+      throw new IllegalArgumentException("A cache needs room for at least one block.");
+    }
+    if (softTtlMillis < 1 || hardTtlMillis < softTtlMillis) {
+      throw new IllegalArgumentException(
+          "A cache needs a positive soft TTL, and a hard TTL at least as long.");
+    }
+    this.softTtlNanos = TimeUnit.MILLISECONDS.toNanos(softTtlMillis);
+    this.hardTtlNanos = TimeUnit.MILLISECONDS.toNanos(hardTtlMillis);
+    this.totalBlocks = (int) Math.min(capacityBytes / BLOCK_SIZE, Integer.MAX_VALUE);
+    this.slabs = new ByteBuffer[(totalBlocks + BLOCKS_PER_SLAB - 1) / BLOCKS_PER_SLAB];
+    this.freeBlocks = new int[totalBlocks];
+  }
+
+  /**
+   * Get a cached response.
+   *
+   * @param key The response's key.
+   * @return A copy of its bytes, ready to be written to an {@code HttpServerResponse}, or null if
+   *     it isn't cached (or is older than the hard TTL).
+   */
+  public synchronized Buffer get(String key) {
+    Entry entry = lookup(key);
+    if (entry == null) {
+      misses++;
+      return null;
+    }
+    hits++;
+    return copy(entry);
+  }
+
+  /**
+   * Get a response, from the cache if it's there and loading (and caching) it if it isn't.
+   *
+   * <p>A cached response older than the soft TTL is still returned, but it's also loaded again in
+   * the background, by only one request at a time. If that fails, the old response keeps being sent
+   * until it's older than the hard TTL, unless the failure is an {@link IllegalArgumentException}
+   * (like the post having been deleted), which drops it.
+   *
+   * @param group The response's group.
+   * @param key The response's key.
+   * @param load Loads the response. It may be called in the background, so it mustn't depend on the
+   *     request. Any exception it throws while a request waits on it is passed on, and nothing is
+   *     cached.
+   * @return The response's bytes.
+   */
+  public Buffer get(int group, String key, Supplier<Buffer> load) {
+    Buffer bytes;
+    boolean refresh;
+    // Take the stamp before loading, so that if the group changes while we load, we don't cache
+    // the old version.
+    long stamp;
+    synchronized (this) {
+      stamp = stamp(group);
+      Entry entry = lookup(key);
+      if (entry == null) {
+        misses++;
+        bytes = null;
+        refresh = false;
+      } else {
+        hits++;
+        bytes = copy(entry);
+        boolean stale = System.nanoTime() - entry.storedAtNanos >= softTtlNanos;
+        if (stale) {
+          staleHits++;
+        }
+        refresh = stale && refreshing.add(key);
+      }
+    }
+
+    if (bytes == null) {
+      bytes = load.get();
+      put(group, key, bytes, stamp);
+    } else if (refresh) {
+      refresher.execute(() -> refresh(group, key, load, stamp));
+    }
+    return bytes;
+  }
+
+  /** Load a stale response again, in the background. */
+  private void refresh(int group, String key, Supplier<Buffer> load, long stamp) {
+    try {
+      put(group, key, load.get(), stamp);
+    } catch (IllegalArgumentException e) {
+      // What the response is about is gone, so it shouldn't be sent anymore.
+      remove(key);
+    } catch (RuntimeException e) {
+      // Keep sending the stale response, and try again on the next request.
+    } finally {
+      synchronized (this) {
+        refreshing.remove(key);
+      }
+    }
+  }
+
+  /**
+   * @param key The response's key.
+   * @return Where its bytes are, or null if it isn't cached. A response older than the hard TTL is
+   *     dropped rather than returned.
+   */
+  private Entry lookup(String key) {
+    Entry entry = entries.get(key);
+    if (entry != null && System.nanoTime() - entry.storedAtNanos >= hardTtlNanos) {
+      forget(key);
+      return null;
+    }
+    return entry;
+  }
+
+  /** @return A copy of a response's bytes. */
+  private Buffer copy(Entry entry) {
+    // The blocks can be reused as soon as we let go of the lock, so copy the bytes out now.
+    Buffer bytes = Buffer.buffer(entry.length);
+    int copied = 0;
+    for (int block : entry.blocks) {
+      int length = Math.min(BLOCK_SIZE, entry.length - copied);
+      bytes.setBytes(copied, view(block, length));
+      copied += length;
+    }
+    return bytes;
+  }
+
+  /**
+   * Get the stamp of a group, to pass to {@link #put(int, String, Buffer, long)}. Call it before
+   * loading the response to be cached.
+   *
+   * @param group The group.
+   * @return The stamp.
+   */
+  public synchronized long stamp(int group) {
+    return stamps[Math.floorMod(group, STAMP_STRIPES)];
+  }
+
+  /**
+   * Cache a response, replacing any cached with the same key. It's left out if its group has been
+   * invalidated since the given stamp was taken (since it may have been loaded from before the
+   * change), or if it's too big for the cache.
+   *
+   * @param group The response's group.
+   * @param key The response's key.
+   * @param bytes The response's bytes.
+   * @param stamp What {@link #stamp(int)} returned before the response was loaded.
+   */
+  public synchronized void put(int group, String key, Buffer bytes, long stamp) {
+    remove(key);
+    if (stamps[Math.floorMod(group, STAMP_STRIPES)] != stamp) {
+      return;
+    }
+    int length = bytes.length();
+    int blockCount = Math.max(1, (length + BLOCK_SIZE - 1) / BLOCK_SIZE);
+    if (blockCount > Math.max(1, totalBlocks / MAX_ENTRY_SHARE)) {
+      return;
+    }
+
+    // Make room by evicting the least recently used responses. Every block that isn't available
+    // belongs to a cached response, so there's always one to evict.
+    while (availableBlocks() < blockCount) {
+      forget(entries.keySet().iterator().next());
+      evictions++;
+    }
+
+    ByteBuf source = bytes.getByteBuf();
+    int[] blocks = new int[blockCount];
+    for (int i = 0; i < blockCount; i++) {
+      blocks[i] = allocateBlock();
+      int from = i * BLOCK_SIZE;
+      int to = Math.min(length, from + BLOCK_SIZE);
+      source.getBytes(from, view(blocks[i], to - from));
+    }
+    Entry entry = new Entry(group, length, blocks, System.nanoTime());
+    entries.put(key, entry);
+    keysByGroup.computeIfAbsent(group, g -> new HashSet<>()).add(key);
+    storedBytes += length;
+  }
+
+  /**
+   * Drop a cached response, if there is one.
+   *
+   * @param key The response's key.
+   */
+  public synchronized void remove(String key) {
+    if (entries.containsKey(key)) {
+      forget(key);
+    }
+  }
+
+  /**
+   * Drop every cached response in a group, and stop any response in it that's being loaded right
+   * now from being stored.
+   *
+   * @param group The group.
+   */
+  public synchronized void invalidate(int group) {
+    stamps[Math.floorMod(group, STAMP_STRIPES)]++;
+    Set<String> keys = keysByGroup.get(group);
+    if (keys != null) {
+      for (String key : keys.toArray(new String[0])) {
+        forget(key);
+      }
+    }
+  }
+
+  /** Drop every cached response, and stop any being loaded right now from being stored. */
+  public synchronized void clear() {
+    for (int i = 0; i < stamps.length; i++) {
+      stamps[i]++;
+    }
+    for (String key : entries.keySet().toArray(new String[0])) {
+      forget(key);
+    }
+  }
+
+  /**
+   * Remove a response from every structure and free its blocks.
+   *
+   * @param key The response's key, which must be cached.
+   */
+  private void forget(String key) {
+    Entry entry = entries.remove(key);
+    Set<String> keys = keysByGroup.get(entry.group);
+    keys.remove(key);
+    if (keys.isEmpty()) {
+      keysByGroup.remove(entry.group);
+    }
+    for (int block : entry.blocks) {
+      freeBlocks[freeCount++] = block;
+    }
+    storedBytes -= entry.length;
+  }
+
+  private int availableBlocks() {
+    return freeCount + (totalBlocks - nextUnusedBlock);
+  }
+
+  /** @return A free block, allocating a new slab if it's the first block of one. */
+  private int allocateBlock() {
+    if (freeCount > 0) {
+      return freeBlocks[--freeCount];
+    }
+    int block = nextUnusedBlock++;
+    int slab = block / BLOCKS_PER_SLAB;
+    if (slabs[slab] == null) {
+      // The last slab only needs to be big enough for the blocks that are left.
+      int blocks = Math.min(BLOCKS_PER_SLAB, totalBlocks - slab * BLOCKS_PER_SLAB);
+      slabs[slab] = ByteBuffer.allocateDirect(blocks * BLOCK_SIZE);
+    }
+    return block;
+  }
+
+  /**
+   * @param block A block.
+   * @param length How many of its bytes to include.
+   * @return A buffer over the start of the block, which can be read or written without changing the
+   *     slab's own position.
+   */
+  private ByteBuffer view(int block, int length) {
+    ByteBuffer view = slabs[block / BLOCKS_PER_SLAB].duplicate();
+    int offset = (block % BLOCKS_PER_SLAB) * BLOCK_SIZE;
+    view.limit(offset + length).position(offset);
+    // Some readers go by the limit rather than what's left, so start the buffer at 0.
+    return view.slice();
+  }
+
+  /** @return How many times a response was found. */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /** @return How many of the times a response was found, it was older than the soft TTL. */
+  public synchronized long getStaleHits() {
+    return staleHits;
+  }
+
+  /** @return How many times a response wasn't found. */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /** @return How many responses were dropped to make room for others. */
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  /** @return How many responses are cached. */
+  public synchronized int getEntryCount() {
+    return entries.size();
+  }
+
+  /** @return How many bytes the cached responses add up to. */
+  public synchronized long getStoredBytes() {
+    return storedBytes;
+  }
+
+  /** @return How many bytes of direct memory have been allocated for slabs. */
+  public synchronized long getAllocatedBytes() {
+    long allocated = 0;
+    for (ByteBuffer slab : slabs) {
+      if (slab != null) {
+        allocated += slab.capacity();
+      }
+    }
+    return allocated;
+  }
+
+  /** @return The most bytes the cache can use. */
+  public long getCapacityBytes() {
+    return (long) totalBlocks * BLOCK_SIZE;
+  }
+}
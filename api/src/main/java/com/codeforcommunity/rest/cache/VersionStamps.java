@@ -0,0 +1,178 @@
+package com.codeforcommunity.rest.cache;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps track of when each post, each post's comments, and the feed last changed, so that a client
+ * asking whether its copy is still current can be answered without loading anything.
+ *
+ * <p>Every response from a tracked route carries an ETag made from the version of what it's about.
+ * A client that already has a copy sends the ETag back in an "If-None-Match" header, and if the
+ * version hasn't changed since, it gets a 304 Not Modified with no body. Most of our clients poll
+ * the same few routes every few seconds, and most of the time nothing has changed, so this saves a
+ * trip to the database and the encoding of a response that the client already has.
+ *
+ * <p>The versions only live in memory. So that an ETag from before a restart (or from another node)
+ * never matches by accident, every ETag starts with a random ID picked when the stamps are created.
+ * Posts are spread over a fixed number of slots rather than each getting its own version, so the
+ * stamps take the same memory however many posts there are. Posts that share a slot make each other
+ * look changed, which only costs the occasional full response.
+ *
+ * <p>The version must be read before the response is loaded, and bumped after the change is made
+ * (and after any cached responses are dropped). Then an ETag can be older than the response it's
+ * sent with, which only costs a full response next time, but never newer.
+ */
+public class VersionStamps {
+  /** How many slots the posts' versions are spread over. */
+  private static final int SLOTS = 4096;
+
+  private static final DateTimeFormatter HTTP_DATE =
+      DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+
+  /** The version of something a response is about, to send along with it. */
+  public static final class Stamp {
+    private final String etag;
+    private final long lastModifiedMillis;
+
+    private Stamp(String etag, long lastModifiedMillis) {
+      this.etag = etag;
+      this.lastModifiedMillis = lastModifiedMillis;
+    }
+
+    /** @return The value of the ETag header, quotes included. */
+    public String getEtag() {
+      return etag;
+    }
+
+    /** @return The value of the Last-Modified header. */
+    public String getLastModified() {
+      return HTTP_DATE.format(Instant.ofEpochMilli(lastModifiedMillis));
+    }
+
+    /**
+     * Check whether the client's copy is this version.
+     *
+     * @param ifNoneMatch The request's If-None-Match header, or null if it doesn't have one. It can
+     *     list several ETags, and weak ones ("W/...") match too, as they should for a GET.
+     * @return Whether one of its ETags matches.
+     */
+    public boolean matches(String ifNoneMatch) {
+      if (ifNoneMatch == null) {
+        return false;
+      }
+      for (String tag : ifNoneMatch.split(",")) {
+        tag = tag.trim();
+        if (tag.startsWith("W/")) {
+          tag = tag.substring(2);
+        }
+        if (tag.equals(etag)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /** A set of versions, and when each last changed. */
+  private final class Versions {
+    private final String prefix;
+    private final AtomicLongArray versions;
+    private final AtomicLongArray changedAtMillis;
+
+    Versions(String kind, int slots) {
+      this.prefix = "\"" + instanceId + "-" + kind;
+      this.versions = new AtomicLongArray(slots);
+      this.changedAtMillis = new AtomicLongArray(slots);
+      long now = System.currentTimeMillis();
+      for (int slot = 0; slot < slots; slot++) {
+        // We don't know when anything changed before we started, so say it was just now.
+        changedAtMillis.set(slot, now);
+      }
+    }
+
+    Stamp stamp(int id) {
+      int slot = slot(id);
+      return new Stamp(
+          prefix + Long.toString(versions.get(slot), 36) + "\"", changedAtMillis.get(slot));
+    }
+
+    void changed(int id) {
+      int slot = slot(id);
+      versions.set(slot, clock.incrementAndGet());
+      changedAtMillis.set(slot, System.currentTimeMillis());
+    }
+
+    void changedAll() {
+      for (int slot = 0; slot < versions.length(); slot++) {
+        versions.set(slot, clock.incrementAndGet());
+        changedAtMillis.set(slot, System.currentTimeMillis());
+      }
+    }
+
+    private int slot(int id) {
+      return Math.floorMod(id, versions.length());
+    }
+  }
+
+  /** Sets apart the ETags of this instance from those of any other. */
+  private final String instanceId = Long.toString(ThreadLocalRandom.current().nextLong() >>> 1, 36);
+  /** Where every version comes from, so no two are the same. */
+  private final AtomicLong clock = new AtomicLong();
+
+  private final Versions posts = new Versions("p", SLOTS);
+  private final Versions comments = new Versions("c", SLOTS);
+  private final Versions feed = new Versions("f", 1);
+
+  /** @return The version of a single post ("/posts/:post_id"). */
+  public Stamp forPost(int postId) {
+    return posts.stamp(postId);
+  }
+
+  /**
+   * @return The version of a post's comments ("/posts/:post_id/comments", however they're sorted).
+   */
+  public Stamp forComments(int postId) {
+    return comments.stamp(postId);
+  }
+
+  /** @return The version of the feed ("/posts", every page of it). */
+  public Stamp forFeed() {
+    return feed.stamp(0);
+  }
+
+  /**
+   * Record that a post itself changed (it was clapped for or deleted).
+   *
+   * @param postId The post's ID.
+   */
+  public void postChanged(int postId) {
+    posts.changed(postId);
+  }
+
+  /**
+   * Record that a post's comments changed (one was created, deleted or clapped for, or they were
+   * all deleted).
+   *
+   * @param postId The post's ID.
+   */
+  public void commentsChanged(int postId) {
+    comments.changed(postId);
+  }
+
+  /** Record that the feed changed (a post was created, deleted or clapped for, or commented on). */
+  public void feedChanged() {
+    feed.changed(0);
+  }
+
+  /** Record that anything may have changed, after we may have missed any number of changes. */
+  public void changedAll() {
+    posts.changedAll();
+    comments.changedAll();
+    feed.changedAll();
+  }
+}
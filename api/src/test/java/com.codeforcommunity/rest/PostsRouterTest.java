@@ -2,9 +2,11 @@ package com.codeforcommunity.rest;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -13,8 +15,12 @@ import com.codeforcommunity.dto.response.PostSummary;
 import com.codeforcommunity.dto.response.PostsResponse;
 import com.codeforcommunity.dto.response.SinglePostResponse;
 import com.codeforcommunity.rest.PostsRouter.Externals;
+import com.codeforcommunity.rest.cache.SlabCache;
+import com.codeforcommunity.rest.cache.VersionStamps;
 import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerRequest;
 import io.vertx.core.http.HttpServerResponse;
 import io.vertx.ext.web.Route;
 import io.vertx.ext.web.Router;
@@ -56,6 +62,9 @@ public class PostsRouterTest {
     // Remember, we don't have access to this since the api module doesn't have a dependency on the
     // service module (that would create a dependency cycle, which is really bad).
     this.processor = mock(IPostsProcessor.class);
+    // The router runs every request through a deadline-bound view of the processor. Just hand back
+    // the same mock so that we can set up and verify calls on it directly.
+    when(processor.withDeadline(anyLong())).thenReturn(processor);
     this.router = new PostsRouter(this.processor, new TestExternals());
     this.vertxRouter = mock(Router.class);
     this.route = mock(Route.class);
@@ -135,6 +144,96 @@ public class PostsRouterTest {
     return new PostsResponse(posts);
   }
 
+  /**
+   * Get the handler that the router registered for a GET route.
+   *
+   * @param path The route's path.
+   * @return The handler.
+   */
+  private Handler<RoutingContext> getHandler(String path) {
+    Route getRoute = mock(Route.class);
+    when(vertxRouter.get(path)).thenReturn(getRoute);
+    router.initializeRouter(vertx);
+
+    ArgumentCaptor<Handler<RoutingContext>> handlerArgumentCaptor =
+        ArgumentCaptor.forClass(Handler.class);
+    verify(getRoute).handler(handlerArgumentCaptor.capture());
+    return handlerArgumentCaptor.getValue();
+  }
+
+  /**
+   * Set up the request for "/posts/:post_id".
+   *
+   * @param postId The post_id route param.
+   * @param ifNoneMatch The If-None-Match header, or null to leave it out.
+   */
+  private void requestPost(int postId, String ifNoneMatch) {
+    HttpServerRequest req = mock(HttpServerRequest.class);
+    when(req.getParam("post_id")).thenReturn(Integer.toString(postId));
+    when(req.getHeader("If-None-Match")).thenReturn(ifNoneMatch);
+    when(ctx.request()).thenReturn(req);
+  }
+
+  @Test
+  public void testGetSinglePostFromCache() {
+    SlabCache responseCache = new SlabCache(1 << 20, 60_000, 60_000);
+    this.router = new PostsRouter(this.processor, new TestExternals(), responseCache, null, null);
+    Handler<RoutingContext> handler = getHandler("/:post_id");
+    when(processor.getSinglePost(3)).thenReturn(generatePost(3));
+    requestPost(3, null);
+
+    // The first request loads the post and caches it, and the second is sent the cached bytes.
+    handler.handle(ctx);
+    handler.handle(ctx);
+    verify(processor, times(1)).getSinglePost(3);
+    assertEquals(1, responseCache.getHits());
+    assertEquals(1, responseCache.getMisses());
+
+    ArgumentCaptor<Buffer> encodedResponses = ArgumentCaptor.forClass(Buffer.class);
+    verify(res, times(2)).end(encodedResponses.capture());
+    String expected =
+        "{\"id\":3,\"author\":\"author 3\",\"dateCreated\":\"today's date\","
+            + "\"title\":\"title\",\"clapCount\":500,\"body\":\"this is a body\"}";
+    for (Buffer encoded : encodedResponses.getAllValues()) {
+      assertEquals(expected, encoded.toString());
+    }
+
+    // Once the post changes, it's loaded again.
+    responseCache.invalidate(3);
+    handler.handle(ctx);
+    verify(processor, times(2)).getSinglePost(3);
+  }
+
+  @Test
+  public void testGetSinglePostNotModified() {
+    VersionStamps versionStamps = new VersionStamps();
+    this.router = new PostsRouter(this.processor, new TestExternals(), null, null, versionStamps);
+    Handler<RoutingContext> handler = getHandler("/:post_id");
+    when(processor.getSinglePost(3)).thenReturn(generatePost(3));
+
+    // Without an ETag, the client gets the whole post, along with the ETag to send next time.
+    requestPost(3, null);
+    handler.handle(ctx);
+    String etag = versionStamps.forPost(3).getEtag();
+    verify(res).putHeader("ETag", etag);
+    verify(res).setStatusCode(200);
+    verify(res).end(anyString());
+
+    // Sending it back gets a 304 with no body, without asking the processor for the post.
+    requestPost(3, "W/\"some-other-etag\", " + etag);
+    handler.handle(ctx);
+    verify(res).setStatusCode(304);
+    verify(res).end();
+    verify(processor, times(1)).getSinglePost(3);
+
+    // Once the post changes, the old ETag gets the whole post again.
+    versionStamps.postChanged(3);
+    requestPost(3, etag);
+    handler.handle(ctx);
+    verify(res, times(2)).setStatusCode(200);
+    verify(processor, times(2)).getSinglePost(3);
+  }
+
   @Test
   public void testGetPosts() {
     // Set up for the get route specifically.
@@ -0,0 +1,120 @@
+package com.codeforcommunity.rest.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.codeforcommunity.dto.response.PostSummary;
+import com.codeforcommunity.dto.response.PostsResponse;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.Json;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Test;
+
+/** Tests that the feed cache only builds what a change makes out of date, and keeps what's used. */
+public class FeedCacheTest {
+  /** Long enough that nothing expires during a test. */
+  private static final long NEVER_MILLIS = 3_600_000;
+
+  /** Each post's clap count, standing in for the tables. */
+  private final Map<Integer, Integer> claps = new ConcurrentHashMap<>();
+  /** How many times each page has been loaded, by key. */
+  private final Map<String, AtomicInteger> pageLoads = new ConcurrentHashMap<>();
+  /** How many times a post's summary has been loaded on its own. */
+  private final AtomicInteger postLoads = new AtomicInteger();
+
+  private PostSummary summary(int postId) {
+    return new PostSummary(
+        postId, "author", "date", "Post #" + postId, claps.getOrDefault(postId, 0), "", 0);
+  }
+
+  /** Loads a page of the given posts, counting the loads. */
+  private Supplier<PostsResponse> page(String key, int... postIds) {
+    return () -> {
+      pageLoads.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+      List<PostSummary> posts = new ArrayList<>();
+      for (int postId : postIds) {
+        posts.add(summary(postId));
+      }
+      return new PostsResponse(posts);
+    };
+  }
+
+  private final IntFunction<PostSummary> loadPost =
+      postId -> {
+        postLoads.incrementAndGet();
+        return summary(postId);
+      };
+
+  private int loads(String key) {
+    return pageLoads.getOrDefault(key, new AtomicInteger()).get();
+  }
+
+  @Test
+  public void testClapOnlyReassemblesItsPages() {
+    FeedCache cache = new FeedCache(10, NEVER_MILLIS, NEVER_MILLIS);
+    Supplier<PostsResponse> first = page("first", 1, 2);
+    Supplier<PostsResponse> second = page("second", 3, 4);
+    Buffer firstBytes = cache.get("first", first, loadPost);
+    Buffer secondBytes = cache.get("second", second, loadPost);
+    assertEquals(Json.encodeToBuffer(first.get()), firstBytes);
+
+    // Clapping for a post on the second page leaves the first one exactly as it was.
+    claps.put(3, 1);
+    cache.invalidatePost(3);
+    assertSame(firstBytes, cache.get("first", first, loadPost));
+    assertEquals(0, postLoads.get());
+
+    // The second page is put back together around the post's new summary, without loading the
+    // whole page again.
+    Buffer clapped = cache.get("second", second, loadPost);
+    assertNotSame(secondBytes, clapped);
+    assertEquals(1, postLoads.get());
+    assertEquals(1, loads("second"));
+    assertEquals(Json.encodeToBuffer(second.get()), clapped);
+    // And after that, it's sent as it is again.
+    assertSame(clapped, cache.get("second", second, loadPost));
+  }
+
+  @Test
+  public void testLeastRecentlyUsedPageIsEvicted() throws InterruptedException {
+    FeedCache cache = new FeedCache(2, NEVER_MILLIS, NEVER_MILLIS);
+    Supplier<PostsResponse> first = page("first", 1);
+    Supplier<PostsResponse> second = page("second", 2);
+    Supplier<PostsResponse> third = page("third", 3);
+    cache.get("first", first, loadPost);
+    Thread.sleep(1);
+    cache.get("second", second, loadPost);
+    Thread.sleep(1);
+    // Send the first page again, so the second is the least recently used.
+    cache.get("first", first, loadPost);
+    Thread.sleep(1);
+
+    // A new page is still cached once the cache is full, in place of the second one.
+    cache.get("third", third, loadPost);
+    cache.get("third", third, loadPost);
+    assertEquals(1, loads("third"));
+    cache.get("first", first, loadPost);
+    assertEquals(1, loads("first"));
+    cache.get("second", second, loadPost);
+    assertEquals(2, loads("second"));
+
+    // A post on a page that's been evicted can still change.
+    claps.put(2, 1);
+    cache.invalidatePost(2);
+    assertEquals(Json.encodeToBuffer(second.get()), cache.get("second", second, loadPost));
+  }
+
+  @Test
+  public void testNeedsRoomForAPage() {
+    assertThrows(
+        IllegalArgumentException.class, () -> new FeedCache(0, NEVER_MILLIS, NEVER_MILLIS));
+  }
+}
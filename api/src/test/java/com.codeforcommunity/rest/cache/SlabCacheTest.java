@@ -0,0 +1,274 @@
+package com.codeforcommunity.rest.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import io.vertx.core.buffer.Buffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that the response cache stores, frees, evicts and refreshes responses the way it says it
+ * does.
+ */
+public class SlabCacheTest {
+  /** Long enough that nothing expires during a test. */
+  private static final long NEVER_MILLIS = 3_600_000;
+
+  /** Make a cache with room for the given number of blocks. */
+  private static SlabCache cacheOfBlocks(int blocks) {
+    return new SlabCache((long) blocks * SlabCache.BLOCK_SIZE, NEVER_MILLIS, NEVER_MILLIS);
+  }
+
+  /** Make a response of the given length whose bytes depend on the seed, so mixups show. */
+  private static Buffer response(int length, int seed) {
+    Buffer bytes = Buffer.buffer(length);
+    for (int i = 0; i < length; i++) {
+      bytes.appendByte((byte) (i * 31 + seed));
+    }
+    return bytes;
+  }
+
+  /** Cache a response, as if it had just been loaded. */
+  private static void put(SlabCache cache, int group, String key, Buffer bytes) {
+    cache.put(group, key, bytes, cache.stamp(group));
+  }
+
+  @Test
+  public void testBlocksAreAllocatedAndFreed() {
+    SlabCache cache = cacheOfBlocks(64);
+    // Nothing is allocated until something's stored.
+    assertEquals(0, cache.getAllocatedBytes());
+
+    // A response that doesn't fill its last block, one that exactly fills its blocks, and an empty
+    // one, which still takes a block.
+    Buffer partial = response(SlabCache.BLOCK_SIZE * 2 + 7, 1);
+    Buffer exact = response(SlabCache.BLOCK_SIZE * 3, 2);
+    Buffer empty = Buffer.buffer();
+    put(cache, 1, "partial", partial);
+    put(cache, 2, "exact", exact);
+    put(cache, 3, "empty", empty);
+    // The only slab is as big as the whole cache, since that's smaller than a full slab.
+    assertEquals(64L * SlabCache.BLOCK_SIZE, cache.getAllocatedBytes());
+    assertEquals(partial.length() + exact.length(), cache.getStoredBytes());
+    assertEquals(partial, cache.get("partial"));
+    assertEquals(exact, cache.get("exact"));
+    assertEquals(empty, cache.get("empty"));
+
+    // Removing a response frees its blocks for the next one, which mustn't see its old bytes.
+    cache.remove("partial");
+    assertNull(cache.get("partial"));
+    assertEquals(exact.length(), cache.getStoredBytes());
+    Buffer reused = response(SlabCache.BLOCK_SIZE + 1, 3);
+    put(cache, 1, "reused", reused);
+    assertEquals(reused, cache.get("reused"));
+    assertEquals(exact, cache.get("exact"));
+
+    // Replacing a response frees the old one's blocks too.
+    Buffer replacement = response(10, 4);
+    put(cache, 2, "exact", replacement);
+    assertEquals(replacement, cache.get("exact"));
+    assertEquals(reused.length() + replacement.length(), cache.getStoredBytes());
+    assertEquals(3, cache.getEntryCount());
+
+    // Nothing else was allocated, and nothing had to be evicted.
+    assertEquals(64L * SlabCache.BLOCK_SIZE, cache.getAllocatedBytes());
+    assertEquals(0, cache.getEvictions());
+  }
+
+  @Test
+  public void testSlabsAreAllocatedAsNeeded() {
+    int blocksPerSlab = SlabCache.SLAB_SIZE / SlabCache.BLOCK_SIZE;
+    // One full slab, and a few blocks more.
+    SlabCache cache = cacheOfBlocks(blocksPerSlab + 4);
+
+    // Fill the first slab with one-block responses.
+    for (int i = 0; i < blocksPerSlab; i++) {
+      put(cache, i, "response " + i, response(SlabCache.BLOCK_SIZE, i));
+    }
+    assertEquals(SlabCache.SLAB_SIZE, cache.getAllocatedBytes());
+
+    // The next block is in a second slab, which only needs room for the blocks that are left.
+    put(cache, -1, "next", response(SlabCache.BLOCK_SIZE, -1));
+    assertEquals(SlabCache.SLAB_SIZE + 4L * SlabCache.BLOCK_SIZE, cache.getAllocatedBytes());
+    assertEquals(response(SlabCache.BLOCK_SIZE, -1), cache.get("next"));
+    assertEquals(response(SlabCache.BLOCK_SIZE, 7), cache.get("response 7"));
+  }
+
+  @Test
+  public void testLeastRecentlyUsedIsEvicted() {
+    // Room for 8 two-block responses. A response may take up to an eighth of the cache.
+    SlabCache cache = cacheOfBlocks(16);
+    Buffer twoBlocks = response(SlabCache.BLOCK_SIZE * 2, 0);
+    for (int i = 0; i < 8; i++) {
+      put(cache, i, "response " + i, twoBlocks);
+    }
+    assertEquals(0, cache.getEvictions());
+
+    // Use the oldest response, so the second oldest becomes the least recently used.
+    assertNotNull(cache.get("response 0"));
+    put(cache, 8, "response 8", twoBlocks);
+    assertEquals(1, cache.getEvictions());
+    assertNull(cache.get("response 1"));
+    assertNotNull(cache.get("response 0"));
+    assertNotNull(cache.get("response 8"));
+
+    // A response bigger than its share of the cache isn't stored, and evicts nothing.
+    put(cache, 9, "too big", response(SlabCache.BLOCK_SIZE * 2 + 1, 9));
+    assertNull(cache.get("too big"));
+    assertEquals(1, cache.getEvictions());
+    assertEquals(8, cache.getEntryCount());
+  }
+
+  @Test
+  public void testInvalidatedGroupIsNotStored() {
+    SlabCache cache = cacheOfBlocks(64);
+    put(cache, 1, "1", response(100, 1));
+    put(cache, 1, "1/comments", response(100, 2));
+    put(cache, 2, "2", response(100, 3));
+
+    // Invalidating a group drops all of its responses, and only them.
+    cache.invalidate(1);
+    assertNull(cache.get("1"));
+    assertNull(cache.get("1/comments"));
+    assertNotNull(cache.get("2"));
+
+    // A response loaded before its group was invalidated may be from before the change, so it's
+    // not stored.
+    long stamp = cache.stamp(1);
+    cache.invalidate(1);
+    cache.put(1, "1", response(100, 4), stamp);
+    assertNull(cache.get("1"));
+    // One loaded after is.
+    cache.put(1, "1", response(100, 5), cache.stamp(1));
+    assertEquals(response(100, 5), cache.get("1"));
+
+    // Clearing stops every group's responses from being stored.
+    stamp = cache.stamp(2);
+    cache.clear();
+    assertEquals(0, cache.getEntryCount());
+    cache.put(2, "2", response(100, 6), stamp);
+    assertNull(cache.get("2"));
+  }
+
+  /** Sleep for the given time. */
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Wait for something that happens in the background, failing if it takes more than a minute.
+   *
+   * @param condition Whether it's happened yet.
+   * @param what What it is, for the failure message.
+   */
+  private static void await(BooleanSupplier condition, String what) {
+    long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+    while (!condition.getAsBoolean()) {
+      if (System.nanoTime() - deadline > 0) {
+        fail("Gave up waiting for " + what);
+      }
+      sleep(1);
+    }
+  }
+
+  @Test
+  public void testStaleResponseIsRefreshedOnce() {
+    SlabCache cache = new SlabCache(1 << 20, 500, NEVER_MILLIS);
+    AtomicInteger loads = new AtomicInteger();
+    CountDownLatch release = new CountDownLatch(1);
+    Supplier<Buffer> load =
+        () -> {
+          int count = loads.incrementAndGet();
+          if (count > 1) {
+            // Hold up the refresh, so we can see whether anyone else starts one.
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          }
+          return response(100, count);
+        };
+
+    // The first request loads the response, and the next ones are sent it while it's fresh.
+    assertEquals(response(100, 1), cache.get(1, "1", load));
+    assertEquals(response(100, 1), cache.get(1, "1", load));
+    assertEquals(1, loads.get());
+    assertEquals(0, cache.getStaleHits());
+
+    // Once it's older than the soft TTL, requests are still sent it straight away, while a single
+    // refresh runs in the background.
+    sleep(600);
+    for (int i = 0; i < 5; i++) {
+      assertEquals(response(100, 1), cache.get(1, "1", load));
+    }
+    await(() -> loads.get() == 2, "the refresh to start");
+    assertEquals(response(100, 1), cache.get(1, "1", load));
+    assertEquals(2, loads.get());
+    assertEquals(6, cache.getStaleHits());
+
+    // Once the refresh is done, the new response is sent.
+    release.countDown();
+    await(() -> response(100, 2).equals(cache.get("1")), "the refreshed response");
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void testHardTtlMakesRequestsWait() {
+    SlabCache cache = new SlabCache(1 << 20, 10, 30);
+    AtomicInteger loads = new AtomicInteger();
+    Supplier<Buffer> load = () -> response(100, loads.incrementAndGet());
+    assertEquals(response(100, 1), cache.get(1, "1", load));
+
+    // Past the hard TTL, the old response isn't sent at all, and the request loads a new one.
+    sleep(60);
+    assertNull(cache.get("1"));
+    assertEquals(response(100, 2), cache.get(1, "1", load));
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void testFailedRefresh() {
+    SlabCache cache = new SlabCache(1 << 20, 20, NEVER_MILLIS);
+    cache.get(1, "1", () -> response(100, 1));
+    cache.get(2, "2", () -> response(100, 2));
+    sleep(50);
+
+    // If loading it again fails, the stale response keeps being sent.
+    AtomicInteger failures = new AtomicInteger();
+    Supplier<Buffer> failing =
+        () -> {
+          failures.incrementAndGet();
+          throw new IllegalStateException("The database is down.");
+        };
+    assertEquals(response(100, 1), cache.get(1, "1", failing));
+    await(() -> failures.get() == 1, "the refresh to fail");
+    // The next requests try again, until one of them starts another refresh.
+    await(
+        () -> {
+          assertEquals(response(100, 1), cache.get(1, "1", failing));
+          return failures.get() >= 2;
+        },
+        "the second refresh to fail");
+
+    // But if what it's about is gone, the response is dropped.
+    Supplier<Buffer> deleted =
+        () -> {
+          throw new IllegalArgumentException("No post with id 2 exists.");
+        };
+    assertEquals(response(100, 2), cache.get(2, "2", deleted));
+    await(() -> cache.get("2") == null, "the response to be dropped");
+  }
+}
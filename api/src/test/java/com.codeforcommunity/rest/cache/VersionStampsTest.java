@@ -0,0 +1,81 @@
+package com.codeforcommunity.rest.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/** Tests the ETags that conditional GETs are answered with. */
+public class VersionStampsTest {
+
+  @Test
+  public void testIfNoneMatchParsing() {
+    VersionStamps.Stamp stamp = new VersionStamps().forPost(1);
+    String etag = stamp.getEtag();
+    assertTrue(etag.startsWith("\"") && etag.endsWith("\""));
+
+    assertTrue(stamp.matches(etag));
+    // Weak ETags match too, since these are GETs.
+    assertTrue(stamp.matches("W/" + etag));
+    // So does a list of ETags with ours anywhere in it, however it's spaced.
+    assertTrue(stamp.matches("\"something-else\", " + etag));
+    assertTrue(stamp.matches("\"something-else\",W/" + etag + " ,\"another\""));
+
+    assertFalse(stamp.matches(null));
+    assertFalse(stamp.matches(""));
+    assertFalse(stamp.matches("\"something-else\", W/\"another\""));
+    // The ETag without its quotes isn't the same ETag.
+    assertFalse(stamp.matches(etag.substring(1, etag.length() - 1)));
+    // Neither is a prefix of it.
+    assertFalse(stamp.matches(etag.substring(0, etag.length() - 2) + "\""));
+  }
+
+  @Test
+  public void testChangesMakeNewVersions() {
+    VersionStamps stamps = new VersionStamps();
+    String post = stamps.forPost(1).getEtag();
+    String otherPost = stamps.forPost(2).getEtag();
+    String comments = stamps.forComments(1).getEtag();
+    String feed = stamps.forFeed().getEtag();
+    assertNotEquals(post, comments);
+
+    // Nothing changed, so nothing's new.
+    assertTrue(stamps.forPost(1).matches(post));
+
+    // A change only makes what changed look new.
+    stamps.postChanged(1);
+    assertFalse(stamps.forPost(1).matches(post));
+    assertTrue(stamps.forPost(2).matches(otherPost));
+    assertTrue(stamps.forComments(1).matches(comments));
+    assertTrue(stamps.forFeed().matches(feed));
+
+    stamps.commentsChanged(1);
+    assertFalse(stamps.forComments(1).matches(comments));
+    stamps.feedChanged();
+    assertFalse(stamps.forFeed().matches(feed));
+
+    // After a change may have been missed, nothing matches.
+    String current = stamps.forPost(2).getEtag();
+    stamps.changedAll();
+    assertFalse(stamps.forPost(2).matches(current));
+  }
+
+  @Test
+  public void testOtherInstancesNeverMatch() {
+    // Like after a restart, or on another node: the versions start over, but the ETags differ.
+    VersionStamps before = new VersionStamps();
+    VersionStamps after = new VersionStamps();
+    assertFalse(after.forPost(1).matches(before.forPost(1).getEtag()));
+    assertFalse(after.forFeed().matches(before.forFeed().getEtag()));
+  }
+
+  @Test
+  public void testLastModified() {
+    // Last-Modified is an HTTP date, like "Tue, 3 Jun 2008 11:05:30 GMT".
+    String lastModified = new VersionStamps().forPost(1).getLastModified();
+    assertTrue(lastModified.endsWith(" GMT"), lastModified);
+    assertEquals(',', lastModified.charAt(3));
+  }
+}
@@ -0,0 +1,58 @@
+package com.codeforcommunity.database;
+
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Holds the deadline of the request currently being processed on this thread so that the table
+ * implementations can bound every statement they run by whatever budget is left. Deadlines are
+ * absolute {@link System#nanoTime()} values, so they can be handed down through any number of
+ * layers without being re-computed.
+ */
+public final class QueryDeadline {
+  /** The deadline (in {@link System#nanoTime()} units) of the work running on this thread. */
+  private static final ThreadLocal<Long> CURRENT = new ThreadLocal<>();
+
+  private QueryDeadline() {}
+
+  /**
+   * Run the given work with the given deadline applied to any queries it makes. If a deadline is
+   * already set on this thread, the earlier of the two is used.
+   *
+   * @param deadlineNanos The absolute deadline, in {@link System#nanoTime()} units.
+   * @param work The work to run.
+   * @param <T> The type of the work's result.
+   * @return The result of the work.
+   */
+  public static <T> T callWithin(long deadlineNanos, Supplier<T> work) {
+    Long previous = CURRENT.get();
+    // Never extend a deadline that's already been set by an outer caller.
+    if (previous == null || deadlineNanos - previous < 0) {
+      CURRENT.set(deadlineNanos);
+    }
+    try {
+      return work.get();
+    } finally {
+      if (previous == null) {
+        CURRENT.remove();
+      } else {
+        CURRENT.set(previous);
+      }
+    }
+  }
+
+  /**
+   * Get the number of milliseconds left before the current thread's deadline.
+   *
+   * @return The remaining budget (which may be zero or negative), or an empty optional if no
+   *     deadline is set.
+   */
+  public static OptionalLong remainingMillis() {
+    Long deadline = CURRENT.get();
+    if (deadline == null) {
+      return OptionalLong.empty();
+    }
+    return OptionalLong.of(TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+  }
+}
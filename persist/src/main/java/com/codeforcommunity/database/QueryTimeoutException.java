@@ -0,0 +1,17 @@
+package com.codeforcommunity.database;
+
+/**
+ * Thrown when a query was cancelled (or never started) because the deadline set through {@link
+ * QueryDeadline} ran out. It extends {@link IllegalStateException} so that callers that only care
+ * about database failures in general don't need to handle it separately.
+ */
+public class QueryTimeoutException extends IllegalStateException {
+
+  public QueryTimeoutException(String message) {
+    super(message);
+  }
+
+  public QueryTimeoutException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
@@ -0,0 +1,269 @@
+package com.codeforcommunity.database.collections;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * A cache with a fixed number of entries, each of which expires a while after it was loaded.
+ *
+ * <p>When it's full, a plain LRU cache lets every new key push out the least recently used one,
+ * even a key that's only ever asked for once (like a crawler walking through every post). That can
+ * flush out the small set of keys that most requests are for. So this cache keeps a rough count of
+ * how often every key has been asked for recently, cached or not, and only lets a new key in if
+ * it's been asked for more often than the key it would push out. This is the admission policy from
+ * <a href="https://arxiv.org/abs/1512.00727">TinyLFU</a>.
+ *
+ * <p>The counts are kept in a count-min sketch: a few rows of small counters, where each key bumps
+ * one counter per row (picked by a different hash for each row), and its count is the smallest of
+ * its counters. Keys that share a counter can only make each other look more popular, never less,
+ * and the whole sketch takes a few bytes per entry however many keys there are. Every so often all
+ * the counters are halved, so keys that used to be popular don't stay in forever.
+ *
+ * <p>Every method is thread-safe. Loading a missing value happens outside the lock.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ */
+public class FrequencyCache<K, V> {
+  /** How many rows the sketch has. */
+  private static final int SKETCH_ROWS = 4;
+  /** The most a counter in the sketch can count to. */
+  private static final int MAX_COUNT = 15;
+  /** How many times the cache's size the sketch is incremented before its counters are halved. */
+  private static final int RESET_MULTIPLIER = 10;
+  /** How many stamps the keys are spread over (see {@link #get(Object, Function)}). */
+  private static final int STAMP_STRIPES = 64;
+
+  /** A cached value and when it expires. */
+  private static final class Entry<V> {
+    final V value;
+    final long expiresAt;
+
+    Entry(V value, long expiresAt) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  private final int capacity;
+  private final long ttlNanos;
+  /** Every cached value, least recently used first. */
+  private final LinkedHashMap<K, Entry<V>> entries;
+
+  /** The counters of the sketch, one row after another. */
+  private final byte[] sketch;
+  /** How many counters are in each row of the sketch. A power of 2. */
+  private final int sketchWidth;
+  /** How many times the sketch has been incremented since its counters were last halved. */
+  private int sketchIncrements;
+
+  /** Changed whenever a key is invalidated, so a value loaded before then isn't cached. */
+  private final long[] stamps = new long[STAMP_STRIPES];
+
+  private long hits;
+  private long misses;
+  private long evictions;
+  private long rejections;
+
+  /**
+   * Create a cache.
+   *
+   * @param capacity The most entries it can hold.
+   * @param ttlMillis How long after it's loaded an entry expires.
+   * @throws IllegalArgumentException If either is less than 1.
+   */
+  public FrequencyCache(int capacity, long ttlMillis) {
+    if (capacity < 1 || ttlMillis < 1) {
+      throw new IllegalArgumentException("A cache needs a positive capacity and time to live.");
+    }
+    this.capacity = capacity;
+    this.ttlNanos = ttlMillis * 1_000_000;
+    this.entries = new LinkedHashMap<>(Math.min(capacity, 1024), 0.75f, true);
+    // At least as many counters per row as entries, so keys don't share counters too often.
+    this.sketchWidth = Integer.highestOneBit(Math.max(16, capacity) * 2 - 1);
+    this.sketch = new byte[SKETCH_ROWS * sketchWidth];
+  }
+
+  /**
+   * Get a cached value.
+   *
+   * @param key The key.
+   * @return The value, or null if it isn't cached (or has expired).
+   */
+  public synchronized V get(K key) {
+    recordAccess(key);
+    Entry<V> entry = entries.get(key);
+    if (entry != null && entry.expiresAt - System.nanoTime() <= 0) {
+      entries.remove(key);
+      entry = null;
+    }
+    if (entry == null) {
+      misses++;
+      return null;
+    }
+    hits++;
+    return entry.value;
+  }
+
+  /**
+   * Get a cached value, loading and caching it if it isn't cached.
+   *
+   * <p>If the key is invalidated while its value is being loaded, the loaded value is still
+   * returned, but it isn't cached, since it may have been read from before the change.
+   *
+   * @param key The key.
+   * @param loader Loads the value. Any exception it throws is passed on, and nothing is cached. If
+   *     it returns null, nothing is cached.
+   * @return The value.
+   */
+  public V get(K key, Function<K, V> loader) {
+    long stamp;
+    synchronized (this) {
+      V value = get(key);
+      if (value != null) {
+        return value;
+      }
+      stamp = stamps[stripe(key)];
+    }
+
+    V value = loader.apply(key);
+    if (value != null) {
+      synchronized (this) {
+        if (stamps[stripe(key)] == stamp) {
+          admit(key, value);
+        }
+      }
+    }
+    return value;
+  }
+
+  /**
+   * Cache a value, replacing any cached for the key. If the cache is full, it's only cached if the
+   * key is asked for more often than the least recently used one.
+   *
+   * @param key The key.
+   * @param value The value.
+   */
+  public synchronized void put(K key, V value) {
+    admit(key, value);
+  }
+
+  private void admit(K key, V value) {
+    if (!entries.containsKey(key) && entries.size() >= capacity) {
+      Iterator<Map.Entry<K, Entry<V>>> oldest = entries.entrySet().iterator();
+      Map.Entry<K, Entry<V>> victim = oldest.next();
+      // An expired entry is no use to anyone, so it always makes way.
+      boolean expired = victim.getValue().expiresAt - System.nanoTime() <= 0;
+      if (!expired && frequency(key) <= frequency(victim.getKey())) {
+        rejections++;
+        return;
+      }
+      oldest.remove();
+      evictions++;
+    }
+    entries.put(key, new Entry<>(value, System.nanoTime() + ttlNanos));
+  }
+
+  /**
+   * Drop the value cached for a key, and stop any value for it that's being loaded right now from
+   * being cached.
+   *
+   * @param key The key.
+   */
+  public synchronized void invalidate(K key) {
+    stamps[stripe(key)]++;
+    entries.remove(key);
+  }
+
+  /**
+   * Drop the values cached for every key that matches, and stop any that are being loaded right now
+   * from being cached. This looks at every entry, so it's for rare changes.
+   *
+   * @param matches Whether a key should be dropped.
+   */
+  public synchronized void invalidateIf(Predicate<K> matches) {
+    for (int i = 0; i < stamps.length; i++) {
+      stamps[i]++;
+    }
+    entries.keySet().removeIf(matches);
+  }
+
+  /** Drop every cached value, and stop any being loaded right now from being cached. */
+  public synchronized void clear() {
+    invalidateIf(key -> true);
+  }
+
+  private int stripe(K key) {
+    return Math.floorMod(key.hashCode(), STAMP_STRIPES);
+  }
+
+  /** Bump the key's counters in the sketch, halving every counter once in a while. */
+  private void recordAccess(K key) {
+    int hash = spread(key.hashCode());
+    for (int row = 0; row < SKETCH_ROWS; row++) {
+      int index = counterIndex(hash, row);
+      if (sketch[index] < MAX_COUNT) {
+        sketch[index]++;
+      }
+    }
+    if (++sketchIncrements >= RESET_MULTIPLIER * capacity) {
+      for (int i = 0; i < sketch.length; i++) {
+        sketch[i] >>= 1;
+      }
+      sketchIncrements = 0;
+    }
+  }
+
+  /** @return Roughly how often the key has been asked for recently. */
+  private int frequency(K key) {
+    int hash = spread(key.hashCode());
+    int frequency = MAX_COUNT;
+    for (int row = 0; row < SKETCH_ROWS; row++) {
+      frequency = Math.min(frequency, sketch[counterIndex(hash, row)]);
+    }
+    return frequency;
+  }
+
+  private int counterIndex(int hash, int row) {
+    // Rehash with a different odd multiplier for each row, so keys that share a counter in one row
+    // probably don't in the others.
+    int rowHash = spread(hash * (2 * row + 1) + row);
+    return row * sketchWidth + (rowHash & (sketchWidth - 1));
+  }
+
+  /** Mix up the bits of a hash code, since many keys (like IDs) have very regular ones. */
+  private static int spread(int hash) {
+    hash ^= hash >>> 16;
+    hash *= 0x45D9F3B;
+    hash ^= hash >>> 16;
+    return hash;
+  }
+
+  /** @return How many lookups found a value. */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /** @return How many lookups didn't find a value. */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /** @return How many entries were dropped to make room for more popular ones. */
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  /** @return How many values weren't cached because their keys weren't popular enough. */
+  public synchronized long getRejections() {
+    return rejections;
+  }
+
+  /** @return How many entries are cached, including any that have expired but not been dropped. */
+  public synchronized int size() {
+    return entries.size();
+  }
+}
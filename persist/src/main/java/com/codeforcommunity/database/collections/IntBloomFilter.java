@@ -0,0 +1,109 @@
+package com.codeforcommunity.database.collections;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A compact set of {@code int}s that can say for certain that a number isn't in it, but only that
+ * one probably is.
+ *
+ * <p>It's a <a href="https://en.wikipedia.org/wiki/Bloom_filter">Bloom filter</a>: an array of
+ * bits, all of them 0 to begin with. Adding a number sets a few of the bits, picked by hashing the
+ * number a few different ways. A number whose bits aren't all set was never added. A number whose
+ * bits are all set probably was, but other numbers may just happen to have set all of them between
+ * them. How often that happens (the false positive rate) depends on how many bits there are for
+ * each number added: about 10 bits per number gets it down to 1%, however big the numbers are.
+ *
+ * <p>Numbers can't be removed, since their bits may be shared with other numbers. Once a filter has
+ * had more numbers added than it was made for, or too many of its numbers are no longer wanted,
+ * make a new one.
+ *
+ * <p>Every method is thread-safe, and none of them lock.
+ */
+public class IntBloomFilter {
+  private final AtomicLongArray bits;
+  /** How many bits there are. A power of 2. */
+  private final int bitCount;
+  /** How many bits each number sets. */
+  private final int hashCount;
+
+  /**
+   * Create an empty filter.
+   *
+   * @param expectedNumbers How many numbers it's made to hold.
+   * @param falsePositiveRate How often a number that wasn't added should be said to probably be in
+   *     it, once it holds that many numbers, from 0 to 1 (exclusive).
+   * @throws IllegalArgumentException If either is out of range.
+   */
+  public IntBloomFilter(int expectedNumbers, double falsePositiveRate) {
+    if (expectedNumbers < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+      throw new IllegalArgumentException(
+          "A filter needs to expect at least 1 number and have a false positive rate in (0, 1).");
+    }
+    // The standard formulas for the best number of bits and hashes.
+    double ln2 = Math.log(2);
+    long wanted = (long) Math.ceil(-expectedNumbers * Math.log(falsePositiveRate) / (ln2 * ln2));
+    // Round up to a power of 2 (of at least one long's worth), so picking a bit is a mask.
+    long rounded = Long.highestOneBit(Math.max(Long.SIZE, wanted - 1)) << 1;
+    this.bitCount = (int) Math.min(rounded, 1L << 30);
+    this.hashCount =
+        Math.max(1, Math.min(16, (int) Math.round((double) bitCount / expectedNumbers * ln2)));
+    this.bits = new AtomicLongArray(bitCount / Long.SIZE);
+  }
+
+  /**
+   * Add a number. Adding it again does nothing.
+   *
+   * @param number The number.
+   */
+  public void add(int number) {
+    long hash = mix(number);
+    int first = (int) hash;
+    int second = (int) (hash >>> 32) | 1;
+    for (int i = 0; i < hashCount; i++) {
+      int bit = (first + i * second) & (bitCount - 1);
+      int word = bit >>> 6;
+      long mask = 1L << bit;
+      long current = bits.get(word);
+      while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+        current = bits.get(word);
+      }
+    }
+  }
+
+  /**
+   * Check whether a number might have been added.
+   *
+   * @param number The number.
+   * @return False if it certainly wasn't added, true if it probably was.
+   */
+  public boolean mightContain(int number) {
+    long hash = mix(number);
+    int first = (int) hash;
+    int second = (int) (hash >>> 32) | 1;
+    for (int i = 0; i < hashCount; i++) {
+      int bit = (first + i * second) & (bitCount - 1);
+      if ((bits.get(bit >>> 6) & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** @return How many bits the filter takes. */
+  public int getBitCount() {
+    return bitCount;
+  }
+
+  /**
+   * Hash a number into 64 well-mixed bits. The two halves are used as two independent hashes, and
+   * every bit a number sets is picked by combining them differently (this is called double
+   * hashing), which works as well as having that many separate hash functions.
+   */
+  private static long mix(int number) {
+    // One step of the SplitMix64 generator, seeded with the number.
+    long z = number + 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+}
@@ -0,0 +1,411 @@
+package com.codeforcommunity.database.collections;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiFunction;
+
+/**
+ * A thread-safe hash map from {@code int} keys to objects, for tables that hold millions of
+ * records.
+ *
+ * <p>A {@code Map<Integer, V>} like {@link java.util.HashMap} stores every key as an {@link
+ * Integer} object and every entry as its own node object, so each entry costs around 50 bytes
+ * before we even get to the value. This map instead keeps its keys in a plain {@code int[]} and its
+ * values in a parallel {@code Object[]}, so each slot costs 8 bytes, and there are no objects other
+ * than the two arrays for the garbage collector to trace.
+ *
+ * <p>It uses <a href="https://en.wikipedia.org/wiki/Open_addressing">open addressing</a> with
+ * linear probing: a key goes in the slot its hash points to, or the next free slot after that.
+ * Removing a key shifts the keys after it back, so there are never any 'deleted' markers to skip
+ * over.
+ *
+ * <p>Writes take an exclusive lock. Reads don't lock at all: they use a {@link StampedLock}
+ * optimistic read, which just checks afterwards that no write happened while they were reading, and
+ * retries under a real lock if one did. Reads are far more common than writes for our tables, so
+ * they almost never wait.
+ *
+ * <p>This extends {@link AbstractMap} so it can be used anywhere a {@code Map<Integer, V>} is
+ * expected, but the {@code int} methods like {@link #get(int)} should be preferred, since they
+ * don't box their keys. Iterating over the map iterates over a snapshot of it.
+ *
+ * @param <V> The type of the values.
+ */
+public class IntObjectHashMap<V> extends AbstractMap<Integer, V> {
+  /** The smallest number of slots a map has. Must be a power of two. */
+  private static final int MIN_CAPACITY = 16;
+  /** The map grows once it is this full. Linear probing slows down quickly past about 0.7. */
+  private static final float LOAD_FACTOR = 0.6f;
+
+  /**
+   * The keys and values. They're kept together in one object so that a reader always sees a
+   * matching pair of arrays, even while a resize swaps them out.
+   */
+  private static final class Slots {
+    final int[] keys;
+    /** A null value means the slot is free (so the map can't hold null values). */
+    final Object[] values;
+
+    Slots(int capacity) {
+      this.keys = new int[capacity];
+      this.values = new Object[capacity];
+    }
+  }
+
+  private final StampedLock lock = new StampedLock();
+  private volatile Slots slots;
+  private volatile int size;
+
+  public IntObjectHashMap() {
+    this.slots = new Slots(MIN_CAPACITY);
+  }
+
+  /**
+   * A function that computes a new value for a key from its current one.
+   *
+   * @param <V> The type of the values.
+   */
+  @FunctionalInterface
+  public interface Remapping<V> {
+    /**
+     * @param key The key.
+     * @param oldValue The key's current value, or null if it has none.
+     * @return The key's new value, or null to remove it.
+     */
+    V apply(int key, V oldValue);
+  }
+
+  /**
+   * Find the slot holding the given key, or the free slot it would go in.
+   *
+   * @param slots The slots to look in.
+   * @param key The key to look for.
+   * @return The index of the slot, or -1 if the key isn't there and there are no free slots. That
+   *     can only happen when an optimistic read sees a write in progress.
+   */
+  private static int indexOf(Slots slots, int key) {
+    int mask = slots.keys.length - 1;
+    int index = hash(key) & mask;
+    // Bound the loop, since an optimistic read can see a half-written table.
+    for (int probes = 0; probes <= mask; probes++) {
+      if (slots.values[index] == null || slots.keys[index] == key) {
+        return index;
+      }
+      index = (index + 1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * Spread the bits of the key, so that keys which are close together (like our sequential IDs)
+   * don't end up in one long run of neighbouring slots.
+   *
+   * @param key The key.
+   * @return The hash.
+   */
+  private static int hash(int key) {
+    int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Get the value for the given key.
+   *
+   * @param key The key.
+   * @return The value, or null if the key isn't in the map.
+   */
+  @SuppressWarnings("unchecked")
+  public V get(int key) {
+    long stamp = lock.tryOptimisticRead();
+    Object value = find(key);
+    if (!lock.validate(stamp)) {
+      // A write happened while we were reading, so what we read may be garbage. Read again with
+      // the lock held.
+      stamp = lock.readLock();
+      try {
+        value = find(key);
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+    return (V) value;
+  }
+
+  /**
+   * Look up the given key without any locking.
+   *
+   * @param key The key.
+   * @return The value, or null if it wasn't found.
+   */
+  private Object find(int key) {
+    Slots slots = this.slots;
+    int index = indexOf(slots, key);
+    return index < 0 ? null : slots.values[index];
+  }
+
+  /**
+   * Determine if the given key is in the map.
+   *
+   * @param key The key.
+   * @return True if the key has a value.
+   */
+  public boolean containsKey(int key) {
+    return get(key) != null;
+  }
+
+  /**
+   * Associate the given value with the given key.
+   *
+   * @param key The key.
+   * @param value The value, which can't be null.
+   * @return The key's previous value, or null if it didn't have one.
+   */
+  public V put(int key, V value) {
+    if (value == null) {
+      throw new NullPointerException("IntObjectHashMap can't hold null values");
+    }
+    long stamp = lock.writeLock();
+    try {
+      V oldValue = valueAt(key, slots);
+      insert(key, value);
+      return oldValue;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Remove the given key from the map.
+   *
+   * @param key The key.
+   * @return The key's previous value, or null if it didn't have one.
+   */
+  public V remove(int key) {
+    long stamp = lock.writeLock();
+    try {
+      V oldValue = valueAt(key, slots);
+      if (oldValue != null) {
+        delete(key);
+      }
+      return oldValue;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Change the value of the given key with the given function, all while holding the write lock. No
+   * other change to the map can happen between reading the old value and storing the new one. The
+   * function mustn't use this map.
+   *
+   * @param key The key.
+   * @param remapping Computes the key's new value (or null to remove it) from its old one.
+   * @return The key's new value, or null if it was removed.
+   */
+  public V compute(int key, Remapping<V> remapping) {
+    long stamp = lock.writeLock();
+    try {
+      V oldValue = valueAt(key, slots);
+      V newValue = remapping.apply(key, oldValue);
+      if (newValue == null) {
+        if (oldValue != null) {
+          delete(key);
+        }
+      } else {
+        insert(key, newValue);
+      }
+      return newValue;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Look up the given key. Must hold a lock.
+   *
+   * @param key The key.
+   * @param slots The slots to look in.
+   * @param <V> The type of the values.
+   * @return The value, or null if the key isn't in the map.
+   */
+  @SuppressWarnings("unchecked")
+  private static <V> V valueAt(int key, Slots slots) {
+    return (V) slots.values[indexOf(slots, key)];
+  }
+
+  /**
+   * Store the given value, growing the map first if needed. Must hold the write lock.
+   *
+   * @param key The key.
+   * @param value The value.
+   */
+  private void insert(int key, Object value) {
+    Slots slots = this.slots;
+    int index = indexOf(slots, key);
+    if (slots.values[index] != null) {
+      slots.values[index] = value;
+      return;
+    }
+
+    if (size + 1 > slots.keys.length * LOAD_FACTOR) {
+      slots = resize(slots.keys.length * 2);
+      index = indexOf(slots, key);
+    }
+    slots.keys[index] = key;
+    slots.values[index] = value;
+    size++;
+  }
+
+  /**
+   * Remove the given key, which must be in the map. Must hold the write lock.
+   *
+   * <p>With linear probing, we can't just empty the key's slot: a key further along might have
+   * probed past it, and would no longer be found. So we walk the run of slots after it, and move
+   * back any key that belongs at or before the gap we just made.
+   *
+   * @param key The key.
+   */
+  private void delete(int key) {
+    Slots slots = this.slots;
+    int mask = slots.keys.length - 1;
+    int gap = indexOf(slots, key);
+    int index = gap;
+    while (true) {
+      index = (index + 1) & mask;
+      if (slots.values[index] == null) {
+        break;
+      }
+      int home = hash(slots.keys[index]) & mask;
+      // Move the key back if its home slot isn't between the gap and where it is now.
+      if (((index - home) & mask) >= ((index - gap) & mask)) {
+        slots.keys[gap] = slots.keys[index];
+        slots.values[gap] = slots.values[index];
+        gap = index;
+      }
+    }
+    slots.values[gap] = null;
+    size--;
+  }
+
+  /**
+   * Move everything into a new set of slots. Must hold the write lock.
+   *
+   * @param capacity The new number of slots, a power of two.
+   * @return The new slots.
+   */
+  private Slots resize(int capacity) {
+    Slots old = this.slots;
+    Slots resized = new Slots(capacity);
+    for (int i = 0; i < old.keys.length; i++) {
+      if (old.values[i] != null) {
+        int index = indexOf(resized, old.keys[i]);
+        resized.keys[index] = old.keys[i];
+        resized.values[index] = old.values[i];
+      }
+    }
+    this.slots = resized;
+    return resized;
+  }
+
+  /**
+   * Wait until every change that's being made right now has finished. Changes that start after this
+   * is called aren't waited for.
+   */
+  public void awaitWrites() {
+    // Taking the read lock waits for whoever holds the write lock.
+    long stamp = lock.readLock();
+    lock.unlockRead(stamp);
+  }
+
+  /**
+   * Copy the values in the map.
+   *
+   * @return A list of the values, in no particular order.
+   */
+  @SuppressWarnings("unchecked")
+  public List<V> copyValues() {
+    long stamp = lock.readLock();
+    try {
+      List<V> values = new ArrayList<>(size);
+      for (Object value : slots.values) {
+        if (value != null) {
+          values.add((V) value);
+        }
+      }
+      return values;
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return key instanceof Integer && containsKey((int) (Integer) key);
+  }
+
+  @Override
+  public V get(Object key) {
+    return key instanceof Integer ? get((int) (Integer) key) : null;
+  }
+
+  @Override
+  public V put(Integer key, V value) {
+    return put((int) key, value);
+  }
+
+  @Override
+  public V remove(Object key) {
+    return key instanceof Integer ? remove((int) (Integer) key) : null;
+  }
+
+  @Override
+  public V compute(
+      Integer key, BiFunction<? super Integer, ? super V, ? extends V> remappingFunction) {
+    // Map's default compute isn't atomic, so make sure we use ours.
+    return compute((int) key, (k, oldValue) -> remappingFunction.apply(k, oldValue));
+  }
+
+  @Override
+  public void clear() {
+    long stamp = lock.writeLock();
+    try {
+      this.slots = new Slots(MIN_CAPACITY);
+      this.size = 0;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * A snapshot of the map's entries. Unlike most maps, changing the returned set doesn't change the
+   * map.
+   *
+   * @return The entries.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public Set<Map.Entry<Integer, V>> entrySet() {
+    long stamp = lock.readLock();
+    try {
+      Set<Map.Entry<Integer, V>> entries = new LinkedHashSet<>();
+      Slots slots = this.slots;
+      for (int i = 0; i < slots.keys.length; i++) {
+        if (slots.values[i] != null) {
+          entries.add(new SimpleImmutableEntry<>(slots.keys[i], (V) slots.values[i]));
+        }
+      }
+      return entries;
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+}
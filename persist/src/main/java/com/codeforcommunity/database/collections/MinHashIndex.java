@@ -0,0 +1,293 @@
+package com.codeforcommunity.database.collections;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Finds texts that are similar to each other, without comparing every pair.
+ *
+ * <p>Two texts are similar if they share a lot of their shingles (pairs of neighbouring words), as
+ * measured by their <a href="https://en.wikipedia.org/wiki/Jaccard_index">Jaccard similarity</a>:
+ * the number of shingles they share divided by the number they have between them.
+ *
+ * <p>Comparing shingle sets directly is slow, so each text is boiled down to a <a
+ * href="https://en.wikipedia.org/wiki/MinHash">MinHash</a> signature of {@link #SIGNATURE_LENGTH}
+ * numbers. Each number is the smallest value any of the text's shingles hashes to under one of that
+ * many hash functions. Two texts get the same smallest value for a hash function with probability
+ * equal to their Jaccard similarity, so the fraction of their signatures that match estimates it.
+ *
+ * <p>To avoid even comparing every pair of signatures, we use locality-sensitive hashing: each
+ * signature is cut into {@link #BANDS} bands, and each band is hashed into a bucket. Texts only
+ * become candidates if they land in the same bucket for at least one band, which similar texts
+ * almost always do and dissimilar ones almost never do. With 16 bands of 4 numbers, a pair with
+ * similarity 0.5 is found about 64% of the time, 0.7 about 99%, and 0.2 only about 2.5%.
+ *
+ * <p>Any number of threads can search at once; changes take turns.
+ */
+public class MinHashIndex {
+  /** How many hash functions make up a signature. */
+  public static final int SIGNATURE_LENGTH = 64;
+  /** How many bands a signature is cut into. */
+  private static final int BANDS = 16;
+  /** How many numbers are in each band. */
+  private static final int ROWS = SIGNATURE_LENGTH / BANDS;
+  /**
+   * The most candidates a search scores. Near-identical texts (like many posts with the same
+   * boilerplate body) can all land in one bucket, and we don't want a search to look at all of
+   * them.
+   */
+  private static final int MAX_CANDIDATES = 2000;
+
+  /** Each hash function mixes the shingle's hash with its own seed. */
+  private static final long[] SEEDS = new long[SIGNATURE_LENGTH];
+
+  static {
+    long seed = 0x2545F4914F6CDD1DL;
+    for (int i = 0; i < SEEDS.length; i++) {
+      seed = mix(seed + i);
+      SEEDS[i] = seed;
+    }
+  }
+
+  /** A text similar to the one searched for. */
+  public static final class Match {
+    private final int id;
+    private final double similarity;
+
+    Match(int id, double similarity) {
+      this.id = id;
+      this.similarity = similarity;
+    }
+
+    /** @return The text's ID. */
+    public int getId() {
+      return id;
+    }
+
+    /** @return The estimated Jaccard similarity, from 0 to 1. */
+    public double getSimilarity() {
+      return similarity;
+    }
+  }
+
+  /** The IDs in one bucket. It grows like an ArrayList, without boxing the IDs. */
+  private static final class Bucket {
+    int[] ids = new int[2];
+    int size;
+
+    void add(int id) {
+      if (size == ids.length) {
+        ids = Arrays.copyOf(ids, size * 2);
+      }
+      ids[size++] = id;
+    }
+
+    void remove(int id) {
+      for (int i = 0; i < size; i++) {
+        if (ids[i] == id) {
+          // Order doesn't matter, so fill the gap with the last ID.
+          ids[i] = ids[--size];
+          return;
+        }
+      }
+    }
+  }
+
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+  /** Every text's signature, by ID. */
+  private final IntObjectHashMap<int[]> signatures = new IntObjectHashMap<>();
+  /** For each band, the buckets by the band's hash. */
+  @SuppressWarnings("unchecked")
+  private final Map<Integer, Bucket>[] buckets = new Map[BANDS];
+
+  public MinHashIndex() {
+    for (int band = 0; band < BANDS; band++) {
+      buckets[band] = new HashMap<>();
+    }
+  }
+
+  /**
+   * Work out the signature of a text. This is the slow part of adding a text, and it doesn't use
+   * the index, so many texts' signatures can be worked out at once on different threads.
+   *
+   * @param text The text.
+   * @return Its signature, or null if it has no words.
+   */
+  public static int[] signature(String text) {
+    List<String> words = new ArrayList<>();
+    for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+      if (!word.isEmpty()) {
+        words.add(word);
+      }
+    }
+    if (words.isEmpty()) {
+      return null;
+    }
+
+    // Hash each distinct shingle once. A text with a single word is its own shingle.
+    Set<Long> shingles = new LinkedHashSet<>();
+    if (words.size() == 1) {
+      shingles.add(mix(words.get(0).hashCode()));
+    }
+    for (int i = 0; i + 1 < words.size(); i++) {
+      shingles.add(
+          mix(words.get(i).hashCode() * 0x9E3779B97F4A7C15L + words.get(i + 1).hashCode()));
+    }
+
+    int[] signature = new int[SIGNATURE_LENGTH];
+    Arrays.fill(signature, Integer.MAX_VALUE);
+    for (long shingle : shingles) {
+      for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+        int hash = (int) (mix(shingle ^ SEEDS[i]) >>> 32);
+        if (hash < signature[i]) {
+          signature[i] = hash;
+        }
+      }
+    }
+    return signature;
+  }
+
+  /**
+   * Scramble the bits of a number (this is the finalizer of the SplitMix64 generator), so that
+   * similar inputs give unrelated outputs.
+   */
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  /**
+   * @param signature A signature.
+   * @param band Which band.
+   * @return The hash of that band of the signature.
+   */
+  private static int bandHash(int[] signature, int band) {
+    int hash = band;
+    for (int row = band * ROWS; row < (band + 1) * ROWS; row++) {
+      hash = hash * 31 + signature[row];
+    }
+    return hash;
+  }
+
+  /**
+   * Add a text, replacing any text already added with the same ID.
+   *
+   * @param id The text's ID.
+   * @param signature The text's signature (see {@link #signature(String)}), or null to just remove
+   *     any text with the ID.
+   */
+  public void put(int id, int[] signature) {
+    lock.writeLock().lock();
+    try {
+      delete(id);
+      if (signature != null) {
+        signatures.put(id, signature);
+        for (int band = 0; band < BANDS; band++) {
+          buckets[band].computeIfAbsent(bandHash(signature, band), hash -> new Bucket()).add(id);
+        }
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Remove the text with the given ID, if there is one.
+   *
+   * @param id The text's ID.
+   */
+  public void remove(int id) {
+    lock.writeLock().lock();
+    try {
+      delete(id);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void delete(int id) {
+    int[] signature = signatures.remove(id);
+    if (signature == null) {
+      return;
+    }
+    for (int band = 0; band < BANDS; band++) {
+      int hash = bandHash(signature, band);
+      Bucket bucket = buckets[band].get(hash);
+      bucket.remove(id);
+      if (bucket.size == 0) {
+        buckets[band].remove(hash);
+      }
+    }
+  }
+
+  /** Remove every text. */
+  public void clear() {
+    lock.writeLock().lock();
+    try {
+      signatures.clear();
+      for (Map<Integer, Bucket> band : buckets) {
+        band.clear();
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Find the texts most similar to the one with the given ID.
+   *
+   * @param id The text's ID.
+   * @param limit The maximum number of texts to return.
+   * @return The most similar texts, most similar first, with ties going to the highest ID. Empty if
+   *     there's no text with the ID.
+   */
+  public List<Match> similar(int id, int limit) {
+    lock.readLock().lock();
+    try {
+      int[] signature = signatures.get(id);
+      if (signature == null) {
+        return List.of();
+      }
+
+      // Gather everything that shares a bucket with the text in any band.
+      Set<Integer> candidates = new LinkedHashSet<>();
+      for (int band = 0; band < BANDS && candidates.size() < MAX_CANDIDATES; band++) {
+        Bucket bucket = buckets[band].get(bandHash(signature, band));
+        for (int i = 0; i < bucket.size && candidates.size() < MAX_CANDIDATES; i++) {
+          if (bucket.ids[i] != id) {
+            candidates.add(bucket.ids[i]);
+          }
+        }
+      }
+
+      // Estimate each candidate's similarity from how much of its signature matches.
+      List<Match> matches = new ArrayList<>(candidates.size());
+      for (int candidate : candidates) {
+        int[] other = signatures.get(candidate);
+        int same = 0;
+        for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+          if (signature[i] == other[i]) {
+            same++;
+          }
+        }
+        matches.add(new Match(candidate, (double) same / SIGNATURE_LENGTH));
+      }
+      matches.sort(
+          (a, b) ->
+              a.similarity != b.similarity
+                  ? Double.compare(b.similarity, a.similarity)
+                  : Integer.compare(b.id, a.id));
+      return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+}
@@ -0,0 +1,345 @@
+package com.codeforcommunity.database.collections;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable array from {@code int} indexes to objects, where most indexes (like the IDs of the
+ * posts that haven't been deleted) have a value but some don't.
+ *
+ * <p>It never changes: {@link #with(int, Object)} and {@link #without(int)} return a new version
+ * and leave the old one alone. That lets a table publish its current version through a volatile
+ * field, and let any number of threads read it (even iterate over all of it) without locking and
+ * without copying anything, while writers keep building newer versions. A reader that's part way
+ * through an old version just keeps seeing that version. This is the "read-copy-update" pattern.
+ *
+ * <p>Making a new version doesn't copy the whole array. It's stored as a tree where each node has
+ * 32 children, and a new version only copies the nodes on the path from the root to the index that
+ * changed, sharing every other node with the old version. That's at most 7 small nodes, even for
+ * billions of indexes. Each node also knows how many values are under it, so {@link #asList()} can
+ * find its n-th value without walking through the ones before it.
+ *
+ * <p>See <a href="https://hypirion.com/musings/understanding-persistent-vector-pt-1">this
+ * article</a> for a longer explanation of how trees like this work.
+ *
+ * @param <V> The type of the values.
+ */
+public final class PersistentSparseArray<V> {
+  /** Each level of the tree uses 5 bits of the index, so each node has 2^5 children. */
+  private static final int BITS = 5;
+
+  private static final int WIDTH = 1 << BITS;
+  private static final int MASK = WIDTH - 1;
+
+  @SuppressWarnings("rawtypes")
+  private static final PersistentSparseArray EMPTY = new PersistentSparseArray<>(null, 0);
+
+  /**
+   * A node of the tree. The nodes just above the values hold the values themselves as their
+   * children, and every other node holds more nodes.
+   */
+  private static final class Node {
+    final Object[] children;
+    /** How many values are under this node. */
+    final int count;
+
+    Node(Object[] children, int count) {
+      this.children = children;
+      this.count = count;
+    }
+  }
+
+  /** The root of the tree, or null if the array is empty. */
+  private final Node root;
+  /**
+   * How far to shift an index right to find which of the root's children it's under. The root
+   * covers indexes below {@code WIDTH << shift}.
+   */
+  private final int shift;
+
+  private PersistentSparseArray(Node root, int shift) {
+    this.root = root;
+    this.shift = shift;
+  }
+
+  /**
+   * @param <V> The type of the values.
+   * @return An array with no values.
+   */
+  @SuppressWarnings("unchecked")
+  public static <V> PersistentSparseArray<V> empty() {
+    return (PersistentSparseArray<V>) EMPTY;
+  }
+
+  /**
+   * Make an array holding the given values at the same indexes. This builds the tree directly,
+   * which is much faster than adding the values one by one.
+   *
+   * @param values The values, with nulls for indexes that have none.
+   * @param <V> The type of the values.
+   * @return The array.
+   */
+  public static <V> PersistentSparseArray<V> of(V[] values) {
+    // Build the bottom level of nodes from the values, and then each level above from the one
+    // below it, until one node is left.
+    Object[] level = values;
+    int shift = -BITS;
+    do {
+      Object[] above = new Object[(level.length + MASK) >>> BITS];
+      for (int i = 0; i < above.length; i++) {
+        Object[] children = new Object[WIDTH];
+        int count = 0;
+        for (int j = 0; j < WIDTH && i * WIDTH + j < level.length; j++) {
+          Object child = level[i * WIDTH + j];
+          children[j] = child;
+          if (child != null) {
+            count += shift < 0 ? 1 : ((Node) child).count;
+          }
+        }
+        above[i] = count == 0 ? null : new Node(children, count);
+      }
+      level = above;
+      shift += BITS;
+    } while (level.length > 1);
+
+    Node root = level.length == 0 ? null : (Node) level[0];
+    return root == null ? empty() : new PersistentSparseArray<>(root, shift);
+  }
+
+  /** @return How many indexes have a value. */
+  public int size() {
+    return root == null ? 0 : root.count;
+  }
+
+  /**
+   * @param index The index.
+   * @return The value at the index, or null if it has none.
+   */
+  @SuppressWarnings("unchecked")
+  public V get(int index) {
+    if (root == null || index < 0 || (long) index >= capacity(shift)) {
+      return null;
+    }
+    Node node = root;
+    for (int level = shift; level > 0; level -= BITS) {
+      node = (Node) node.children[(index >>> level) & MASK];
+      if (node == null) {
+        return null;
+      }
+    }
+    return (V) node.children[index & MASK];
+  }
+
+  /**
+   * Make a new version of this array with the given value at the given index.
+   *
+   * @param index The index, which can't be negative.
+   * @param value The value, which can't be null.
+   * @return The new version.
+   */
+  public PersistentSparseArray<V> with(int index, V value) {
+    if (index < 0 || value == null) {
+      throw new IllegalArgumentException("Can't store " + value + " at index " + index);
+    }
+    Node root = this.root;
+    int shift = this.shift;
+    if (root == null) {
+      root = new Node(new Object[WIDTH], 0);
+      shift = 0;
+    }
+    // Add levels on top until the tree is tall enough to hold the index.
+    while ((long) index >= capacity(shift)) {
+      Object[] children = new Object[WIDTH];
+      children[0] = root;
+      root = new Node(children, root.count);
+      shift += BITS;
+    }
+    int added = get(index) == null ? 1 : 0;
+    return new PersistentSparseArray<>(set(root, shift, index, value, added), shift);
+  }
+
+  /**
+   * Make a new version of this array with no value at the given index.
+   *
+   * @param index The index.
+   * @return The new version, or this one if there was no value at the index anyway.
+   */
+  public PersistentSparseArray<V> without(int index) {
+    if (get(index) == null) {
+      return this;
+    }
+    Node root = set(this.root, shift, index, null, -1);
+    return root == null ? empty() : new PersistentSparseArray<>(root, shift);
+  }
+
+  /**
+   * Copy the path from the given node down to the given index, changing the value at the end of it.
+   *
+   * @param node The node to start at (which may be null if there are no values under it yet).
+   * @param level The node's shift.
+   * @param index The index.
+   * @param value The new value, or null to remove the value.
+   * @param countChange How much the change changes the number of values (-1, 0 or 1).
+   * @return The copy of the node, or null if there are no values left under it.
+   */
+  private static Node set(Node node, int level, int index, Object value, int countChange) {
+    Object[] children = node == null ? new Object[WIDTH] : node.children.clone();
+    int count = (node == null ? 0 : node.count) + countChange;
+    if (count == 0) {
+      // Drop nodes with nothing left under them.
+      return null;
+    }
+    int slot = (index >>> level) & MASK;
+    children[slot] =
+        level == 0 ? value : set((Node) children[slot], level - BITS, index, value, countChange);
+    return new Node(children, count);
+  }
+
+  /**
+   * @param shift The shift of a root.
+   * @return The number of indexes under the root.
+   */
+  private static long capacity(int shift) {
+    return (long) WIDTH << shift;
+  }
+
+  /**
+   * Get a read-only view of this array's values as a list, in order of index. Nothing is copied,
+   * and since this version of the array never changes, neither does the list.
+   *
+   * @return The values.
+   */
+  public List<V> asList() {
+    return new AbstractList<V>() {
+      @Override
+      public V get(int position) {
+        return valueAt(position);
+      }
+
+      @Override
+      public int size() {
+        return PersistentSparseArray.this.size();
+      }
+
+      @Override
+      public Iterator<V> iterator() {
+        return new Values(false);
+      }
+    };
+  }
+
+  /**
+   * Iterate over the values from the highest index to the lowest.
+   *
+   * @return The iterator.
+   */
+  public Iterator<V> descendingIterator() {
+    return new Values(true);
+  }
+
+  /**
+   * Get the value at the given position among the values (rather than at the given index). Each
+   * node knows how many values are under it, so this skips whole subtrees at a time.
+   *
+   * @param position The position, from 0 to {@link #size()} - 1.
+   * @return The value.
+   */
+  @SuppressWarnings("unchecked")
+  private V valueAt(int position) {
+    if (position < 0 || position >= size()) {
+      throw new IndexOutOfBoundsException("Position " + position + " of " + size());
+    }
+    Node node = root;
+    for (int level = shift; level > 0; level -= BITS) {
+      for (Object child : node.children) {
+        if (child != null) {
+          int count = ((Node) child).count;
+          if (position < count) {
+            node = (Node) child;
+            break;
+          }
+          position -= count;
+        }
+      }
+    }
+    for (Object child : node.children) {
+      if (child != null && position-- == 0) {
+        return (V) child;
+      }
+    }
+    throw new IllegalStateException("The tree's counts are wrong");
+  }
+
+  /** Walks the tree depth-first, keeping the path to the current value on a stack. */
+  private final class Values implements Iterator<V> {
+    private final boolean descending;
+    private final Node[] nodes;
+    /** The next child to look at in each node on the path. */
+    private final int[] slots;
+    /** How deep in the tree we are, or -1 once we're done. */
+    private int depth;
+
+    private V next;
+
+    Values(boolean descending) {
+      this.descending = descending;
+      int levels = root == null ? 0 : shift / BITS + 1;
+      this.nodes = new Node[levels];
+      this.slots = new int[levels];
+      this.depth = levels - 1 < 0 ? -1 : 0;
+      if (root != null) {
+        nodes[0] = root;
+        slots[0] = descending ? MASK : 0;
+      }
+      advance();
+    }
+
+    /** Find the next value. */
+    @SuppressWarnings("unchecked")
+    private void advance() {
+      next = null;
+      int step = descending ? -1 : 1;
+      while (depth >= 0) {
+        int slot = slots[depth];
+        if (slot < 0 || slot >= WIDTH) {
+          // We're done with this node, so carry on with the next child of its parent.
+          depth--;
+          if (depth >= 0) {
+            slots[depth] += step;
+          }
+          continue;
+        }
+
+        Object child = nodes[depth].children[slot];
+        if (child == null) {
+          slots[depth] += step;
+        } else if (depth == nodes.length - 1) {
+          next = (V) child;
+          slots[depth] += step;
+          return;
+        } else {
+          depth++;
+          nodes[depth] = (Node) child;
+          slots[depth] = descending ? MASK : 0;
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    public V next() {
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      V value = next;
+      advance();
+      return value;
+    }
+  }
+}
@@ -0,0 +1,410 @@
+package com.codeforcommunity.database.collections;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Finds the heaviest strings (like post titles, weighted by clap count) that start with a given
+ * prefix, fast enough to answer every keystroke of a search box.
+ *
+ * <p>It's a <a href="https://en.wikipedia.org/wiki/Radix_tree">radix tree</a>: a trie where a run
+ * of nodes with only one child each is squashed into a single edge labelled with the whole run, so
+ * there's one node per place the strings branch rather than one per character. Each node's children
+ * are kept in a small sorted array instead of a map.
+ *
+ * <p>Every node also remembers the heaviest weight anywhere under it. To find the top k strings
+ * under a prefix, we walk down to the prefix's node and then search outwards from it heaviest
+ * first, always expanding whichever node or string on our frontier is heaviest. Once k strings have
+ * come off the frontier, nothing left on it can beat them, so we stop. That looks at a few nodes
+ * per result, however many strings share the prefix.
+ *
+ * <p>Matching ignores case. Any number of threads can search at once; changes take turns.
+ */
+public class PrefixIndex {
+  /** A string in the index. */
+  public static final class Entry {
+    private final int id;
+    private final String text;
+    private int weight;
+
+    Entry(int id, String text, int weight) {
+      this.id = id;
+      this.text = text;
+      this.weight = weight;
+    }
+
+    /** @return The ID the string was added with. */
+    public int getId() {
+      return id;
+    }
+
+    /** @return The string, as it was added. */
+    public String getText() {
+      return text;
+    }
+
+    /** @return The string's weight. */
+    public int getWeight() {
+      return weight;
+    }
+  }
+
+  private static final Node[] NO_CHILDREN = new Node[0];
+  private static final Entry[] NO_ENTRIES = new Entry[0];
+
+  /** A place where the strings branch (or end). */
+  private static final class Node {
+    /** The characters on the edge leading down to this node. */
+    String label;
+    /** Sorted by the first character of their labels, which are all different. */
+    Node[] children = NO_CHILDREN;
+    /** The strings that end here. Usually none or one, but different IDs can share a string. */
+    Entry[] entries = NO_ENTRIES;
+    /** The heaviest weight of any string under this node. */
+    int best = Integer.MIN_VALUE;
+
+    Node(String label) {
+      this.label = label;
+    }
+
+    /**
+     * @param first The first character of the child's label.
+     * @return The position of the child in {@link #children}, or {@code -(insertion point) - 1}.
+     */
+    int find(char first) {
+      int low = 0;
+      int high = children.length - 1;
+      while (low <= high) {
+        int middle = (low + high) >>> 1;
+        char c = children[middle].label.charAt(0);
+        if (c < first) {
+          low = middle + 1;
+        } else if (c > first) {
+          high = middle - 1;
+        } else {
+          return middle;
+        }
+      }
+      return -(low + 1);
+    }
+
+    Node child(char first) {
+      int position = find(first);
+      return position < 0 ? null : children[position];
+    }
+
+    void addChild(Node child) {
+      int position = -find(child.label.charAt(0)) - 1;
+      Node[] grown = new Node[children.length + 1];
+      System.arraycopy(children, 0, grown, 0, position);
+      grown[position] = child;
+      System.arraycopy(children, position, grown, position + 1, children.length - position);
+      children = grown;
+    }
+
+    void replaceChild(Node child, Node replacement) {
+      children[find(child.label.charAt(0))] = replacement;
+    }
+
+    void removeChild(Node child) {
+      int position = find(child.label.charAt(0));
+      Node[] shrunk = new Node[children.length - 1];
+      System.arraycopy(children, 0, shrunk, 0, position);
+      System.arraycopy(children, position + 1, shrunk, position, shrunk.length - position);
+      children = shrunk.length == 0 ? NO_CHILDREN : shrunk;
+    }
+
+    /** Work out {@link #best} again from this node's strings and children. */
+    void recomputeBest() {
+      int max = Integer.MIN_VALUE;
+      for (Entry entry : entries) {
+        max = Math.max(max, entry.weight);
+      }
+      for (Node child : children) {
+        max = Math.max(max, child.best);
+      }
+      best = max;
+    }
+  }
+
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+  private final Node root = new Node("");
+  /** Every string, by ID, so they can be found again to remove or reweigh. */
+  private final Map<Integer, Entry> byId = new HashMap<>();
+
+  /** @return How many strings are in the index. */
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return byId.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @param id An ID.
+   * @return Whether there's a string with that ID in the index.
+   */
+  public boolean contains(int id) {
+    lock.readLock().lock();
+    try {
+      return byId.containsKey(id);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Add a string, replacing any string already added with the same ID.
+   *
+   * @param id The string's ID.
+   * @param text The string.
+   * @param weight How heavy the string is. Heavier strings are returned first.
+   */
+  public void put(int id, String text, int weight) {
+    lock.writeLock().lock();
+    try {
+      Entry old = byId.get(id);
+      if (old != null) {
+        delete(old);
+      }
+      Entry entry = new Entry(id, text, weight);
+      byId.put(id, entry);
+      insert(entry);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Change the weight of a string, if there's one with the given ID.
+   *
+   * @param id The string's ID.
+   * @param change Works out the string's new weight from its current one. It's called while holding
+   *     the lock, so no other change can happen in between.
+   */
+  public void updateWeight(int id, IntUnaryOperator change) {
+    lock.writeLock().lock();
+    try {
+      Entry entry = byId.get(id);
+      if (entry == null) {
+        return;
+      }
+      int weight = change.applyAsInt(entry.weight);
+      if (weight != entry.weight) {
+        // Take it out and put it back, which fixes up the heaviest weights along its path.
+        delete(entry);
+        entry.weight = weight;
+        insert(entry);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Remove the string with the given ID, if there is one.
+   *
+   * @param id The string's ID.
+   */
+  public void remove(int id) {
+    lock.writeLock().lock();
+    try {
+      Entry entry = byId.remove(id);
+      if (entry != null) {
+        delete(entry);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /** Remove every string. */
+  public void clear() {
+    lock.writeLock().lock();
+    try {
+      byId.clear();
+      root.children = NO_CHILDREN;
+      root.entries = NO_ENTRIES;
+      root.best = Integer.MIN_VALUE;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private static String key(String text) {
+    return text.toLowerCase(Locale.ROOT);
+  }
+
+  private void insert(Entry entry) {
+    String rest = key(entry.text);
+    Node node = root;
+    while (true) {
+      node.best = Math.max(node.best, entry.weight);
+      if (rest.isEmpty()) {
+        node.entries = Arrays.copyOf(node.entries, node.entries.length + 1);
+        node.entries[node.entries.length - 1] = entry;
+        return;
+      }
+
+      Node child = node.child(rest.charAt(0));
+      if (child == null) {
+        // Nothing shares the rest of the string, so it all goes on one new edge.
+        child = new Node(rest);
+        node.addChild(child);
+        rest = "";
+      } else {
+        int common = commonPrefixLength(child.label, rest);
+        if (common < child.label.length()) {
+          // The string branches off part way along the child's edge, so split the edge there.
+          Node middle = new Node(child.label.substring(0, common));
+          node.replaceChild(child, middle);
+          child.label = child.label.substring(common);
+          middle.children = new Node[] {child};
+          middle.best = child.best;
+          child = middle;
+        }
+        rest = rest.substring(common);
+      }
+      node = child;
+    }
+  }
+
+  private void delete(Entry entry) {
+    // Find the path down to the entry's node.
+    List<Node> path = new ArrayList<>();
+    String rest = key(entry.text);
+    Node node = root;
+    path.add(node);
+    while (!rest.isEmpty()) {
+      node = node.child(rest.charAt(0));
+      if (node == null || !rest.startsWith(node.label)) {
+        return;
+      }
+      rest = rest.substring(node.label.length());
+      path.add(node);
+    }
+
+    Entry[] entries = node.entries;
+    for (int i = 0; i < entries.length; i++) {
+      if (entries[i] == entry) {
+        Entry[] shrunk = new Entry[entries.length - 1];
+        System.arraycopy(entries, 0, shrunk, 0, i);
+        System.arraycopy(entries, i + 1, shrunk, i, shrunk.length - i);
+        node.entries = shrunk.length == 0 ? NO_ENTRIES : shrunk;
+        break;
+      }
+    }
+
+    // Walk back up, dropping nodes nothing ends at or passes through, squashing nodes that only
+    // pass through to one child into that child, and fixing up the heaviest weights.
+    for (int i = path.size() - 1; i > 0; i--) {
+      Node current = path.get(i);
+      Node parent = path.get(i - 1);
+      current.recomputeBest();
+      if (current.entries.length == 0 && current.children.length == 0) {
+        parent.removeChild(current);
+      } else if (current.entries.length == 0 && current.children.length == 1) {
+        Node only = current.children[0];
+        only.label = current.label + only.label;
+        parent.replaceChild(current, only);
+      }
+    }
+    root.recomputeBest();
+  }
+
+  private static int commonPrefixLength(String a, String b) {
+    int length = Math.min(a.length(), b.length());
+    for (int i = 0; i < length; i++) {
+      if (a.charAt(i) != b.charAt(i)) {
+        return i;
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Find the heaviest strings that start with the given prefix (ignoring case). Equally heavy
+   * strings come highest ID first.
+   *
+   * @param prefix The prefix.
+   * @param limit The maximum number of strings to return.
+   * @return The strings, heaviest first.
+   */
+  public List<Entry> top(String prefix, int limit) {
+    List<Entry> results = new ArrayList<>(Math.min(limit, 16));
+    lock.readLock().lock();
+    try {
+      Node node = findPrefix(key(prefix));
+      if (node == null) {
+        return results;
+      }
+
+      // The frontier, heaviest first. A node sorts before a string of the same weight, since it
+      // might hold a string of that weight with a higher ID.
+      PriorityQueue<Object> frontier =
+          new PriorityQueue<>(
+              (a, b) -> {
+                int byWeight = Integer.compare(weight(b), weight(a));
+                return byWeight != 0 ? byWeight : Integer.compare(id(b), id(a));
+              });
+      frontier.add(node);
+      while (results.size() < limit && !frontier.isEmpty()) {
+        Object next = frontier.poll();
+        if (next instanceof Entry) {
+          results.add((Entry) next);
+        } else {
+          Node expanded = (Node) next;
+          frontier.addAll(Arrays.asList(expanded.entries));
+          frontier.addAll(Arrays.asList(expanded.children));
+        }
+      }
+      return results;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private static int weight(Object item) {
+    return item instanceof Entry ? ((Entry) item).weight : ((Node) item).best;
+  }
+
+  private static int id(Object item) {
+    return item instanceof Entry ? ((Entry) item).id : Integer.MAX_VALUE;
+  }
+
+  /**
+   * Find the highest node whose strings all start with the given prefix.
+   *
+   * @param prefix The (lower-case) prefix.
+   * @return The node, or null if no string starts with the prefix.
+   */
+  private Node findPrefix(String prefix) {
+    Node node = root;
+    String rest = prefix;
+    while (!rest.isEmpty()) {
+      node = node.child(rest.charAt(0));
+      if (node == null) {
+        return null;
+      }
+      int common = commonPrefixLength(node.label, rest);
+      if (common == rest.length()) {
+        // The prefix ends on (or part way along) this node's edge.
+        return node;
+      }
+      if (common < node.label.length()) {
+        return null;
+      }
+      rest = rest.substring(common);
+    }
+    return node;
+  }
+}
@@ -0,0 +1,42 @@
+package com.codeforcommunity.database.collections;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A thread-safe dictionary of strings that hands out one shared copy of each distinct string.
+ *
+ * <p>A few thousand authors write millions of posts and comments, so if every record kept its own
+ * copy of its author's name we'd store each name thousands of times over. Records that are
+ * {@linkplain #intern(String) interned} through the same pool instead all point at one copy, which
+ * costs just a reference per record.
+ *
+ * <p>We don't use {@link String#intern()}, since the JVM's pool is shared by everything in the
+ * process and can't be measured or cleared.
+ */
+public class StringPool {
+  private final ConcurrentHashMap<String, String> strings = new ConcurrentHashMap<>();
+
+  /**
+   * Get the pool's copy of the given string, adding it to the pool if it isn't there yet.
+   *
+   * @param string The string, which may be null.
+   * @return A string equal to the given one, which is the same object for every equal string.
+   */
+  public String intern(String string) {
+    if (string == null) {
+      return null;
+    }
+    // Try a plain lookup first, since almost every string will already be in the pool.
+    String pooled = strings.get(string);
+    if (pooled != null) {
+      return pooled;
+    }
+    pooled = strings.putIfAbsent(string, string);
+    return pooled == null ? string : pooled;
+  }
+
+  /** @return How many distinct strings are in the pool. */
+  public int size() {
+    return strings.size();
+  }
+}
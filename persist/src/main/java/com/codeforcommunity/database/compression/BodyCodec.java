@@ -0,0 +1,166 @@
+package com.codeforcommunity.database.compression;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/** The ways a post body can be encoded when it's stored in an encoded form. */
+public enum BodyCodec {
+  /** GZIP compression. Slightly larger than {@link #DEFLATE}, but readable by common tools. */
+  GZIP {
+    @Override
+    OutputStream wrap(OutputStream out) throws IOException {
+      return new GZIPOutputStream(out);
+    }
+
+    @Override
+    InputStream wrap(InputStream in) throws IOException {
+      return new GZIPInputStream(in);
+    }
+  },
+  /** Raw DEFLATE (zlib) compression. */
+  DEFLATE {
+    @Override
+    OutputStream wrap(OutputStream out) {
+      return new DeflaterOutputStream(out);
+    }
+
+    @Override
+    InputStream wrap(InputStream in) {
+      return new InflaterInputStream(in);
+    }
+  },
+  /**
+   * No compression, just the text's UTF-8 bytes. This isn't worth using in the database, but a byte
+   * array is smaller than a String holding the same text, so it's how the in-memory tables keep
+   * bodies.
+   */
+  UTF_8 {
+    @Override
+    OutputStream wrap(OutputStream out) {
+      return out;
+    }
+
+    @Override
+    InputStream wrap(InputStream in) {
+      return in;
+    }
+
+    @Override
+    public byte[] encode(String text) {
+      return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String decode(byte[] encoded) {
+      return new String(encoded, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String decodePrefix(byte[] encoded, int maxLength) {
+      // No character takes more than 4 bytes (and one that takes 4 is two chars in Java), so the
+      // first 4 * maxLength bytes hold at least maxLength whole characters. Only the part past
+      // them can be a character that was cut in half.
+      int length = (int) Math.min(encoded.length, 4L * maxLength);
+      String prefix = new String(encoded, 0, length, StandardCharsets.UTF_8);
+      return prefix.substring(0, Math.min(maxLength, prefix.length()));
+    }
+  };
+
+  /**
+   * Wrap the given stream so that whatever is written to it gets encoded.
+   *
+   * @param out The stream to write the encoded bytes to.
+   * @return The encoding stream.
+   * @throws IOException If the stream can't be set up.
+   */
+  abstract OutputStream wrap(OutputStream out) throws IOException;
+
+  /**
+   * Wrap the given stream so that whatever is read from it gets decoded.
+   *
+   * @param in The stream of encoded bytes.
+   * @return The decoding stream.
+   * @throws IOException If the stream can't be set up.
+   */
+  abstract InputStream wrap(InputStream in) throws IOException;
+
+  /**
+   * Encode the given text.
+   *
+   * @param text The text to encode.
+   * @return The encoded bytes.
+   */
+  public byte[] encode(String text) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (OutputStream out = wrap(bytes)) {
+      out.write(text.getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Decode the given bytes back into the text they were encoded from.
+   *
+   * @param encoded Bytes returned by {@link #encode(String)}.
+   * @return The decoded text.
+   */
+  public String decode(byte[] encoded) {
+    try (InputStream in = wrap(new ByteArrayInputStream(encoded))) {
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Decode only the start of the given bytes. Decoding stops as soon as enough characters have been
+   * read, so this is cheap no matter how large the encoded text is.
+   *
+   * @param encoded Bytes returned by {@link #encode(String)}.
+   * @param maxLength The maximum number of characters to return.
+   * @return At most the first {@code maxLength} characters of the decoded text.
+   */
+  public String decodePrefix(byte[] encoded, int maxLength) {
+    try (Reader reader =
+        new InputStreamReader(wrap(new ByteArrayInputStream(encoded)), StandardCharsets.UTF_8)) {
+      char[] chars = new char[maxLength];
+      int length = 0;
+      int read;
+      while (length < maxLength && (read = reader.read(chars, length, maxLength - length)) != -1) {
+        length += read;
+      }
+      return new String(chars, 0, length);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Get the codec with the given (case-insensitive) name.
+   *
+   * @param name The name, e.g. "gzip".
+   * @return The codec.
+   * @throws IllegalArgumentException If there is no codec with that name.
+   */
+  public static BodyCodec fromName(String name) {
+    try {
+      return BodyCodec.valueOf(name.trim().toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Unknown body codec: " + name, e);
+    }
+  }
+}
@@ -0,0 +1,63 @@
+package com.codeforcommunity.database.compression;
+
+import java.util.Properties;
+
+/**
+ * Decides which post bodies get stored compressed, and how. Compression is off unless the {@code
+ * database.compression.threshold} property is set to a positive number of characters; bodies longer
+ * than that are compressed with the codec named by {@code database.compression.algorithm} (gzip by
+ * default).
+ */
+public class BodyCompression {
+  /** A configuration which never compresses anything. */
+  public static final BodyCompression DISABLED = new BodyCompression(0, BodyCodec.GZIP);
+
+  private final int thresholdLength;
+  private final BodyCodec codec;
+
+  /**
+   * @param thresholdLength Bodies longer than this many characters are compressed. Zero or less
+   *     disables compression.
+   * @param codec The codec to compress with.
+   */
+  public BodyCompression(int thresholdLength, BodyCodec codec) {
+    this.thresholdLength = thresholdLength;
+    this.codec = codec;
+  }
+
+  /**
+   * Read the compression settings from the given database properties.
+   *
+   * @param dbProperties The database properties.
+   * @return The configured compression, or {@link #DISABLED} if no threshold is set.
+   * @throws IllegalArgumentException If the algorithm isn't one that compresses.
+   */
+  public static BodyCompression fromProperties(Properties dbProperties) {
+    String threshold = dbProperties.getProperty("database.compression.threshold");
+    if (threshold == null || threshold.isBlank()) {
+      return DISABLED;
+    }
+    String algorithm = dbProperties.getProperty("database.compression.algorithm", "gzip");
+    BodyCodec codec = BodyCodec.fromName(algorithm);
+    if (codec == BodyCodec.UTF_8) {
+      // It doesn't make anything smaller, so it would only store every long body a second time.
+      throw new IllegalArgumentException(
+          "database.compression.algorithm must be gzip or deflate, not " + algorithm);
+    }
+    return new BodyCompression(Integer.parseInt(threshold.trim()), codec);
+  }
+
+  /**
+   * Determine whether the given body should be stored compressed.
+   *
+   * @param body The body.
+   * @return True if the body is over the threshold.
+   */
+  public boolean shouldCompress(String body) {
+    return thresholdLength > 0 && body.length() > thresholdLength;
+  }
+
+  public BodyCodec getCodec() {
+    return codec;
+  }
+}
@@ -0,0 +1,255 @@
+package com.codeforcommunity.database.durable;
+
+import com.codeforcommunity.database.tableImpl.StubCommentTableImpl;
+import com.codeforcommunity.database.tableImpl.StubPostTableImpl;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Makes the in-memory tables durable, so they can be used as the main store for small deployments
+ * that don't run Postgres.
+ *
+ * <p>Every change is written to a {@link WriteAheadLog}. Every so often, a snapshot of the tables
+ * is written and the log segments it covers are deleted, so the log doesn't grow forever and
+ * recovery doesn't have to replay it from the very beginning. On startup, the latest snapshot is
+ * memory-mapped (its records are only decoded as they're needed, see {@link SnapshotFile}) and the
+ * log written since is replayed on top of it.
+ */
+public class DurableStore implements AutoCloseable {
+  private static final Logger logger = LogManager.getLogger(DurableStore.class);
+
+  /** How often the log is forced under {@link FsyncPolicy#INTERVAL} if not configured. */
+  static final long DEFAULT_FSYNC_INTERVAL_MILLIS = 50;
+  /** How often a snapshot is taken if not configured. */
+  static final long DEFAULT_SNAPSHOT_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+  private final Path directory;
+  private final StubPostTableImpl postTable;
+  private final StubCommentTableImpl commentTable;
+  private final WriteAheadLog log;
+  private final ScheduledExecutorService snapshotter;
+  private final long recoveryMillis;
+  private final long replayedRecords;
+
+  private DurableStore(
+      Path directory,
+      StubPostTableImpl postTable,
+      StubCommentTableImpl commentTable,
+      WriteAheadLog log,
+      long snapshotIntervalMillis,
+      long recoveryMillis,
+      long replayedRecords) {
+    this.directory = directory;
+    this.postTable = postTable;
+    this.commentTable = commentTable;
+    this.log = log;
+    this.recoveryMillis = recoveryMillis;
+    this.replayedRecords = replayedRecords;
+
+    this.snapshotter =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "snapshotter");
+              thread.setDaemon(true);
+              return thread;
+            });
+    this.snapshotter.scheduleWithFixedDelay(
+        this::snapshotQuietly,
+        snapshotIntervalMillis,
+        snapshotIntervalMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Open the store configured in the given properties. These are:
+   *
+   * <ul>
+   *   <li>{@code memory.directory}: Where to keep the log and snapshots (required).
+   *   <li>{@code memory.fsync}: The {@link FsyncPolicy}, {@code always} by default.
+   *   <li>{@code memory.fsync.interval.millis}: How often to force the log under {@code interval}.
+   *   <li>{@code memory.snapshot.interval.millis}: How often to take a snapshot.
+   * </ul>
+   *
+   * @param properties The properties.
+   * @param postTable An empty post table to recover into.
+   * @param commentTable An empty comment table to recover into.
+   * @return The open store.
+   * @throws IllegalStateException If the store can't be recovered.
+   * @see #open(Path, FsyncPolicy, long, long, StubPostTableImpl, StubCommentTableImpl)
+   */
+  public static DurableStore fromProperties(
+      Properties properties, StubPostTableImpl postTable, StubCommentTableImpl commentTable) {
+    String directory = properties.getProperty("memory.directory");
+    if (directory == null) {
+      throw new IllegalArgumentException("memory.directory must be set");
+    }
+    return open(
+        Paths.get(directory.trim()),
+        FsyncPolicy.fromName(properties.getProperty("memory.fsync", "always")),
+        Long.parseLong(
+            properties
+                .getProperty(
+                    "memory.fsync.interval.millis", String.valueOf(DEFAULT_FSYNC_INTERVAL_MILLIS))
+                .trim()),
+        Long.parseLong(
+            properties
+                .getProperty(
+                    "memory.snapshot.interval.millis",
+                    String.valueOf(DEFAULT_SNAPSHOT_INTERVAL_MILLIS))
+                .trim()),
+        postTable,
+        commentTable);
+  }
+
+  /**
+   * Recover the tables from the given directory, and then log every change made to them from now
+   * on.
+   *
+   * @param directory Where to keep the log and snapshots. It's created if it doesn't exist.
+   * @param policy When to force the log to disk.
+   * @param fsyncIntervalMillis How often to force the log under {@link FsyncPolicy#INTERVAL}.
+   * @param snapshotIntervalMillis How often to take a snapshot.
+   * @param postTable An empty post table to recover into.
+   * @param commentTable An empty comment table to recover into.
+   * @return The open store.
+   * @throws IllegalStateException If the store can't be recovered.
+   */
+  public static DurableStore open(
+      Path directory,
+      FsyncPolicy policy,
+      long fsyncIntervalMillis,
+      long snapshotIntervalMillis,
+      StubPostTableImpl postTable,
+      StubCommentTableImpl commentTable) {
+    try {
+      long start = System.nanoTime();
+      Files.createDirectories(directory);
+
+      // Load the newest snapshot, if there is one.
+      long firstSegment = 0;
+      List<Path> snapshots = list(directory, SnapshotFile::segmentNumber);
+      if (!snapshots.isEmpty()) {
+        Path latest = snapshots.get(snapshots.size() - 1);
+        SnapshotFile.read(latest, postTable, commentTable);
+        firstSegment = SnapshotFile.segmentNumber(latest);
+      }
+
+      // Then replay everything logged since.
+      long replayed = 0;
+      long lastSegment = firstSegment - 1;
+      for (Path segment : list(directory, WriteAheadLog::segmentNumber)) {
+        long number = WriteAheadLog.segmentNumber(segment);
+        if (number >= firstSegment) {
+          replayed += WriteAheadLog.replay(segment, postTable, commentTable);
+        }
+        lastSegment = Math.max(lastSegment, number);
+      }
+      long recoveryMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+      // Always start a fresh segment, rather than appending after a record we may have only
+      // written part of before a crash.
+      WriteAheadLog log =
+          new WriteAheadLog(directory, lastSegment + 1, policy, fsyncIntervalMillis);
+      postTable.addMutationListener(log);
+      commentTable.addMutationListener(log);
+
+      return new DurableStore(
+          directory,
+          postTable,
+          commentTable,
+          log,
+          snapshotIntervalMillis,
+          recoveryMillis,
+          replayed);
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not recover the in-memory store in " + directory, e);
+    }
+  }
+
+  /**
+   * List the files in the directory that the given function gives a number to, in order of that
+   * number.
+   *
+   * @param directory The directory.
+   * @param numbering Gives each file's number, or -1 for files that should be left out.
+   * @return The files.
+   * @throws IOException If the directory can't be listed.
+   */
+  private static List<Path> list(Path directory, ToLongFunction<Path> numbering)
+      throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files
+          .filter(file -> numbering.applyAsLong(file) >= 0)
+          .sorted(Comparator.comparingLong(numbering))
+          .collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * Take a snapshot of the tables, and delete the log segments and snapshots it makes unnecessary.
+   * The tables can keep being used while this happens.
+   *
+   * @throws IllegalStateException If the snapshot can't be written.
+   */
+  public synchronized void snapshot() {
+    // Everything logged before the roll is in an older segment, and has already been applied to the
+    // tables, so the snapshot will include it.
+    long segment = log.roll();
+    try {
+      SnapshotFile.write(SnapshotFile.path(directory, segment), postTable, commentTable);
+
+      // Now that the snapshot is safely on disk, we don't need anything older than it.
+      for (Path old : list(directory, WriteAheadLog::segmentNumber)) {
+        if (WriteAheadLog.segmentNumber(old) < segment) {
+          Files.delete(old);
+        }
+      }
+      for (Path old : list(directory, SnapshotFile::segmentNumber)) {
+        if (SnapshotFile.segmentNumber(old) < segment) {
+          Files.delete(old);
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not write a snapshot to " + directory, e);
+    }
+  }
+
+  /** Take a snapshot from the background thread, where there's no caller to throw to. */
+  private void snapshotQuietly() {
+    try {
+      snapshot();
+    } catch (RuntimeException e) {
+      logger.error("Snapshot failed", e);
+    }
+  }
+
+  /** @return How long it took to load the snapshot and replay the log on startup. */
+  public long getRecoveryMillis() {
+    return recoveryMillis;
+  }
+
+  /** @return How many log records were replayed on startup. */
+  public long getReplayedRecords() {
+    return replayedRecords;
+  }
+
+  /** Stop taking snapshots, and write out and close the log. */
+  @Override
+  public void close() {
+    snapshotter.shutdownNow();
+    log.close();
+  }
+}
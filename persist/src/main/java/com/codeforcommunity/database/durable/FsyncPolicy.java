@@ -0,0 +1,37 @@
+package com.codeforcommunity.database.durable;
+
+import java.util.Locale;
+
+/**
+ * When the {@link WriteAheadLog} forces what it has written out to the disk. Until a write is
+ * forced, it may only be in the operating system's cache and can be lost if the machine (not just
+ * our program) crashes.
+ */
+public enum FsyncPolicy {
+  /**
+   * Every change waits until it has been forced to disk before it's reported as done. Changes that
+   * arrive together share one force (a 'group commit'), so this is much cheaper than it sounds.
+   */
+  ALWAYS,
+  /**
+   * Changes are written and forced in the background every so often, and don't wait for it. A crash
+   * can lose the last interval's worth of changes.
+   */
+  INTERVAL,
+  /**
+   * Changes are written in the background but never forced, so the operating system decides when
+   * they reach the disk. A crash of our program loses nothing, but a crash of the machine can.
+   */
+  NEVER;
+
+  /**
+   * Get the policy with the given name, ignoring case.
+   *
+   * @param name The name, like "always".
+   * @return The policy.
+   * @throws IllegalArgumentException If no policy has that name.
+   */
+  public static FsyncPolicy fromName(String name) {
+    return valueOf(name.trim().toUpperCase(Locale.ROOT));
+  }
+}
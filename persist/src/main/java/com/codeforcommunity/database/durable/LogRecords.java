@@ -0,0 +1,125 @@
+package com.codeforcommunity.database.durable;
+
+import com.codeforcommunity.database.records.CommentRecord;
+import com.codeforcommunity.database.records.PostRecord;
+import com.codeforcommunity.database.tableImpl.StubCommentTableImpl;
+import com.codeforcommunity.database.tableImpl.StubPostTableImpl;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * How each change is written to (and read back from) the {@link WriteAheadLog}. Every record starts
+ * with a byte saying what kind of change it is, followed by that change's fields.
+ *
+ * <p>Replaying a record more than once has the same effect as replaying it once. Saves put back the
+ * record with its original ID, deletes ignore things that are already gone, and claps are logged as
+ * the clap count they resulted in rather than as '+1'. That lets recovery replay the log over a
+ * snapshot without knowing exactly which changes the snapshot already includes.
+ */
+final class LogRecords {
+  static final byte POST_SAVED = 1;
+  static final byte POST_DELETED = 2;
+  static final byte POST_CLAPPED = 3;
+  static final byte COMMENT_SAVED = 4;
+  static final byte COMMENT_DELETED = 5;
+  static final byte COMMENTS_DELETED_FOR_POST = 6;
+  static final byte COMMENT_CLAPPED = 7;
+
+  private LogRecords() {}
+
+  static void writePostSaved(DataOutput out, PostRecord post) throws IOException {
+    out.writeByte(POST_SAVED);
+    out.writeInt(post.getId());
+    writeString(out, post.getAuthor());
+    writeString(out, post.getTitle());
+    writeString(out, post.getBody());
+    out.writeLong(post.getDateCreatedMillis());
+  }
+
+  static void writeCommentSaved(DataOutput out, CommentRecord comment) throws IOException {
+    out.writeByte(COMMENT_SAVED);
+    out.writeInt(comment.getPostId());
+    out.writeInt(comment.getId());
+    writeString(out, comment.getAuthor());
+    writeString(out, comment.getBody());
+    out.writeLong(comment.getDateCreatedMillis());
+  }
+
+  /**
+   * Read one record and apply it to the tables.
+   *
+   * @param in Where to read the record from.
+   * @param postTable The post table to apply it to.
+   * @param commentTable The comment table to apply it to.
+   * @throws IOException If the record can't be read or is of an unknown kind.
+   */
+  static void apply(DataInput in, StubPostTableImpl postTable, StubCommentTableImpl commentTable)
+      throws IOException {
+    byte type = in.readByte();
+    switch (type) {
+      case POST_SAVED:
+        int id = in.readInt();
+        String author = readString(in);
+        String title = readString(in);
+        String body = readString(in);
+        long dateCreated = in.readLong();
+        postTable.restorePost(new PostRecord(id, author, dateCreated, title, 0, body));
+        break;
+      case POST_DELETED:
+        postTable.restoreDeletedPost(in.readInt());
+        break;
+      case POST_CLAPPED:
+        postTable.restoreClapCount(in.readInt(), in.readInt());
+        break;
+      case COMMENT_SAVED:
+        int postId = in.readInt();
+        int commentId = in.readInt();
+        String commentAuthor = readString(in);
+        String commentBody = readString(in);
+        long commentDate = in.readLong();
+        commentTable.restoreComment(
+            new CommentRecord(commentId, postId, commentAuthor, commentBody, commentDate, 0));
+        break;
+      case COMMENT_DELETED:
+        commentTable.restoreDeletedComment(in.readInt(), in.readInt());
+        break;
+      case COMMENTS_DELETED_FOR_POST:
+        commentTable.restoreDeletedCommentsForPost(in.readInt());
+        break;
+      case COMMENT_CLAPPED:
+        commentTable.restoreClapCount(in.readInt(), in.readInt(), in.readInt());
+        break;
+      default:
+        throw new IOException("Unknown log record type " + type);
+    }
+  }
+
+  /**
+   * Write a string as its length followed by its UTF-8 bytes. We don't use {@link
+   * DataOutput#writeUTF(String)} since it can't write strings longer than 64KB.
+   *
+   * @param out Where to write the string.
+   * @param value The string.
+   * @throws IOException If it can't be written.
+   */
+  static void writeString(DataOutput out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Read a string written by {@link #writeString(DataOutput, String)}.
+   *
+   * @param in Where to read the string from.
+   * @return The string.
+   * @throws IOException If it can't be read.
+   */
+  static String readString(DataInput in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
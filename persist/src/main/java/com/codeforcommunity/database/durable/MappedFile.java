@@ -0,0 +1,133 @@
+package com.codeforcommunity.database.durable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * A read-only, memory-mapped file. Mapping a file doesn't read any of it: the operating system
+ * pages in just the parts we touch, when we touch them, and can drop them again when memory is
+ * short. Opening even a huge file this way is nearly instant.
+ *
+ * <p>A single {@link MappedByteBuffer} can only cover 2GB, so bigger files are mapped in several
+ * chunks. Values that straddle two chunks are read a byte at a time.
+ *
+ * <p>Every read uses absolute positions and never changes the buffers, so any number of threads can
+ * read at once.
+ */
+final class MappedFile {
+  /** How much of the file each buffer covers. */
+  private static final int CHUNK_SIZE = 1 << 30;
+
+  private final ByteBuffer[] chunks;
+  private final long size;
+
+  private MappedFile(ByteBuffer[] chunks, long size) {
+    this.chunks = chunks;
+    this.size = size;
+  }
+
+  /**
+   * Map the given file.
+   *
+   * @param path The file.
+   * @return The mapped file.
+   * @throws IOException If the file can't be mapped.
+   */
+  static MappedFile map(Path path) throws IOException {
+    // The mapping stays valid after the channel is closed (and even after the file is deleted).
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      ByteBuffer[] chunks = new ByteBuffer[(int) ((size + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+      for (int i = 0; i < chunks.length; i++) {
+        long start = (long) i * CHUNK_SIZE;
+        chunks[i] =
+            channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK_SIZE, size - start));
+      }
+      return new MappedFile(chunks, size);
+    }
+  }
+
+  /** @return The size of the file in bytes. */
+  long size() {
+    return size;
+  }
+
+  /**
+   * @param position Where in the file to read.
+   * @return The byte there.
+   */
+  byte get(long position) {
+    return chunks[(int) (position / CHUNK_SIZE)].get((int) (position % CHUNK_SIZE));
+  }
+
+  /**
+   * @param position Where in the file to read.
+   * @return The (big-endian) int there.
+   */
+  int getInt(long position) {
+    int offset = (int) (position % CHUNK_SIZE);
+    if (offset <= CHUNK_SIZE - Integer.BYTES) {
+      return chunks[(int) (position / CHUNK_SIZE)].getInt(offset);
+    }
+    int value = 0;
+    for (int i = 0; i < Integer.BYTES; i++) {
+      value = (value << 8) | (get(position + i) & 0xFF);
+    }
+    return value;
+  }
+
+  /**
+   * @param position Where in the file to read.
+   * @return The (big-endian) long there.
+   */
+  long getLong(long position) {
+    return ((long) getInt(position) << 32) | (getInt(position + Integer.BYTES) & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Copy bytes out of the file.
+   *
+   * @param position Where in the file to start reading.
+   * @param length How many bytes to read.
+   * @return The bytes.
+   */
+  byte[] getBytes(long position, int length) {
+    byte[] bytes = new byte[length];
+    int copied = 0;
+    while (copied < length) {
+      long at = position + copied;
+      // Duplicate the buffer so that moving its position doesn't affect other threads.
+      ByteBuffer chunk = chunks[(int) (at / CHUNK_SIZE)].duplicate();
+      chunk.position((int) (at % CHUNK_SIZE));
+      int count = Math.min(length - copied, chunk.remaining());
+      chunk.get(bytes, copied, count);
+      copied += count;
+    }
+    return bytes;
+  }
+
+  /**
+   * Compute the CRC-32 checksum of part of the file, without copying it out of the mapping.
+   *
+   * @param position Where in the file to start.
+   * @param length How many bytes to check.
+   * @return The checksum.
+   */
+  int crc32(long position, long length) {
+    CRC32 crc = new CRC32();
+    long end = position + length;
+    while (position < end) {
+      ByteBuffer chunk = chunks[(int) (position / CHUNK_SIZE)].duplicate();
+      chunk.position((int) (position % CHUNK_SIZE));
+      chunk.limit((int) Math.min(chunk.limit(), chunk.position() + (end - position)));
+      position += chunk.remaining();
+      crc.update(chunk);
+    }
+    return (int) crc.getValue();
+  }
+}
@@ -0,0 +1,98 @@
+package com.codeforcommunity.database.durable;
+
+import com.codeforcommunity.database.table.ILazyRecords;
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+
+/**
+ * Records in a memory-mapped {@link SnapshotFile}, found through one of its indexes and decoded on
+ * demand.
+ *
+ * @param <T> The type of record.
+ */
+abstract class MappedRecords<T> implements ILazyRecords<T> {
+  /** Each index entry is an int key and a long offset. */
+  private static final int ENTRY_SIZE = Integer.BYTES + Long.BYTES;
+
+  private final Path path;
+  private final MappedFile file;
+  private final long indexOffset;
+  private final int size;
+
+  /**
+   * @param path The snapshot's path, for error messages.
+   * @param file The mapped snapshot.
+   * @param indexOffset Where the index of these records starts.
+   * @param size How many entries the index has.
+   */
+  MappedRecords(Path path, MappedFile file, long indexOffset, int size) {
+    this.path = path;
+    this.file = file;
+    this.indexOffset = indexOffset;
+    this.size = size;
+  }
+
+  /**
+   * Decode a record's contents.
+   *
+   * @param key The record's key.
+   * @param in The record's contents.
+   * @return The record.
+   * @throws IOException If the contents can't be decoded.
+   */
+  abstract T decode(int key, DataInput in) throws IOException;
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public int keyAt(int index) {
+    return file.getInt(indexOffset + (long) index * ENTRY_SIZE);
+  }
+
+  @Override
+  public int indexOf(int key) {
+    // The index is sorted by key, so binary search it.
+    int low = 0;
+    int high = size - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int middleKey = keyAt(middle);
+      if (middleKey < key) {
+        low = middle + 1;
+      } else if (middleKey > key) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public T load(int index) {
+    long offset = file.getLong(indexOffset + (long) index * ENTRY_SIZE + Integer.BYTES);
+    try {
+      int length = file.getInt(offset);
+      int expectedCrc = file.getInt(offset + Integer.BYTES);
+      byte[] contents = file.getBytes(offset + 2 * Integer.BYTES, length);
+
+      CRC32 crc = new CRC32();
+      crc.update(contents);
+      if ((int) crc.getValue() != expectedCrc) {
+        throw new IOException("its checksum doesn't match");
+      }
+      return decode(keyAt(index), new DataInputStream(new ByteArrayInputStream(contents)));
+    } catch (IOException | RuntimeException e) {
+      // Bad offsets or lengths show up as IndexOutOfBoundsExceptions and the like.
+      throw new IllegalStateException(
+          "The record at " + offset + " of " + path + " is damaged: " + e.getMessage(), e);
+    }
+  }
+}
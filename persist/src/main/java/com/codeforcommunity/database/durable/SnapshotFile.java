@@ -0,0 +1,280 @@
+package com.codeforcommunity.database.durable;
+
+import com.codeforcommunity.database.records.CommentRecord;
+import com.codeforcommunity.database.records.PostRecord;
+import com.codeforcommunity.database.tableImpl.StubCommentTableImpl;
+import com.codeforcommunity.database.tableImpl.StubPostTableImpl;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Reads and writes snapshots of the in-memory tables. A snapshot holds every post and comment,
+ * their clap counts, and the next IDs to hand out.
+ *
+ * <p>Snapshots are built to be loaded without reading them. The file is memory-mapped, and each
+ * post (and each post's comments) is only decoded the first time a request needs it, so a node can
+ * start serving requests a few milliseconds after it starts no matter how much data it has. The
+ * file is laid out like this, with every number big-endian:
+ *
+ * <pre>
+ *   header:        MAGIC, VERSION
+ *   records:       [length, CRC-32 of the rest, post or post's comments] ...
+ *   post index:    [post ID, offset of the post's record] ..., sorted by post ID
+ *   comment index: [post ID, offset of the post's comments' record] ..., sorted by post ID
+ *   footer:        post index offset, post count, comment index offset, comment index count,
+ *                  next post ID, CRC-32 of both indexes and the footer before it, MAGIC
+ * </pre>
+ *
+ * <p>The footer is at a fixed distance from the end, so loading only has to read it and check the
+ * indexes' checksum. Each record's checksum is checked when the record is decoded.
+ *
+ * <p>A snapshot is named after the first log segment that isn't included in it. To recover, we load
+ * the snapshot and then replay that segment and every one after it.
+ */
+final class SnapshotFile {
+  /** Written at the start of every snapshot, so we never try to load some other kind of file. */
+  private static final int MAGIC = 0x4A534E50;
+
+  private static final int VERSION = 3;
+
+  private static final int HEADER_SIZE = 2 * Integer.BYTES;
+  /** Every field of the footer is an int except for the two offsets. */
+  private static final int FOOTER_SIZE = 2 * Long.BYTES + 5 * Integer.BYTES;
+  /** Each index entry is an int ID and a long offset. */
+  private static final int INDEX_ENTRY_SIZE = Integer.BYTES + Long.BYTES;
+
+  private SnapshotFile() {}
+
+  static Path path(Path directory, long segmentNumber) {
+    return directory.resolve(String.format("snapshot-%020d.snap", segmentNumber));
+  }
+
+  /**
+   * Get the segment number of a snapshot from its path.
+   *
+   * @param path The path.
+   * @return The number of the first segment not included in the snapshot, or -1 if the path isn't a
+   *     snapshot.
+   */
+  static long segmentNumber(Path path) {
+    String name = path.getFileName().toString();
+    if (!name.matches("snapshot-\\d{20}\\.snap")) {
+      return -1;
+    }
+    return Long.parseLong(name.substring(9, 29));
+  }
+
+  /**
+   * Write a snapshot of the tables. It's written from start to end in one pass, to a temporary file
+   * which is renamed once it's complete, so a crash part way through never leaves a partial
+   * snapshot behind.
+   *
+   * <p>The tables can keep changing while the snapshot is written, so it may include some changes
+   * made after the log was rolled. That's fine, since replaying those changes again is harmless
+   * (see {@link LogRecords}).
+   *
+   * @param path Where to write the snapshot.
+   * @param postTable The post table.
+   * @param commentTable The comment table.
+   * @throws IOException If the snapshot can't be written.
+   */
+  static void write(Path path, StubPostTableImpl postTable, StubCommentTableImpl commentTable)
+      throws IOException {
+    Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+    // Get the next post ID before the posts, so it's past every post we write.
+    int nextPostId = postTable.getNextPostId();
+    // The table hands out its posts in order of ID already.
+    List<PostRecord> posts = postTable.getAllPosts();
+    List<Integer> postIds = commentTable.getPostIdsWithComments();
+    postIds.sort(Comparator.naturalOrder());
+
+    CRC32 indexCrc = new CRC32();
+    try (OutputStream file = Files.newOutputStream(temporary);
+        DataOutputStream out =
+            new DataOutputStream(
+                new CheckedOutputStream(new BufferedOutputStream(file), indexCrc))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+
+      RecordWriter records = new RecordWriter(out, HEADER_SIZE);
+      long[] postOffsets = new long[posts.size()];
+      for (int i = 0; i < posts.size(); i++) {
+        PostRecord post = posts.get(i);
+        DataOutputStream record = records.start();
+        record.writeInt(post.getClapCount());
+        LogRecords.writeString(record, post.getAuthor());
+        LogRecords.writeString(record, post.getTitle());
+        LogRecords.writeString(record, post.getBody());
+        record.writeLong(post.getDateCreatedMillis());
+        postOffsets[i] = records.finish();
+      }
+
+      long[] commentOffsets = new long[postIds.size()];
+      for (int i = 0; i < postIds.size(); i++) {
+        int postId = postIds.get(i);
+        List<CommentRecord> comments = commentTable.getByPostId(postId);
+        DataOutputStream record = records.start();
+        record.writeInt(commentTable.getNextCommentId(postId));
+        record.writeInt(comments.size());
+        for (CommentRecord comment : comments) {
+          record.writeInt(comment.getId());
+          record.writeInt(comment.getClapCount());
+          LogRecords.writeString(record, comment.getAuthor());
+          LogRecords.writeString(record, comment.getBody());
+          record.writeLong(comment.getDateCreatedMillis());
+        }
+        commentOffsets[i] = records.finish();
+      }
+
+      // The checksum covers everything from here up to the checksum itself.
+      indexCrc.reset();
+      long postIndexOffset = records.position();
+      for (int i = 0; i < posts.size(); i++) {
+        out.writeInt(posts.get(i).getId());
+        out.writeLong(postOffsets[i]);
+      }
+      long commentIndexOffset = postIndexOffset + (long) posts.size() * INDEX_ENTRY_SIZE;
+      for (int i = 0; i < postIds.size(); i++) {
+        out.writeInt(postIds.get(i));
+        out.writeLong(commentOffsets[i]);
+      }
+
+      out.writeLong(postIndexOffset);
+      out.writeInt(posts.size());
+      out.writeLong(commentIndexOffset);
+      out.writeInt(postIds.size());
+      out.writeInt(nextPostId);
+      out.writeInt((int) indexCrc.getValue());
+      out.writeInt(MAGIC);
+    }
+
+    // Make sure the snapshot is on disk before it replaces anything.
+    try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+      channel.force(true);
+    }
+    Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Writes length- and checksum-prefixed records, keeping track of where in the file each one goes.
+   */
+  private static class RecordWriter {
+    private final DataOutputStream out;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private final DataOutputStream record = new DataOutputStream(buffer);
+    private long position;
+
+    RecordWriter(DataOutputStream out, long position) {
+      this.out = out;
+      this.position = position;
+    }
+
+    /** @return Where to write the next record's contents. */
+    DataOutputStream start() {
+      buffer.reset();
+      return record;
+    }
+
+    /**
+     * Write out the record's length, checksum and contents.
+     *
+     * @return The offset of the record in the file.
+     * @throws IOException If it can't be written.
+     */
+    long finish() throws IOException {
+      CRC32 crc = new CRC32();
+      crc.update(buffer.toByteArray());
+      out.writeInt(buffer.size());
+      out.writeInt((int) crc.getValue());
+      buffer.writeTo(out);
+
+      long offset = position;
+      position += 2 * Integer.BYTES + buffer.size();
+      return offset;
+    }
+
+    /** @return Where in the file the next thing written will go. */
+    long position() {
+      return position;
+    }
+  }
+
+  /**
+   * Load a snapshot into the given (empty) tables. This only checks the snapshot's footer and
+   * indexes; the posts and comments are loaded as the tables need them.
+   *
+   * @param path The snapshot's path.
+   * @param postTable The post table to load into.
+   * @param commentTable The comment table to load into.
+   * @throws IOException If the snapshot can't be read or is damaged.
+   */
+  static void read(Path path, StubPostTableImpl postTable, StubCommentTableImpl commentTable)
+      throws IOException {
+    MappedFile file = MappedFile.map(path);
+    long size = file.size();
+    if (size < HEADER_SIZE + FOOTER_SIZE
+        || file.getInt(0) != MAGIC
+        || file.getInt(Integer.BYTES) != VERSION
+        || file.getInt(size - Integer.BYTES) != MAGIC) {
+      throw new IOException(path + " is not a snapshot this version can read");
+    }
+
+    long footer = size - FOOTER_SIZE;
+    long postIndexOffset = file.getLong(footer);
+    int postCount = file.getInt(footer + Long.BYTES);
+    long commentIndexOffset = file.getLong(footer + Long.BYTES + Integer.BYTES);
+    int commentCount = file.getInt(footer + 2 * Long.BYTES + Integer.BYTES);
+    int nextPostId = file.getInt(footer + 2 * Long.BYTES + 2 * Integer.BYTES);
+    long checked = footer + 2 * Long.BYTES + 3 * Integer.BYTES - postIndexOffset;
+    if (postIndexOffset < HEADER_SIZE
+        || checked < 0
+        || file.crc32(postIndexOffset, checked) != file.getInt(postIndexOffset + checked)) {
+      throw new IOException(path + " is damaged (its checksum doesn't match)");
+    }
+
+    postTable.restoreNextPostId(nextPostId);
+    postTable.loadLazily(
+        new MappedRecords<PostRecord>(path, file, postIndexOffset, postCount) {
+          @Override
+          PostRecord decode(int id, DataInput in) throws IOException {
+            int clapCount = in.readInt();
+            String author = LogRecords.readString(in);
+            String title = LogRecords.readString(in);
+            String body = LogRecords.readString(in);
+            long dateCreated = in.readLong();
+            return new PostRecord(id, author, dateCreated, title, clapCount, body);
+          }
+        });
+    commentTable.loadLazily(
+        new MappedRecords<CommentRecord[]>(path, file, commentIndexOffset, commentCount) {
+          @Override
+          CommentRecord[] decode(int postId, DataInput in) throws IOException {
+            // Each post's comments are laid out by ID, just like the table keeps them.
+            CommentRecord[] byId = new CommentRecord[in.readInt()];
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+              int id = in.readInt();
+              int clapCount = in.readInt();
+              String author = LogRecords.readString(in);
+              String body = LogRecords.readString(in);
+              long dateCreated = in.readLong();
+              byId[id] = new CommentRecord(id, postId, author, body, dateCreated, clapCount);
+            }
+            return byId;
+          }
+        });
+  }
+}
@@ -0,0 +1,429 @@
+package com.codeforcommunity.database.durable;
+
+import com.codeforcommunity.database.records.CommentRecord;
+import com.codeforcommunity.database.records.PostRecord;
+import com.codeforcommunity.database.table.IMutationListener;
+import com.codeforcommunity.database.tableImpl.StubCommentTableImpl;
+import com.codeforcommunity.database.tableImpl.StubPostTableImpl;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A write-ahead log for the in-memory tables. Every change to the tables is appended to the log
+ * before it's reported as done, so after a crash the tables can be rebuilt by replaying the log
+ * (see {@link DurableStore}).
+ *
+ * <p>Changes are first added to an in-memory buffer, and a background thread writes the buffer out
+ * and forces it to disk (depending on the {@link FsyncPolicy}). Forcing to disk takes milliseconds,
+ * so if every change did its own we'd be limited to a few hundred changes a second. Instead, every
+ * change that arrives while one force is happening is written and forced together by the next one.
+ * This is called group commit.
+ *
+ * <p>The log is split into numbered segment files. {@link #roll()} starts a new segment, so that
+ * once a snapshot covers everything before it, the older segments can be deleted.
+ *
+ * <p>Each record is written as its length, a CRC32 checksum, and then its contents (see {@link
+ * LogRecords}). If the program dies while writing a record, the checksum lets us spot the partial
+ * record on replay and ignore it.
+ */
+public class WriteAheadLog implements IMutationListener, AutoCloseable {
+  private static final Logger logger = LogManager.getLogger(WriteAheadLog.class);
+
+  /** Each record's length and checksum come before it. */
+  private static final int HEADER_BYTES = 8;
+
+  private final Path directory;
+  private final FsyncPolicy policy;
+  private final long fsyncIntervalMillis;
+  private final Thread flusher;
+
+  /** Guards everything below it. */
+  private final Object lock = new Object();
+  /** Records that haven't been handed to the flusher yet. */
+  private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+  /** How many records have been appended, which is also the number of the last one. */
+  private long appendedCount = 0;
+  /**
+   * The number of the last record that has been written out (and forced, if the policy says so).
+   */
+  private long flushedCount = 0;
+  /** The number of the segment being written to. */
+  private long segmentNumber;
+  /** Whether {@link #roll()} is waiting for the flusher to start a new segment. */
+  private boolean rollRequested = false;
+
+  private boolean running = true;
+  /** Why the flusher stopped, if it did. Once this is set, every change fails. */
+  private IOException failure;
+
+  /** The number of the last record appended by each thread, for {@link #mutationFinished()}. */
+  private final ThreadLocal<Long> lastAppended = ThreadLocal.withInitial(() -> 0L);
+
+  /**
+   * Open a new log, which starts writing to a new segment with the given number.
+   *
+   * @param directory The directory the segments are kept in.
+   * @param segmentNumber The number of the first segment to write. It must be higher than any
+   *     existing segment's.
+   * @param policy When to force writes to disk.
+   * @param fsyncIntervalMillis How often to write and force the log under {@link
+   *     FsyncPolicy#INTERVAL}.
+   * @throws IOException If the segment can't be created.
+   */
+  public WriteAheadLog(
+      Path directory, long segmentNumber, FsyncPolicy policy, long fsyncIntervalMillis)
+      throws IOException {
+    this.directory = directory;
+    this.policy = policy;
+    this.fsyncIntervalMillis = fsyncIntervalMillis;
+    this.segmentNumber = segmentNumber;
+
+    FileChannel channel = openSegment(segmentNumber);
+    this.flusher = new Thread(() -> flushLoop(channel), "write-ahead-log");
+    // Don't keep the program running just because this thread is.
+    this.flusher.setDaemon(true);
+    this.flusher.start();
+  }
+
+  /**
+   * Get the path of the segment with the given number.
+   *
+   * @param directory The directory the segments are kept in.
+   * @param segmentNumber The segment's number.
+   * @return The path.
+   */
+  static Path segmentPath(Path directory, long segmentNumber) {
+    // Zero-padding the number makes the files sort in order by name.
+    return directory.resolve(String.format("wal-%020d.log", segmentNumber));
+  }
+
+  /**
+   * Get the number of a segment from its path.
+   *
+   * @param path The path.
+   * @return The segment's number, or -1 if the path isn't a segment.
+   */
+  static long segmentNumber(Path path) {
+    String name = path.getFileName().toString();
+    if (!name.matches("wal-\\d{20}\\.log")) {
+      return -1;
+    }
+    return Long.parseLong(name.substring(4, 24));
+  }
+
+  private FileChannel openSegment(long segmentNumber) throws IOException {
+    return FileChannel.open(
+        segmentPath(directory, segmentNumber),
+        StandardOpenOption.CREATE_NEW,
+        StandardOpenOption.WRITE);
+  }
+
+  @Override
+  public void postSaved(PostRecord post) {
+    append(out -> LogRecords.writePostSaved(out, post));
+  }
+
+  @Override
+  public void postDeleted(int postId) {
+    append(
+        out -> {
+          out.writeByte(LogRecords.POST_DELETED);
+          out.writeInt(postId);
+        });
+  }
+
+  @Override
+  public void postClapped(int postId, int clapCount) {
+    append(
+        out -> {
+          out.writeByte(LogRecords.POST_CLAPPED);
+          out.writeInt(postId);
+          out.writeInt(clapCount);
+        });
+  }
+
+  @Override
+  public void commentSaved(CommentRecord comment) {
+    append(out -> LogRecords.writeCommentSaved(out, comment));
+  }
+
+  @Override
+  public void commentDeleted(int postId, int commentId) {
+    append(
+        out -> {
+          out.writeByte(LogRecords.COMMENT_DELETED);
+          out.writeInt(postId);
+          out.writeInt(commentId);
+        });
+  }
+
+  @Override
+  public void commentsDeletedForPost(int postId) {
+    append(
+        out -> {
+          out.writeByte(LogRecords.COMMENTS_DELETED_FOR_POST);
+          out.writeInt(postId);
+        });
+  }
+
+  @Override
+  public void commentClapped(int postId, int commentId, int clapCount) {
+    append(
+        out -> {
+          out.writeByte(LogRecords.COMMENT_CLAPPED);
+          out.writeInt(postId);
+          out.writeInt(commentId);
+          out.writeInt(clapCount);
+        });
+  }
+
+  /** Something that writes the contents of a record. */
+  @FunctionalInterface
+  private interface RecordWriter {
+    void write(DataOutputStream out) throws IOException;
+  }
+
+  /**
+   * Add a record to the pending buffer. This doesn't do any I/O, so it's quick enough to call while
+   * the tables hold their locks.
+   *
+   * @param writer Writes the contents of the record.
+   * @throws IllegalStateException If the log has failed or been closed.
+   */
+  private void append(RecordWriter writer) {
+    ByteArrayOutputStream record = new ByteArrayOutputStream();
+    try {
+      writer.write(new DataOutputStream(record));
+    } catch (IOException e) {
+      // Writing to a ByteArrayOutputStream never actually fails.
+      throw new IllegalStateException(e);
+    }
+    byte[] contents = record.toByteArray();
+    CRC32 crc = new CRC32();
+    crc.update(contents);
+
+    synchronized (lock) {
+      checkUsable();
+      DataOutputStream out = new DataOutputStream(pending);
+      try {
+        out.writeInt(contents.length);
+        out.writeInt((int) crc.getValue());
+        out.write(contents);
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+      appendedCount++;
+      lastAppended.set(appendedCount);
+      if (policy != FsyncPolicy.INTERVAL) {
+        // Wake the flusher up. Under INTERVAL it wakes up on its own.
+        lock.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Under {@link FsyncPolicy#ALWAYS}, wait until everything this thread has appended has been
+   * forced to disk.
+   */
+  @Override
+  public void mutationFinished() {
+    if (policy != FsyncPolicy.ALWAYS) {
+      return;
+    }
+    long record = lastAppended.get();
+    synchronized (lock) {
+      while (flushedCount < record) {
+        checkUsable();
+        try {
+          lock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IllegalStateException("Interrupted waiting for the write-ahead log", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Start a new segment. Every record appended before this is called ends up in an older segment.
+   *
+   * @return The number of the new segment.
+   * @throws IllegalStateException If the log has failed or been closed.
+   */
+  public long roll() {
+    synchronized (lock) {
+      checkUsable();
+      rollRequested = true;
+      lock.notifyAll();
+      while (rollRequested) {
+        checkUsable();
+        try {
+          lock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IllegalStateException("Interrupted waiting for the write-ahead log", e);
+        }
+      }
+      return segmentNumber;
+    }
+  }
+
+  /** Must hold {@link #lock}. */
+  private void checkUsable() {
+    if (failure != null) {
+      throw new IllegalStateException("The write-ahead log has failed", failure);
+    }
+    if (!running) {
+      throw new IllegalStateException("The write-ahead log has been closed");
+    }
+  }
+
+  /**
+   * The loop run by the background thread. It's the only thing that ever touches the segment files
+   * once the log is open, so the records always reach them in the order they were appended.
+   *
+   * @param channel The segment to start writing to.
+   */
+  private void flushLoop(FileChannel channel) {
+    try {
+      while (true) {
+        byte[] batch;
+        long batchEnd;
+        boolean roll;
+        boolean stop;
+        synchronized (lock) {
+          if (policy == FsyncPolicy.INTERVAL) {
+            // Let changes pile up for an interval, unless something needs us sooner.
+            if (running && !rollRequested) {
+              lock.wait(fsyncIntervalMillis);
+            }
+          } else {
+            while (running && !rollRequested && pending.size() == 0) {
+              lock.wait();
+            }
+          }
+          batch = pending.toByteArray();
+          pending = new ByteArrayOutputStream();
+          batchEnd = appendedCount;
+          roll = rollRequested;
+          stop = !running;
+        }
+
+        // Do the slow part without holding the lock, so that changes can keep being appended.
+        write(channel, batch);
+        if (policy != FsyncPolicy.NEVER || roll || stop) {
+          // Only force the file's contents, not its metadata (like when it was last changed).
+          channel.force(false);
+        }
+        long newSegment = -1;
+        if (roll) {
+          channel.close();
+          newSegment = segmentNumber + 1;
+          channel = openSegment(newSegment);
+        }
+
+        synchronized (lock) {
+          flushedCount = batchEnd;
+          if (roll) {
+            segmentNumber = newSegment;
+            rollRequested = false;
+          }
+          lock.notifyAll();
+        }
+        if (stop) {
+          channel.close();
+          return;
+        }
+      }
+    } catch (IOException e) {
+      synchronized (lock) {
+        failure = e;
+        lock.notifyAll();
+      }
+      logger.error("The write-ahead log failed", e);
+    } catch (InterruptedException e) {
+      synchronized (lock) {
+        failure = new IOException("The write-ahead log was interrupted", e);
+        lock.notifyAll();
+      }
+    }
+  }
+
+  private static void write(FileChannel channel, byte[] bytes) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  /**
+   * Write out and force everything that's been appended, then stop. Changes made after this will
+   * fail.
+   */
+  @Override
+  public void close() {
+    synchronized (lock) {
+      if (!running) {
+        return;
+      }
+      running = false;
+      lock.notifyAll();
+    }
+    try {
+      flusher.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Replay the records in a segment onto the tables. If the segment ends with a partly written or
+   * damaged record (as it will if we crashed while writing it), replay stops there.
+   *
+   * @param segment The segment's path.
+   * @param postTable The post table to apply the records to.
+   * @param commentTable The comment table to apply the records to.
+   * @return The number of records replayed.
+   * @throws IOException If the segment can't be read.
+   */
+  static long replay(Path segment, StubPostTableImpl postTable, StubCommentTableImpl commentTable)
+      throws IOException {
+    long replayed = 0;
+    long size = Files.size(segment);
+    try (InputStream file = Files.newInputStream(segment);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(file))) {
+      byte[] header = new byte[HEADER_BYTES];
+      while (in.readNBytes(header, 0, HEADER_BYTES) == HEADER_BYTES) {
+        ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+        int length = headerBuffer.getInt();
+        int expectedCrc = headerBuffer.getInt();
+        if (length <= 0 || length > size) {
+          break;
+        }
+        byte[] contents = in.readNBytes(length);
+        CRC32 crc = new CRC32();
+        crc.update(contents);
+        if (contents.length < length || (int) crc.getValue() != expectedCrc) {
+          break;
+        }
+        LogRecords.apply(
+            new DataInputStream(new ByteArrayInputStream(contents)), postTable, commentTable);
+        replayed++;
+      }
+    }
+    return replayed;
+  }
+}
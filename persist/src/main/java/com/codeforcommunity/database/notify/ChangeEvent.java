@@ -0,0 +1,93 @@
+package com.codeforcommunity.database.notify;
+
+import java.util.Locale;
+
+/**
+ * Describes a single change made to the posts or comments tables by any node. These are published
+ * by the database table implementations as part of each write, and delivered to every node through
+ * a {@code ChangeListenerDBImpl} so that nodes can drop or patch whatever they have cached.
+ */
+public class ChangeEvent {
+  /** The kinds of changes that are published. */
+  public enum Type {
+    POST_CREATED,
+    POST_DELETED,
+    POST_CLAPPED,
+    COMMENT_CREATED,
+    COMMENT_DELETED,
+    COMMENT_CLAPPED,
+    /** Every comment on a post was deleted. */
+    COMMENTS_DELETED,
+    /**
+     * Changes may have been missed (for example, because the listener lost its connection), so
+     * anything cached could be stale. Never published by a write; only raised by the listener.
+     */
+    RESYNC;
+
+    /**
+     * Get the name this type is published under, e.g. {@code post_created}.
+     *
+     * @return The lower-case name.
+     */
+    public String payloadName() {
+      return this.name().toLowerCase(Locale.ROOT);
+    }
+  }
+
+  /** The value of {@link #getCommentId()} for events that aren't about a single comment. */
+  public static final int NO_ID = -1;
+
+  private final Type type;
+  private final int postId;
+  private final int commentId;
+
+  public ChangeEvent(Type type, int postId, int commentId) {
+    this.type = type;
+    this.postId = postId;
+    this.commentId = commentId;
+  }
+
+  public ChangeEvent(Type type, int postId) {
+    this(type, postId, NO_ID);
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  /** @return The ID of the post that changed, or {@link #NO_ID} for a {@link Type#RESYNC}. */
+  public int getPostId() {
+    return postId;
+  }
+
+  /** @return The ID of the comment that changed, or {@link #NO_ID} if it's not about a comment. */
+  public int getCommentId() {
+    return commentId;
+  }
+
+  /**
+   * Parse a notification payload of the form {@code <type>:<postId>[:<commentId>]}, e.g. {@code
+   * comment_clapped:12:40}.
+   *
+   * @param payload The payload published with the notification.
+   * @return The parsed event.
+   * @throws IllegalArgumentException If the payload isn't in the expected format.
+   */
+  public static ChangeEvent fromPayload(String payload) {
+    String[] parts = payload.split(":");
+    try {
+      Type type = Type.valueOf(parts[0].toUpperCase(Locale.ROOT));
+      int postId = Integer.parseInt(parts[1]);
+      int commentId = parts.length > 2 ? Integer.parseInt(parts[2]) : NO_ID;
+      return new ChangeEvent(type, postId, commentId);
+    } catch (RuntimeException e) {
+      throw new IllegalArgumentException("Malformed change notification: " + payload, e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    String payload = type.payloadName() + ":" + postId;
+    return commentId == NO_ID ? payload : payload + ":" + commentId;
+  }
+}
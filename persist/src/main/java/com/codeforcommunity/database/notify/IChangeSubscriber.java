@@ -0,0 +1,16 @@
+package com.codeforcommunity.database.notify;
+
+/**
+ * Something that wants to hear about {@link ChangeEvent}s, usually so it can invalidate cached
+ * data. Subscribers are called on the listener's thread, so they should return quickly.
+ */
+@FunctionalInterface
+public interface IChangeSubscriber {
+
+  /**
+   * Called once for every change that was published.
+   *
+   * @param event The change.
+   */
+  void onChange(ChangeEvent event);
+}
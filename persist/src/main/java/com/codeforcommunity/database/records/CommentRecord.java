@@ -1,16 +1,32 @@
 package com.codeforcommunity.database.records;
 
+import com.codeforcommunity.database.collections.StringPool;
+import com.codeforcommunity.database.compression.BodyCodec;
+
 /**
  * This is a DTO for the database. We want to keep stuff from the api module separate from what's in
  * the persist module.
  */
 public class CommentRecord {
-  private Integer id;
-  private Integer postId;
-  private String dateCreated;
+  /** Stands in for a null {@link #id}, so we can store it as an int. */
+  private static final int NONE = -1;
+
+  // Stored as ints rather than Integers so that every record doesn't carry around extra Integer
+  // objects (see PostRecord).
+  private int id;
+  private int postId;
+  /** In milliseconds since the epoch, or {@link Timestamps#NONE}. See {@link Timestamps}. */
+  private long dateCreated;
+
   private String author;
-  private Integer clapCount;
+  private int clapCount;
+
   private String body;
+  /**
+   * The body as UTF-8 bytes, or null if it's kept as a String (see {@link #compact(StringPool)}).
+   * When this is set, {@link #body} is null.
+   */
+  private byte[] compactBody;
 
   public CommentRecord(
       Integer id,
@@ -19,32 +35,48 @@ public class CommentRecord {
       String body,
       String dateCreated,
       Integer clapCount) {
-    this.id = id;
+    this(id, postId, author, body, Timestamps.parse(dateCreated), clapCount);
+  }
+
+  public CommentRecord(
+      Integer id, Integer postId, String author, String body, long dateCreated, Integer clapCount) {
+    this.id = id == null ? NONE : id;
     this.postId = postId;
     this.author = author;
     this.body = body;
     this.dateCreated = dateCreated;
-    this.clapCount = clapCount;
+    this.clapCount = clapCount == null ? 0 : clapCount;
   }
 
   public CommentRecord(Integer postId, String author, String body) {
-    this.id = null;
+    this.id = NONE;
     this.postId = postId;
     this.author = author;
     this.body = body;
-    this.dateCreated = null;
-    this.clapCount = null;
+    this.dateCreated = Timestamps.NONE;
+    this.clapCount = 0;
   }
 
   public Integer getId() {
-    return this.id;
+    return this.id == NONE ? null : this.id;
   }
 
   public Integer getPostId() {
     return postId;
   }
 
+  /**
+   * Get the time this comment was created, formatted for people to read. The String is made on
+   * every call, so call this when sending the comment rather than keeping the result around.
+   *
+   * @return The formatted time, or null if it hasn't been set.
+   */
   public String getDateCreated() {
+    return Timestamps.format(dateCreated);
+  }
+
+  /** @return The time this comment was created, in milliseconds since the epoch. */
+  public long getDateCreatedMillis() {
     return dateCreated;
   }
 
@@ -57,18 +89,55 @@ public class CommentRecord {
   }
 
   public String getBody() {
+    if (compactBody != null) {
+      return BodyCodec.UTF_8.decode(compactBody);
+    }
     return body;
   }
 
   public void setId(Integer id) {
-    this.id = id;
+    this.id = id == null ? NONE : id;
   }
 
   public void setDateCreated(String dateCreated) {
+    this.dateCreated = Timestamps.parse(dateCreated);
+  }
+
+  public void setDateCreatedMillis(long dateCreated) {
     this.dateCreated = dateCreated;
   }
 
   public void setClapCount(Integer clapCount) {
     this.clapCount = clapCount;
   }
+
+  /**
+   * Make a copy of this record with a different clap count, like {@link
+   * PostRecord#withClapCount(int)} does. The copy shares the body with this record.
+   *
+   * @param clapCount The copy's clap count.
+   * @return The copy.
+   */
+  public CommentRecord withClapCount(int clapCount) {
+    CommentRecord copy = new CommentRecord(getId(), postId, author, body, dateCreated, clapCount);
+    copy.compactBody = compactBody;
+    return copy;
+  }
+
+  /**
+   * Shrink this record for keeping in memory for a long time, like {@link
+   * PostRecord#compact(StringPool)} does.
+   *
+   * @param authors The pool to share authors' names through.
+   */
+  public void compact(StringPool authors) {
+    this.author = authors.intern(author);
+    if (body != null) {
+      byte[] bytes = BodyCodec.UTF_8.encode(body);
+      if (CompactText.isSmaller(bytes, body)) {
+        this.compactBody = bytes;
+        this.body = null;
+      }
+    }
+  }
 }
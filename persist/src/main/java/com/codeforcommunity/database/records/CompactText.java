@@ -0,0 +1,28 @@
+package com.codeforcommunity.database.records;
+
+/** Helps records decide whether to keep text as a String or as UTF-8 bytes. */
+final class CompactText {
+  /**
+   * Roughly what a String costs on top of the array holding its characters: the String object
+   * itself, with its header, hash, and reference to the array.
+   */
+  private static final int STRING_OVERHEAD = 24;
+
+  private CompactText() {}
+
+  /**
+   * Determine whether keeping the given UTF-8 bytes takes less memory than keeping the String. Text
+   * that's mostly ASCII is one byte per character either way, so the bytes save the String's
+   * overhead. Text in, say, Chinese is three bytes per character in UTF-8 but two in a String, so
+   * it's better left alone.
+   *
+   * @param utf8 The text's UTF-8 bytes.
+   * @param text The text.
+   * @return True if the bytes are smaller.
+   */
+  static boolean isSmaller(byte[] utf8, String text) {
+    // Strings keep text that fits in Latin-1 at one byte per character, so assume that's what the
+    // String costs. That's never more than it really costs, so we never make anything bigger.
+    return utf8.length < text.length() + STRING_OVERHEAD;
+  }
+}
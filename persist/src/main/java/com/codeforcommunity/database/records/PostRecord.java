@@ -1,41 +1,67 @@
 package com.codeforcommunity.database.records;
 
+import com.codeforcommunity.database.collections.StringPool;
+import com.codeforcommunity.database.compression.BodyCodec;
+import java.util.Arrays;
+import java.util.Objects;
+
 /**
  * This is a DTO for the database. We want to keep stuff from the api module separate from what's in
  * the persist module.
  */
 public class PostRecord {
-  private Integer id;
+  /** Stands in for a null {@link #id} or {@link #commentCount}, so we can store them as ints. */
+  private static final int NONE = -1;
+
+  // The IDs and counts are stored as ints rather than Integers so that every record doesn't carry
+  // around extra Integer objects. The getters and setters still use Integer, with null meaning
+  // NONE.
+  private int id;
   private String author;
-  private String dateCreated;
+  /** In milliseconds since the epoch, or {@link Timestamps#NONE}. See {@link Timestamps}. */
+  private long dateCreated;
+
   private String title;
-  private Integer clapCount;
+  private int clapCount;
+
   private String body;
-  private Integer commentCount;
+  private int commentCount = NONE;
+  /**
+   * The full body in encoded (e.g. compressed) form, or null if the body is stored as plain text.
+   * When this is set, {@link #body} only holds the start of the body.
+   */
+  private byte[] encodedBody;
+  /** The codec {@link #encodedBody} was encoded with. */
+  private BodyCodec bodyCodec;
 
   public PostRecord(
       Integer id, String author, String dateCreated, String title, Integer clapCount, String body) {
-    this.id = id;
+    this(id, author, Timestamps.parse(dateCreated), title, clapCount, body);
+  }
+
+  public PostRecord(
+      Integer id, String author, long dateCreated, String title, Integer clapCount, String body) {
+    this.id = toInt(id);
     this.author = author;
     this.dateCreated = dateCreated;
     this.title = title;
-    this.clapCount = clapCount;
+    this.clapCount = clapCount == null ? 0 : clapCount;
     this.body = body;
     this.commentCount = commentCount;
   }
 
   public PostRecord(String author, String title, String body) {
-    this.id = null;
+    this.id = NONE;
     this.author = author;
-    this.dateCreated = null;
+    this.dateCreated = Timestamps.NONE;
     this.title = title;
-    this.clapCount = null;
+    this.clapCount = 0;
     this.body = body;
-    this.commentCount = null;
+    this.commentCount = NONE;
   }
 
   public Integer getId() {
-    return this.id;
+    return fromInt(this.id);
   }
 
   public String getAuthor() {
@@ -46,11 +72,61 @@ public class PostRecord {
     return clapCount;
   }
 
+  /**
+   * Get the full body of this post. If the body is stored encoded, it is decoded on every call, so
+   * avoid calling this when only the start of the body is needed (see {@link
+   * #getBodyPreview(int)}).
+   *
+   * @return The body.
+   */
   public String getBody() {
+    if (encodedBody != null) {
+      return bodyCodec.decode(encodedBody);
+    }
     return body;
   }
 
+  /**
+   * Get at most the first {@code maxLength} characters of the body, without decoding the rest of
+   * it.
+   *
+   * @param maxLength The maximum number of characters to return.
+   * @return The start of the body.
+   */
+  public String getBodyPreview(int maxLength) {
+    if (encodedBody != null && body.length() < maxLength) {
+      // The plain start we have isn't long enough, so decode just as much as we need.
+      return bodyCodec.decodePrefix(encodedBody, maxLength);
+    }
+    return body.substring(0, Math.min(maxLength, body.length()));
+  }
+
+  /**
+   * Get the full body in encoded form.
+   *
+   * @return The encoded body, or null if the body isn't stored encoded.
+   */
+  public byte[] getEncodedBody() {
+    return encodedBody;
+  }
+
+  /** @return The codec of {@link #getEncodedBody()}, or null if the body isn't stored encoded. */
+  public BodyCodec getBodyCodec() {
+    return bodyCodec;
+  }
+
+  /**
+   * Get the time this post was created, formatted for people to read. The String is made on every
+   * call, so call this when sending the post rather than keeping the result around.
+   *
+   * @return The formatted time, or null if it hasn't been set.
+   */
   public String getDateCreated() {
+    return Timestamps.format(dateCreated);
+  }
+
+  /** @return The time this post was created, in milliseconds since the epoch. */
+  public long getDateCreatedMillis() {
     return dateCreated;
   }
 
@@ -59,14 +135,18 @@ public class PostRecord {
   }
 
   public Integer getCommentCount() {
-    return commentCount;
+    return fromInt(commentCount);
   }
 
   public void setId(Integer id) {
-    this.id = id;
+    this.id = toInt(id);
   }
 
   public void setDateCreated(String dateCreated) {
+    this.dateCreated = Timestamps.parse(dateCreated);
+  }
+
+  public void setDateCreatedMillis(long dateCreated) {
     this.dateCreated = dateCreated;
   }
 
@@ -74,7 +154,76 @@ public class PostRecord {
     this.clapCount = clapCount;
   }
 
+  /**
+   * Make a copy of this record with a different clap count. Tables that hand out the records they
+   * keep use this to change a record without changing it under someone who's reading it. The copy
+   * shares the title and body with this record.
+   *
+   * @param clapCount The copy's clap count.
+   * @return The copy.
+   */
+  public PostRecord withClapCount(int clapCount) {
+    PostRecord copy = new PostRecord(getId(), author, dateCreated, title, clapCount, body);
+    copy.commentCount = commentCount;
+    copy.encodedBody = encodedBody;
+    copy.bodyCodec = bodyCodec;
+    return copy;
+  }
+
+  /**
+   * Check whether this record has the same title and body as another one, like a copy made by
+   * {@link #withClapCount(int)} does.
+   *
+   * @param other The other record.
+   * @return True if the title and body are the same.
+   */
+  public boolean hasSameTextAs(PostRecord other) {
+    return Objects.equals(title, other.title)
+        && Objects.equals(body, other.body)
+        && Arrays.equals(encodedBody, other.encodedBody);
+  }
+
   public void setCommentCount(Integer commentCount) {
-    this.commentCount = commentCount;
+    this.commentCount = toInt(commentCount);
+  }
+
+  private static Integer fromInt(int value) {
+    return value == NONE ? null : value;
+  }
+
+  private static int toInt(Integer value) {
+    return value == null ? NONE : value;
+  }
+
+  /**
+   * Store the full body in encoded form. The plain body this record was created with is kept, and
+   * is expected to hold (at least) the start of the full body.
+   *
+   * @param encodedBody The full body, encoded.
+   * @param bodyCodec The codec it was encoded with.
+   */
+  public void setEncodedBody(byte[] encodedBody, BodyCodec bodyCodec) {
+    this.encodedBody = encodedBody;
+    this.bodyCodec = bodyCodec;
+  }
+
+  /**
+   * Shrink this record for keeping in memory for a long time: share the author's name with every
+   * other record by the same author, and keep the body as UTF-8 bytes if that's smaller than the
+   * String (see {@link BodyCodec#UTF_8}).
+   *
+   * @param authors The pool to share authors' names through.
+   */
+  public void compact(StringPool authors) {
+    this.author = authors.intern(author);
+    if (encodedBody == null && body != null) {
+      byte[] bytes = BodyCodec.UTF_8.encode(body);
+      if (CompactText.isSmaller(bytes, body)) {
+        // There's no plain start of the body to keep, so getBodyPreview decodes it from the bytes.
+        this.encodedBody = bytes;
+        this.bodyCodec = BodyCodec.UTF_8;
+        this.body = "";
+      }
+    }
   }
 }
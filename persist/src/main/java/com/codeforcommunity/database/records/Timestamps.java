@@ -0,0 +1,52 @@
+package com.codeforcommunity.database.records;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Converts between the times records are created at and the human-readable form we send to clients.
+ *
+ * <p>Records store their creation time as milliseconds since the epoch. A {@code long} is 8 bytes,
+ * where a formatted String like {@code "10-19-2026 14:05"} is an object of around 56 bytes, and
+ * almost every record's date is only formatted at most once, when it's sent to a client.
+ */
+public final class Timestamps {
+  /** Stands in for a time that hasn't been set. */
+  public static final long NONE = Long.MIN_VALUE;
+
+  /** The format sent to clients. {@link DateTimeFormatter}s are immutable, so one can be shared. */
+  private static final DateTimeFormatter FORMAT =
+      DateTimeFormatter.ofPattern("MM-dd-yyyy HH:mm").withZone(ZoneId.systemDefault());
+
+  private Timestamps() {}
+
+  /**
+   * Format the given time to a human-readable String.
+   *
+   * @param epochMillis The time, in milliseconds since the epoch, or {@link #NONE}.
+   * @return A String representing the time, or null for {@link #NONE}.
+   */
+  public static String format(long epochMillis) {
+    return epochMillis == NONE ? null : FORMAT.format(Instant.ofEpochMilli(epochMillis));
+  }
+
+  /**
+   * Parse a String returned by {@link #format(long)}. Formatting drops the seconds, so they're zero
+   * in the result.
+   *
+   * @param formatted The formatted time, or null.
+   * @return The time in milliseconds since the epoch, or {@link #NONE} for null.
+   * @throws java.time.format.DateTimeParseException If the String isn't in the right format.
+   */
+  public static long parse(String formatted) {
+    if (formatted == null) {
+      return NONE;
+    }
+    return LocalDateTime.parse(formatted, FORMAT)
+        .atZone(ZoneId.systemDefault())
+        .toInstant()
+        .toEpochMilli();
+  }
+}
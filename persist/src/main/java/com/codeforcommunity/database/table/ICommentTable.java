@@ -21,6 +21,26 @@ public interface ICommentTable {
    */
   List<CommentRecord> getByPostId(int postId);
 
+  /**
+   * Get the {@code limit} comments of the given post with the most claps. Comments with the same
+   * number of claps are ordered oldest first. This only needs to look at {@code limit} comments, no
+   * matter how many the post has.
+   *
+   * @param postId The ID of the post the comments belong to.
+   * @param limit The maximum number of comments to return.
+   * @return The top comments, most clapped first.
+   */
+  List<CommentRecord> getTopByPostId(int postId, int limit);
+
+  /**
+   * Get the {@code limit} most recently created comments of the given post.
+   *
+   * @param postId The ID of the post the comments belong to.
+   * @param limit The maximum number of comments to return.
+   * @return The newest comments, newest first.
+   */
+  List<CommentRecord> getNewestByPostId(int postId, int limit);
+
   /**
    * Save the given comment to the database.
    *
@@ -69,4 +89,14 @@ public interface ICommentTable {
    * @return The number of comments the given post ID has.
    */
   int getCommentCountForPost(int postId);
+
+  /**
+   * Search the bodies of all comments (on any post) for the given query.
+   *
+   * @param query The search terms as a user typed them.
+   * @param limit The maximum number of comments to return.
+   * @param offset The number of best matches to skip, for paging through results.
+   * @return The matching comments, best match first.
+   */
+  List<CommentRecord> searchComments(String query, int limit, int offset);
 }
@@ -0,0 +1,42 @@
+package com.codeforcommunity.database.table;
+
+/**
+ * Records kept outside of the in-memory tables (like in a memory-mapped snapshot) that are only
+ * loaded the first time they're needed. This lets a table start serving requests right away,
+ * instead of having to read everything in first.
+ *
+ * <p>The records are numbered from 0 to {@link #size()} - 1 in increasing order of their keys.
+ * Implementations must be safe to use from many threads at once.
+ *
+ * @param <T> The type of record.
+ */
+public interface ILazyRecords<T> {
+
+  /** @return How many records there are. */
+  int size();
+
+  /**
+   * Get the key (like a post ID) of a record.
+   *
+   * @param index The record's number.
+   * @return The record's key.
+   */
+  int keyAt(int index);
+
+  /**
+   * Find the record with the given key.
+   *
+   * @param key The key.
+   * @return The record's number, or -1 if there is no record with that key.
+   */
+  int indexOf(int key);
+
+  /**
+   * Load a record. Every call returns a new object.
+   *
+   * @param index The record's number.
+   * @return The record.
+   * @throws IllegalStateException If the record can't be read.
+   */
+  T load(int index);
+}
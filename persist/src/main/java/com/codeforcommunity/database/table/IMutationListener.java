@@ -0,0 +1,80 @@
+package com.codeforcommunity.database.table;
+
+import com.codeforcommunity.database.records.CommentRecord;
+import com.codeforcommunity.database.records.PostRecord;
+
+/**
+ * Something that wants to hear about every change made to the in-memory tables, like the
+ * write-ahead log that makes them durable.
+ *
+ * <p>Each method is called while the table still holds the lock for the change, so listeners hear
+ * about the changes to any one post in the same order they were made. That also means these methods
+ * must be quick and must not use the tables. Anything slow (like waiting for a write to reach the
+ * disk) belongs in {@link #mutationFinished()}. Every method does nothing by default, so listeners
+ * only need to override the ones they care about.
+ *
+ * <p>If a method throws, the change is not made (except for claps, which have already been counted
+ * by the time the listener hears about them).
+ */
+public interface IMutationListener {
+
+  /**
+   * A post was saved.
+   *
+   * @param post The post, with its ID and creation date filled in.
+   */
+  default void postSaved(PostRecord post) {}
+
+  /**
+   * A post was deleted.
+   *
+   * @param postId The post's ID.
+   */
+  default void postDeleted(int postId) {}
+
+  /**
+   * A post was clapped.
+   *
+   * @param postId The post's ID.
+   * @param clapCount The post's clap count after the clap. Claps for the same post can be reported
+   *     out of order, so listeners should keep the highest count they've seen.
+   */
+  default void postClapped(int postId, int clapCount) {}
+
+  /**
+   * A comment was saved.
+   *
+   * @param comment The comment, with its ID and creation date filled in.
+   */
+  default void commentSaved(CommentRecord comment) {}
+
+  /**
+   * A comment was deleted.
+   *
+   * @param postId The ID of the comment's post.
+   * @param commentId The comment's ID.
+   */
+  default void commentDeleted(int postId, int commentId) {}
+
+  /**
+   * All of a post's comments were deleted.
+   *
+   * @param postId The post's ID.
+   */
+  default void commentsDeletedForPost(int postId) {}
+
+  /**
+   * A comment was clapped.
+   *
+   * @param postId The ID of the comment's post.
+   * @param commentId The comment's ID.
+   * @param clapCount The comment's clap count after the clap (see {@link #postClapped(int, int)}).
+   */
+  default void commentClapped(int postId, int commentId, int clapCount) {}
+
+  /**
+   * Called on the same thread after each change has been made and its locks have been released.
+   * Listeners can block here, and the change isn't reported as done until they return.
+   */
+  default void mutationFinished() {}
+}
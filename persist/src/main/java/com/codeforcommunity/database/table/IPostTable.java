@@ -1,6 +1,7 @@
 package com.codeforcommunity.database.table;
 
 import com.codeforcommunity.database.records.PostRecord;
+import com.codeforcommunity.database.records.Timestamps;
 import java.util.List;
 
 /**
@@ -10,6 +11,11 @@ import java.util.List;
  * as possible.
  */
 public interface IPostTable {
+  /**
+   * How many characters of the body a summary projection of a post contains. Methods that return
+   * summaries (for feeds and search results) only load this much of each body.
+   */
+  int SUMMARY_BODY_LENGTH = 50;
 
   /**
    * Get a {@link PostRecord} by a provided id.
@@ -26,6 +32,13 @@ public interface IPostTable {
    */
   List<PostRecord> getAllPosts();
 
+  /**
+   * Get the IDs of all posts, without loading anything else about them.
+   *
+   * @return The IDs, in no particular order.
+   */
+  int[] getAllPostIds();
+
   /**
    * Save the given post to our database.
    *
@@ -54,4 +67,53 @@ public interface IPostTable {
    * @param postId The ID of the post to delete.
    */
   void deletePost(int postId);
+
+  /**
+   * Get a page of posts, newest first. Posts created at the same time are ordered by ID, highest
+   * first.
+   *
+   * <p>The returned records are summary projections, like those of {@link #searchPosts(String, int,
+   * int)}.
+   *
+   * @param limit The maximum number of posts to return.
+   * @param offset The number of newest posts to skip, for paging through the feed.
+   * @return The posts, newest first.
+   */
+  List<PostRecord> getNewestPosts(int limit, int offset);
+
+  /**
+   * Get a page of the posts by the given author, newest first, in the same order as {@link
+   * #getNewestPosts(int, int)}.
+   *
+   * <p>Rather than an offset, each page after the first starts after the last post of the page
+   * before it (this is called keyset pagination). The table can jump straight to that post instead
+   * of counting its way past every post before it, so the thousandth page is as fast as the first,
+   * and posts made while someone is paging don't shift the pages under them.
+   *
+   * <p>The returned records are summary projections, like those of {@link #searchPosts(String, int,
+   * int)}.
+   *
+   * @param author The author, which must match exactly.
+   * @param beforeDateCreated The creation time of the last post on the previous page, or {@link
+   *     Timestamps#NONE} for the first page.
+   * @param beforeId The ID of the last post on the previous page.
+   * @param limit The maximum number of posts to return.
+   * @return The author's posts, newest first.
+   */
+  List<PostRecord> getPostsByAuthor(String author, long beforeDateCreated, int beforeId, int limit);
+
+  /**
+   * Search the titles and bodies of all posts for the given query. Matches in a title rank above
+   * matches in a body.
+   *
+   * <p>The returned records are summary projections: their bodies are cut down to at most {@link
+   * #SUMMARY_BODY_LENGTH} characters, and their comment count is set if the table can get it
+   * cheaply (otherwise it's null).
+   *
+   * @param query The search terms as a user typed them.
+   * @param limit The maximum number of posts to return.
+   * @param offset The number of best matches to skip, for paging through results.
+   * @return The matching posts, best match first.
+   */
+  List<PostRecord> searchPosts(String query, int limit, int offset);
 }
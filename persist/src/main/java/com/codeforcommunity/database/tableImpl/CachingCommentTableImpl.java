@@ -0,0 +1,151 @@
+package com.codeforcommunity.database.tableImpl;
+
+import com.codeforcommunity.database.collections.FrequencyCache;
+import com.codeforcommunity.database.notify.ChangeEvent;
+import com.codeforcommunity.database.notify.IChangeSubscriber;
+import com.codeforcommunity.database.records.CommentRecord;
+import com.codeforcommunity.database.table.ICommentTable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An {@link ICommentTable} that remembers the comments it's asked for, in front of any other
+ * comment table. See {@link CachingPostTableImpl}, which works the same way.
+ *
+ * <p>The comments of a post ({@link #getByPostId(int)}), how many there are, and whether each
+ * comment exists are cached. The top and newest comments and searches go straight to the table.
+ */
+public class CachingCommentTableImpl implements ICommentTable, IChangeSubscriber {
+  private final ICommentTable table;
+  /** Each post's comments, in the order the table returned them. */
+  private final FrequencyCache<Integer, List<CommentRecord>> comments;
+  /** How many comments each post has. */
+  private final FrequencyCache<Integer, Integer> counts;
+  /** Whether each comment exists, by {@link #commentKey(int, int)}. */
+  private final FrequencyCache<Long, Boolean> exists;
+
+  /**
+   * Create a caching table.
+   *
+   * @param table The table to cache the comments of.
+   * @param capacity The most entries to keep in each cache.
+   * @param ttlMillis How long a cached entry can be used for before it's loaded again.
+   */
+  public CachingCommentTableImpl(ICommentTable table, int capacity, long ttlMillis) {
+    this.table = table;
+    this.comments = new FrequencyCache<>(capacity, ttlMillis);
+    this.counts = new FrequencyCache<>(capacity, ttlMillis);
+    this.exists = new FrequencyCache<>(capacity, ttlMillis);
+  }
+
+  /** @return One number that identifies a comment, to cache whether it exists under. */
+  private static long commentKey(int postId, int commentId) {
+    return ((long) postId << 32) | (commentId & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Drop a post's cached comments and comment count, after a comment was added or removed.
+   *
+   * @param postId The post's ID.
+   */
+  private void invalidatePost(int postId) {
+    comments.invalidate(postId);
+    counts.invalidate(postId);
+  }
+
+  /**
+   * Drop everything cached about a post's comments, after they were all deleted.
+   *
+   * @param postId The post's ID.
+   */
+  private void invalidateAll(int postId) {
+    invalidatePost(postId);
+    exists.invalidateIf(key -> (int) (key >>> 32) == postId);
+  }
+
+  @Override
+  public List<CommentRecord> getByPostId(int postId) {
+    // Hand out a copy, so the caller can't change the cached list.
+    return new ArrayList<>(comments.get(postId, id -> List.copyOf(table.getByPostId(id))));
+  }
+
+  @Override
+  public List<CommentRecord> getTopByPostId(int postId, int limit) {
+    return table.getTopByPostId(postId, limit);
+  }
+
+  @Override
+  public List<CommentRecord> getNewestByPostId(int postId, int limit) {
+    return table.getNewestByPostId(postId, limit);
+  }
+
+  @Override
+  public void saveComment(CommentRecord comment) {
+    table.saveComment(comment);
+    invalidatePost(comment.getPostId());
+    // Someone may have asked for the new comment's ID before it existed.
+    exists.invalidate(commentKey(comment.getPostId(), comment.getId()));
+  }
+
+  @Override
+  public boolean commentExists(int postId, int commentId) {
+    return exists.get(commentKey(postId, commentId), key -> table.commentExists(postId, commentId));
+  }
+
+  @Override
+  public void clapComment(int postId, int commentId) {
+    table.clapComment(postId, commentId);
+    // The comment still exists, but its clap count has changed.
+    comments.invalidate(postId);
+  }
+
+  @Override
+  public void deleteCommentsByPostId(int postId) {
+    table.deleteCommentsByPostId(postId);
+    invalidateAll(postId);
+  }
+
+  @Override
+  public void deleteComment(int postId, int commentId) {
+    table.deleteComment(postId, commentId);
+    invalidatePost(postId);
+    exists.invalidate(commentKey(postId, commentId));
+  }
+
+  @Override
+  public int getCommentCountForPost(int postId) {
+    return counts.get(postId, table::getCommentCountForPost);
+  }
+
+  @Override
+  public List<CommentRecord> searchComments(String query, int limit, int offset) {
+    return table.searchComments(query, limit, offset);
+  }
+
+  @Override
+  public void onChange(ChangeEvent event) {
+    switch (event.getType()) {
+      case COMMENT_CREATED:
+      case COMMENT_DELETED:
+        invalidatePost(event.getPostId());
+        exists.invalidate(commentKey(event.getPostId(), event.getCommentId()));
+        break;
+      case COMMENT_CLAPPED:
+        comments.invalidate(event.getPostId());
+        break;
+      case COMMENTS_DELETED:
+      case POST_DELETED:
+        invalidateAll(event.getPostId());
+        break;
+      case RESYNC:
+        // We may have missed anything.
+        comments.clear();
+        counts.clear();
+        exists.clear();
+        break;
+      default:
+        // Nothing else changes the comments.
+        break;
+    }
+  }
+}
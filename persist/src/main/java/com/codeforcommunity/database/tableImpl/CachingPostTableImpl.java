@@ -0,0 +1,313 @@
+package com.codeforcommunity.database.tableImpl;
+
+import com.codeforcommunity.database.collections.FrequencyCache;
+import com.codeforcommunity.database.collections.IntBloomFilter;
+import com.codeforcommunity.database.notify.ChangeEvent;
+import com.codeforcommunity.database.notify.IChangeSubscriber;
+import com.codeforcommunity.database.records.PostRecord;
+import com.codeforcommunity.database.table.IPostTable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An {@link IPostTable} that remembers the posts it's asked for, in front of any other post table.
+ * Most requests are for the same few popular posts, so most lookups never reach the table behind
+ * it.
+ *
+ * <p>{@link #getById(int)} and {@link #postExists(int)} are cached, in {@link FrequencyCache}s that
+ * hold on to the most popular posts. Feeds and searches are different for every request, so they go
+ * straight to the table.
+ *
+ * <p>Every change made through this table drops exactly the entries it affects. Changes made any
+ * other way (like by another node) aren't seen until the entries expire, unless this table is also
+ * subscribed to a {@code ChangeListenerDBImpl}, in which case they're dropped as soon as the change
+ * notification comes in.
+ *
+ * <p>Scrapers and broken clients ask for a lot of posts that don't exist, often a different one
+ * every time, so caching the answer wouldn't help. Instead, once {@link #rebuildIdFilter()} has
+ * run, this table keeps the ID of every post in an {@link IntBloomFilter}, which can tell that
+ * almost any ID that was never used isn't a post without asking the table. New posts are added to
+ * it as they're created. Deleted posts can't be taken out, so asking for one of those (or for one
+ * of the 1% of unused IDs the filter gets wrong) still goes to the table, and the answer that it
+ * doesn't exist is then cached for a short while. Once enough posts have been created or deleted,
+ * the filter is rebuilt in the background.
+ */
+public class CachingPostTableImpl implements IPostTable, IChangeSubscriber {
+  /** How often the ID filter may say an ID that isn't a post's might be one. */
+  private static final double ID_FILTER_FALSE_POSITIVE_RATE = 0.01;
+  /**
+   * The fewest IDs the ID filter is made to hold, so a new site doesn't rebuild it all the time.
+   */
+  private static final int MIN_ID_FILTER_CAPACITY = 1024;
+
+  private final IPostTable table;
+  private final FrequencyCache<Integer, PostRecord> posts;
+  /** The posts that exist. */
+  private final FrequencyCache<Integer, Boolean> exists;
+  /**
+   * The posts that don't exist (as far as the table said, not the ID filter). These expire sooner,
+   * since we don't always hear about a post being created on another node straight away.
+   */
+  private final FrequencyCache<Integer, Boolean> missing;
+
+  /**
+   * Holds the ID of every post, or null if it hasn't been built (or can't be trusted right now).
+   */
+  private volatile IntBloomFilter idFilter;
+  /** Makes rebuilds of the ID filter take turns. */
+  private final Object rebuildLock = new Object();
+  /**
+   * The IDs of the posts created while the ID filter is being rebuilt, or null if it isn't. They're
+   * added to the new filter once it's built, since the table may have been read before they were
+   * created. Guarded by this object's lock, like the fields below.
+   */
+  private List<Integer> createdDuringRebuild;
+  /** How many more posts can be created before the ID filter holds more than it was made for. */
+  private int idFilterRoom;
+  /** How many more posts can be deleted before the ID filter is rebuilt to forget them. */
+  private int idFilterDeletesLeft;
+  /** Whether a rebuild of the ID filter has been started in the background and hasn't finished. */
+  private boolean idFilterRebuildStarted;
+  /**
+   * Changed whenever we may have missed a new post, so a rebuild that read the table before then
+   * doesn't put its filter in place.
+   */
+  private long idFilterGeneration;
+
+  /**
+   * Create a caching table.
+   *
+   * @param table The table to cache the posts of.
+   * @param capacity The most posts to cache.
+   * @param ttlMillis How long a cached post can be used for before it's loaded again.
+   * @param missingTtlMillis How long the table's answer that a post doesn't exist is used for.
+   */
+  public CachingPostTableImpl(
+      IPostTable table, int capacity, long ttlMillis, long missingTtlMillis) {
+    this.table = table;
+    this.posts = new FrequencyCache<>(capacity, ttlMillis);
+    this.exists = new FrequencyCache<>(capacity, ttlMillis);
+    this.missing = new FrequencyCache<>(capacity, missingTtlMillis);
+  }
+
+  /**
+   * Read the ID of every post from the table into a new ID filter, replacing the old one. Until
+   * this has run, every check for whether a post exists goes to the caches (and the table). Posts
+   * created while this runs are kept.
+   */
+  public void rebuildIdFilter() {
+    synchronized (rebuildLock) {
+      long generation;
+      synchronized (this) {
+        createdDuringRebuild = new ArrayList<>();
+        generation = idFilterGeneration;
+      }
+
+      int[] postIds;
+      try {
+        postIds = table.getAllPostIds();
+      } catch (RuntimeException e) {
+        synchronized (this) {
+          createdDuringRebuild = null;
+        }
+        throw e;
+      }
+      // Leave room for as many new posts as there are now, before it needs rebuilding.
+      int capacity = Math.max(MIN_ID_FILTER_CAPACITY, postIds.length * 2);
+      IntBloomFilter filter = new IntBloomFilter(capacity, ID_FILTER_FALSE_POSITIVE_RATE);
+      for (int postId : postIds) {
+        filter.add(postId);
+      }
+
+      synchronized (this) {
+        for (int postId : createdDuringRebuild) {
+          filter.add(postId);
+        }
+        createdDuringRebuild = null;
+        if (generation != idFilterGeneration) {
+          // Whoever changed it will rebuild it again.
+          return;
+        }
+        idFilter = filter;
+        idFilterRoom = capacity - postIds.length;
+        idFilterDeletesLeft = capacity / 2;
+      }
+    }
+  }
+
+  /**
+   * Stop using the ID filter, and keep any rebuild that's running now from putting its in place.
+   */
+  private synchronized void forgetIdFilter() {
+    idFilter = null;
+    idFilterGeneration++;
+  }
+
+  /**
+   * Start rebuilding the ID filter in the background, unless that's already happening. Must hold
+   * this object's lock.
+   */
+  private void startIdFilterRebuild() {
+    if (idFilterRebuildStarted) {
+      return;
+    }
+    idFilterRebuildStarted = true;
+    Thread rebuilder =
+        new Thread(
+            () -> {
+              try {
+                rebuildIdFilter();
+              } finally {
+                synchronized (this) {
+                  idFilterRebuildStarted = false;
+                }
+              }
+            },
+            "post-id-filter-rebuild");
+    rebuilder.setDaemon(true);
+    rebuilder.start();
+  }
+
+  /**
+   * Add a new post to the ID filter. (We hear about our own posts twice, once when we create them
+   * and once from the change notification, which only means the filter is rebuilt a bit early.)
+   *
+   * @param postId The post's ID.
+   */
+  private synchronized void created(int postId) {
+    if (createdDuringRebuild != null) {
+      createdDuringRebuild.add(postId);
+    }
+    if (idFilter != null) {
+      idFilter.add(postId);
+      if (--idFilterRoom < 0) {
+        startIdFilterRebuild();
+      }
+    }
+  }
+
+  /**
+   * Count a deleted post against the ID filter, which still says it might exist.
+   *
+   * @param postId The post's ID.
+   */
+  private synchronized void deleted(int postId) {
+    if (idFilter != null && --idFilterDeletesLeft < 0) {
+      startIdFilterRebuild();
+    }
+  }
+
+  /**
+   * Drop everything cached about a post.
+   *
+   * @param postId The post's ID.
+   */
+  private void invalidate(int postId) {
+    posts.invalidate(postId);
+    exists.invalidate(postId);
+    missing.invalidate(postId);
+  }
+
+  /** @return {@code FALSE} if the post doesn't exist, to cache in {@link #missing}, or null. */
+  private Boolean loadMissing(int postId) {
+    return exists.get(postId, this::loadExists) == null ? Boolean.FALSE : null;
+  }
+
+  /** @return {@code TRUE} if the post exists, to cache in {@link #exists}, or null. */
+  private Boolean loadExists(int postId) {
+    return table.postExists(postId) ? Boolean.TRUE : null;
+  }
+
+  @Override
+  public PostRecord getById(int id) {
+    return posts.get(id, table::getById);
+  }
+
+  @Override
+  public List<PostRecord> getAllPosts() {
+    return table.getAllPosts();
+  }
+
+  @Override
+  public int[] getAllPostIds() {
+    return table.getAllPostIds();
+  }
+
+  @Override
+  public void savePost(PostRecord post) {
+    table.savePost(post);
+    created(post.getId());
+    // Someone may have asked for the new post's ID before it existed.
+    invalidate(post.getId());
+  }
+
+  @Override
+  public boolean postExists(int postId) {
+    IntBloomFilter filter = idFilter;
+    if (filter != null && !filter.mightContain(postId)) {
+      // No post has ever had this ID, so there's no need to ask anyone.
+      return false;
+    }
+    // Look in missing first, then exists, and only then the table. Each caches only its own answer.
+    return missing.get(postId, this::loadMissing) == null;
+  }
+
+  @Override
+  public void clapPost(int postId) {
+    table.clapPost(postId);
+    // The post still exists, but its clap count has changed.
+    posts.invalidate(postId);
+  }
+
+  @Override
+  public void deletePost(int postId) {
+    table.deletePost(postId);
+    invalidate(postId);
+    deleted(postId);
+  }
+
+  @Override
+  public List<PostRecord> getNewestPosts(int limit, int offset) {
+    return table.getNewestPosts(limit, offset);
+  }
+
+  @Override
+  public List<PostRecord> getPostsByAuthor(
+      String author, long beforeDateCreated, int beforeId, int limit) {
+    return table.getPostsByAuthor(author, beforeDateCreated, beforeId, limit);
+  }
+
+  @Override
+  public List<PostRecord> searchPosts(String query, int limit, int offset) {
+    return table.searchPosts(query, limit, offset);
+  }
+
+  @Override
+  public void onChange(ChangeEvent event) {
+    switch (event.getType()) {
+      case POST_CREATED:
+        created(event.getPostId());
+        invalidate(event.getPostId());
+        break;
+      case POST_DELETED:
+        invalidate(event.getPostId());
+        deleted(event.getPostId());
+        break;
+      case POST_CLAPPED:
+        posts.invalidate(event.getPostId());
+        break;
+      case RESYNC:
+        // We may have missed anything, including new posts the ID filter doesn't know about, so
+        // stop using it until it's been rebuilt.
+        forgetIdFilter();
+        posts.clear();
+        exists.clear();
+        missing.clear();
+        rebuildIdFilter();
+        break;
+      default:
+        // Comments don't change anything we cache.
+        break;
+    }
+  }
+}
@@ -0,0 +1,126 @@
+package com.codeforcommunity.database.tableImpl;
+
+import com.codeforcommunity.database.notify.ChangeEvent;
+import com.codeforcommunity.database.notify.IChangeSubscriber;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+/**
+ * Listens for the {@link ChangeEvent}s that {@link PostTableDBImpl} and {@link CommentTableDBImpl}
+ * publish with Postgres' NOTIFY, and hands each one to the registered {@link IChangeSubscriber}s.
+ * Every node runs one of these on a background thread with its own dedicated connection, so a write
+ * made on any node reaches the others within milliseconds.
+ *
+ * <p>Notifications sent while the listener isn't connected are lost, so whenever it (re)connects it
+ * raises a {@link ChangeEvent.Type#RESYNC} event telling subscribers to drop everything.
+ */
+public class ChangeListenerDBImpl extends DBImpl implements AutoCloseable {
+  private static final Logger logger = LogManager.getLogger(ChangeListenerDBImpl.class);
+
+  /** How long to wait for notifications before checking whether we've been closed. */
+  private static final int POLL_MILLIS = 500;
+  /** How long to wait before reconnecting after the connection fails. */
+  private static final long RECONNECT_DELAY_MILLIS = 1000;
+
+  private final List<IChangeSubscriber> subscribers = new CopyOnWriteArrayList<>();
+  private final Thread thread;
+  private volatile boolean running;
+
+  /**
+   * The constructor which just calls the {@link DBImpl} super constructor.
+   *
+   * @param dbProperties A {@link Properties} we expect to contain the values for url, user, and
+   *     password for connecting to the database.
+   */
+  public ChangeListenerDBImpl(Properties dbProperties) {
+    super(dbProperties);
+    this.thread = new Thread(this::listen, "change-listener");
+    // Don't keep the program running just because this thread is.
+    this.thread.setDaemon(true);
+  }
+
+  /**
+   * Register something to be told about every change. Can be called before or after {@link
+   * #start()}.
+   *
+   * @param subscriber The subscriber.
+   */
+  public void subscribe(IChangeSubscriber subscriber) {
+    subscribers.add(subscriber);
+  }
+
+  /** Start listening on a background thread. */
+  public void start() {
+    running = true;
+    thread.start();
+  }
+
+  /** Stop listening. The background thread exits within {@link #POLL_MILLIS}. */
+  @Override
+  public void close() {
+    running = false;
+    thread.interrupt();
+  }
+
+  /** The loop run by the background thread. Reconnects until {@link #close()} is called. */
+  private void listen() {
+    while (running) {
+      try (Connection conn = getConnection()) {
+        try (Statement stmt = conn.createStatement()) {
+          stmt.execute("LISTEN " + CHANGE_CHANNEL);
+        }
+        // We may have missed changes while we weren't listening.
+        dispatch(new ChangeEvent(ChangeEvent.Type.RESYNC, ChangeEvent.NO_ID));
+
+        PGConnection pgConn = conn.unwrap(PGConnection.class);
+        while (running) {
+          // Blocks for up to POLL_MILLIS waiting for notifications to arrive.
+          PGNotification[] notifications = pgConn.getNotifications(POLL_MILLIS);
+          if (notifications != null) {
+            for (PGNotification notification : notifications) {
+              try {
+                dispatch(ChangeEvent.fromPayload(notification.getParameter()));
+              } catch (IllegalArgumentException e) {
+                logger.warn("Ignoring a malformed change notification: {}", e.getMessage());
+              }
+            }
+          }
+        }
+      } catch (SQLException | RuntimeException e) {
+        if (!running) {
+          return;
+        }
+        logger.warn("Change listener disconnected, reconnecting", e);
+        try {
+          Thread.sleep(RECONNECT_DELAY_MILLIS);
+        } catch (InterruptedException interrupted) {
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Hand the given event to every subscriber. A subscriber that throws doesn't stop the others from
+   * hearing about the event.
+   *
+   * @param event The event.
+   */
+  private void dispatch(ChangeEvent event) {
+    for (IChangeSubscriber subscriber : subscribers) {
+      try {
+        subscriber.onChange(event);
+      } catch (RuntimeException e) {
+        logger.error("A change subscriber failed", e);
+      }
+    }
+  }
+}
@@ -1,5 +1,6 @@
 package com.codeforcommunity.database.tableImpl;
 
+import com.codeforcommunity.database.notify.ChangeEvent;
 import com.codeforcommunity.database.records.CommentRecord;
 import com.codeforcommunity.database.table.ICommentTable;
 import java.sql.Connection;
@@ -11,6 +12,14 @@ import java.util.List;
 import java.util.Properties;
 
 public class CommentTableDBImpl extends DBImpl implements ICommentTable {
+  /**
+   * The columns of the comments table that make up a {@link CommentRecord}. We list them out
+   * instead of using {@code SELECT *} so that we don't also pull the search vector over the wire.
+   */
+  private static final String COMMENT_COLUMNS =
+      "comments.id, comments.post_id, comments.author, comments.body, comments.date_created, "
+          + "comments.clap_count";
+
   /**
    * The constructor which just calls the {@link DBImpl} super constructor.
    *
@@ -31,8 +40,8 @@ public class CommentTableDBImpl extends DBImpl implements ICommentTable {
    *     trying to convert to the wrong type, or other reasons.
    */
   private static CommentRecord allFieldsResultSetToRecord(ResultSet res) throws SQLException {
-    // Convert the timestamp to a human-readable string.
-    String time = timestampToString(res.getTimestamp("date_created"));
+    // Records keep the time as a number, and only format it when it's sent to a client.
+    long time = res.getTimestamp("date_created").getTime();
     // Return a new PostRecord with the found data. You can either get the column by the index
     // (so if we said 'SELECT id, author, ...', id would be index 1, author 2, ...) or by column
     // name.
@@ -48,160 +57,240 @@ public class CommentTableDBImpl extends DBImpl implements ICommentTable {
   @Override
   public List<CommentRecord> getByPostId(int postId) {
     List<CommentRecord> comments = new ArrayList<>();
-    try {
-      // Get our database connection.
-      Connection conn = getConnection();
+    // Get our database connection. Declaring it in the 'try (...)' block closes it for us when the
+    // block exits, even if a query fails or is cancelled by the request deadline.
+    try (Connection conn = getConnection()) {
       // Create our SQL string. This one gets all of the fields of a Post by a given ID.
       // The '?' allows us to safely insert that variable into the query without having to worry
       // about escaping any special characters inside.
-      String sql =
-          "SELECT * FROM comments "
-              + "LEFT JOIN (SELECT comment_id, COUNT(*) AS clap_count FROM comment_claps GROUP BY comment_id) claps "
-              + "ON comments.id = claps.comment_id "
-              + "WHERE post_id = ?;";
+      String sql = "SELECT " + COMMENT_COLUMNS + " FROM comments WHERE post_id = ?;";
       // A PreparedStatement is the technique that allows us to insert variables by '?'.
-      PreparedStatement stmt = conn.prepareStatement(sql);
-      // Set the first '?' = id. Note how in prepared statements, parameters are not 0-indexed.
-      stmt.setInt(1, postId);
-
-      // Get our results. This could also be done in two separate calls;
-      // stmt.execute() and stmt.getResultSet().
-      ResultSet res = stmt.executeQuery();
-      // The next row in the table is queued up by calling ResultSet.next(). If ResultSet.next()
-      // returns false, then there are no more rows (or no rows were found if
-      // this is the first call).
-      while (res.next()) {
-        comments.add(allFieldsResultSetToRecord(res));
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        // Set the first '?' = id. Note how in prepared statements, parameters are not 0-indexed.
+        stmt.setInt(1, postId);
+
+        // Get our results. This could also be done in two separate calls;
+        // stmt.execute() and stmt.getResultSet().
+        try (ResultSet res = stmt.executeQuery()) {
+          // The next row in the table is queued up by calling ResultSet.next(). If
+          // ResultSet.next() returns false, then there are no more rows (or no rows were found if
+          // this is the first call).
+          while (res.next()) {
+            comments.add(allFieldsResultSetToRecord(res));
+          }
+        }
       }
+    } catch (SQLException e) {
+      throw databaseError(e);
+    }
+    return comments;
+  }
+
+  @Override
+  public List<CommentRecord> getTopByPostId(int postId, int limit) {
+    // This ORDER BY matches the comments_post_id_clap_count_idx index exactly, so Postgres reads
+    // the first 'limit' entries for this post straight out of the index instead of sorting.
+    return getOrderedByPostId(postId, "clap_count DESC, id", limit);
+  }
+
+  @Override
+  public List<CommentRecord> getNewestByPostId(int postId, int limit) {
+    // Likewise backed by comments_post_id_date_created_idx.
+    return getOrderedByPostId(postId, "date_created DESC, id DESC", limit);
+  }
 
-      res.close();
-      stmt.close();
-      conn.close();
+  /**
+   * Get the first {@code limit} comments of the given post in the given order.
+   *
+   * @param postId The ID of the post the comments belong to.
+   * @param orderBy The ORDER BY clause to use. This is put straight into the SQL, so it must never
+   *     come from user input.
+   * @param limit The maximum number of comments to return.
+   * @return The comments, in the given order.
+   */
+  private List<CommentRecord> getOrderedByPostId(int postId, String orderBy, int limit) {
+    List<CommentRecord> comments = new ArrayList<>();
+    try (Connection conn = getConnection()) {
+      String sql =
+          "SELECT "
+              + COMMENT_COLUMNS
+              + " FROM comments WHERE post_id = ? ORDER BY "
+              + orderBy
+              + " LIMIT ?;";
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        stmt.setInt(1, postId);
+        stmt.setInt(2, limit);
+
+        try (ResultSet res = stmt.executeQuery()) {
+          while (res.next()) {
+            comments.add(allFieldsResultSetToRecord(res));
+          }
+        }
+      }
     } catch (SQLException e) {
-      throw new IllegalStateException("There was an issue interacting with the database.", e);
+      throw databaseError(e);
     }
     return comments;
   }
 
   @Override
   public void saveComment(CommentRecord comment) {
-    try {
-      Connection conn = getConnection();
-      String sql = "INSERT INTO comments (post_id, author, body) VALUES (?, ?, ?);";
-
-      PreparedStatement stmt = conn.prepareStatement(sql);
-      stmt.setInt(1, comment.getPostId());
-      stmt.setString(2, comment.getAuthor());
-      stmt.setString(3, comment.getBody());
+    try (Connection conn = getConnection()) {
+      // See PostTableDBImpl#savePost for how the change notification is published.
+      String sql =
+          "WITH inserted AS ("
+              + "INSERT INTO comments (post_id, author, body) VALUES (?, ?, ?) "
+              + "RETURNING id, post_id, date_created"
+              + ") SELECT id, date_created, "
+              + notifyExpression(ChangeEvent.Type.COMMENT_CREATED, "post_id", "id")
+              + " FROM inserted;";
 
-      stmt.execute();
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        stmt.setInt(1, comment.getPostId());
+        stmt.setString(2, comment.getAuthor());
+        stmt.setString(3, comment.getBody());
 
-      stmt.close();
-      conn.close();
+        try (ResultSet res = stmt.executeQuery()) {
+          if (res.next()) {
+            comment.setId(res.getInt("id"));
+            comment.setDateCreatedMillis(res.getTimestamp("date_created").getTime());
+          }
+        }
+      }
     } catch (SQLException e) {
-      throw new IllegalStateException("There was an issue interacting with the database.", e);
+      throw databaseError(e);
     }
   }
 
   @Override
   public boolean commentExists(int postId, int commentId) {
     boolean commentExists = false;
-    try {
-      Connection conn = getConnection();
+    try (Connection conn = getConnection()) {
       String sql = "SELECT id FROM comments WHERE post_id = ? AND id = ?;";
 
-      PreparedStatement stmt = conn.prepareStatement(sql);
-      stmt.setInt(1, postId);
-      stmt.setInt(2, commentId);
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        stmt.setInt(1, postId);
+        stmt.setInt(2, commentId);
 
-      ResultSet res = stmt.executeQuery();
-      if (res.next()) {
-        commentExists = true;
+        try (ResultSet res = stmt.executeQuery()) {
+          if (res.next()) {
+            commentExists = true;
+          }
+        }
       }
-
-      res.close();
-      stmt.close();
-      conn.close();
     } catch (SQLException e) {
-      throw new IllegalStateException("There was an issue interacting with the database.", e);
+      throw databaseError(e);
     }
     return commentExists;
   }
 
   @Override
   public void clapComment(int postId, int commentId) {
-    try {
-      Connection conn = getConnection();
+    try (Connection conn = getConnection()) {
       // Here, we're updating the rows in the post table by the given id
       // by incrementing the clap count.
-      String sql = "INSERT INTO comment_claps (post_id, comment_id) VALUES (?, ?);";
-      PreparedStatement stmt = conn.prepareStatement(sql);
-      stmt.setInt(1, postId);
-      stmt.setInt(2, commentId);
-      stmt.execute();
-
-      stmt.close();
-      conn.close();
+      String sql =
+          "WITH clap AS ("
+              + "INSERT INTO comment_claps (post_id, comment_id) VALUES (?, ?) "
+              + "RETURNING post_id, comment_id"
+              + ") SELECT "
+              + notifyExpression(ChangeEvent.Type.COMMENT_CLAPPED, "post_id", "comment_id")
+              + " FROM clap;";
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        stmt.setInt(1, postId);
+        stmt.setInt(2, commentId);
+        stmt.executeQuery().close();
+      }
     } catch (SQLException e) {
-      throw new IllegalStateException("There was an issue interacting with the database.", e);
+      throw databaseError(e);
     }
   }
 
   @Override
   public void deleteCommentsByPostId(int postId) {
-    try {
-      Connection conn = getConnection();
-      String sql = "DELETE FROM comments WHERE post_id = ?;";
-      PreparedStatement stmt = conn.prepareStatement(sql);
-      stmt.setInt(1, postId);
-      stmt.execute();
-
-      stmt.close();
-      conn.close();
+    try (Connection conn = getConnection()) {
+      // Publish a single notification for the whole post rather than one per comment.
+      String sql =
+          "WITH deleted AS (DELETE FROM comments WHERE post_id = ? RETURNING post_id) "
+              + "SELECT "
+              + notifyExpression(ChangeEvent.Type.COMMENTS_DELETED, "post_id", null)
+              + " FROM (SELECT DISTINCT post_id FROM deleted) posts;";
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        stmt.setInt(1, postId);
+        stmt.executeQuery().close();
+      }
     } catch (SQLException e) {
-      throw new IllegalStateException("There was an issue interacting with the database.", e);
+      throw databaseError(e);
     }
   }
 
   @Override
   public void deleteComment(int postId, int commentId) {
-    try {
-      Connection conn = getConnection();
-      String sql = "DELETE FROM comments WHERE post_id = ? AND id = ?;";
-      PreparedStatement stmt = conn.prepareStatement(sql);
-      stmt.setInt(1, postId);
-      stmt.setInt(2, commentId);
-      stmt.execute();
-
-      stmt.close();
-      conn.close();
+    try (Connection conn = getConnection()) {
+      String sql =
+          "WITH deleted AS ("
+              + "DELETE FROM comments WHERE post_id = ? AND id = ? RETURNING post_id, id"
+              + ") SELECT "
+              + notifyExpression(ChangeEvent.Type.COMMENT_DELETED, "post_id", "id")
+              + " FROM deleted;";
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        stmt.setInt(1, postId);
+        stmt.setInt(2, commentId);
+        stmt.executeQuery().close();
+      }
     } catch (SQLException e) {
-      throw new IllegalStateException("There was an issue interacting with the database.", e);
+      throw databaseError(e);
     }
   }
 
   @Override
   public int getCommentCountForPost(int postId) {
     int count = 0;
-    try {
-      Connection conn = getConnection();
+    try (Connection conn = getConnection()) {
       String sql = "SELECT COUNT(*) FROM comments WHERE post_id = ?;";
-      PreparedStatement stmt = conn.prepareStatement(sql);
-      stmt.setInt(1, postId);
-
-      ResultSet res = stmt.executeQuery();
-      if (res.next()) {
-        count = res.getInt(1);
-      } else {
-        throw new IllegalArgumentException("No post with id " + postId + " exists.");
-      }
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        stmt.setInt(1, postId);
 
-      res.close();
-      stmt.close();
-      conn.close();
+        try (ResultSet res = stmt.executeQuery()) {
+          if (res.next()) {
+            count = res.getInt(1);
+          } else {
+            throw new IllegalArgumentException("No post with id " + postId + " exists.");
+          }
+        }
+      }
     } catch (SQLException e) {
-      throw new IllegalStateException("There was an issue interacting with the database.", e);
+      throw databaseError(e);
     }
     return count;
   }
+
+  @Override
+  public List<CommentRecord> searchComments(String query, int limit, int offset) {
+    List<CommentRecord> comments = new ArrayList<>();
+    try (Connection conn = getConnection()) {
+      // See PostTableDBImpl#searchPosts for how the search itself works.
+      String sql =
+          "SELECT "
+              + COMMENT_COLUMNS
+              + " FROM comments, websearch_to_tsquery('english', ?) query "
+              + "WHERE comments.search_vector @@ query "
+              + "ORDER BY ts_rank(comments.search_vector, query) DESC, comments.id DESC "
+              + "LIMIT ? OFFSET ?;";
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        stmt.setString(1, query);
+        stmt.setInt(2, limit);
+        stmt.setInt(3, offset);
+
+        try (ResultSet res = stmt.executeQuery()) {
+          while (res.next()) {
+            comments.add(allFieldsResultSetToRecord(res));
+          }
+        }
+      }
+    } catch (SQLException e) {
+      throw databaseError(e);
+    }
+    return comments;
+  }
 }
@@ -1,12 +1,15 @@
 package com.codeforcommunity.database.tableImpl;
 
+import com.codeforcommunity.database.QueryDeadline;
+import com.codeforcommunity.database.QueryTimeoutException;
+import com.codeforcommunity.database.notify.ChangeEvent;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Timestamp;
-import java.time.format.DateTimeFormatter;
+import java.sql.Statement;
+import java.util.OptionalLong;
 import java.util.Properties;
 
 /**
@@ -15,6 +18,11 @@ import java.util.Properties;
  * visibility Since only the DBImpls will need to know about it.
  */
 abstract class DBImpl {
+  /** The SQLSTATE Postgres reports when a statement is cancelled (e.g. by statement_timeout). */
+  private static final String QUERY_CANCELED_STATE = "57014";
+  /** The Postgres NOTIFY channel that every write publishes a {@link ChangeEvent} on. */
+  protected static final String CHANGE_CHANNEL = "jumpstart_changes";
+
   private final String url;
   private final String user;
   private final String password;
@@ -44,20 +52,77 @@ abstract class DBImpl {
    * Creates a {@link Connection} to the database. Don't forget to call {@link ResultSet#close()},
    * {@link PreparedStatement#close()}, and {@link Connection#close()} when you're done.
    *
+   * <p>If a {@link QueryDeadline} is set on the calling thread, the remaining budget is applied to
+   * the connection as its {@code statement_timeout}, so Postgres cancels any statement run on it
+   * once the request's deadline passes instead of letting it run to completion.
+   *
    * @return The newly created Connection.
    * @throws SQLException If there's an issue connecting to the database.
+   * @throws QueryTimeoutException If the deadline has already passed.
    */
   protected Connection getConnection() throws SQLException {
-    return DriverManager.getConnection(url, user, password);
+    checkDeadline();
+    Connection conn = DriverManager.getConnection(url, user, password);
+
+    // Connecting can take a while, so get the budget again now that we have a connection.
+    OptionalLong remaining = QueryDeadline.remainingMillis();
+    if (remaining.isPresent()) {
+      try (Statement stmt = conn.createStatement()) {
+        // A statement_timeout of 0 disables the timeout, so always allow at least 1ms.
+        stmt.execute("SET statement_timeout = " + Math.max(1, remaining.getAsLong()));
+      } catch (SQLException e) {
+        conn.close();
+        throw e;
+      }
+    }
+    return conn;
   }
 
   /**
-   * Format the given timestamp to a human-readable String.
+   * Make sure the calling thread's deadline (if any) hasn't passed yet.
    *
-   * @param time The time to convert to a String.
-   * @return A String representing the time.
+   * @throws QueryTimeoutException If the deadline has passed.
    */
-  public static String timestampToString(Timestamp time) {
-    return DateTimeFormatter.ofPattern("MM-dd-yyyy HH:mm").format(time.toLocalDateTime());
+  private static void checkDeadline() {
+    OptionalLong remaining = QueryDeadline.remainingMillis();
+    if (remaining.isPresent() && remaining.getAsLong() <= 0) {
+      throw new QueryTimeoutException("The request deadline passed before the query could run.");
+    }
+  }
+
+  /**
+   * Convert the given {@link SQLException} into the unchecked exception we throw from the table
+   * implementations. Statements cancelled because of a deadline become a {@link
+   * QueryTimeoutException} so that the caller can tell them apart from other failures.
+   *
+   * @param e The exception thrown by the JDBC driver.
+   * @return The exception to throw.
+   */
+  protected static IllegalStateException databaseError(SQLException e) {
+    if (QUERY_CANCELED_STATE.equals(e.getSQLState())) {
+      return new QueryTimeoutException("The query was cancelled by its request deadline.", e);
+    }
+    return new IllegalStateException("There was an issue interacting with the database.", e);
+  }
+
+  /**
+   * Build a SQL expression which publishes a {@link ChangeEvent} on {@link #CHANGE_CHANNEL}. Use it
+   * in the same statement as the write it describes (e.g. selecting it from the rows returned by a
+   * {@code WITH ... RETURNING} clause) so the notification is sent if and only if the write
+   * commits.
+   *
+   * @param type The kind of change.
+   * @param postIdColumn The column (or expression) holding the changed post's ID.
+   * @param commentIdColumn The column holding the changed comment's ID, or null if the change isn't
+   *     about a single comment.
+   * @return The SQL expression.
+   */
+  protected static String notifyExpression(
+      ChangeEvent.Type type, String postIdColumn, String commentIdColumn) {
+    String payload = "'" + type.payloadName() + ":' || " + postIdColumn;
+    if (commentIdColumn != null) {
+      payload += " || ':' || " + commentIdColumn;
+    }
+    return "pg_notify('" + CHANGE_CHANNEL + "', " + payload + ")";
   }
 }
@@ -0,0 +1,109 @@
+package com.codeforcommunity.database.tableImpl;
+
+import com.codeforcommunity.database.table.ILazyRecords;
+import java.util.BitSet;
+
+/**
+ * Hands out each of an in-memory table's {@link ILazyRecords} at most once. Once a record has been
+ * taken it belongs to the table, which might change or delete it, so it must never be loaded again.
+ *
+ * <p>Every call must be made while holding the write lock of the table's map, which is the case
+ * inside {@link com.codeforcommunity.database.collections.IntObjectHashMap#compute}, except for
+ * {@link #untaken()} and {@link #read(int)}. Those let a table read every record it hasn't loaded
+ * without holding up its writers for the whole time.
+ *
+ * @param <T> The type of record.
+ */
+class LazyLoader<T> {
+  private final ILazyRecords<T> records;
+  /** Which records have been taken, by number. */
+  private final BitSet taken;
+  /** How many records haven't been taken yet. */
+  private int remaining;
+
+  LazyLoader(ILazyRecords<T> records) {
+    this.records = records;
+    this.taken = new BitSet(records.size());
+    this.remaining = records.size();
+  }
+
+  /** @return How many records there are, taken or not. */
+  int size() {
+    return records.size();
+  }
+
+  /**
+   * @param index A record's number.
+   * @return The record's key.
+   */
+  int keyAt(int index) {
+    return records.keyAt(index);
+  }
+
+  /**
+   * Take the record with the given key.
+   *
+   * @param key The key.
+   * @return The record, or null if there isn't one or it has already been taken.
+   */
+  T take(int key) {
+    int index = records.indexOf(key);
+    if (index < 0 || taken.get(index)) {
+      return null;
+    }
+    // Load it before marking it taken, so if it can't be read it isn't lost for good.
+    T record = records.load(index);
+    synchronized (taken) {
+      taken.set(index);
+    }
+    remaining--;
+    return record;
+  }
+
+  /**
+   * Find the records that haven't been taken yet. This can be called without holding the table's
+   * lock.
+   *
+   * @return A copy of which records haven't been taken, by number. Records taken after this returns
+   *     are still in it.
+   */
+  BitSet untaken() {
+    BitSet untaken;
+    synchronized (taken) {
+      untaken = (BitSet) taken.clone();
+    }
+    untaken.flip(0, records.size());
+    return untaken;
+  }
+
+  /**
+   * Read a record, whether it's been taken or not, into a new copy that the caller keeps. This can
+   * be called without holding the table's lock, since the records themselves never change.
+   *
+   * @param index The record's number.
+   * @return The record.
+   */
+  T read(int index) {
+    return records.load(index);
+  }
+
+  /**
+   * Read the record with the given key without taking it, for a caller that only needs to look at
+   * it. The record stays where it is, and a later {@link #take(int)} loads it again.
+   *
+   * @param key The key.
+   * @return A new copy of the record, or null if there isn't one or it has already been taken.
+   */
+  T peek(int key) {
+    int index = records.indexOf(key);
+    if (index < 0 || taken.get(index)) {
+      return null;
+    }
+    return records.load(index);
+  }
+
+  /** @return True if every record has been taken. */
+  boolean isDone() {
+    return remaining == 0;
+  }
+}
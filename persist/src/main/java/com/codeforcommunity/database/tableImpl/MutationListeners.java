@@ -0,0 +1,74 @@
+package com.codeforcommunity.database.tableImpl;
+
+import com.codeforcommunity.database.records.CommentRecord;
+import com.codeforcommunity.database.records.PostRecord;
+import com.codeforcommunity.database.table.IMutationListener;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/** The {@link IMutationListener}s of an in-memory table, which passes every event on to each. */
+class MutationListeners implements IMutationListener {
+  // Listeners are added once at startup and then read on every change, which is exactly what a
+  // CopyOnWriteArrayList is good at.
+  private final List<IMutationListener> listeners = new CopyOnWriteArrayList<>();
+
+  void add(IMutationListener listener) {
+    listeners.add(listener);
+  }
+
+  @Override
+  public void postSaved(PostRecord post) {
+    for (IMutationListener listener : listeners) {
+      listener.postSaved(post);
+    }
+  }
+
+  @Override
+  public void postDeleted(int postId) {
+    for (IMutationListener listener : listeners) {
+      listener.postDeleted(postId);
+    }
+  }
+
+  @Override
+  public void postClapped(int postId, int clapCount) {
+    for (IMutationListener listener : listeners) {
+      listener.postClapped(postId, clapCount);
+    }
+  }
+
+  @Override
+  public void commentSaved(CommentRecord comment) {
+    for (IMutationListener listener : listeners) {
+      listener.commentSaved(comment);
+    }
+  }
+
+  @Override
+  public void commentDeleted(int postId, int commentId) {
+    for (IMutationListener listener : listeners) {
+      listener.commentDeleted(postId, commentId);
+    }
+  }
+
+  @Override
+  public void commentsDeletedForPost(int postId) {
+    for (IMutationListener listener : listeners) {
+      listener.commentsDeletedForPost(postId);
+    }
+  }
+
+  @Override
+  public void commentClapped(int postId, int commentId, int clapCount) {
+    for (IMutationListener listener : listeners) {
+      listener.commentClapped(postId, commentId, clapCount);
+    }
+  }
+
+  @Override
+  public void mutationFinished() {
+    for (IMutationListener listener : listeners) {
+      listener.mutationFinished();
+    }
+  }
+}
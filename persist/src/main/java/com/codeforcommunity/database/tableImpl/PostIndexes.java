@@ -0,0 +1,147 @@
+package com.codeforcommunity.database.tableImpl;
+
+import com.codeforcommunity.database.records.PostRecord;
+import com.codeforcommunity.database.records.Timestamps;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Secondary indexes over the posts of a {@link StubPostTableImpl}, so that the newest posts
+ * (overall or by one author) can be found without looking at every post. They play the same part as
+ * database indexes on {@code date_created} and {@code (author, date_created)}.
+ *
+ * <p>Each index is a {@link ConcurrentSkipListSet}, a sorted set that any number of threads can
+ * read while another changes it, with O(log n) lookups, inserts and removals. Posts are sorted
+ * newest first, with ties broken by the higher ID first, so the same order comes out every time.
+ * The indexes only keep each post's date and ID, not the post itself, so posts the table hasn't
+ * loaded yet can be indexed without being loaded: only the posts on the page asked for need to be.
+ *
+ * <p>Only one thread may call {@link #update(PostRecord, PostRecord)} at a time; the table calls it
+ * while holding its write lock. Readers can read at any time. A reader never sees a post
+ * half-indexed: each post is added or removed with a single change to each index. Adding a post
+ * that's already indexed changes nothing.
+ */
+class PostIndexes {
+  /** Where a post sorts in the indexes. */
+  private static final class Key implements Comparable<Key> {
+    final long dateCreated;
+    final int id;
+
+    Key(PostRecord post) {
+      this(post.getDateCreatedMillis(), post.getId());
+    }
+
+    Key(long dateCreated, int id) {
+      this.dateCreated = dateCreated;
+      this.id = id;
+    }
+
+    @Override
+    public int compareTo(Key other) {
+      // Newest first, so compare the other way around.
+      int byDate = Long.compare(other.dateCreated, dateCreated);
+      return byDate != 0 ? byDate : Integer.compare(other.id, id);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof Key && compareTo((Key) other) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(dateCreated) * 31 + id;
+    }
+  }
+
+  /** Every post, newest first. */
+  private final ConcurrentSkipListSet<Key> byDate = new ConcurrentSkipListSet<>();
+  /** Each author's posts, newest first. Authors with no posts are removed. */
+  private final ConcurrentHashMap<String, ConcurrentSkipListSet<Key>> byAuthor =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Update the indexes after a post changed.
+   *
+   * @param oldPost The post before the change, or null if it didn't exist.
+   * @param newPost The post after the change, or null if it was deleted.
+   */
+  void update(PostRecord oldPost, PostRecord newPost) {
+    if (oldPost != null) {
+      Key key = new Key(oldPost);
+      byDate.remove(key);
+      byAuthor.computeIfPresent(
+          oldPost.getAuthor(),
+          (author, posts) -> {
+            posts.remove(key);
+            // Returning null removes the author.
+            return posts.isEmpty() ? null : posts;
+          });
+    }
+    if (newPost != null) {
+      Key key = new Key(newPost);
+      byDate.add(key);
+      byAuthor
+          .computeIfAbsent(newPost.getAuthor(), author -> new ConcurrentSkipListSet<>())
+          .add(key);
+    }
+  }
+
+  /**
+   * Get a page of the newest posts.
+   *
+   * @param limit The maximum number of posts to return.
+   * @param offset The number of newest posts to skip.
+   * @return The posts' IDs, newest first.
+   */
+  List<Integer> newest(int limit, int offset) {
+    return page(byDate, limit, offset);
+  }
+
+  /**
+   * Get a page of the newest posts by the given author, starting just after the given post. The
+   * skip list finds where to start in O(log n), however deep into the author's posts that is.
+   *
+   * @param author The author.
+   * @param beforeDateCreated The date of the last post on the previous page, or {@link
+   *     Timestamps#NONE} to start from the newest post.
+   * @param beforeId The ID of the last post on the previous page.
+   * @param limit The maximum number of posts to return.
+   * @return The posts' IDs, newest first.
+   */
+  List<Integer> newestByAuthor(String author, long beforeDateCreated, int beforeId, int limit) {
+    NavigableSet<Key> posts = byAuthor.get(author);
+    if (posts == null) {
+      return List.of();
+    }
+    if (beforeDateCreated != Timestamps.NONE) {
+      // Everything that sorts after the last post we sent (so is older than it).
+      posts = posts.tailSet(new Key(beforeDateCreated, beforeId), false);
+    }
+    return page(posts, limit, 0);
+  }
+
+  /**
+   * Read a page from the start of an index.
+   *
+   * @param index The index.
+   * @param limit The maximum number of posts to return.
+   * @param offset The number of posts to skip.
+   * @return The posts' IDs.
+   */
+  private static List<Integer> page(NavigableSet<Key> index, int limit, int offset) {
+    List<Integer> page = new ArrayList<>(Math.min(limit, 64));
+    Iterator<Key> posts = index.iterator();
+    for (int i = 0; i < offset && posts.hasNext(); i++) {
+      posts.next();
+    }
+    while (page.size() < limit && posts.hasNext()) {
+      page.add(posts.next().id);
+    }
+    return page;
+  }
+}
@@ -0,0 +1,348 @@
+package com.codeforcommunity.database.tableImpl;
+
+import com.codeforcommunity.database.records.PostRecord;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * A full-text search index over the titles and bodies of the posts of a {@link StubPostTableImpl}.
+ * It does the job of the {@code search_vector} column and its GIN index in the database.
+ *
+ * <p>It's an <a href="https://en.wikipedia.org/wiki/Inverted_index">inverted index</a>: for every
+ * word, a {@link PostingList} of the posts it appears in. A search only has to look at the posts on
+ * the lists of the words it's looking for, rather than at every post.
+ *
+ * <p>Results are ranked with <a href="https://en.wikipedia.org/wiki/Okapi_BM25">BM25</a>, which
+ * rewards posts that use the query's words often (with diminishing returns), favours rare words
+ * over common ones, and doesn't let long posts win just by being long. Like the database's
+ * weighting, a word in the title counts as much as {@link #TITLE_WEIGHT} in the body.
+ *
+ * <p>The index is built the first time it's searched, from every post at once, split up across
+ * every core with fork/join (see {@link Build}). After that, the table keeps it up to date as posts
+ * are saved and deleted. Searches can run at the same time as each other; changes wait for them.
+ */
+class PostSearchIndex {
+  /** How much a word in the title counts for, compared to a word in the body. */
+  static final int TITLE_WEIGHT = 2;
+  /** How quickly repeating a word stops helping a post's score. */
+  private static final double K1 = 1.2;
+  /** How much a post's length counts against it, from 0 (not at all) to 1. */
+  private static final double B = 0.75;
+  /** Below this many posts, a part of a build isn't split up any further. */
+  private static final int BUILD_CHUNK_SIZE = 1024;
+
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+  /** The posting list of every word. */
+  private Map<String, PostingList> postings = new HashMap<>();
+  /** The (weighted) number of words in each post, by ID, or -1 for posts not in the index. */
+  private int[] lengths = new int[0];
+  /** How many posts are in the index. */
+  private int docCount;
+  /** The total length of the posts in the index. */
+  private long totalLength;
+
+  /** Whether the index has been built, so should be kept up to date. */
+  private boolean built;
+  /**
+   * The changes made while the index is being built, as old and new pairs of posts, or null if it
+   * isn't being built.
+   */
+  private List<PostRecord[]> pending;
+
+  /** @return Whether the index has been built yet. */
+  boolean isBuilt() {
+    lock.readLock().lock();
+    try {
+      return built;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Update the index after a post changed. Before the index is built this does nothing, since the
+   * build will see the change.
+   *
+   * @param oldPost The post before the change, or null if it didn't exist.
+   * @param newPost The post after the change, or null if it was deleted.
+   */
+  void update(PostRecord oldPost, PostRecord newPost) {
+    lock.writeLock().lock();
+    try {
+      if (pending != null) {
+        pending.add(new PostRecord[] {oldPost, newPost});
+      } else if (built) {
+        apply(oldPost, newPost);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Build the index from scratch, replacing whatever it held.
+   *
+   * <p>The table keeps changing while we build. Any change made after we start is also queued up by
+   * {@link #update(PostRecord, PostRecord)}, and applied once the build is done. Some of those
+   * changes may already be in the posts we build from, so applying a change twice has to be
+   * harmless, which it is.
+   *
+   * @param posts Gets every post, in order of ID. It's called after the build starts.
+   */
+  synchronized void rebuild(Supplier<List<PostRecord>> posts) {
+    lock.writeLock().lock();
+    try {
+      pending = new ArrayList<>();
+    } finally {
+      lock.writeLock().unlock();
+    }
+
+    List<PostRecord> all = posts.get();
+    int maxId = all.isEmpty() ? -1 : all.get(all.size() - 1).getId();
+    int[] newLengths = new int[maxId + 1];
+    Arrays.fill(newLengths, -1);
+    // invoke() runs the build on the common fork/join pool, which has a thread for every core.
+    Partial result = new Build(all, 0, all.size(), newLengths).invoke();
+
+    lock.writeLock().lock();
+    try {
+      postings = result.postings;
+      lengths = newLengths;
+      docCount = result.docCount;
+      totalLength = result.totalLength;
+      for (PostRecord[] change : pending) {
+        apply(change[0], change[1]);
+      }
+      pending = null;
+      built = true;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Apply a change to the index. Must be called while holding the write lock.
+   *
+   * @param oldPost The post before the change, or null if it didn't exist.
+   * @param newPost The post after the change, or null if it was deleted.
+   */
+  private void apply(PostRecord oldPost, PostRecord newPost) {
+    // Posts can't be edited, so the same post always has the same words, and removing it first
+    // makes adding it again harmless.
+    if (oldPost != null) {
+      remove(oldPost);
+    }
+    if (newPost != null) {
+      remove(newPost);
+      add(newPost);
+    }
+  }
+
+  private void add(PostRecord post) {
+    int id = post.getId();
+    Map<String, Integer> terms = terms(post);
+    for (Map.Entry<String, Integer> term : terms.entrySet()) {
+      postings.computeIfAbsent(term.getKey(), word -> new PostingList()).add(id, term.getValue());
+    }
+    if (id >= lengths.length) {
+      int oldLength = lengths.length;
+      lengths = Arrays.copyOf(lengths, Math.max(id + 1, oldLength * 2));
+      Arrays.fill(lengths, oldLength, lengths.length, -1);
+    }
+    int length = length(terms);
+    lengths[id] = length;
+    docCount++;
+    totalLength += length;
+  }
+
+  private void remove(PostRecord post) {
+    int id = post.getId();
+    if (id >= lengths.length || lengths[id] < 0) {
+      return;
+    }
+    for (String term : terms(post).keySet()) {
+      PostingList list = postings.get(term);
+      if (list != null && list.remove(id) && list.count() == 0) {
+        postings.remove(term);
+      }
+    }
+    docCount--;
+    totalLength -= lengths[id];
+    lengths[id] = -1;
+  }
+
+  /**
+   * Search the index.
+   *
+   * @param query What the user typed.
+   * @param limit The maximum number of results.
+   * @param offset The number of best results to skip.
+   * @return The IDs of the matching posts, best first. Ties go to the highest ID.
+   */
+  int[] search(String query, int limit, int offset) {
+    Set<String> terms = StubSearch.tokenize(query);
+    int wanted = (int) Math.min((long) limit + offset, Integer.MAX_VALUE);
+
+    lock.readLock().lock();
+    try {
+      if (docCount == 0) {
+        return new int[0];
+      }
+      double averageLength = Math.max(1, (double) totalLength / docCount);
+      // Add up each post's score in an array indexed by ID, remembering which posts we touched.
+      float[] scores = new float[lengths.length];
+      int[] matched = new int[16];
+      int matchedCount = 0;
+      for (String term : terms) {
+        PostingList list = postings.get(term);
+        if (list == null) {
+          continue;
+        }
+        // Rare words are worth more than common ones.
+        double idf = Math.log(1 + (docCount - list.count() + 0.5) / (list.count() + 0.5));
+        PostingList.Reader reader = list.reader();
+        while (reader.next()) {
+          int doc = reader.doc;
+          double frequency = reader.frequency;
+          double normalized = K1 * (1 - B + B * lengths[doc] / averageLength);
+          if (scores[doc] == 0) {
+            if (matchedCount == matched.length) {
+              matched = Arrays.copyOf(matched, matchedCount * 2);
+            }
+            matched[matchedCount++] = doc;
+          }
+          scores[doc] += (float) (idf * frequency * (K1 + 1) / (frequency + normalized));
+        }
+      }
+
+      // Keep the best 'wanted' posts in a heap with the worst of them on top, so each post only
+      // has to beat that one to get in.
+      PriorityQueue<Integer> best =
+          new PriorityQueue<>(
+              (a, b) ->
+                  scores[a] != scores[b]
+                      ? Float.compare(scores[a], scores[b])
+                      : Integer.compare(a, b));
+      for (int i = 0; i < matchedCount; i++) {
+        best.add(matched[i]);
+        if (best.size() > wanted) {
+          best.poll();
+        }
+      }
+      // The heap gives us the worst first, so fill the results in from the end, stopping at the
+      // ones the offset skips.
+      int[] results = new int[Math.max(0, best.size() - offset)];
+      for (int i = results.length - 1; i >= 0; i--) {
+        results[i] = best.poll();
+      }
+      return results;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Count the (weighted) number of times each word appears in the given post.
+   *
+   * @param post The post.
+   * @return How many times each word appears.
+   */
+  private static Map<String, Integer> terms(PostRecord post) {
+    Map<String, Integer> terms = new HashMap<>();
+    StubSearch.countTerms(post.getTitle(), TITLE_WEIGHT, terms);
+    StubSearch.countTerms(post.getBody(), 1, terms);
+    return terms;
+  }
+
+  private static int length(Map<String, Integer> terms) {
+    int length = 0;
+    for (int frequency : terms.values()) {
+      length += frequency;
+    }
+    return length;
+  }
+
+  /** The part of an index built from one range of posts. */
+  private static final class Partial {
+    final Map<String, PostingList> postings = new HashMap<>();
+    int docCount;
+    long totalLength;
+
+    /**
+     * Add the posts of the range right after this one to this one.
+     *
+     * @param later The range after this one.
+     */
+    void appendAll(Partial later) {
+      for (Map.Entry<String, PostingList> entry : later.postings.entrySet()) {
+        PostingList list = postings.get(entry.getKey());
+        if (list == null) {
+          postings.put(entry.getKey(), entry.getValue());
+        } else {
+          list.appendAll(entry.getValue());
+        }
+      }
+      docCount += later.docCount;
+      totalLength += later.totalLength;
+    }
+  }
+
+  /**
+   * Builds the index for a range of posts. A big range is split in half, with each half built on
+   * its own thread (a fork/join pool steals halves for its idle threads), and then the halves are
+   * joined. Every post in the second half has a higher ID than every post in the first, so joining
+   * them just appends each word's list from the second half onto the first.
+   */
+  private static final class Build extends RecursiveTask<Partial> {
+    private final List<PostRecord> posts;
+    private final int from;
+    private final int to;
+    /** Each range fills in its own posts' lengths, so they can share one array. */
+    private final int[] lengths;
+
+    Build(List<PostRecord> posts, int from, int to, int[] lengths) {
+      this.posts = posts;
+      this.from = from;
+      this.to = to;
+      this.lengths = lengths;
+    }
+
+    @Override
+    protected Partial compute() {
+      if (to - from > BUILD_CHUNK_SIZE) {
+        int middle = (from + to) >>> 1;
+        Build first = new Build(posts, from, middle, lengths);
+        first.fork();
+        Partial second = new Build(posts, middle, to, lengths).compute();
+        Partial result = first.join();
+        result.appendAll(second);
+        return result;
+      }
+
+      Partial result = new Partial();
+      for (int i = from; i < to; i++) {
+        PostRecord post = posts.get(i);
+        Map<String, Integer> terms = terms(post);
+        for (Map.Entry<String, Integer> term : terms.entrySet()) {
+          result
+              .postings
+              .computeIfAbsent(term.getKey(), word -> new PostingList())
+              .add(post.getId(), term.getValue());
+        }
+        int length = length(terms);
+        lengths[post.getId()] = length;
+        result.docCount++;
+        result.totalLength += length;
+      }
+      return result;
+    }
+  }
+}
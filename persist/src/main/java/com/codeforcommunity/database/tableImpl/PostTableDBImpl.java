@@ -1,24 +1,54 @@
 package com.codeforcommunity.database.tableImpl;
 
+import com.codeforcommunity.database.compression.BodyCodec;
+import com.codeforcommunity.database.compression.BodyCompression;
+import com.codeforcommunity.database.notify.ChangeEvent;
 import com.codeforcommunity.database.records.PostRecord;
+import com.codeforcommunity.database.records.Timestamps;
 import com.codeforcommunity.database.table.IPostTable;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
 
 public class PostTableDBImpl extends DBImpl implements IPostTable {
   /**
-   * The constructor which just calls the {@link DBImpl} super constructor.
+   * The columns of the posts table that make up a {@link PostRecord}. We list them out instead of
+   * using {@code posts.*} so that we don't also pull columns like the search vector over the wire.
+   */
+  private static final String POST_COLUMNS =
+      "posts.id, posts.author, posts.title, posts.body, posts.date_created, "
+          + "posts.body_compressed, posts.body_codec";
+
+  /**
+   * Builds a post's search vector from its title and whole body (the two parameters, in that
+   * order). Words in the title are weighted 'A' and words in the body 'B', so a match in the title
+   * ranks above a match in the body.
+   */
+  private static final String SEARCH_VECTOR_EXPRESSION =
+      "setweight(to_tsvector('english', ?), 'A') || setweight(to_tsvector('english', ?), 'B')";
+  /** How many posts {@link #indexCompressedBodies()} indexes in each round trip. */
+  private static final int INDEX_BATCH_SIZE = 100;
+
+  /** Decides which bodies are stored compressed. */
+  private final BodyCompression compression;
+
+  /**
+   * The constructor which calls the {@link DBImpl} super constructor and reads the body compression
+   * settings (see {@link BodyCompression#fromProperties(Properties)}).
    *
    * @param dbProperties A {@link Properties} we expect to contain the values for url, user, and
    *     password for connecting to the database.
    */
   public PostTableDBImpl(Properties dbProperties) {
     super(dbProperties);
+    this.compression = BodyCompression.fromProperties(dbProperties);
   }
 
   /**
@@ -31,8 +61,8 @@ public class PostTableDBImpl extends DBImpl implements IPostTable {
    *     trying to convert to the wrong type, or other reasons.
    */
   private static PostRecord allFieldsResultSetToRecord(ResultSet res) throws SQLException {
-    // Convert the timestamp to a human-readable string.
-    String time = timestampToString(res.getTimestamp("date_created"));
+    // Records keep the time as a number, and only format it when it's sent to a client.
+    long time = res.getTimestamp("date_created").getTime();
     // Return a new PostRecord with the found data. You can either get the column by the index
     // (so if we said 'SELECT id, author, ...', id would be index 1, author 2, ...) or by column
     // name.
@@ -47,43 +77,61 @@ public class PostTableDBImpl extends DBImpl implements IPostTable {
         res.getString("body"));
   }
 
+  /**
+   * Like {@link #allFieldsResultSetToRecord(ResultSet)}, but also picks up the compressed body if
+   * there is one. The body is left compressed until something asks for it.
+   *
+   * @param res The current {@link ResultSet} row to pull data from. It must include the {@code
+   *     body_compressed} and {@code body_codec} columns.
+   * @return A PostRecord containing the row's data.
+   * @throws SQLException If there is an issue getting data from the row.
+   */
+  private static PostRecord fullResultSetToRecord(ResultSet res) throws SQLException {
+    PostRecord record = allFieldsResultSetToRecord(res);
+    byte[] compressed = res.getBytes("body_compressed");
+    if (compressed != null) {
+      record.setEncodedBody(compressed, BodyCodec.fromName(res.getString("body_codec")));
+    }
+    return record;
+  }
+
   @Override
   public PostRecord getById(int id) {
     PostRecord record = null;
-    try {
-      // Get our database connection.
-      Connection conn = getConnection();
+    // Get our database connection. Declaring it in the 'try (...)' block closes it for us when the
+    // block exits, even if a query fails or is cancelled by the request deadline.
+    try (Connection conn = getConnection()) {
       // Create our SQL string. This one gets all of the fields of a Post by a given ID.
       // The '?' allows us to safely insert that variable into the query without having to worry
       // about escaping any special characters inside.
       // We're using a LEFT JOIN instead of just a JOIN here since we want post information to be
       // returned even if clap information doesn't exist.
       String sql =
-          "SELECT posts.*, clap_count "
+          "SELECT "
+              + POST_COLUMNS
+              + ", clap_count "
               + "FROM posts "
               + "LEFT JOIN (SELECT post_id, COUNT(*) AS clap_count FROM post_claps GROUP BY post_id) claps "
               + "ON posts.id = claps.post_id "
               + "WHERE posts.id = ?;";
       // A PreparedStatement is the technique that allows us to insert variables by '?'.
-      PreparedStatement stmt = conn.prepareStatement(sql);
-      // Set the first '?' = id. Note how in prepared statements, parameters are not 0-indexed.
-      stmt.setInt(1, id);
-
-      // Get our results. This could also be done in two separate calls;
-      // stmt.execute() and stmt.getResultSet().
-      ResultSet res = stmt.executeQuery();
-      // The next row in the table is queued up by calling ResultSet.next(). If ResultSet.next()
-      // returns false, then there are no more rows (or no rows were found if
-      // this is the first call).
-      if (res.next()) {
-        record = allFieldsResultSetToRecord(res);
-      }
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        // Set the first '?' = id. Note how in prepared statements, parameters are not 0-indexed.
+        stmt.setInt(1, id);
 
-      res.close();
-      stmt.close();
-      conn.close();
+        // Get our results. This could also be done in two separate calls;
+        // stmt.execute() and stmt.getResultSet().
+        try (ResultSet res = stmt.executeQuery()) {
+          // The next row in the table is queued up by calling ResultSet.next(). If
+          // ResultSet.next() returns false, then there are no more rows (or no rows were found if
+          // this is the first call).
+          if (res.next()) {
+            record = fullResultSetToRecord(res);
+          }
+        }
+      }
     } catch (SQLException e) {
-      throw new IllegalStateException("There was an issue interacting with the database.", e);
+      throw databaseError(e);
     }
     if (record == null) {
       throw new IllegalArgumentException("No post with ID " + id + " exists.");
@@ -94,113 +142,322 @@ public class PostTableDBImpl extends DBImpl implements IPostTable {
   @Override
   public List<PostRecord> getAllPosts() {
     List<PostRecord> posts = new ArrayList<>();
-    try {
-      Connection conn = getConnection();
+    try (Connection conn = getConnection()) {
       String sql =
-          "SELECT posts.*, clap_count "
+          "SELECT "
+              + POST_COLUMNS
+              + ", clap_count "
               + "FROM posts "
               + "LEFT JOIN (SELECT post_id, COUNT(*) AS clap_count FROM post_claps GROUP BY post_id) claps "
               + "ON posts.id = claps.post_id;";
-      PreparedStatement stmt = conn.prepareStatement(sql);
-      ResultSet res = stmt.executeQuery();
-
-      // Since ResultSet.next() queues up the next row and lets you know if there are any left,
-      // we just iterate through the found records like this.
-      while (res.next()) {
-        posts.add(allFieldsResultSetToRecord(res));
+      try (PreparedStatement stmt = conn.prepareStatement(sql);
+          ResultSet res = stmt.executeQuery()) {
+        // Since ResultSet.next() queues up the next row and lets you know if there are any left,
+        // we just iterate through the found records like this.
+        while (res.next()) {
+          posts.add(fullResultSetToRecord(res));
+        }
       }
-
-      res.close();
-      stmt.close();
-      conn.close();
     } catch (SQLException e) {
-      throw new IllegalStateException("There was an issue interacting with the database.", e);
+      throw databaseError(e);
     }
 
     return posts;
   }
 
+  @Override
+  public int[] getAllPostIds() {
+    try (Connection conn = getConnection()) {
+      // Only the IDs, which the database can read straight out of the primary key's index.
+      String sql = "SELECT id FROM posts;";
+      try (PreparedStatement stmt = conn.prepareStatement(sql);
+          ResultSet res = stmt.executeQuery()) {
+        int[] ids = new int[1024];
+        int count = 0;
+        while (res.next()) {
+          if (count == ids.length) {
+            ids = Arrays.copyOf(ids, count * 2);
+          }
+          ids[count++] = res.getInt("id");
+        }
+        return Arrays.copyOf(ids, count);
+      }
+    } catch (SQLException e) {
+      throw databaseError(e);
+    }
+  }
+
   @Override
   public boolean postExists(int postId) {
     boolean commentExists = false;
-    try {
-      Connection conn = getConnection();
+    try (Connection conn = getConnection()) {
       // In this case, we don't want to select all fields because getting a larger number
-      // of fields is a slower operation.
-      String sql =
-          "SELECT id "
-              + "FROM posts "
-              + "LEFT JOIN (SELECT post_id, COUNT(*) AS clap_count FROM post_claps GROUP BY post_id) claps "
-              + "ON posts.id = claps.post_id "
-              + "WHERE id = ?;";
-      PreparedStatement stmt = conn.prepareStatement(sql);
-      stmt.setInt(1, postId);
-      ResultSet res = stmt.executeQuery();
-      if (res.next()) {
-        commentExists = true;
+      // of fields is a slower operation. Whether the post exists is all we need, so there's no
+      // need to count its claps either.
+      String sql = "SELECT id FROM posts WHERE id = ?;";
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        stmt.setInt(1, postId);
+        try (ResultSet res = stmt.executeQuery()) {
+          if (res.next()) {
+            commentExists = true;
+          }
+        }
       }
-
-      res.close();
-      stmt.close();
-      conn.close();
     } catch (SQLException e) {
-      throw new IllegalStateException("There was an issue interacting with the database.", e);
+      throw databaseError(e);
     }
     return commentExists;
   }
 
   @Override
   public void savePost(PostRecord post) {
-    try {
-      Connection conn = getConnection();
+    try (Connection conn = getConnection()) {
       // We're setting ONLY the author, title, and body since the database will provide for us the
-      // id, date_created, and clap_count automatically.
-      String sql = "INSERT INTO posts (author, title, body) VALUES (?, ?, ?);";
-      PreparedStatement stmt = conn.prepareStatement(sql);
-      stmt.setString(1, post.getAuthor());
-      stmt.setString(2, post.getTitle());
-      stmt.setString(3, post.getBody());
+      // id, date_created, and clap_count automatically. RETURNING hands back the values the
+      // database filled in, and selecting a notification from them publishes the change to every
+      // other node in the same statement as the insert. The search vector is made from the whole
+      // body here, since the body column may only hold the start of it.
+      String sql =
+          "WITH inserted AS ("
+              + "INSERT INTO posts (author, title, body, body_compressed, body_codec, search_vector) "
+              + "VALUES (?, ?, ?, ?, ?, "
+              + SEARCH_VECTOR_EXPRESSION
+              + ") RETURNING id, date_created"
+              + ") SELECT id, date_created, "
+              + notifyExpression(ChangeEvent.Type.POST_CREATED, "id", null)
+              + " FROM inserted;";
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        stmt.setString(1, post.getAuthor());
+        stmt.setString(2, post.getTitle());
 
-      stmt.execute();
+        String body = post.getBody();
+        if (compression.shouldCompress(body)) {
+          // Keep the start of the body in plain text so summaries never need to decompress it. The
+          // threshold can be below the summary length, so the body may be shorter than a summary.
+          BodyCodec codec = compression.getCodec();
+          stmt.setString(3, body.substring(0, Math.min(SUMMARY_BODY_LENGTH, body.length())));
+          stmt.setBytes(4, codec.encode(body));
+          stmt.setString(5, codec.name());
+        } else {
+          stmt.setString(3, body);
+          stmt.setNull(4, Types.BINARY);
+          stmt.setNull(5, Types.VARCHAR);
+        }
+        stmt.setString(6, post.getTitle());
+        stmt.setString(7, body);
 
-      stmt.close();
-      conn.close();
+        try (ResultSet res = stmt.executeQuery()) {
+          // Fill in the values the database created, like the stub table does.
+          if (res.next()) {
+            post.setId(res.getInt("id"));
+            post.setDateCreatedMillis(res.getTimestamp("date_created").getTime());
+          }
+        }
+      }
     } catch (SQLException e) {
-      throw new IllegalStateException("There was an issue interacting with the database.", e);
+      throw databaseError(e);
     }
   }
 
+  /**
+   * Fill in the search vector of every post that doesn't have one yet. Those are the posts whose
+   * bodies were already compressed when the search vector stopped being generated by the database
+   * (see migration 7), since Postgres can't read the compressed bytes. Each one is decompressed and
+   * indexed here instead. This only has work to do the first time it runs after that migration, so
+   * call it once in the background when the server starts.
+   *
+   * @return How many posts were indexed.
+   */
+  public int indexCompressedBodies() {
+    int indexed = 0;
+    try (Connection conn = getConnection()) {
+      String select =
+          "SELECT id, title, body, body_compressed, body_codec FROM posts "
+              + "WHERE search_vector IS NULL AND id > ? ORDER BY id LIMIT ?;";
+      String update =
+          "UPDATE posts SET search_vector = " + SEARCH_VECTOR_EXPRESSION + " WHERE id = ?;";
+      try (PreparedStatement selectStmt = conn.prepareStatement(select);
+          PreparedStatement updateStmt = conn.prepareStatement(update)) {
+        int lastId = 0;
+        boolean more = true;
+        while (more) {
+          selectStmt.setInt(1, lastId);
+          selectStmt.setInt(2, INDEX_BATCH_SIZE);
+          int rows = 0;
+          try (ResultSet res = selectStmt.executeQuery()) {
+            while (res.next()) {
+              rows++;
+              lastId = res.getInt("id");
+              byte[] compressed = res.getBytes("body_compressed");
+              String body =
+                  compressed == null
+                      ? res.getString("body")
+                      : BodyCodec.fromName(res.getString("body_codec")).decode(compressed);
+              updateStmt.setString(1, res.getString("title"));
+              updateStmt.setString(2, body);
+              updateStmt.setInt(3, lastId);
+              updateStmt.addBatch();
+            }
+          }
+          updateStmt.executeBatch();
+          indexed += rows;
+          more = rows == INDEX_BATCH_SIZE;
+        }
+      }
+    } catch (SQLException e) {
+      throw databaseError(e);
+    }
+    return indexed;
+  }
+
   @Override
   public void clapPost(int postId) {
-    try {
-      Connection conn = getConnection();
+    try (Connection conn = getConnection()) {
       // Here, we're updating the rows in the post table by the given id
       // by incrementing the clap count.
-      String sql = "INSERT INTO post_claps (post_id) VALUES (?);";
-      PreparedStatement stmt = conn.prepareStatement(sql);
-      stmt.setInt(1, postId);
-      stmt.execute();
-
-      stmt.close();
-      conn.close();
+      String sql =
+          "WITH clap AS (INSERT INTO post_claps (post_id) VALUES (?) RETURNING post_id) SELECT "
+              + notifyExpression(ChangeEvent.Type.POST_CLAPPED, "post_id", null)
+              + " FROM clap;";
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        stmt.setInt(1, postId);
+        stmt.executeQuery().close();
+      }
     } catch (SQLException e) {
-      throw new IllegalStateException("There was an issue interacting with the database.", e);
+      throw databaseError(e);
     }
   }
 
   @Override
   public void deletePost(int postId) {
-    try {
-      Connection conn = getConnection();
-      String sql = "DELETE FROM posts WHERE id = ?;";
-      PreparedStatement stmt = conn.prepareStatement(sql);
-      stmt.setInt(1, postId);
-      stmt.execute();
-
-      stmt.close();
-      conn.close();
+    try (Connection conn = getConnection()) {
+      String sql =
+          "WITH deleted AS (DELETE FROM posts WHERE id = ? RETURNING id) SELECT "
+              + notifyExpression(ChangeEvent.Type.POST_DELETED, "id", null)
+              + " FROM deleted;";
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        stmt.setInt(1, postId);
+        stmt.executeQuery().close();
+      }
+    } catch (SQLException e) {
+      throw databaseError(e);
+    }
+  }
+
+  @Override
+  public List<PostRecord> getNewestPosts(int limit, int offset) {
+    // Just like searchPosts, only the rows on the page get their claps and comments counted, and
+    // only the start of each body is sent back. The posts_date_created_idx index (see migration 6)
+    // hands the rows over already in order.
+    return getSummaries(
+        "ORDER BY posts.date_created DESC, posts.id DESC LIMIT ? OFFSET ?;",
+        stmt -> {
+          stmt.setInt(2, limit);
+          stmt.setInt(3, offset);
+        });
+  }
+
+  @Override
+  public List<PostRecord> getPostsByAuthor(
+      String author, long beforeDateCreated, int beforeId, int limit) {
+    if (beforeDateCreated == Timestamps.NONE) {
+      return getSummaries(
+          "WHERE posts.author = ? ORDER BY posts.date_created DESC, posts.id DESC LIMIT ?;",
+          stmt -> {
+            stmt.setString(2, author);
+            stmt.setInt(3, limit);
+          });
+    }
+    // '(a, b) < (c, d)' compares the pairs the way a dictionary would, so this is every post that
+    // comes after the given one in the feed's order. With the (author, date_created DESC, id DESC)
+    // index from migration 6, Postgres finds the author's section of the index, jumps to the given
+    // post, and reads the next 'limit' entries: one range scan, however many posts came before.
+    return getSummaries(
+        "WHERE posts.author = ? AND (posts.date_created, posts.id) < (?, ?) "
+            + "ORDER BY posts.date_created DESC, posts.id DESC LIMIT ?;",
+        stmt -> {
+          stmt.setString(2, author);
+          stmt.setTimestamp(3, new Timestamp(beforeDateCreated));
+          stmt.setInt(4, beforeId);
+          stmt.setInt(5, limit);
+        });
+  }
+
+  /** Sets the parameters of a statement. */
+  private interface Parameters {
+    void set(PreparedStatement stmt) throws SQLException;
+  }
+
+  /**
+   * Get post summaries, in the same form as {@link #searchPosts(String, int, int)}.
+   *
+   * @param clauses What comes after the FROM clause, such as WHERE, ORDER BY and LIMIT.
+   * @param parameters Sets the parameters of the clauses. The first parameter of the query is the
+   *     summary's body length, so theirs start at 2.
+   * @return The posts.
+   */
+  private List<PostRecord> getSummaries(String clauses, Parameters parameters) {
+    List<PostRecord> posts = new ArrayList<>();
+    try (Connection conn = getConnection()) {
+      String sql =
+          "SELECT posts.id, posts.author, posts.title, LEFT(posts.body, ?) AS body, "
+              + "posts.date_created, "
+              + "(SELECT COUNT(*) FROM post_claps WHERE post_claps.post_id = posts.id) AS clap_count, "
+              + "(SELECT COUNT(*) FROM comments WHERE comments.post_id = posts.id) AS comment_count "
+              + "FROM posts "
+              + clauses;
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        stmt.setInt(1, SUMMARY_BODY_LENGTH);
+        parameters.set(stmt);
+
+        try (ResultSet res = stmt.executeQuery()) {
+          while (res.next()) {
+            PostRecord record = allFieldsResultSetToRecord(res);
+            record.setCommentCount(res.getInt("comment_count"));
+            posts.add(record);
+          }
+        }
+      }
     } catch (SQLException e) {
-      throw new IllegalStateException("There was an issue interacting with the database.", e);
+      throw databaseError(e);
     }
+    return posts;
+  }
+
+  @Override
+  public List<PostRecord> searchPosts(String query, int limit, int offset) {
+    List<PostRecord> posts = new ArrayList<>();
+    try (Connection conn = getConnection()) {
+      // websearch_to_tsquery turns what the user typed into a tsquery (it understands quotes, 'or'
+      // and '-'), and '@@' checks it against each post's search vector using the GIN index. Only
+      // the matching rows get their claps and comments counted, and only the start of each body is
+      // sent back since that's all a summary needs.
+      String sql =
+          "SELECT posts.id, posts.author, posts.title, LEFT(posts.body, ?) AS body, "
+              + "posts.date_created, "
+              + "(SELECT COUNT(*) FROM post_claps WHERE post_claps.post_id = posts.id) AS clap_count, "
+              + "(SELECT COUNT(*) FROM comments WHERE comments.post_id = posts.id) AS comment_count "
+              + "FROM posts, websearch_to_tsquery('english', ?) query "
+              + "WHERE posts.search_vector @@ query "
+              + "ORDER BY ts_rank(posts.search_vector, query) DESC, posts.id DESC "
+              + "LIMIT ? OFFSET ?;";
+      try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+        stmt.setInt(1, SUMMARY_BODY_LENGTH);
+        stmt.setString(2, query);
+        stmt.setInt(3, limit);
+        stmt.setInt(4, offset);
+
+        try (ResultSet res = stmt.executeQuery()) {
+          while (res.next()) {
+            PostRecord record = allFieldsResultSetToRecord(res);
+            record.setCommentCount(res.getInt("comment_count"));
+            posts.add(record);
+          }
+        }
+      }
+    } catch (SQLException e) {
+      throw databaseError(e);
+    }
+    return posts;
   }
 }
@@ -0,0 +1,210 @@
+package com.codeforcommunity.database.tableImpl;
+
+import java.util.Arrays;
+
+/**
+ * The list of documents (posts) a word appears in, and how many times it appears in each, for a
+ * {@link PostSearchIndex}. It's kept in order of document ID.
+ *
+ * <p>It's compressed, since a common word appears in almost every post. Instead of each ID, we
+ * store the gap since the previous one, and we store every number as a <a
+ * href="https://en.wikipedia.org/wiki/Variable-length_quantity">varint</a>: 7 bits per byte, with
+ * the top bit set on every byte but the last. Gaps and counts are almost always under 128, so a
+ * whole entry usually takes 2 bytes, where two {@code int}s would take 8 (and an {@code Integer} in
+ * a list, far more).
+ *
+ * <p>New posts get the highest ID so far, so adding one just writes to the end. Anything else (like
+ * removing a post) has to rewrite the list after that point.
+ *
+ * <p>This isn't thread-safe; the index guards it with its lock.
+ */
+final class PostingList {
+  private byte[] bytes = new byte[8];
+  /** How many of {@link #bytes} are used. */
+  private int length;
+  /** How many documents are in the list. */
+  private int count;
+  /** The ID of the last document in the list, or -1 if it's empty. */
+  private int lastDoc = -1;
+
+  /** @return How many documents the word appears in. */
+  int count() {
+    return count;
+  }
+
+  /**
+   * Add a document to the list, replacing it if it's already there.
+   *
+   * @param doc The document's ID.
+   * @param frequency How many times the word appears in the document.
+   */
+  void add(int doc, int frequency) {
+    if (doc > lastDoc) {
+      // The usual case, a new post.
+      ensureCapacity(length + 10);
+      length = writeVarint(bytes, length, doc - lastDoc);
+      length = writeVarint(bytes, length, frequency);
+      lastDoc = doc;
+      count++;
+      return;
+    }
+
+    // Find the first entry at or after the document, and rewrite the list from there.
+    Reader reader = new Reader();
+    int previous = -1;
+    int start = 0;
+    while (reader.next() && reader.doc < doc) {
+      previous = reader.doc;
+      start = reader.position;
+    }
+    byte[] entries = new byte[20];
+    int written = writeVarint(entries, 0, doc - previous);
+    written = writeVarint(entries, written, frequency);
+    if (reader.doc == doc) {
+      splice(start, reader.position, entries, written);
+    } else {
+      // The entry after ours now has a smaller gap.
+      written = writeVarint(entries, written, reader.doc - doc);
+      written = writeVarint(entries, written, reader.frequency);
+      splice(start, reader.position, entries, written);
+      count++;
+    }
+  }
+
+  /**
+   * Remove a document from the list.
+   *
+   * @param doc The document's ID.
+   * @return Whether it was in the list.
+   */
+  boolean remove(int doc) {
+    Reader reader = new Reader();
+    int previous = -1;
+    int start = 0;
+    while (reader.next() && reader.doc < doc) {
+      previous = reader.doc;
+      start = reader.position;
+    }
+    if (reader.doc != doc) {
+      return false;
+    }
+
+    int end = reader.position;
+    byte[] entries = new byte[10];
+    int written = 0;
+    if (reader.next()) {
+      // The entry after ours now has a bigger gap.
+      written = writeVarint(entries, 0, reader.doc - previous);
+      written = writeVarint(entries, written, reader.frequency);
+      end = reader.position;
+    } else {
+      lastDoc = previous;
+    }
+    splice(start, end, entries, written);
+    count--;
+    return true;
+  }
+
+  /**
+   * Move every entry of the given list onto the end of this one. Every document in it must come
+   * after every document in this one. This is how lists built in parallel from neighbouring ranges
+   * of posts are joined together.
+   *
+   * @param later The list to append, which shouldn't be used afterwards.
+   */
+  void appendAll(PostingList later) {
+    if (later.count == 0) {
+      return;
+    }
+    Reader reader = later.new Reader();
+    reader.next();
+    // Only the first entry's gap changes; the rest can be copied as they are.
+    ensureCapacity(length + 10 + later.length);
+    length = writeVarint(bytes, length, reader.doc - lastDoc);
+    length = writeVarint(bytes, length, reader.frequency);
+    System.arraycopy(later.bytes, reader.position, bytes, length, later.length - reader.position);
+    length += later.length - reader.position;
+    count += later.count;
+    lastDoc = later.lastDoc;
+  }
+
+  /**
+   * Replace some of this list's bytes.
+   *
+   * @param start Where the bytes to replace start.
+   * @param end Where they end.
+   * @param replacement The bytes to put in their place.
+   * @param replacementLength How many of the replacement's bytes to use.
+   */
+  private void splice(int start, int end, byte[] replacement, int replacementLength) {
+    int newLength = length - (end - start) + replacementLength;
+    ensureCapacity(newLength);
+    System.arraycopy(bytes, end, bytes, start + replacementLength, length - end);
+    System.arraycopy(replacement, 0, bytes, start, replacementLength);
+    length = newLength;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity > bytes.length) {
+      bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+    }
+  }
+
+  /**
+   * Write a number as a varint.
+   *
+   * @param into Where to write it, which must have room for 5 bytes.
+   * @param position Where in the array to write it.
+   * @param value The number, which can't be negative.
+   * @return The position after it.
+   */
+  private static int writeVarint(byte[] into, int position, int value) {
+    while ((value & ~0x7F) != 0) {
+      into[position++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    into[position++] = (byte) value;
+    return position;
+  }
+
+  /** @return A reader positioned before the first entry. */
+  Reader reader() {
+    return new Reader();
+  }
+
+  /** Reads the entries of the list in order. */
+  final class Reader {
+    /** Where the next entry starts. */
+    private int position;
+    /** The current entry's document, or -1 before the first one and after the last one. */
+    int doc = -1;
+    /** The current entry's frequency. */
+    int frequency;
+
+    /**
+     * Move on to the next entry.
+     *
+     * @return Whether there was one.
+     */
+    boolean next() {
+      if (position >= length) {
+        doc = -1;
+        return false;
+      }
+      doc += readVarint();
+      frequency = readVarint();
+      return true;
+    }
+
+    private int readVarint() {
+      int value = 0;
+      for (int shift = 0; ; shift += 7) {
+        byte b = bytes[position++];
+        value |= (b & 0x7F) << shift;
+        if (b >= 0) {
+          return value;
+        }
+      }
+    }
+  }
+}
@@ -1,11 +1,21 @@
 package com.codeforcommunity.database.tableImpl;
 
+import com.codeforcommunity.database.collections.IntObjectHashMap;
+import com.codeforcommunity.database.collections.PersistentSparseArray;
+import com.codeforcommunity.database.collections.StringPool;
 import com.codeforcommunity.database.records.CommentRecord;
-import com.codeforcommunity.database.seeder.Seeder;
 import com.codeforcommunity.database.table.ICommentTable;
+import com.codeforcommunity.database.table.ILazyRecords;
+import com.codeforcommunity.database.table.IMutationListener;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * Our implementation of the {@link ICommentTable} in our database. This class will eventually be
@@ -14,8 +24,9 @@ import java.util.Map;
  */
 public class StubCommentTableImpl implements ICommentTable {
   /**
-   * A map of an integers (representing a postId) to a Map of that post's comment IDs to comments.
-   * If it helps to visualize in JSON, that would look like this:
+   * A map of an integers (representing a postId) to that post's {@link PostComments}, which hold a
+   * map of the post's comment IDs to comments. If it helps to visualize in JSON, that would look
+   * like this:
    *
    * <pre>
    * {
@@ -45,94 +56,518 @@ public class StubCommentTableImpl implements ICommentTable {
    * }
    * </pre>
    *
+   * <p>Like in {@link StubPostTableImpl}, this is an {@link IntObjectHashMap} so that it can be
+   * used from many threads at once without boxing every key. Every change to a post's comments goes
+   * through {@link IntObjectHashMap#compute}, which runs one change at a time, so a post's comments
+   * and comment count are always changed together.
+   *
    * @see StubPostTableImpl for a better {@link HashMap}/{@link Map} explanation.
    */
-  protected final Map<Integer, Map<Integer, CommentRecord>> commentMap;
+  protected final IntObjectHashMap<PostComments> commentMap;
+
+  /**
+   * Everything this table knows about one post's comments.
+   *
+   * <p>The comments are kept in a {@link PersistentSparseArray} indexed by comment ID, which is
+   * also the order the comments were created in. Each change publishes a new version of the array
+   * rather than changing the old one, so readers can use whichever version they got without locking
+   * or copying it, even while comments are being added or deleted.
+   *
+   * <p>Only one thread changes a post's comments at a time (see {@link #commentMap}), but any
+   * number of threads can read them while that happens.
+   */
+  protected static class PostComments {
+    /** The current version of the comments, indexed by ID. */
+    private volatile PersistentSparseArray<CommentRecord> byId;
+    /**
+     * The ID the next comment on this post will get. This can be past the last comment, since IDs
+     * of deleted comments are never reused.
+     */
+    private volatile int nextId;
+
+    PostComments() {
+      this.byId = PersistentSparseArray.empty();
+    }
+
+    /**
+     * @param byId The comments, indexed by ID, with nulls for deleted comments. The next comment
+     *     gets the ID after the last slot.
+     */
+    PostComments(CommentRecord[] byId) {
+      this.byId = PersistentSparseArray.of(byId);
+      this.nextId = byId.length;
+    }
+
+    /** @return The ID the next comment on this post should get. */
+    int nextId() {
+      return nextId;
+    }
+
+    /**
+     * Store the given comment under its ID, which is normally {@link #nextId()}. Only one thread
+     * may change this at a time.
+     *
+     * @param comment The comment to store.
+     */
+    void put(CommentRecord comment) {
+      int id = comment.getId();
+      byId = byId.with(id, comment);
+      advanceNextId(id + 1);
+    }
+
+    /**
+     * Make sure the next comment gets at least the given ID. Only one thread may change this at a
+     * time.
+     *
+     * @param nextId The lowest ID the next comment can have.
+     */
+    void advanceNextId(int nextId) {
+      if (nextId > this.nextId) {
+        this.nextId = nextId;
+      }
+    }
+
+    /**
+     * Remove the comment with the given ID. Only one thread may change this at a time.
+     *
+     * @param id The comment's ID.
+     * @return True if the comment existed.
+     */
+    boolean remove(int id) {
+      PersistentSparseArray<CommentRecord> byId = this.byId;
+      this.byId = byId.without(id);
+      return this.byId != byId;
+    }
+
+    /**
+     * Get the comment with the given ID.
+     *
+     * @param id The comment's ID.
+     * @return The comment, or null if there isn't one.
+     */
+    CommentRecord get(int id) {
+      return byId.get(id);
+    }
+
+    /** @return Every comment, in order of ID. The list never changes, so it isn't copied. */
+    List<CommentRecord> all() {
+      return byId.asList();
+    }
+
+    /**
+     * @param limit The maximum number of comments to return.
+     * @return The newest comments, newest first.
+     */
+    List<CommentRecord> newest(int limit) {
+      // Read the comments from the newest (highest ID) back, and stop once we have enough.
+      Iterator<CommentRecord> comments = byId.descendingIterator();
+      List<CommentRecord> newest = new ArrayList<>(Math.min(limit, count()));
+      while (newest.size() < limit && comments.hasNext()) {
+        newest.add(comments.next());
+      }
+      return newest;
+    }
+
+    int count() {
+      return byId.size();
+    }
+  }
+
+  /** Everything that wants to hear about changes to this table. */
+  private final MutationListeners listeners;
+  /**
+   * The comments that haven't been loaded into {@link #commentMap} yet (see {@link
+   * #loadLazily(ILazyRecords)}), or null once there are none left. Only used while holding the
+   * write lock of {@link #commentMap}.
+   */
+  private volatile LazyLoader<CommentRecord[]> unloaded;
+  /** Every comment by the same author shares one copy of the author's name from here. */
+  private final StringPool authors = new StringPool();
 
   public StubCommentTableImpl() {
-    this.commentMap = new HashMap<>();
+    this.commentMap = new IntObjectHashMap<>();
+    this.listeners = new MutationListeners();
+  }
+
+  /**
+   * Register something to be told about every change to this table. This should be done before the
+   * table is used.
+   *
+   * @param listener The listener.
+   */
+  public void addMutationListener(IMutationListener listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Fill this table from the given comments, loading each post's comments only when they're first
+   * used. This must be done before the table is used.
+   *
+   * @param comments Each post's comments, keyed by post ID. Each array holds the post's comments at
+   *     the index of their ID, with nulls for deleted comments, and the next comment on the post
+   *     gets the ID after the end of the array.
+   */
+  public void loadLazily(ILazyRecords<CommentRecord[]> comments) {
+    this.unloaded = new LazyLoader<>(comments);
+  }
+
+  /**
+   * Get the comments of the given post, loading them first if they haven't been yet.
+   *
+   * @param postId The post's ID.
+   * @return The post's comments, or null if it has never had any.
+   */
+  private PostComments find(int postId) {
+    PostComments postComments = this.commentMap.get(postId);
+    if (postComments == null && unloaded != null) {
+      // Load them while holding the lock, so two threads can't both load them.
+      postComments = this.commentMap.compute(postId, this::loadIfAbsent);
+    }
+    return postComments;
+  }
+
+  /**
+   * For use with {@link IntObjectHashMap#compute}: Keep the given comments if there are any, or
+   * else load them if they haven't been loaded yet. Every change to a post's comments must go
+   * through this first, so comments that have been changed can't be loaded again afterwards.
+   *
+   * @param postId The post's ID.
+   * @param postComments The post's comments in {@link #commentMap}, if there are any.
+   * @return The post's comments, or null if there aren't any.
+   */
+  private PostComments loadIfAbsent(int postId, PostComments postComments) {
+    LazyLoader<CommentRecord[]> loader = unloaded;
+    if (postComments != null || loader == null) {
+      return postComments;
+    }
+    CommentRecord[] byId = loader.take(postId);
+    if (byId != null) {
+      for (CommentRecord comment : byId) {
+        if (comment != null) {
+          comment.compact(authors);
+        }
+      }
+    }
+    if (loader.isDone()) {
+      // Let go of the loader (and whatever it loads from).
+      unloaded = null;
+    }
+    return byId == null ? null : new PostComments(byId);
+  }
+
+  /** Load the comments of every post whose comments haven't been loaded yet. */
+  private void loadAll() {
+    LazyLoader<CommentRecord[]> loader = unloaded;
+    if (loader == null) {
+      return;
+    }
+    for (int i = 0; i < loader.size(); i++) {
+      this.commentMap.compute(loader.keyAt(i), this::loadIfAbsent);
+    }
   }
 
   @Override
   public List<CommentRecord> getByPostId(int postId) {
-    // Get the Map of comment IDs to comments, or an empty hashmap if none exist for the given id.
-    Map<Integer, CommentRecord> commentMap = this.commentMap.getOrDefault(postId, new HashMap<>());
-    // Return a copy of the values in the post's map of comments
-    return List.copyOf(commentMap.values());
+    PostComments postComments = find(postId);
+    if (postComments == null) {
+      return List.of();
+    }
+    // Return the current version of the post's comments, in order of ID.
+    return postComments.all();
+  }
+
+  @Override
+  public List<CommentRecord> getTopByPostId(int postId, int limit) {
+    return topComments(
+        postId,
+        Comparator.comparing(CommentRecord::getClapCount)
+            .reversed()
+            .thenComparing(CommentRecord::getId),
+        limit);
+  }
+
+  @Override
+  public List<CommentRecord> getNewestByPostId(int postId, int limit) {
+    PostComments postComments = find(postId);
+    if (postComments == null) {
+      return List.of();
+    }
+    // IDs are handed out in increasing order, so the highest IDs are the newest comments. The
+    // comments are already sorted by ID, so we can just read the last 'limit' of them.
+    return postComments.newest(limit);
+  }
+
+  /**
+   * Get the first {@code limit} comments of the given post in the given order, without sorting all
+   * of them. We keep a heap of the best {@code limit} comments seen so far, with the worst of them
+   * on top. Each comment only has to beat that worst one to get in, so this takes O(n log k) time
+   * and O(k) extra space instead of the O(n log n) time and O(n) space of a full sort.
+   *
+   * @param postId The ID of the post the comments belong to.
+   * @param order The order to return comments in.
+   * @param limit The maximum number of comments to return.
+   * @return The comments, in the given order.
+   */
+  private List<CommentRecord> topComments(int postId, Comparator<CommentRecord> order, int limit) {
+    PostComments postComments = find(postId);
+    if (postComments == null || limit <= 0) {
+      return List.of();
+    }
+
+    // The comments we're looking through never change (a clap replaces a comment rather than
+    // changing it), so the heap's order can't break underneath us. Reversing the order puts the
+    // worst comment we're keeping at the head of the queue.
+    PriorityQueue<CommentRecord> best = new PriorityQueue<>(limit + 1, order.reversed());
+    for (CommentRecord comment : postComments.all()) {
+      if (best.size() < limit) {
+        best.add(comment);
+      } else if (order.compare(comment, best.peek()) < 0) {
+        best.poll();
+        best.add(comment);
+      }
+    }
+
+    List<CommentRecord> result = new ArrayList<>(best);
+    result.sort(order);
+    return result;
   }
 
   @Override
   public void saveComment(CommentRecord comment) {
     // Once we start using the database, these operations will be handled for us.
-    comment.setId(this.getNextId(comment.getPostId()));
-    comment.setDateCreated(Seeder.getCurrentDateTime());
+    comment.setDateCreatedMillis(System.currentTimeMillis());
     comment.setClapCount(0);
+    // We'll be keeping the comment for a long time, so make it as small as we can.
+    comment.compact(authors);
 
-    // Get the list of comments pertaining to the comment's post id. If empty, create a new list to
-    // store comments in.
-    commentMap.putIfAbsent(comment.getPostId(), new HashMap<>());
-    // Add the given comment to our (possibly newly created) list.
-    commentMap.get(comment.getPostId()).put(comment.getId(), comment);
+    // Get the comments of the comment's post, creating them if this is the post's first comment,
+    // and add the given comment to them. No other change to the comments can happen while we're
+    // inside compute.
+    commentMap.compute(
+        (int) comment.getPostId(),
+        (postId, postComments) -> {
+          postComments = loadIfAbsent(postId, postComments);
+          if (postComments == null) {
+            postComments = new PostComments();
+          }
+          comment.setId(postComments.nextId());
+          // Tell the listeners before storing the comment, so that if one of them fails the
+          // comment isn't saved.
+          listeners.commentSaved(comment);
+          postComments.put(comment);
+          return postComments;
+        });
+    listeners.mutationFinished();
   }
 
   @Override
   public boolean commentExists(int postId, int commentId) {
     // Determine if the given post has comments, and if so, determine if there are any with the
     // given id.
-    return commentMap.containsKey(postId) && commentMap.get(postId).containsKey(commentId);
+    PostComments postComments = find(postId);
+    return postComments != null && postComments.get(commentId) != null;
   }
 
   @Override
   public void clapComment(int postId, int commentId) {
-    if (!this.commentExists(postId, commentId)) {
-      throw new IllegalArgumentException(
-          "No comment with ID " + commentId + " exists for post with ID " + postId);
-    }
-
-    // Get the comments relating to the post.
-    Map<Integer, CommentRecord> comments = commentMap.get(postId);
-    // Find the comment with the given commentId.
-    CommentRecord record = comments.get(commentId);
-    record.setClapCount(record.getClapCount() + 1);
+    // Published comments never change, since readers may be holding on to them, so replace the
+    // comment with a copy that has one more clap. Like every other change, it's logged inside
+    // compute, so the log sees the claps in the same order as the table.
+    commentMap.compute(
+        postId,
+        (id, postComments) -> {
+          postComments = loadIfAbsent(id, postComments);
+          CommentRecord record = postComments == null ? null : postComments.get(commentId);
+          if (record == null) {
+            throw new IllegalArgumentException(
+                "No comment with ID " + commentId + " exists for post with ID " + postId);
+          }
+          CommentRecord clapped = record.withClapCount(record.getClapCount() + 1);
+          listeners.commentClapped(postId, commentId, clapped.getClapCount());
+          postComments.put(clapped);
+          return postComments;
+        });
+    listeners.mutationFinished();
   }
 
   @Override
   public void deleteCommentsByPostId(int postId) {
-    commentMap.remove(postId);
+    commentMap.compute(
+        postId,
+        (id, postComments) -> {
+          if (loadIfAbsent(id, postComments) != null) {
+            listeners.commentsDeletedForPost(postId);
+          }
+          // Returning null removes the post's comments.
+          return null;
+        });
+    listeners.mutationFinished();
   }
 
   @Override
   public void deleteComment(int postId, int commentId) {
-    if (!this.commentExists(postId, commentId)) {
-      throw new IllegalArgumentException(
-          "No comment with ID " + commentId + " exists for post with ID " + postId);
-    }
+    // Throwing inside compute leaves the post's comments as they were.
+    commentMap.compute(
+        postId,
+        (id, postComments) -> {
+          postComments = loadIfAbsent(id, postComments);
+          if (postComments == null || postComments.get(commentId) == null) {
+            throw new IllegalArgumentException(
+                "No comment with ID " + commentId + " exists for post with ID " + postId);
+          }
+          listeners.commentDeleted(postId, commentId);
+          postComments.remove(commentId);
+          return postComments;
+        });
+    listeners.mutationFinished();
+  }
 
-    // Remove the comment from the list of comments related to the postId.
-    commentMap.get(postId).remove(commentId);
+  /**
+   * Get the IDs of the posts that have (or have had) comments.
+   *
+   * @return The post IDs, in no particular order.
+   */
+  public List<Integer> getPostIdsWithComments() {
+    loadAll();
+    // Listing the keys takes the map's read lock, so it waits for the changes being made right now.
+    // Like StubPostTableImpl.getAllPosts, that makes sure every comment that's already been logged
+    // is in what a snapshot reads next.
+    return new ArrayList<>(commentMap.keySet());
   }
 
-  @Override
-  public int getCommentCountForPost(int postId) {
-    Map<Integer, CommentRecord> comments = this.commentMap.getOrDefault(postId, new HashMap<>());
-    return comments.size();
+  /**
+   * Get the ID the next comment on the given post will get.
+   *
+   * @param postId The post's ID.
+   * @return The next comment ID.
+   */
+  public int getNextCommentId(int postId) {
+    PostComments postComments = find(postId);
+    return postComments == null ? 0 : postComments.nextId();
+  }
+
+  /**
+   * Put back a comment exactly as it was, ID and all, when recovering this table from a copy saved
+   * elsewhere. Replaces any comment that already has the ID. Listeners aren't told about it.
+   *
+   * @param comment The comment to restore.
+   */
+  public void restoreComment(CommentRecord comment) {
+    comment.compact(authors);
+    commentMap.compute(
+        (int) comment.getPostId(),
+        (postId, postComments) -> {
+          postComments = loadIfAbsent(postId, postComments);
+          if (postComments == null) {
+            postComments = new PostComments();
+          }
+          postComments.put(comment);
+          return postComments;
+        });
   }
 
   /**
-   * Get the ID after the most recently inserted item. This is so that we can artificially assign a
-   * valid ID to the next item being inserted.
+   * Remove a comment (if it exists) when recovering this table. Listeners aren't told about it.
    *
-   * @return An integer representing the most recent ID.
+   * @param postId The ID of the comment's post.
+   * @param commentId The comment's ID.
    */
-  private int getNextId(int postId) {
-    Map<Integer, CommentRecord> postComments =
-        this.commentMap.getOrDefault(postId, new HashMap<>());
-    int max = -1;
-    for (Integer id : postComments.keySet()) {
-      if (id > max) {
-        max = id;
+  public void restoreDeletedComment(int postId, int commentId) {
+    commentMap.compute(
+        postId,
+        (id, postComments) -> {
+          postComments = loadIfAbsent(id, postComments);
+          if (postComments != null) {
+            postComments.remove(commentId);
+          }
+          return postComments;
+        });
+  }
+
+  /**
+   * Remove all of a post's comments when recovering this table. Listeners aren't told about it.
+   *
+   * @param postId The post's ID.
+   */
+  public void restoreDeletedCommentsForPost(int postId) {
+    commentMap.compute(
+        postId,
+        (id, postComments) -> {
+          // Make sure the comments are never loaded after being deleted.
+          loadIfAbsent(id, postComments);
+          return null;
+        });
+  }
+
+  /**
+   * Set a comment's clap count (if the comment exists) when recovering this table, unless it
+   * already has more claps than that. Listeners aren't told about it.
+   *
+   * @param postId The ID of the comment's post.
+   * @param commentId The comment's ID.
+   * @param clapCount The clap count.
+   */
+  public void restoreClapCount(int postId, int commentId, int clapCount) {
+    commentMap.compute(
+        postId,
+        (id, postComments) -> {
+          postComments = loadIfAbsent(id, postComments);
+          CommentRecord comment = postComments == null ? null : postComments.get(commentId);
+          if (comment != null && comment.getClapCount() < clapCount) {
+            postComments.put(comment.withClapCount(clapCount));
+          }
+          return postComments;
+        });
+  }
+
+  /**
+   * Make sure the next comment on the given post gets at least the given ID when recovering this
+   * table.
+   *
+   * @param postId The post's ID.
+   * @param nextCommentId The lowest ID the next comment can have.
+   */
+  public void restoreNextCommentId(int postId, int nextCommentId) {
+    commentMap.compute(
+        postId,
+        (id, postComments) -> {
+          postComments = loadIfAbsent(id, postComments);
+          if (postComments == null) {
+            postComments = new PostComments();
+          }
+          postComments.advanceNextId(nextCommentId);
+          return postComments;
+        });
+  }
+
+  @Override
+  public int getCommentCountForPost(int postId) {
+    PostComments postComments = find(postId);
+    return postComments == null ? 0 : postComments.count();
+  }
+
+  @Override
+  public List<CommentRecord> searchComments(String query, int limit, int offset) {
+    Set<String> terms = StubSearch.tokenize(query);
+    Map<CommentRecord, Integer> scores = new HashMap<>();
+    loadAll();
+    for (PostComments postComments : this.commentMap.copyValues()) {
+      for (CommentRecord comment : postComments.all()) {
+        int score = StubSearch.countMatches(terms, comment.getBody());
+        if (score > 0) {
+          scores.put(comment, score);
+        }
       }
     }
-    return max + 1;
+
+    return scores.keySet().stream()
+        .sorted(
+            Comparator.comparing((CommentRecord comment) -> scores.get(comment))
+                .thenComparing(CommentRecord::getPostId)
+                .thenComparing(CommentRecord::getId)
+                .reversed())
+        .skip(offset)
+        .limit(limit)
+        .collect(Collectors.toList());
   }
 }
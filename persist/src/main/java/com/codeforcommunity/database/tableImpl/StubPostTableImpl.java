@@ -1,12 +1,19 @@
 package com.codeforcommunity.database.tableImpl;
 
+import com.codeforcommunity.database.collections.IntObjectHashMap;
+import com.codeforcommunity.database.collections.PersistentSparseArray;
+import com.codeforcommunity.database.collections.StringPool;
 import com.codeforcommunity.database.records.PostRecord;
-import com.codeforcommunity.database.seeder.Seeder;
+import com.codeforcommunity.database.table.ILazyRecords;
+import com.codeforcommunity.database.table.IMutationListener;
 import com.codeforcommunity.database.table.IPostTable;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Our implementation of the {@link IPostTable} in our database. This class will eventually be
@@ -45,80 +52,443 @@ public class StubPostTableImpl implements IPostTable {
    *     ...
    *   }
    * </pre>
+   *
+   * <p>Requests are handled on many threads at once, and a plain {@link HashMap} can be corrupted
+   * if two threads change it at the same time. We use an {@link IntObjectHashMap}, which can be
+   * read and changed from any number of threads, still does everything in constant time, and takes
+   * a fraction of the memory of a {@link HashMap} since it doesn't turn every key into an {@link
+   * Integer} object.
+   */
+  protected final IntObjectHashMap<PostRecord> postMap;
+  /**
+   * The current version of every post, in order of ID. This never changes: every change to {@link
+   * #postMap} publishes a new version here instead (sharing almost all of the old one, see {@link
+   * PersistentSparseArray}). That way reading all of the posts neither locks nor copies anything,
+   * however many threads are doing it and however many writes are going on.
+   */
+  private volatile PersistentSparseArray<PostRecord> published = PersistentSparseArray.empty();
+  /** Finds the newest posts, overall or by author. Kept up to date along with {@link #postMap}. */
+  private final PostIndexes indexes = new PostIndexes();
+  /** Answers searches. It's built on the first search, and kept up to date after that. */
+  private final PostSearchIndex searchIndex = new PostSearchIndex();
+  /** The ID the next saved post will get. IDs are never reused, just like a database's SERIAL. */
+  private final AtomicInteger nextId;
+  /** Everything that wants to hear about changes to this table. */
+  private final MutationListeners listeners;
+  /**
+   * The posts that haven't been loaded into {@link #postMap} yet (see {@link
+   * #loadLazily(ILazyRecords)}), or null once there are none left. Only used while holding the
+   * write lock of {@link #postMap}, apart from what {@link #getAllPosts()} reads without it.
+   */
+  private volatile LazyLoader<PostRecord> unloaded;
+  /**
+   * Whether {@link #indexes} has the posts that haven't been loaded yet, not just the ones that
+   * have. See {@link #indexUnloaded()}.
    */
-  protected final Map<Integer, PostRecord> postMap;
+  private volatile boolean unloadedIndexed;
+  /** Every post by the same author shares one copy of the author's name from here. */
+  private final StringPool authors = new StringPool();
 
   public StubPostTableImpl() {
-    this.postMap = new HashMap<>();
+    this.postMap = new IntObjectHashMap<>();
+    this.nextId = new AtomicInteger();
+    this.listeners = new MutationListeners();
+  }
+
+  /**
+   * Register something to be told about every change to this table. This should be done before the
+   * table is used.
+   *
+   * @param listener The listener.
+   */
+  public void addMutationListener(IMutationListener listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Fill this table from the given posts, loading each one only when it's first used. This must be
+   * done before the table is used.
+   *
+   * @param posts The posts.
+   */
+  public void loadLazily(ILazyRecords<PostRecord> posts) {
+    this.unloaded = new LazyLoader<>(posts);
+  }
+
+  /**
+   * Change the post with the given ID in {@link #postMap}, and publish the change.
+   *
+   * @param postId The post's ID.
+   * @param change Computes the post's new value (or null to remove it) from its old one. It's
+   *     called while holding the write lock of {@link #postMap}.
+   * @return The post's new value.
+   */
+  private PostRecord update(int postId, IntObjectHashMap.Remapping<PostRecord> change) {
+    return this.postMap.compute(
+        postId,
+        (id, mapped) -> {
+          // Every change starts from the post as it is, so load it first if it hasn't been. That
+          // way a post that's changed (or deleted) can't be loaded again afterwards.
+          PostRecord oldPost = loadIfAbsent(id, mapped);
+          PostRecord newPost = change.apply(id, oldPost);
+          // Writers take turns holding the lock, so no other version can be published between us
+          // reading this version and publishing the next.
+          if (newPost != mapped) {
+            published = newPost == null ? published.without(id) : published.with(id, newPost);
+          }
+          if (newPost != oldPost) {
+            indexes.update(oldPost, newPost);
+            // A clap only changes the count, so there's nothing new to search for.
+            if (oldPost == null || newPost == null || !newPost.hasSameTextAs(oldPost)) {
+              searchIndex.update(oldPost, newPost);
+            }
+          } else if (newPost != mapped) {
+            // It was only loaded. The indexes may have it already (see indexUnloaded), but adding
+            // it again changes nothing. The search index is always built from every post.
+            indexes.update(null, newPost);
+          }
+          return newPost;
+        });
+  }
+
+  /**
+   * Get the post with the given ID, loading it first if it hasn't been yet.
+   *
+   * @param postId The post's ID.
+   * @return The post, or null if there isn't one.
+   */
+  private PostRecord find(int postId) {
+    PostRecord post = this.postMap.get(postId);
+    if (post == null && unloaded != null) {
+      // Load it while holding the lock, so two threads can't both load it.
+      post = update(postId, (id, loaded) -> loaded);
+    }
+    return post;
+  }
+
+  /**
+   * Keep the given post if there is one, or else load it if it hasn't been loaded yet. Only call
+   * this while holding the write lock of {@link #postMap}, which {@link #update} does for every
+   * change.
+   *
+   * @param postId The post's ID.
+   * @param post The post in {@link #postMap}, if there is one.
+   * @return The post, or null if there isn't one.
+   */
+  private PostRecord loadIfAbsent(int postId, PostRecord post) {
+    LazyLoader<PostRecord> loader = unloaded;
+    if (post != null || loader == null) {
+      return post;
+    }
+    post = loader.take(postId);
+    if (post != null) {
+      post.compact(authors);
+    }
+    if (loader.isDone()) {
+      // Let go of the loader (and whatever it loads from).
+      unloaded = null;
+    }
+    return post;
+  }
+
+  /**
+   * Make sure {@link #indexes} has the posts that haven't been loaded yet, without loading them:
+   * each is read into a new record that's only used to index it. Until then, the indexes only have
+   * the posts that have been.
+   *
+   * <p>This only happens once, so each post is read while holding the write lock of {@link
+   * #postMap} for just that post. That way it can't be loaded and deleted in between being read and
+   * indexed, which would leave it in the indexes for good.
+   */
+  private void indexUnloaded() {
+    if (unloadedIndexed) {
+      return;
+    }
+    synchronized (indexes) {
+      LazyLoader<PostRecord> loader = unloaded;
+      for (int i = 0; loader != null && i < loader.size(); i++) {
+        this.postMap.compute(
+            loader.keyAt(i),
+            (id, post) -> {
+              // A post that's been loaded is in the indexes already (see update).
+              PostRecord notLoaded = post != null ? null : loader.peek(id);
+              if (notLoaded != null) {
+                indexes.update(null, notLoaded);
+              }
+              return post;
+            });
+      }
+      unloadedIndexed = true;
+    }
+  }
+
+  /**
+   * Get the posts with the given IDs as summaries, loading them if they haven't been. Posts deleted
+   * since their IDs were found are left out.
+   *
+   * @param postIds The IDs.
+   * @return The summaries, in the same order.
+   */
+  private List<PostRecord> summaries(List<Integer> postIds) {
+    List<PostRecord> posts = new ArrayList<>(postIds.size());
+    for (int postId : postIds) {
+      PostRecord post = find(postId);
+      if (post != null) {
+        posts.add(toSummary(post));
+      }
+    }
+    return posts;
   }
 
   @Override
   public PostRecord getById(int id) {
-    // Make sure this post exists before returning it.
-    if (!this.postExists(id)) {
+    // Get the post and check it exists in one step. Checking with postExists first would let
+    // another thread delete the post in between.
+    PostRecord post = find(id);
+    if (post == null) {
       throw new IllegalArgumentException("No post with ID " + id + "exists");
     }
 
-    return this.postMap.get(id);
+    return post;
   }
 
   @Override
   public List<PostRecord> getAllPosts() {
-    // Create a new array list containing the postMap's values. The reason we have to wrap that in
-    // an array list is because Map.values() returns a Collection, which isn't a list.
-    List<PostRecord> posts = new ArrayList<>(this.postMap.values());
+    // A change is logged (by the listeners) inside postMap.compute, before it's published. Wait for
+    // the changes being made right now, so that every change that's already been logged is in what
+    // we hand out. Snapshots rely on this: a change logged into the segment a snapshot replaces
+    // must be in the snapshot.
+    this.postMap.awaitWrites();
+    // Look at the loader before the posts: if every post had been loaded by then, they're all in
+    // the version we read next.
+    LazyLoader<PostRecord> loader = unloaded;
+    // Hand out the current version of the posts. It never changes, so it doesn't need to be copied
+    // to keep it from changing if posts are saved or deleted while the caller is using it.
+    PersistentSparseArray<PostRecord> loaded = this.published;
+    if (loader == null) {
+      return loaded.asList();
+    }
+
+    // Add the posts that haven't been loaded without loading them, so that reading every post
+    // (like the search index and the server's loaders do right after it starts) doesn't undo lazy
+    // loading. Each is read into a new record that this table doesn't keep. Posts only leave the
+    // loader, so one it still had after we read the version hadn't changed since: reading it
+    // without any lock gives the post as it was in that version, and writers aren't held up.
+    BitSet untaken = loader.untaken();
+    List<PostRecord> notLoaded = new ArrayList<>();
+    for (int i = 0; i < loader.size(); i++) {
+      int postId = loader.keyAt(i);
+      if (loaded.get(postId) != null) {
+        continue;
+      }
+      // Either it hasn't been loaded, or it was loaded after the version was published (or it's
+      // been deleted, and there's nothing to add).
+      PostRecord post = untaken.get(i) ? loader.read(i) : this.postMap.get(postId);
+      if (post != null) {
+        notLoaded.add(post);
+      }
+    }
+
+    // Both lists are in order of ID, so merge them like merge sort does.
+    List<PostRecord> posts = new ArrayList<>(loaded.size() + notLoaded.size());
+    Iterator<PostRecord> loadedPosts = loaded.asList().iterator();
+    PostRecord next = loadedPosts.hasNext() ? loadedPosts.next() : null;
+    for (PostRecord post : notLoaded) {
+      while (next != null && next.getId() < post.getId()) {
+        posts.add(next);
+        next = loadedPosts.hasNext() ? loadedPosts.next() : null;
+      }
+      posts.add(post);
+    }
+    while (next != null) {
+      posts.add(next);
+      next = loadedPosts.hasNext() ? loadedPosts.next() : null;
+    }
     return posts;
   }
 
+  /** @return How many posts have been loaded (see {@link #loadLazily(ILazyRecords)}). */
+  public int getLoadedPostCount() {
+    return this.postMap.size();
+  }
+
+  @Override
+  public int[] getAllPostIds() {
+    return getAllPosts().stream().mapToInt(PostRecord::getId).toArray();
+  }
+
   @Override
   public void savePost(PostRecord post) {
     // Once we start using the database, these operations will be handled for us.
-    post.setId(this.getNextId());
-    post.setDateCreated(Seeder.getCurrentDateTime());
+    post.setId(this.nextId.getAndIncrement());
+    post.setDateCreatedMillis(System.currentTimeMillis());
     post.setClapCount(0);
     post.setCommentCount(0);
+    // We'll be keeping the post for a long time, so make it as small as we can.
+    post.compact(authors);
 
-    this.postMap.put(post.getId(), post);
+    // Tell the listeners while we hold the lock on the map, so they hear about it before anything
+    // else can happen to the post.
+    update(
+        post.getId(),
+        (id, oldPost) -> {
+          listeners.postSaved(post);
+          return post;
+        });
+    listeners.mutationFinished();
   }
 
   @Override
   public boolean postExists(int postId) {
     // See if a post with the given ID exists.
-    return this.postMap.containsKey(postId);
+    return find(postId) != null;
   }
 
   @Override
   public void clapPost(int postId) {
-    if (!this.postExists(postId)) {
-      throw new IllegalArgumentException("No post with ID " + postId + " exists");
-    }
-
-    PostRecord record = postMap.get(postId);
-    record.setClapCount(record.getClapCount() + 1);
+    // Published posts never change, since readers may be holding on to them, so replace the post
+    // with a copy that has one more clap.
+    update(
+        postId,
+        (id, oldPost) -> {
+          if (oldPost == null) {
+            throw new IllegalArgumentException("No post with ID " + postId + " exists");
+          }
+          PostRecord clapped = oldPost.withClapCount(oldPost.getClapCount() + 1);
+          listeners.postClapped(postId, clapped.getClapCount());
+          return clapped;
+        });
+    listeners.mutationFinished();
   }
 
   @Override
   public void deletePost(int postId) {
-    if (!this.postExists(postId)) {
-      throw new IllegalArgumentException("No post with ID " + postId + " exists");
-    }
+    update(
+        postId,
+        (id, oldPost) -> {
+          if (oldPost == null) {
+            throw new IllegalArgumentException("No post with ID " + postId + " exists");
+          }
+          listeners.postDeleted(postId);
+          // Returning null removes the post.
+          return null;
+        });
+    listeners.mutationFinished();
+  }
+
+  /**
+   * Get the ID the next saved post will get.
+   *
+   * @return The next ID.
+   */
+  public int getNextPostId() {
+    return nextId.get();
+  }
+
+  /**
+   * Put back a post exactly as it was, ID and all, when recovering this table from a copy saved
+   * elsewhere. Replaces any post that already has the ID. Listeners aren't told about it.
+   *
+   * @param post The post to restore.
+   */
+  public void restorePost(PostRecord post) {
+    post.compact(authors);
+    update((int) post.getId(), (id, oldPost) -> post);
+    restoreNextPostId(post.getId() + 1);
+  }
+
+  /**
+   * Remove a post (if it exists) when recovering this table. Listeners aren't told about it.
+   *
+   * @param postId The post's ID.
+   */
+  public void restoreDeletedPost(int postId) {
+    update(postId, (id, oldPost) -> null);
+  }
 
-    postMap.remove(postId);
+  /**
+   * Set a post's clap count (if the post exists) when recovering this table, unless it already has
+   * more claps than that. Listeners aren't told about it.
+   *
+   * @param postId The post's ID.
+   * @param clapCount The clap count.
+   */
+  public void restoreClapCount(int postId, int clapCount) {
+    update(
+        postId,
+        (id, oldPost) -> {
+          if (oldPost == null || oldPost.getClapCount() >= clapCount) {
+            return oldPost;
+          }
+          return oldPost.withClapCount(clapCount);
+        });
   }
 
   /**
-   * Get the ID after the most recently inserted item. This is so that we can artificially assign a
-   * valid ID to the next item being inserted.
+   * Make sure the next saved post gets at least the given ID when recovering this table.
    *
-   * @return An integer representing the most recent ID.
+   * @param nextPostId The lowest ID the next post can have.
    */
-  private int getNextId() {
-    int max = -1;
-    for (Integer id : this.postMap.keySet()) {
-      if (id > max) {
-        max = id;
+  public void restoreNextPostId(int nextPostId) {
+    nextId.accumulateAndGet(nextPostId, Math::max);
+  }
+
+  @Override
+  public List<PostRecord> getNewestPosts(int limit, int offset) {
+    // Only the posts on the page get loaded.
+    indexUnloaded();
+    return summaries(indexes.newest(limit, offset));
+  }
+
+  @Override
+  public List<PostRecord> getPostsByAuthor(
+      String author, long beforeDateCreated, int beforeId, int limit) {
+    indexUnloaded();
+    return summaries(indexes.newestByAuthor(author, beforeDateCreated, beforeId, limit));
+  }
+
+  @Override
+  public List<PostRecord> searchPosts(String query, int limit, int offset) {
+    if (!searchIndex.isBuilt()) {
+      reindex();
+    }
+
+    List<PostRecord> results = new ArrayList<>();
+    for (int id : searchIndex.search(query, limit, offset)) {
+      // The index has every post, loaded or not, so look it up the way any read does. Only the
+      // posts on the page get loaded.
+      PostRecord post = find(id);
+      // Skip any post deleted since the search.
+      if (post != null) {
+        results.add(toSummary(post));
       }
     }
-    return max + 1;
+    return results;
+  }
+
+  /**
+   * Build the search index again from scratch, using every core. The table can keep being used
+   * while this happens. It's done automatically on the first search, so this only needs to be
+   * called to build the index ahead of time.
+   */
+  public void reindex() {
+    searchIndex.rebuild(this::getAllPosts);
+  }
+
+  /**
+   * Make a summary projection (see {@link IPostTable#searchPosts(String, int, int)}) of the given
+   * post. This table doesn't know about comments, so the comment count is left null.
+   *
+   * @param post The post to summarize.
+   * @return A new record with the body cut down to the summary length.
+   */
+  private static PostRecord toSummary(PostRecord post) {
+    return new PostRecord(
+        post.getId(),
+        post.getAuthor(),
+        post.getDateCreatedMillis(),
+        post.getTitle(),
+        post.getClapCount(),
+        post.getBodyPreview(SUMMARY_BODY_LENGTH));
   }
 }
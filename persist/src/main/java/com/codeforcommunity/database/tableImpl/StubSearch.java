@@ -0,0 +1,67 @@
+package com.codeforcommunity.database.tableImpl;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A very small text matcher used by the stub tables to answer search queries. {@link
+ * #countMatches(Set, String)} scans every record, so it is only suitable for small data sets; the
+ * post table uses a {@link PostSearchIndex} built from {@link #countTerms(String, int, Map)}
+ * instead.
+ */
+class StubSearch {
+
+  private StubSearch() {}
+
+  /**
+   * Split the given text into lower-case words, ignoring punctuation.
+   *
+   * @param text The text to split.
+   * @return The distinct words in the order they first appear.
+   */
+  static Set<String> tokenize(String text) {
+    Set<String> terms = new LinkedHashSet<>();
+    for (String term : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+      if (!term.isEmpty()) {
+        terms.add(term);
+      }
+    }
+    return terms;
+  }
+
+  /**
+   * Count how many times each word appears in the given text, split up the same way as {@link
+   * #tokenize(String)}.
+   *
+   * @param text The text to split.
+   * @param weight How much each appearance counts for.
+   * @param counts Where to add the counts to.
+   */
+  static void countTerms(String text, int weight, Map<String, Integer> counts) {
+    for (String term : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+      if (!term.isEmpty()) {
+        counts.merge(term, weight, Integer::sum);
+      }
+    }
+  }
+
+  /**
+   * Count how many of the given query terms appear in the given text.
+   *
+   * @param queryTerms The tokenized query.
+   * @param text The text to look through.
+   * @return The number of query terms found.
+   */
+  static int countMatches(Set<String> queryTerms, String text) {
+    Set<String> textTerms = tokenize(text);
+    int matches = 0;
+    for (String term : queryTerms) {
+      if (textTerms.contains(term)) {
+        matches++;
+      }
+    }
+    return matches;
+  }
+}
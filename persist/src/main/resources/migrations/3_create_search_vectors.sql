@@ -0,0 +1,23 @@
+-- This migration adds full-text search over posts (and comments). Instead of scanning every post
+-- with LIKE, Postgres keeps a pre-processed 'tsvector' for each row and a GIN index over it, which
+-- maps each word to the rows containing it.
+
+-- A GENERATED column is computed by Postgres whenever the row is inserted or updated, so the search
+-- vector can never get out of sync with the title and body. Words in the title are weighted 'A'
+-- and words in the body 'B', so a match in the title ranks above a match in the body.
+ALTER TABLE posts
+    ADD COLUMN IF NOT EXISTS search_vector TSVECTOR
+        GENERATED ALWAYS AS (
+            setweight(to_tsvector('english', title), 'A') ||
+            setweight(to_tsvector('english', body), 'B')
+        ) STORED;
+
+-- GIN (Generalized Inverted iNdex) is the index type meant for tsvectors.
+CREATE INDEX IF NOT EXISTS posts_search_vector_idx ON posts USING GIN (search_vector);
+
+-- Do the same for comments, which only have a body.
+ALTER TABLE comments
+    ADD COLUMN IF NOT EXISTS search_vector TSVECTOR
+        GENERATED ALWAYS AS (to_tsvector('english', body)) STORED;
+
+CREATE INDEX IF NOT EXISTS comments_search_vector_idx ON comments USING GIN (search_vector);
@@ -0,0 +1,12 @@
+-- This migration lets very large post bodies be stored compressed. When a body is over the
+-- threshold configured in db.properties, the full body is compressed into body_compressed, the
+-- codec used is recorded in body_codec, and the body column only keeps the start of the body.
+-- Keeping the start around means feed and search summaries never have to decompress anything.
+
+-- Note that only the start of a compressed body is covered by the full-text search vector added in
+-- the last migration, since Postgres can't read the compressed bytes.
+
+ALTER TABLE posts
+    -- BYTEA holds raw bytes. It's null for bodies that are stored as plain text.
+    ADD COLUMN IF NOT EXISTS body_compressed    BYTEA,
+    ADD COLUMN IF NOT EXISTS body_codec         VARCHAR(16);
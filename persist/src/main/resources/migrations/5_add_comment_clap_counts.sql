@@ -0,0 +1,39 @@
+-- This migration lets us show the top (or newest) comments of a post without looking at all of
+-- them. Counting claps from comment_claps means visiting every comment of the post, so we bring
+-- back a clap_count column on comments and let the database keep it up to date for us.
+
+ALTER TABLE comments
+    ADD COLUMN IF NOT EXISTS clap_count INTEGER NOT NULL DEFAULT 0;
+
+-- Fill in the counts of the claps that already exist.
+UPDATE comments
+SET clap_count = claps.clap_count
+FROM (SELECT comment_id, COUNT(*) AS clap_count FROM comment_claps GROUP BY comment_id) claps
+WHERE comments.id = claps.comment_id;
+
+-- A trigger is a function the database runs for us whenever a row is inserted into (or deleted
+-- from) a table. This one keeps comments.clap_count in sync with the rows in comment_claps, so no
+-- code that writes claps has to remember to do it.
+CREATE OR REPLACE FUNCTION update_comment_clap_count() RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        UPDATE comments SET clap_count = clap_count + 1 WHERE id = NEW.comment_id;
+    ELSE
+        UPDATE comments SET clap_count = clap_count - 1 WHERE id = OLD.comment_id;
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS comment_claps_count_trigger ON comment_claps;
+CREATE TRIGGER comment_claps_count_trigger
+    AFTER INSERT OR DELETE ON comment_claps
+    FOR EACH ROW EXECUTE FUNCTION update_comment_clap_count();
+
+-- These indexes keep each post's comments already sorted the ways we show them. Asking for the top
+-- k comments of a post walks the first k entries of the index under that post_id and stops,
+-- no matter how many comments the post has.
+CREATE INDEX IF NOT EXISTS comments_post_id_clap_count_idx
+    ON comments (post_id, clap_count DESC, id);
+CREATE INDEX IF NOT EXISTS comments_post_id_date_created_idx
+    ON comments (post_id, date_created DESC, id DESC);
@@ -0,0 +1,19 @@
+-- This migration lets us page through the newest posts (overall, or by one author) without sorting
+-- every post first. Each index below keeps the posts already in feed order, newest first with ties
+-- broken by the higher ID, so a page is a walk over the next few entries of an index.
+
+-- Posts are paged by the date and ID of the last post on the previous page. The Java side keeps
+-- dates to the millisecond, but TIMESTAMP keeps microseconds, so two posts in the same millisecond
+-- could end up on the wrong side of a page boundary. Storing milliseconds makes the dates we hand
+-- out exact. This rewrites the table, so it may take a moment on a big one.
+ALTER TABLE posts
+    ALTER COLUMN date_created TYPE TIMESTAMP(3);
+
+-- The front page: every post, newest first.
+CREATE INDEX IF NOT EXISTS posts_date_created_idx
+    ON posts (date_created DESC, id DESC);
+
+-- Profile pages: one author's posts, newest first. All of an author's posts sit next to each other
+-- in this index, so "the next 20 posts by this author older than this one" is one range scan.
+CREATE INDEX IF NOT EXISTS posts_author_date_created_idx
+    ON posts (author, date_created DESC, id DESC);
@@ -0,0 +1,27 @@
+-- This migration makes full-text search cover the whole of every post body again. The search vector
+-- added in migration 3 is a GENERATED column over the body column, but since migration 4 the body
+-- column only keeps the start of a compressed body, so the rest of it could never be found.
+-- Postgres can't read the compressed bytes, so the search vector is now a plain column which the
+-- server fills in from the uncompressed text whenever it saves a post.
+
+-- A generated column can't be turned into a plain one, so drop it (which drops its index too) and
+-- add it back.
+ALTER TABLE posts
+    DROP COLUMN IF EXISTS search_vector;
+
+ALTER TABLE posts
+    ADD COLUMN search_vector TSVECTOR;
+
+-- Fill in the posts whose whole body is in the body column, the same way migration 3 did. Posts
+-- with compressed bodies are left null: the server decompresses and indexes them in the background
+-- when it starts up (see PostTableDBImpl#indexCompressedBodies).
+UPDATE posts
+SET search_vector = setweight(to_tsvector('english', title), 'A') ||
+                    setweight(to_tsvector('english', body), 'B')
+WHERE body_compressed IS NULL;
+
+CREATE INDEX IF NOT EXISTS posts_search_vector_idx ON posts USING GIN (search_vector);
+
+-- Lets the server find the posts it still has to index without looking at every post. Once they're
+-- all indexed, this index is empty.
+CREATE INDEX IF NOT EXISTS posts_unindexed_idx ON posts (id) WHERE search_vector IS NULL;
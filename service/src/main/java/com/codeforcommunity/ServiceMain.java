@@ -1,21 +1,78 @@
 package com.codeforcommunity;
 
-import com.codeforcommunity.api.IPostsProcessor;
+import com.codeforcommunity.database.durable.DurableStore;
+import com.codeforcommunity.database.notify.ChangeEvent;
 import com.codeforcommunity.database.table.ICommentTable;
 import com.codeforcommunity.database.table.IPostTable;
+import com.codeforcommunity.database.tableImpl.CachingCommentTableImpl;
+import com.codeforcommunity.database.tableImpl.CachingPostTableImpl;
+import com.codeforcommunity.database.tableImpl.ChangeListenerDBImpl;
 import com.codeforcommunity.database.tableImpl.CommentTableDBImpl;
 import com.codeforcommunity.database.tableImpl.PostTableDBImpl;
+import com.codeforcommunity.database.tableImpl.StubCommentTableImpl;
+import com.codeforcommunity.database.tableImpl.StubPostTableImpl;
+import com.codeforcommunity.processor.CoalescingPostsProcessor;
 import com.codeforcommunity.processor.PostsProcessor;
-import com.codeforcommunity.rest.IRouter;
+import com.codeforcommunity.processor.RelatedPosts;
+import com.codeforcommunity.processor.TitleAutocomplete;
 import com.codeforcommunity.rest.PostsRouter;
+import com.codeforcommunity.rest.cache.AccessStats;
+import com.codeforcommunity.rest.cache.FeedCache;
+import com.codeforcommunity.rest.cache.SlabCache;
+import com.codeforcommunity.rest.cache.VersionStamps;
 import com.codeforcommunity.util.PropertiesLoader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 /**
  * The main class for this application. Sets up and starts the API server, and is our entry point
  * into the program.
  */
 public class ServiceMain {
+  private static final Logger logger = LogManager.getLogger(ServiceMain.class);
+  /** How much off-heap memory the response cache gets if no size is configured (64 MiB). */
+  private static final long DEFAULT_RESPONSE_CACHE_BYTES = 64L << 20;
+  /** How many pages of the feed are kept encoded if no number is configured. */
+  private static final long DEFAULT_FEED_CACHE_PAGES = 64;
+  /** How old a cached response gets before it's loaded again in the background, by default. */
+  private static final long DEFAULT_CACHE_SOFT_TTL_MILLIS = 30_000;
+  /** How old a cached response gets before requests wait for it to be loaded again, by default. */
+  private static final long DEFAULT_CACHE_HARD_TTL_MILLIS = 300_000;
+  /** How often to log how many reads were coalesced. */
+  private static final long COALESCING_STATS_INTERVAL_MINUTES = 5;
+  /** How many posts (and posts' comments) are cached in front of the database by default. */
+  private static final long DEFAULT_TABLE_CACHE_ENTRIES = 10_000;
+  /** How long an entry cached in front of the database is used for by default. */
+  private static final long DEFAULT_TABLE_CACHE_TTL_MILLIS = 30_000;
+  /** How long the database's answer that a post doesn't exist is used for by default. */
+  private static final long DEFAULT_TABLE_CACHE_MISSING_TTL_MILLIS = 5_000;
+  /** How many posts the access stats count at once. */
+  private static final int ACCESS_STATS_CAPACITY = 10_000;
+  /** How many of the most requested posts are saved to the access stats file. */
+  private static final int ACCESS_STATS_SAVED_POSTS = 1000;
+  /**
+   * How often the access stats are saved, in case the server doesn't get to save them when it
+   * stops.
+   */
+  private static final long ACCESS_STATS_SAVE_INTERVAL_MINUTES = 5;
+  /** How many of the most requested posts are loaded into the caches on startup by default. */
+  private static final long DEFAULT_WARMUP_POSTS = 100;
+  /** How many posts are loaded into the caches at once on startup by default. */
+  private static final long DEFAULT_WARMUP_CONCURRENCY = 4;
+  /**
+   * How long warming up the caches can take before the server says it's ready anyway, by default.
+   */
+  private static final long DEFAULT_WARMUP_TIMEOUT_MILLIS = 30_000;
 
   /**
    * The main method. What gets called during the startup of this app.
@@ -44,15 +101,345 @@ public class ServiceMain {
 
   /** Sets up values that are needed and starts the API server. */
   private void initializeServer() {
-    // Get our DB properties so they can be provided to the database table impl classes.
-    Properties properties = PropertiesLoader.getDbProperties();
-    IPostTable postTable = new PostTableDBImpl(properties);
-    ICommentTable commentTable = new CommentTableDBImpl(properties);
-
-    IPostsProcessor postsProcessor = new PostsProcessor(postTable, commentTable);
-    IRouter postsRouter = new PostsRouter(postsProcessor);
-    ApiMain apiMain = new ApiMain(postsRouter);
+    IPostTable postTable;
+    ICommentTable commentTable;
+    TitleAutocomplete autocomplete;
+    RelatedPosts relatedPosts;
+    long softTtlMillis = PropertiesLoader.getCacheSoftTtlMillis(DEFAULT_CACHE_SOFT_TTL_MILLIS);
+    long hardTtlMillis = PropertiesLoader.getCacheHardTtlMillis(DEFAULT_CACHE_HARD_TTL_MILLIS);
+    long responseCacheBytes = PropertiesLoader.getResponseCacheBytes(DEFAULT_RESPONSE_CACHE_BYTES);
+    SlabCache responseCache =
+        responseCacheBytes > 0
+            ? new SlabCache(responseCacheBytes, softTtlMillis, hardTtlMillis)
+            : null;
+    int feedCachePages = (int) PropertiesLoader.getFeedCachePages(DEFAULT_FEED_CACHE_PAGES);
+    FeedCache feedCache =
+        feedCachePages > 0 ? new FeedCache(feedCachePages, softTtlMillis, hardTtlMillis) : null;
+    VersionStamps versionStamps = new VersionStamps();
+
+    Properties memoryProperties = PropertiesLoader.getMemoryStoreProperties();
+    if (memoryProperties.getProperty("memory.directory") != null) {
+      // Keep everything in memory, made durable by a write-ahead log on disk.
+      StubPostTableImpl stubPostTable = new StubPostTableImpl();
+      StubCommentTableImpl stubCommentTable = new StubCommentTableImpl();
+      DurableStore store =
+          DurableStore.fromProperties(memoryProperties, stubPostTable, stubCommentTable);
+      logger.info(
+          "Recovered the in-memory store in {} ms ({} log records replayed)",
+          store.getRecoveryMillis(),
+          store.getReplayedRecords());
+      // Write out the last of the log when the program is stopped.
+      Runtime.getRuntime().addShutdownHook(new Thread(store::close));
+      postTable = stubPostTable;
+      commentTable = stubCommentTable;
+
+      // The tables tell autocomplete and related posts about their changes directly.
+      autocomplete = new TitleAutocomplete(postTable);
+      stubPostTable.addMutationListener(autocomplete);
+      relatedPosts = new RelatedPosts(postTable);
+      stubPostTable.addMutationListener(relatedPosts);
+    } else {
+      // Get our DB properties so they can be provided to the database table impl classes.
+      Properties properties = PropertiesLoader.getDbProperties();
+      PostTableDBImpl postTableDB = new PostTableDBImpl(properties);
+      postTable = postTableDB;
+      commentTable = new CommentTableDBImpl(properties);
+
+      // Posts whose bodies were compressed before the server indexed whole bodies itself can only
+      // be found by the start of their bodies until this catches them up.
+      Thread searchIndexer =
+          new Thread(
+              () -> {
+                int indexed = postTableDB.indexCompressedBodies();
+                if (indexed > 0) {
+                  logger.info("Indexed {} compressed post bodies for search", indexed);
+                }
+              },
+              "search-indexer");
+      searchIndexer.setDaemon(true);
+      searchIndexer.start();
+
+      // Listen for changes made by every node (including this one), so that anything this node
+      // caches can be invalidated as soon as another node writes.
+      ChangeListenerDBImpl changeListener = new ChangeListenerDBImpl(properties);
+      changeListener.subscribe(event -> logger.debug("Received change notification {}", event));
+
+      // Keep the most popular posts and comments in memory in front of the database. (The
+      // in-memory tables above don't need this, since they already are in memory.)
+      int tableCacheEntries =
+          (int) PropertiesLoader.getTableCacheEntries(DEFAULT_TABLE_CACHE_ENTRIES);
+      if (tableCacheEntries > 0) {
+        long ttlMillis = PropertiesLoader.getTableCacheTtlMillis(DEFAULT_TABLE_CACHE_TTL_MILLIS);
+        long missingTtlMillis =
+            PropertiesLoader.getTableCacheMissingTtlMillis(DEFAULT_TABLE_CACHE_MISSING_TTL_MILLIS);
+        CachingPostTableImpl cachingPostTable =
+            new CachingPostTableImpl(postTable, tableCacheEntries, ttlMillis, missingTtlMillis);
+        CachingCommentTableImpl cachingCommentTable =
+            new CachingCommentTableImpl(commentTable, tableCacheEntries, ttlMillis);
+        changeListener.subscribe(cachingPostTable);
+        changeListener.subscribe(cachingCommentTable);
+        // Read every post's ID in the background. Until it's done, requests for posts that don't
+        // exist just go to the database like any others.
+        Thread idFilterLoader =
+            new Thread(cachingPostTable::rebuildIdFilter, "post-id-filter-loader");
+        idFilterLoader.setDaemon(true);
+        idFilterLoader.start();
+        postTable = cachingPostTable;
+        commentTable = cachingCommentTable;
+      }
+      if (responseCache != null) {
+        // The router drops the responses about the posts it changes itself, but it doesn't hear
+        // about the changes made by other nodes.
+        changeListener.subscribe(
+            event -> {
+              if (event.getType() == ChangeEvent.Type.RESYNC) {
+                responseCache.clear();
+              } else {
+                responseCache.invalidate(event.getPostId());
+              }
+            });
+      }
+      if (feedCache != null) {
+        changeListener.subscribe(
+            event -> {
+              switch (event.getType()) {
+                case POST_CREATED:
+                  feedCache.invalidate();
+                  break;
+                case POST_DELETED:
+                  feedCache.invalidatePost(event.getPostId());
+                  feedCache.invalidate();
+                  break;
+                case RESYNC:
+                  feedCache.clear();
+                  break;
+                case COMMENT_CLAPPED:
+                  // Comment claps don't show up in the feed.
+                  break;
+                default:
+                  // Post claps and comments being created or deleted change one post's summary.
+                  feedCache.invalidatePost(event.getPostId());
+                  break;
+              }
+            });
+      }
+      autocomplete = new TitleAutocomplete(postTable);
+      changeListener.subscribe(autocomplete);
+      relatedPosts = new RelatedPosts(postTable);
+      changeListener.subscribe(relatedPosts);
+      // Bump the versions last, so that by the time a client sees a new ETag, every cache above has
+      // dropped what changed.
+      changeListener.subscribe(
+          event -> {
+            switch (event.getType()) {
+              case POST_CREATED:
+                versionStamps.feedChanged();
+                break;
+              case POST_CLAPPED:
+                versionStamps.postChanged(event.getPostId());
+                versionStamps.feedChanged();
+                break;
+              case POST_DELETED:
+                versionStamps.postChanged(event.getPostId());
+                versionStamps.commentsChanged(event.getPostId());
+                versionStamps.feedChanged();
+                break;
+              case COMMENT_CLAPPED:
+                versionStamps.commentsChanged(event.getPostId());
+                break;
+              case RESYNC:
+                versionStamps.changedAll();
+                break;
+              default:
+                // Comments being created or deleted also change how many the feed says there are.
+                versionStamps.commentsChanged(event.getPostId());
+                versionStamps.feedChanged();
+                break;
+            }
+          });
+      changeListener.start();
+    }
+
+    // Load the titles that already exist in the background, so we can start serving requests
+    // straight away. Suggestions fill in as it goes.
+    Thread autocompleteLoader = new Thread(autocomplete::rebuild, "autocomplete-loader");
+    autocompleteLoader.setDaemon(true);
+    autocompleteLoader.start();
+    // Likewise for the signatures of the posts' bodies. Until they're loaded, a post just has fewer
+    // related posts.
+    Thread relatedPostsLoader = new Thread(relatedPosts::rebuild, "related-posts-loader");
+    relatedPostsLoader.setDaemon(true);
+    relatedPostsLoader.start();
+
+    // Let identical reads that arrive together (like a burst of requests for a viral post) share
+    // a single trip to the tables.
+    CoalescingPostsProcessor postsProcessor =
+        new CoalescingPostsProcessor(
+            new PostsProcessor(postTable, commentTable, autocomplete, relatedPosts));
+    startCoalescingStatsLogger(postsProcessor);
+    AccessStats accessStats = loadAccessStats();
+    PostsRouter postsRouter =
+        new PostsRouter(
+            postsProcessor,
+            PropertiesLoader.getReadDeadlineMillis(PostsRouter.DEFAULT_READ_DEADLINE_MILLIS),
+            PropertiesLoader.getWriteDeadlineMillis(PostsRouter.DEFAULT_WRITE_DEADLINE_MILLIS),
+            responseCache,
+            feedCache,
+            versionStamps,
+            accessStats);
+    AtomicBoolean ready = new AtomicBoolean();
+    ApiMain apiMain = new ApiMain(postsRouter, ready::get);
     // Start our ApiMain up and pass in the server port from the system variable or properties file.
     apiMain.startApi(PropertiesLoader.getServerPort());
+
+    // The server is up, but it only says it's ready once the caches are warm.
+    List<Integer> hottest =
+        accessStats == null
+            ? List.of()
+            : accessStats.getHottest((int) PropertiesLoader.getWarmupPosts(DEFAULT_WARMUP_POSTS));
+    warmUp(postsRouter, hottest);
+    ready.set(true);
+  }
+
+  /**
+   * Read the counts of requests for each post that were saved by the last run, and keep saving them
+   * every {@link #ACCESS_STATS_SAVE_INTERVAL_MINUTES} minutes and when the server stops.
+   *
+   * @return The counts, or null if they aren't kept.
+   */
+  private AccessStats loadAccessStats() {
+    String file = PropertiesLoader.getAccessStatsFile();
+    if (file == null) {
+      return null;
+    }
+    Path path = Paths.get(file);
+
+    AccessStats accessStats;
+    try {
+      accessStats = AccessStats.load(path, ACCESS_STATS_CAPACITY);
+    } catch (IllegalStateException e) {
+      // They're only a hint, so start counting again rather than not starting at all.
+      logger.warn("Could not read the access stats, so no posts will be warmed up", e);
+      accessStats = new AccessStats(ACCESS_STATS_CAPACITY);
+    }
+
+    AccessStats stats = accessStats;
+    Runnable save =
+        () -> {
+          try {
+            stats.save(path, ACCESS_STATS_SAVED_POSTS);
+          } catch (IllegalStateException e) {
+            logger.warn("Could not save the access stats", e);
+          }
+        };
+    ScheduledExecutorService saver =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "access-stats-saver");
+              thread.setDaemon(true);
+              return thread;
+            });
+    saver.scheduleAtFixedRate(
+        save,
+        ACCESS_STATS_SAVE_INTERVAL_MINUTES,
+        ACCESS_STATS_SAVE_INTERVAL_MINUTES,
+        TimeUnit.MINUTES);
+    Runtime.getRuntime().addShutdownHook(new Thread(save));
+    return stats;
+  }
+
+  /**
+   * Load the feed and the given posts (with their comments) into the caches, a few at a time, and
+   * wait until they're loaded or the warm-up timeout passes. This gets the database's own caches
+   * ready too, so the first requests after a deploy aren't all slow.
+   *
+   * @param router The router whose caches to warm up.
+   * @param postIds The posts to load, most important first.
+   */
+  private void warmUp(PostsRouter router, List<Integer> postIds) {
+    int concurrency = (int) PropertiesLoader.getWarmupConcurrency(DEFAULT_WARMUP_CONCURRENCY);
+    long timeoutMillis = PropertiesLoader.getWarmupTimeoutMillis(DEFAULT_WARMUP_TIMEOUT_MILLIS);
+    long startNanos = System.nanoTime();
+    ExecutorService warmers =
+        Executors.newFixedThreadPool(
+            Math.max(1, concurrency),
+            runnable -> {
+              Thread thread = new Thread(runnable, "cache-warmup");
+              thread.setDaemon(true);
+              return thread;
+            });
+
+    // The tasks run in the order they're added, so the feed goes first, then the hottest posts.
+    AtomicInteger warmedPosts = new AtomicInteger();
+    warmers.execute(
+        () -> {
+          try {
+            router.warmFeed();
+          } catch (RuntimeException e) {
+            logger.warn("Could not warm up the feed", e);
+          }
+        });
+    for (int postId : postIds) {
+      warmers.execute(
+          () -> {
+            try {
+              router.warmPost(postId);
+              warmedPosts.incrementAndGet();
+            } catch (RuntimeException e) {
+              // Like a post that's been deleted since the stats were saved.
+              logger.debug("Could not warm up post {}", postId, e);
+            }
+          });
+    }
+    warmers.shutdown();
+
+    boolean finished;
+    try {
+      finished = warmers.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      finished = false;
+    }
+    if (!finished) {
+      // Whatever's still loading is cancelled, and those posts are loaded by their first requests.
+      warmers.shutdownNow();
+    }
+    logger.info(
+        "{} the caches with {} of {} posts in {} ms",
+        finished ? "Warmed up" : "Timed out warming up",
+        warmedPosts.get(),
+        postIds.size(),
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+  }
+
+  /**
+   * Log how many reads were coalesced every {@link #COALESCING_STATS_INTERVAL_MINUTES} minutes, as
+   * long as there were any reads since the last time.
+   *
+   * @param processor The processor coalescing the reads.
+   */
+  private void startCoalescingStatsLogger(CoalescingPostsProcessor processor) {
+    ScheduledExecutorService statsLogger =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "coalescing-stats");
+              thread.setDaemon(true);
+              return thread;
+            });
+    long[] lastTotal = {0};
+    statsLogger.scheduleAtFixedRate(
+        () -> {
+          long coalesced = processor.getCoalescedReads();
+          long total = coalesced + processor.getExecutedReads();
+          if (total != lastTotal[0]) {
+            lastTotal[0] = total;
+            logger.info(
+                "Coalesced {} of {} reads since startup ({}%)",
+                coalesced, total, String.format("%.1f", processor.getCoalescingRatio() * 100));
+          }
+        },
+        COALESCING_STATS_INTERVAL_MINUTES,
+        COALESCING_STATS_INTERVAL_MINUTES,
+        TimeUnit.MINUTES);
   }
 }
@@ -1,10 +1,10 @@
 package com.codeforcommunity.mapper;
 
 import com.codeforcommunity.database.records.PostRecord;
+import com.codeforcommunity.database.table.IPostTable;
 import com.codeforcommunity.dto.request.CreatePostRequest;
 import com.codeforcommunity.dto.response.PostSummary;
 import com.codeforcommunity.dto.response.SinglePostResponse;
-import com.codeforcommunity.processor.PostsProcessor;
 
 /** An interface for mapping between the persist and api module DTOs. */
 public class PostMapper {
@@ -32,14 +32,28 @@ public class PostMapper {
    * @return The mapped DTO.
    */
   public static PostSummary recordToSummary(PostRecord record) {
+    return recordToSummary(record, record.getCommentCount());
+  }
+
+  /**
+   * Map from a {@link PostRecord} to a {@link PostSummary} with the given comment count. Use this
+   * instead of setting the count on the record, since the record may be shared with the table that
+   * returned it (or its cache).
+   *
+   * @param record The record to map.
+   * @param commentCount The number of comments on the post.
+   * @return The mapped DTO.
+   */
+  public static PostSummary recordToSummary(PostRecord record, Integer commentCount) {
     return new PostSummary(
         record.getId(),
         record.getAuthor(),
         record.getDateCreated(),
         record.getTitle(),
         record.getClapCount(),
-        PostsProcessor.getBodyPreview(record.getBody()),
-        record.getCommentCount());
+        // Lets compressed bodies build their preview without decompressing the whole thing.
+        record.getBodyPreview(IPostTable.SUMMARY_BODY_LENGTH),
+        commentCount);
   }
 
   /**
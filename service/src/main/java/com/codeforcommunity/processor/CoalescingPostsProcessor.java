@@ -0,0 +1,283 @@
+package com.codeforcommunity.processor;
+
+import com.codeforcommunity.api.DeadlineExceededException;
+import com.codeforcommunity.api.IPostsProcessor;
+import com.codeforcommunity.dto.request.CommentSort;
+import com.codeforcommunity.dto.request.CreateCommentRequest;
+import com.codeforcommunity.dto.request.CreatePostRequest;
+import com.codeforcommunity.dto.response.AutocompleteResponse;
+import com.codeforcommunity.dto.response.CommentsResponse;
+import com.codeforcommunity.dto.response.PostSummary;
+import com.codeforcommunity.dto.response.PostsPageResponse;
+import com.codeforcommunity.dto.response.PostsResponse;
+import com.codeforcommunity.dto.response.SinglePostResponse;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * An {@link IPostsProcessor} in front of another, which makes identical reads that are running at
+ * the same time share a single call to the processor behind it.
+ *
+ * <p>When a post goes viral, thousands of requests for it can arrive at once, before any cache has
+ * it. Each of them would run the same queries and get the same answer. Instead, the first read of
+ * each kind (like {@code getSinglePost(42)}) goes ahead, and every identical read that comes in
+ * before it finishes waits for it and gets its result, or its exception. Once it finishes, the next
+ * read goes ahead by itself again, so results are never older than the read that produced them.
+ *
+ * <p>A read that waits still goes by its own deadline (see {@link #withDeadline(long)}): if the
+ * read it's waiting on takes too long, it gives up with a {@link DeadlineExceededException}. The
+ * read that goes ahead runs under its own deadline only.
+ *
+ * <p>Writes aren't coalesced. After each one, reads that start later never wait on a read that
+ * started before the write, so a client always sees its own changes.
+ *
+ * <p>Waiting reads are handed the same response object, so callers mustn't change the responses
+ * they get.
+ */
+public class CoalescingPostsProcessor implements IPostsProcessor {
+  /** What's shared by a processor and all of its views with deadlines. */
+  private static final class Flights {
+    /** The reads running right now, by what they're reading. */
+    final ConcurrentHashMap<List<Object>, CompletableFuture<Object>> running =
+        new ConcurrentHashMap<>();
+    /** How many reads went ahead. */
+    final LongAdder executed = new LongAdder();
+    /** How many reads waited for an identical one instead. */
+    final LongAdder coalesced = new LongAdder();
+  }
+
+  private final Flights flights;
+  private final IPostsProcessor delegate;
+  /** The absolute deadline, in {@link System#nanoTime()} units, or null if there isn't one. */
+  private final Long deadlineNanos;
+
+  /**
+   * Create a coalescing processor.
+   *
+   * @param delegate The processor to coalesce the reads of.
+   */
+  public CoalescingPostsProcessor(IPostsProcessor delegate) {
+    this(new Flights(), delegate, null);
+  }
+
+  private CoalescingPostsProcessor(Flights flights, IPostsProcessor delegate, Long deadlineNanos) {
+    this.flights = flights;
+    this.delegate = delegate;
+    this.deadlineNanos = deadlineNanos;
+  }
+
+  /**
+   * Run a read, or wait for the identical read that's already running.
+   *
+   * @param read Runs the read.
+   * @param key What identifies the read: its method's name, followed by its arguments.
+   * @param <T> The type of the read's result.
+   * @return The read's result.
+   */
+  @SuppressWarnings("unchecked")
+  private <T> T coalesce(Supplier<T> read, Object... key) {
+    List<Object> readKey = Arrays.asList(key);
+    CompletableFuture<Object> flight = new CompletableFuture<>();
+    CompletableFuture<Object> running = flights.running.putIfAbsent(readKey, flight);
+    if (running != null) {
+      flights.coalesced.increment();
+      return (T) await(running);
+    }
+
+    flights.executed.increment();
+    try {
+      T result = read.get();
+      flight.complete(result);
+      return result;
+    } catch (RuntimeException | Error e) {
+      flight.completeExceptionally(e);
+      throw e;
+    } finally {
+      flights.running.remove(readKey, flight);
+    }
+  }
+
+  /**
+   * Wait for a running read, until this processor's deadline.
+   *
+   * @param flight The read's result.
+   * @return The result.
+   */
+  private Object await(CompletableFuture<Object> flight) {
+    try {
+      if (deadlineNanos == null) {
+        return flight.get();
+      }
+      long remainingNanos = deadlineNanos - System.nanoTime();
+      if (remainingNanos <= 0) {
+        throw new DeadlineExceededException("The request deadline passed before it could be run.");
+      }
+      return flight.get(remainingNanos, TimeUnit.NANOSECONDS);
+    } catch (ExecutionException e) {
+      // Pass on whatever the read threw, just as if this had been the one to run it.
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    } catch (TimeoutException e) {
+      throw new DeadlineExceededException("The request did not finish before its deadline.", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for an identical request.", e);
+    }
+  }
+
+  /**
+   * Run a write, and make sure reads that start after it don't wait on reads from before it.
+   *
+   * @param write Runs the write.
+   */
+  private void write(Runnable write) {
+    try {
+      write.run();
+    } finally {
+      // The reads still running keep going for those already waiting on them.
+      flights.running.clear();
+    }
+  }
+
+  /** @return How many reads went ahead by themselves. */
+  public long getExecutedReads() {
+    return flights.executed.sum();
+  }
+
+  /** @return How many reads waited for an identical read instead of running. */
+  public long getCoalescedReads() {
+    return flights.coalesced.sum();
+  }
+
+  /** @return The share of reads that waited for an identical read, from 0 to 1. */
+  public double getCoalescingRatio() {
+    long coalesced = getCoalescedReads();
+    long total = coalesced + getExecutedReads();
+    return total == 0 ? 0 : (double) coalesced / total;
+  }
+
+  @Override
+  public IPostsProcessor withDeadline(long deadlineNanos) {
+    long deadline =
+        this.deadlineNanos == null || deadlineNanos - this.deadlineNanos < 0
+            ? deadlineNanos
+            : this.deadlineNanos;
+    return new CoalescingPostsProcessor(flights, delegate.withDeadline(deadline), deadline);
+  }
+
+  @Override
+  public PostsResponse getPosts() {
+    return coalesce(delegate::getPosts, "getPosts");
+  }
+
+  @Override
+  public PostsResponse getNewestPosts(int limit, int offset) {
+    return coalesce(() -> delegate.getNewestPosts(limit, offset), "getNewestPosts", limit, offset);
+  }
+
+  @Override
+  public PostsPageResponse getPostsByAuthor(String author, String before, int limit) {
+    return coalesce(
+        () -> delegate.getPostsByAuthor(author, before, limit),
+        "getPostsByAuthor",
+        author,
+        before,
+        limit);
+  }
+
+  @Override
+  public SinglePostResponse getSinglePost(int postId) {
+    return coalesce(() -> delegate.getSinglePost(postId), "getSinglePost", postId);
+  }
+
+  @Override
+  public PostSummary getPostSummary(int postId) {
+    return coalesce(() -> delegate.getPostSummary(postId), "getPostSummary", postId);
+  }
+
+  @Override
+  public CommentsResponse getCommentsForPost(int postId) {
+    return coalesce(() -> delegate.getCommentsForPost(postId), "getCommentsForPost", postId);
+  }
+
+  @Override
+  public CommentsResponse getCommentsForPost(int postId, CommentSort sort, int limit) {
+    return coalesce(
+        () -> delegate.getCommentsForPost(postId, sort, limit),
+        "getCommentsForPost",
+        postId,
+        sort,
+        limit);
+  }
+
+  @Override
+  public PostsResponse searchPosts(String query, int limit, int offset) {
+    return coalesce(
+        () -> delegate.searchPosts(query, limit, offset), "searchPosts", query, limit, offset);
+  }
+
+  @Override
+  public AutocompleteResponse autocompleteTitles(String prefix, int limit) {
+    // This is answered from memory, so there's nothing to save by coalescing it.
+    return delegate.autocompleteTitles(prefix, limit);
+  }
+
+  @Override
+  public PostsResponse getRelatedPosts(int postId, int limit) {
+    return coalesce(
+        () -> delegate.getRelatedPosts(postId, limit), "getRelatedPosts", postId, limit);
+  }
+
+  @Override
+  public CommentsResponse searchComments(String query, int limit, int offset) {
+    return coalesce(
+        () -> delegate.searchComments(query, limit, offset),
+        "searchComments",
+        query,
+        limit,
+        offset);
+  }
+
+  @Override
+  public void createPost(CreatePostRequest post) {
+    write(() -> delegate.createPost(post));
+  }
+
+  @Override
+  public void createComment(int postId, CreateCommentRequest comment) {
+    write(() -> delegate.createComment(postId, comment));
+  }
+
+  @Override
+  public void clapPost(int postId) {
+    write(() -> delegate.clapPost(postId));
+  }
+
+  @Override
+  public void clapComment(int postId, int commentId) {
+    write(() -> delegate.clapComment(postId, commentId));
+  }
+
+  @Override
+  public void deletePost(int postId) {
+    write(() -> delegate.deletePost(postId));
+  }
+
+  @Override
+  public void deleteComment(int postId, int commentId) {
+    write(() -> delegate.deleteComment(postId, commentId));
+  }
+}
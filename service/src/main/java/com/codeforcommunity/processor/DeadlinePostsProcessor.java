@@ -0,0 +1,156 @@
+package com.codeforcommunity.processor;
+
+import com.codeforcommunity.api.DeadlineExceededException;
+import com.codeforcommunity.api.IPostsProcessor;
+import com.codeforcommunity.database.QueryDeadline;
+import com.codeforcommunity.database.QueryTimeoutException;
+import com.codeforcommunity.dto.request.CommentSort;
+import com.codeforcommunity.dto.request.CreateCommentRequest;
+import com.codeforcommunity.dto.request.CreatePostRequest;
+import com.codeforcommunity.dto.response.AutocompleteResponse;
+import com.codeforcommunity.dto.response.CommentsResponse;
+import com.codeforcommunity.dto.response.PostSummary;
+import com.codeforcommunity.dto.response.PostsPageResponse;
+import com.codeforcommunity.dto.response.PostsResponse;
+import com.codeforcommunity.dto.response.SinglePostResponse;
+import java.util.function.Supplier;
+
+/**
+ * A view of another {@link IPostsProcessor} which runs every call under a fixed deadline. The
+ * deadline is handed to the persist module through {@link QueryDeadline}, which the database tables
+ * use as the timeout for each statement they run.
+ */
+class DeadlinePostsProcessor implements IPostsProcessor {
+  private final IPostsProcessor delegate;
+  /** The absolute deadline, in {@link System#nanoTime()} units. */
+  private final long deadlineNanos;
+
+  DeadlinePostsProcessor(IPostsProcessor delegate, long deadlineNanos) {
+    this.delegate = delegate;
+    this.deadlineNanos = deadlineNanos;
+  }
+
+  /**
+   * Run the given work under this processor's deadline.
+   *
+   * @param work The work to run.
+   * @param <T> The type of the work's result.
+   * @return The result of the work.
+   * @throws DeadlineExceededException If the deadline passed before or while the work ran.
+   */
+  private <T> T call(Supplier<T> work) {
+    if (System.nanoTime() - deadlineNanos >= 0) {
+      throw new DeadlineExceededException("The request deadline passed before it could be run.");
+    }
+    try {
+      return QueryDeadline.callWithin(deadlineNanos, work);
+    } catch (QueryTimeoutException e) {
+      throw new DeadlineExceededException("The request did not finish before its deadline.", e);
+    }
+  }
+
+  /**
+   * Run the given work under this processor's deadline.
+   *
+   * @param work The work to run.
+   */
+  private void run(Runnable work) {
+    call(
+        () -> {
+          work.run();
+          return null;
+        });
+  }
+
+  @Override
+  public IPostsProcessor withDeadline(long deadlineNanos) {
+    // Nested deadlines can only ever shorten the budget.
+    return new DeadlinePostsProcessor(
+        delegate, deadlineNanos - this.deadlineNanos < 0 ? deadlineNanos : this.deadlineNanos);
+  }
+
+  @Override
+  public PostsResponse getPosts() {
+    return call(delegate::getPosts);
+  }
+
+  @Override
+  public SinglePostResponse getSinglePost(int postId) {
+    return call(() -> delegate.getSinglePost(postId));
+  }
+
+  @Override
+  public PostSummary getPostSummary(int postId) {
+    return call(() -> delegate.getPostSummary(postId));
+  }
+
+  @Override
+  public CommentsResponse getCommentsForPost(int postId) {
+    return call(() -> delegate.getCommentsForPost(postId));
+  }
+
+  @Override
+  public CommentsResponse getCommentsForPost(int postId, CommentSort sort, int limit) {
+    return call(() -> delegate.getCommentsForPost(postId, sort, limit));
+  }
+
+  @Override
+  public PostsResponse getNewestPosts(int limit, int offset) {
+    return call(() -> delegate.getNewestPosts(limit, offset));
+  }
+
+  @Override
+  public PostsPageResponse getPostsByAuthor(String author, String before, int limit) {
+    return call(() -> delegate.getPostsByAuthor(author, before, limit));
+  }
+
+  @Override
+  public PostsResponse searchPosts(String query, int limit, int offset) {
+    return call(() -> delegate.searchPosts(query, limit, offset));
+  }
+
+  @Override
+  public AutocompleteResponse autocompleteTitles(String prefix, int limit) {
+    return call(() -> delegate.autocompleteTitles(prefix, limit));
+  }
+
+  @Override
+  public PostsResponse getRelatedPosts(int postId, int limit) {
+    return call(() -> delegate.getRelatedPosts(postId, limit));
+  }
+
+  @Override
+  public CommentsResponse searchComments(String query, int limit, int offset) {
+    return call(() -> delegate.searchComments(query, limit, offset));
+  }
+
+  @Override
+  public void createPost(CreatePostRequest post) {
+    run(() -> delegate.createPost(post));
+  }
+
+  @Override
+  public void createComment(int postId, CreateCommentRequest comment) {
+    run(() -> delegate.createComment(postId, comment));
+  }
+
+  @Override
+  public void clapPost(int postId) {
+    run(() -> delegate.clapPost(postId));
+  }
+
+  @Override
+  public void clapComment(int postId, int commentId) {
+    run(() -> delegate.clapComment(postId, commentId));
+  }
+
+  @Override
+  public void deletePost(int postId) {
+    run(() -> delegate.deletePost(postId));
+  }
+
+  @Override
+  public void deleteComment(int postId, int commentId) {
+    run(() -> delegate.deleteComment(postId, commentId));
+  }
+}
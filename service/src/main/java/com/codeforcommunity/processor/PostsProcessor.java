@@ -1,19 +1,26 @@
 package com.codeforcommunity.processor;
 
 import com.codeforcommunity.api.IPostsProcessor;
+import com.codeforcommunity.database.collections.MinHashIndex;
 import com.codeforcommunity.database.records.CommentRecord;
 import com.codeforcommunity.database.records.PostRecord;
+import com.codeforcommunity.database.records.Timestamps;
 import com.codeforcommunity.database.table.ICommentTable;
 import com.codeforcommunity.database.table.IPostTable;
+import com.codeforcommunity.dto.request.CommentSort;
 import com.codeforcommunity.dto.request.CreateCommentRequest;
 import com.codeforcommunity.dto.request.CreatePostRequest;
+import com.codeforcommunity.dto.response.AutocompleteResponse;
 import com.codeforcommunity.dto.response.Comment;
 import com.codeforcommunity.dto.response.CommentsResponse;
 import com.codeforcommunity.dto.response.PostSummary;
+import com.codeforcommunity.dto.response.PostsPageResponse;
 import com.codeforcommunity.dto.response.PostsResponse;
 import com.codeforcommunity.dto.response.SinglePostResponse;
+import com.codeforcommunity.dto.response.TitleSuggestion;
 import com.codeforcommunity.mapper.CommentMapper;
 import com.codeforcommunity.mapper.PostMapper;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -30,12 +37,38 @@ public class PostsProcessor implements IPostsProcessor {
   /** Our in-memory 'database table' for holding comments. */
   private final ICommentTable commentTable;
   /** A max length we'll have set for our preview. */
-  private static final int PREVIEW_MAX_LENGTH = 50;
+  private static final int PREVIEW_MAX_LENGTH = IPostTable.SUMMARY_BODY_LENGTH;
+  /** Separates the date and ID in the cursors of paged feeds. */
+  private static final String CURSOR_SEPARATOR = "_";
+
+  /** Suggests titles for the search box, or null if this processor doesn't. */
+  private final TitleAutocomplete autocomplete;
+  /** Finds posts like a given post, or null if this processor doesn't. */
+  private final RelatedPosts relatedPosts;
 
   public PostsProcessor(IPostTable postTable, ICommentTable commentTable) {
+    this(postTable, commentTable, null, null);
+  }
+
+  /**
+   * The constructor to use when title autocomplete and related posts are set up. They must already
+   * be listening for changes to the posts (see {@link TitleAutocomplete} and {@link RelatedPosts}).
+   *
+   * @param postTable The post table.
+   * @param commentTable The comment table.
+   * @param autocomplete Suggests titles for the search box.
+   * @param relatedPosts Finds posts like a given post.
+   */
+  public PostsProcessor(
+      IPostTable postTable,
+      ICommentTable commentTable,
+      TitleAutocomplete autocomplete,
+      RelatedPosts relatedPosts) {
     // Set the in memory database tables.
     this.postTable = postTable;
     this.commentTable = commentTable;
+    this.autocomplete = autocomplete;
+    this.relatedPosts = relatedPosts;
   }
 
   /**
@@ -62,23 +95,29 @@ public class PostsProcessor implements IPostsProcessor {
     }
   }
 
+  @Override
+  public IPostsProcessor withDeadline(long deadlineNanos) {
+    return new DeadlinePostsProcessor(this, deadlineNanos);
+  }
+
   @Override
   public PostsResponse getPosts() {
     // Get the PostRecords.
     List<PostRecord> posts = postTable.getAllPosts();
 
-    // Loop through and set the comment counts for each post.
-    for (PostRecord record : posts) {
-      record.setCommentCount(commentTable.getCommentCountForPost(record.getId()));
-    }
-
-    // Turn the list into a stream, and map each PostRecord into a PostSummary using the PostMapper
-    // interface that was created. After that, collect each object in the stream into a list.
-    // A stream allows you to perform operations on a list. With it, you can do things like
-    // filter/reduce, andmap, ormap, and a few other really useful operations. You can still use a
-    // for loop like above though if you prefer!
+    // Turn the list into a stream, and map each PostRecord (along with its comment count) into a
+    // PostSummary using the PostMapper interface that was created. After that, collect each object
+    // in the stream into a list. A stream allows you to perform operations on a list. With it, you
+    // can do things like filter/reduce, andmap, ormap, and a few other really useful operations.
+    // You can still use a for loop if you prefer! The records are the table's own, so we pass the
+    // comment count to the mapper rather than setting it on them.
     List<PostSummary> postSummaries =
-        posts.stream().map(PostMapper::recordToSummary).collect(Collectors.toList());
+        posts.stream()
+            .map(
+                record ->
+                    PostMapper.recordToSummary(
+                        record, commentTable.getCommentCountForPost(record.getId())))
+            .collect(Collectors.toList());
 
     // Create a new PostsResponse and return that.
     return new PostsResponse(postSummaries);
@@ -90,10 +129,17 @@ public class PostsProcessor implements IPostsProcessor {
 
     // Return the post with the given postId.
     PostRecord post = postTable.getById(postId);
-    post.setCommentCount(commentTable.getCommentCountForPost(post.getId()));
     return PostMapper.recordToResponse(post);
   }
 
+  @Override
+  public PostSummary getPostSummary(int postId) {
+    this.checkPostExists(postId);
+
+    PostRecord post = postTable.getById(postId);
+    return PostMapper.recordToSummary(post, commentTable.getCommentCountForPost(post.getId()));
+  }
+
   @Override
   public CommentsResponse getCommentsForPost(int postId) {
     this.checkPostExists(postId);
@@ -106,6 +152,125 @@ public class PostsProcessor implements IPostsProcessor {
     return new CommentsResponse(comments);
   }
 
+  @Override
+  public CommentsResponse getCommentsForPost(int postId, CommentSort sort, int limit) {
+    this.checkPostExists(postId);
+
+    // Let the table pick out just the comments we need, rather than sorting all of them here.
+    List<CommentRecord> commentRecords;
+    switch (sort) {
+      case TOP:
+        commentRecords = commentTable.getTopByPostId(postId, limit);
+        break;
+      case NEW:
+        commentRecords = commentTable.getNewestByPostId(postId, limit);
+        break;
+      default:
+        throw new IllegalStateException("Unknown comment sort " + sort);
+    }
+
+    List<Comment> comments =
+        commentRecords.stream().map(CommentMapper::recordToComment).collect(Collectors.toList());
+    return new CommentsResponse(comments);
+  }
+
+  @Override
+  public PostsResponse getNewestPosts(int limit, int offset) {
+    return summarize(postTable.getNewestPosts(limit, offset));
+  }
+
+  @Override
+  public PostsPageResponse getPostsByAuthor(String author, String before, int limit) {
+    long beforeDateCreated = Timestamps.NONE;
+    int beforeId = 0;
+    if (before != null) {
+      // A cursor is the date and ID of the last post on the previous page, like "1792432800000_42".
+      int separator = before.indexOf(CURSOR_SEPARATOR);
+      try {
+        beforeDateCreated = Long.parseLong(before.substring(0, separator));
+        beforeId = Integer.parseInt(before.substring(separator + 1));
+      } catch (RuntimeException e) {
+        throw new IllegalArgumentException("Query parameter before is not a valid cursor.", e);
+      }
+    }
+
+    List<PostRecord> posts = postTable.getPostsByAuthor(author, beforeDateCreated, beforeId, limit);
+    // A short page means there's nothing after it.
+    String nextCursor = null;
+    if (posts.size() == limit) {
+      PostRecord last = posts.get(posts.size() - 1);
+      nextCursor = last.getDateCreatedMillis() + CURSOR_SEPARATOR + last.getId();
+    }
+    return new PostsPageResponse(summarize(posts).getPosts(), nextCursor);
+  }
+
+  @Override
+  public PostsResponse searchPosts(String query, int limit, int offset) {
+    return summarize(postTable.searchPosts(query, limit, offset));
+  }
+
+  /**
+   * Turn the summary projections returned by the post table into a response.
+   *
+   * @param posts The summary projections.
+   * @return The response.
+   */
+  private PostsResponse summarize(List<PostRecord> posts) {
+    // Some tables can't count comments as part of the query, so count any that are missing.
+    List<PostSummary> postSummaries = new ArrayList<>();
+    for (PostRecord record : posts) {
+      Integer commentCount = record.getCommentCount();
+      if (commentCount == null) {
+        commentCount = commentTable.getCommentCountForPost(record.getId());
+      }
+      postSummaries.add(PostMapper.recordToSummary(record, commentCount));
+    }
+    return new PostsResponse(postSummaries);
+  }
+
+  @Override
+  public AutocompleteResponse autocompleteTitles(String prefix, int limit) {
+    if (autocomplete == null) {
+      throw new IllegalStateException("Title autocomplete isn't set up.");
+    }
+    List<TitleSuggestion> suggestions =
+        autocomplete.complete(prefix, limit).stream()
+            .map(entry -> new TitleSuggestion(entry.getId(), entry.getText(), entry.getWeight()))
+            .collect(Collectors.toList());
+    return new AutocompleteResponse(suggestions);
+  }
+
+  @Override
+  public PostsResponse getRelatedPosts(int postId, int limit) {
+    this.checkPostExists(postId);
+    if (relatedPosts == null) {
+      throw new IllegalStateException("Related posts aren't set up.");
+    }
+
+    List<PostSummary> postSummaries = new ArrayList<>();
+    for (MinHashIndex.Match match : relatedPosts.find(postId, limit)) {
+      PostRecord post;
+      try {
+        post = postTable.getById(match.getId());
+      } catch (IllegalArgumentException e) {
+        // It was deleted since we found it.
+        continue;
+      }
+      postSummaries.add(
+          PostMapper.recordToSummary(post, commentTable.getCommentCountForPost(post.getId())));
+    }
+    return new PostsResponse(postSummaries);
+  }
+
+  @Override
+  public CommentsResponse searchComments(String query, int limit, int offset) {
+    List<Comment> comments =
+        commentTable.searchComments(query, limit, offset).stream()
+            .map(CommentMapper::recordToComment)
+            .collect(Collectors.toList());
+    return new CommentsResponse(comments);
+  }
+
   @Override
   public void createPost(CreatePostRequest post) {
     postTable.savePost(PostMapper.createRequestToRecord(post));
@@ -0,0 +1,132 @@
+package com.codeforcommunity.processor;
+
+import com.codeforcommunity.database.collections.MinHashIndex;
+import com.codeforcommunity.database.notify.ChangeEvent;
+import com.codeforcommunity.database.notify.IChangeSubscriber;
+import com.codeforcommunity.database.records.PostRecord;
+import com.codeforcommunity.database.table.IMutationListener;
+import com.codeforcommunity.database.table.IPostTable;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds the posts whose bodies are most like a given post's, using a {@link MinHashIndex} kept in
+ * memory. Each post's signature is worked out once, when it's saved, so finding related posts never
+ * has to read any bodies.
+ *
+ * <p>Like {@link TitleAutocomplete}, it has to hear about every post that's created or deleted:
+ * subscribe it to the {@code ChangeListenerDBImpl} with the database tables, or add it as a
+ * mutation listener with the in-memory tables. Then call {@link #rebuild()} to load the posts that
+ * already exist.
+ */
+public class RelatedPosts implements IChangeSubscriber, IMutationListener {
+  private final IPostTable postTable;
+  private final MinHashIndex index = new MinHashIndex();
+
+  /**
+   * The IDs of the posts saved or deleted while {@link #rebuild()} is running, or null if it isn't.
+   * Guarded by this object's lock.
+   */
+  private Set<Integer> changedDuringRebuild;
+
+  public RelatedPosts(IPostTable postTable) {
+    this.postTable = postTable;
+  }
+
+  /**
+   * Load every post from the table, replacing whatever was loaded before. Working out the
+   * signatures is the slow part, so that's spread over every core. Changes made while this runs are
+   * kept.
+   */
+  public void rebuild() {
+    synchronized (this) {
+      changedDuringRebuild = new HashSet<>();
+      index.clear();
+    }
+
+    List<PostRecord> posts = postTable.getAllPosts();
+    posts
+        .parallelStream()
+        .forEach(
+            post -> {
+              int[] signature = MinHashIndex.signature(post.getBody());
+              synchronized (this) {
+                if (!changedDuringRebuild.contains(post.getId())) {
+                  index.put(post.getId(), signature);
+                }
+              }
+            });
+
+    synchronized (this) {
+      changedDuringRebuild = null;
+    }
+  }
+
+  /**
+   * Find the posts most like the given one.
+   *
+   * @param postId The post's ID.
+   * @param limit The maximum number of posts to return.
+   * @return The related posts, most similar first. Empty if the post hasn't been loaded (or has no
+   *     words in its body).
+   */
+  public List<MinHashIndex.Match> find(int postId, int limit) {
+    return index.similar(postId, limit);
+  }
+
+  private void saved(int postId, String body) {
+    // Work out the signature before taking the lock, since it's the slow part.
+    int[] signature = MinHashIndex.signature(body);
+    synchronized (this) {
+      if (changedDuringRebuild != null) {
+        changedDuringRebuild.add(postId);
+      }
+      index.put(postId, signature);
+    }
+  }
+
+  private synchronized void deleted(int postId) {
+    if (changedDuringRebuild != null) {
+      changedDuringRebuild.add(postId);
+    }
+    index.remove(postId);
+  }
+
+  // The in-memory tables tell us about their changes directly.
+
+  @Override
+  public void postSaved(PostRecord post) {
+    saved(post.getId(), post.getBody());
+  }
+
+  @Override
+  public void postDeleted(int postId) {
+    deleted(postId);
+  }
+
+  // The database tells us about every node's changes, but only by ID.
+
+  @Override
+  public void onChange(ChangeEvent event) {
+    switch (event.getType()) {
+      case POST_CREATED:
+        try {
+          saved(event.getPostId(), postTable.getById(event.getPostId()).getBody());
+        } catch (IllegalArgumentException e) {
+          // It was deleted again before we got to it.
+        }
+        break;
+      case POST_DELETED:
+        deleted(event.getPostId());
+        break;
+      case RESYNC:
+        // We may have missed anything, so start again.
+        rebuild();
+        break;
+      default:
+        // Nothing else changes a post's body.
+        break;
+    }
+  }
+}
@@ -0,0 +1,196 @@
+package com.codeforcommunity.processor;
+
+import com.codeforcommunity.database.collections.PrefixIndex;
+import com.codeforcommunity.database.notify.ChangeEvent;
+import com.codeforcommunity.database.notify.IChangeSubscriber;
+import com.codeforcommunity.database.records.PostRecord;
+import com.codeforcommunity.database.table.IMutationListener;
+import com.codeforcommunity.database.table.IPostTable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Suggests post titles that complete what someone has typed into the search box so far, most
+ * clapped first. Every title is kept in memory in a {@link PrefixIndex}, so suggestions never touch
+ * the tables.
+ *
+ * <p>It has to hear about every post that's created, deleted or clapped to stay up to date. With
+ * the database tables, subscribe it to the {@code ChangeListenerDBImpl} so it hears about the
+ * changes made by every node; with the in-memory tables, add it as a mutation listener. Then call
+ * {@link #rebuild()} to load the posts that already exist.
+ */
+public class TitleAutocomplete implements IChangeSubscriber, IMutationListener {
+  private final IPostTable postTable;
+  /** Only one rebuild runs at a time. */
+  private final Object rebuildLock = new Object();
+
+  /**
+   * The titles suggestions come from. A rebuild fills a new index and then swaps it in, so this one
+   * keeps answering (and hearing about changes) until the new one is ready.
+   */
+  private volatile PrefixIndex titles = new PrefixIndex();
+
+  /**
+   * The index {@link #rebuild()} is filling, or null if it isn't running. Every change is made to
+   * this one as well as to {@link #titles}, so nothing is missing from it when it's swapped in.
+   * Guarded by this object's lock, like the two sets below.
+   */
+  private PrefixIndex rebuilding;
+
+  /**
+   * The IDs of the posts saved or deleted while {@link #rebuild()} is running. The rebuild leaves
+   * these alone, since what it read may already be out of date.
+   */
+  private Set<Integer> changedDuringRebuild;
+
+  /**
+   * The IDs of the posts clapped while {@link #rebuild()} is running, before the rebuild had loaded
+   * them. The clap count the rebuild read may be from before the clap, so these are read again.
+   */
+  private Set<Integer> clappedBeforeLoaded;
+
+  public TitleAutocomplete(IPostTable postTable) {
+    this.postTable = postTable;
+  }
+
+  /**
+   * Load the title of every post from the table, replacing whatever was loaded before. Changes made
+   * while this runs are kept, and until it's done, suggestions keep coming from what was loaded
+   * before.
+   */
+  public void rebuild() {
+    synchronized (rebuildLock) {
+      PrefixIndex fresh = new PrefixIndex();
+      synchronized (this) {
+        rebuilding = fresh;
+        changedDuringRebuild = new HashSet<>();
+        clappedBeforeLoaded = new HashSet<>();
+      }
+
+      for (PostRecord post : postTable.getAllPosts()) {
+        load(fresh, post);
+      }
+
+      // Read the posts that were clapped before we loaded them again, until none are left. A post
+      // clapped while it's being read again just goes round once more.
+      while (true) {
+        List<Integer> clapped;
+        synchronized (this) {
+          if (clappedBeforeLoaded.isEmpty()) {
+            // Everything's in the new index, so start using it.
+            titles = fresh;
+            rebuilding = null;
+            changedDuringRebuild = null;
+            clappedBeforeLoaded = null;
+            return;
+          }
+          clapped = new ArrayList<>(clappedBeforeLoaded);
+          clappedBeforeLoaded.clear();
+        }
+        for (int postId : clapped) {
+          try {
+            load(fresh, postTable.getById(postId));
+          } catch (IllegalArgumentException e) {
+            // It's been deleted since.
+          }
+        }
+      }
+    }
+  }
+
+  /** Add a post the rebuild read to the new index, unless it's changed since. */
+  private synchronized void load(PrefixIndex fresh, PostRecord post) {
+    if (!changedDuringRebuild.contains(post.getId())) {
+      fresh.put(post.getId(), post.getTitle(), post.getClapCount());
+    }
+  }
+
+  /**
+   * Find the most clapped posts whose titles start with the given prefix, ignoring case.
+   *
+   * @param prefix What's been typed so far.
+   * @param limit The maximum number of titles to return.
+   * @return The matching posts' titles, most clapped first.
+   */
+  public List<PrefixIndex.Entry> complete(String prefix, int limit) {
+    return titles.top(prefix, limit);
+  }
+
+  private synchronized void saved(int postId, String title, int clapCount) {
+    if (rebuilding != null) {
+      changedDuringRebuild.add(postId);
+      rebuilding.put(postId, title, clapCount);
+    }
+    titles.put(postId, title, clapCount);
+  }
+
+  private synchronized void deleted(int postId) {
+    if (rebuilding != null) {
+      changedDuringRebuild.add(postId);
+      rebuilding.remove(postId);
+    }
+    titles.remove(postId);
+  }
+
+  private synchronized void clapped(int postId, IntUnaryOperator change) {
+    if (rebuilding != null) {
+      if (rebuilding.contains(postId)) {
+        rebuilding.updateWeight(postId, change);
+      } else {
+        clappedBeforeLoaded.add(postId);
+      }
+    }
+    titles.updateWeight(postId, change);
+  }
+
+  // The in-memory tables tell us about their changes directly.
+
+  @Override
+  public void postSaved(PostRecord post) {
+    saved(post.getId(), post.getTitle(), 0);
+  }
+
+  @Override
+  public void postDeleted(int postId) {
+    deleted(postId);
+  }
+
+  @Override
+  public void postClapped(int postId, int clapCount) {
+    // Claps can be reported out of order, so keep the highest count.
+    clapped(postId, weight -> Math.max(weight, clapCount));
+  }
+
+  // The database tells us about every node's changes, but only by ID.
+
+  @Override
+  public void onChange(ChangeEvent event) {
+    switch (event.getType()) {
+      case POST_CREATED:
+        try {
+          PostRecord post = postTable.getById(event.getPostId());
+          saved(post.getId(), post.getTitle(), post.getClapCount());
+        } catch (IllegalArgumentException e) {
+          // It was deleted again before we got to it.
+        }
+        break;
+      case POST_DELETED:
+        deleted(event.getPostId());
+        break;
+      case POST_CLAPPED:
+        clapped(event.getPostId(), weight -> weight + 1);
+        break;
+      case RESYNC:
+        // We may have missed anything, so start again. Until it's done, the old suggestions are
+        // better than none.
+        rebuild();
+        break;
+      default:
+        // Comments don't change titles.
+        break;
+    }
+  }
+}
@@ -32,6 +32,37 @@ public class PropertiesLoader {
     }
   }
 
+  /**
+   * Return a {@link Properties} object from the given file in the
+   * service/src/main/resources/properties/ directory, or an empty one if the file doesn't exist.
+   *
+   * @param fileName The name of the file (include the .properties suffix).
+   * @return The loaded properties.
+   */
+  private static Properties getOptionalProperties(String fileName) {
+    if (PropertiesLoader.class.getClassLoader().getResource(basePath + fileName) == null) {
+      return new Properties();
+    }
+    return getProperties(fileName);
+  }
+
+  /**
+   * Get a setting from the given system variable, or from the given key in the server.properties
+   * file if the variable isn't set.
+   *
+   * @param envName The name of the system variable.
+   * @param key The key in the server.properties file.
+   * @param defaultValue The value to use if neither is set.
+   * @return The setting's value.
+   */
+  private static long getServerSetting(String envName, String key, long defaultValue) {
+    String value = System.getenv(envName);
+    if (value == null) {
+      value = getOptionalProperties("server.properties").getProperty(key);
+    }
+    return value == null ? defaultValue : Long.parseLong(value.trim());
+  }
+
   /**
    * Get properties for the database from the $JDBC_DATABASE_URL system variable or db.properties
    * file.
@@ -53,6 +84,22 @@ public class PropertiesLoader {
     return getProperties("db.properties");
   }
 
+  /**
+   * Get the settings for keeping data in memory instead of in Postgres from the memory.properties
+   * file. The $MEMORY_DIRECTORY system variable overrides the directory the data is kept in.
+   *
+   * @return The settings, which won't have a memory.directory if the in-memory store isn't being
+   *     used.
+   */
+  public static Properties getMemoryStoreProperties() {
+    Properties prop = getOptionalProperties("memory.properties");
+    String directory = System.getenv("MEMORY_DIRECTORY");
+    if (directory != null) {
+      prop.setProperty("memory.directory", directory);
+    }
+    return prop;
+  }
+
   /** Get the port to start up on from the $PORT system variable or server.properties file. */
   public static int getServerPort() {
     // Checks to see if a PORT property exists as a system variable (that's how Heroku provides
@@ -66,4 +113,141 @@ public class PropertiesLoader {
 
     return Integer.parseInt(port);
   }
+
+  /**
+   * Get how long (in milliseconds) each read route has to respond from the $READ_DEADLINE_MILLIS
+   * system variable or server.properties file.
+   *
+   * @param defaultValue The deadline to use if none is configured.
+   */
+  public static long getReadDeadlineMillis(long defaultValue) {
+    return getServerSetting("READ_DEADLINE_MILLIS", "server.deadline.read.millis", defaultValue);
+  }
+
+  /**
+   * Get how long (in milliseconds) each write route has to respond from the $WRITE_DEADLINE_MILLIS
+   * system variable or server.properties file.
+   *
+   * @param defaultValue The deadline to use if none is configured.
+   */
+  public static long getWriteDeadlineMillis(long defaultValue) {
+    return getServerSetting("WRITE_DEADLINE_MILLIS", "server.deadline.write.millis", defaultValue);
+  }
+
+  /**
+   * Get how many bytes of off-heap memory the response cache can use from the $RESPONSE_CACHE_BYTES
+   * system variable or server.properties file. 0 turns the cache off.
+   *
+   * @param defaultValue The size to use if none is configured.
+   */
+  public static long getResponseCacheBytes(long defaultValue) {
+    return getServerSetting("RESPONSE_CACHE_BYTES", "server.cache.response.bytes", defaultValue);
+  }
+
+  /**
+   * Get how many pages of the feed to keep encoded from the $FEED_CACHE_PAGES system variable or
+   * server.properties file. 0 turns the cache off.
+   *
+   * @param defaultValue The number to use if none is configured.
+   */
+  public static long getFeedCachePages(long defaultValue) {
+    return getServerSetting("FEED_CACHE_PAGES", "server.cache.feed.pages", defaultValue);
+  }
+
+  /**
+   * Get how old (in milliseconds) a cached response or feed page can get before it's loaded again
+   * in the background from the $CACHE_SOFT_TTL_MILLIS system variable or server.properties file.
+   *
+   * @param defaultValue The time to use if none is configured.
+   */
+  public static long getCacheSoftTtlMillis(long defaultValue) {
+    return getServerSetting("CACHE_SOFT_TTL_MILLIS", "server.cache.soft.ttl.millis", defaultValue);
+  }
+
+  /**
+   * Get how old (in milliseconds) a cached response or feed page can get before requests wait for
+   * it to be loaded again from the $CACHE_HARD_TTL_MILLIS system variable or server.properties
+   * file.
+   *
+   * @param defaultValue The time to use if none is configured.
+   */
+  public static long getCacheHardTtlMillis(long defaultValue) {
+    return getServerSetting("CACHE_HARD_TTL_MILLIS", "server.cache.hard.ttl.millis", defaultValue);
+  }
+
+  /**
+   * Get how many posts (and posts' comments) to cache in front of the database from the
+   * $TABLE_CACHE_ENTRIES system variable or server.properties file. 0 turns the cache off.
+   *
+   * @param defaultValue The number to use if none is configured.
+   */
+  public static long getTableCacheEntries(long defaultValue) {
+    return getServerSetting("TABLE_CACHE_ENTRIES", "server.cache.table.entries", defaultValue);
+  }
+
+  /**
+   * Get how long (in milliseconds) an entry cached in front of the database is used for from the
+   * $TABLE_CACHE_TTL_MILLIS system variable or server.properties file.
+   *
+   * @param defaultValue The time to use if none is configured.
+   */
+  public static long getTableCacheTtlMillis(long defaultValue) {
+    return getServerSetting(
+        "TABLE_CACHE_TTL_MILLIS", "server.cache.table.ttl.millis", defaultValue);
+  }
+
+  /**
+   * Get how long (in milliseconds) the database's answer that a post doesn't exist is used for from
+   * the $TABLE_CACHE_MISSING_TTL_MILLIS system variable or server.properties file.
+   *
+   * @param defaultValue The time to use if none is configured.
+   */
+  public static long getTableCacheMissingTtlMillis(long defaultValue) {
+    return getServerSetting(
+        "TABLE_CACHE_MISSING_TTL_MILLIS", "server.cache.table.missing.ttl.millis", defaultValue);
+  }
+
+  /**
+   * Get the file to keep the counts of requests for each post in, to know which posts to warm up
+   * next time, from the $ACCESS_STATS_FILE system variable or server.properties file.
+   *
+   * @return The file's path, or null if the counts aren't kept.
+   */
+  public static String getAccessStatsFile() {
+    String file = System.getenv("ACCESS_STATS_FILE");
+    if (file == null) {
+      file = getOptionalProperties("server.properties").getProperty("server.warmup.stats.file");
+    }
+    return file == null || file.isBlank() ? null : file.trim();
+  }
+
+  /**
+   * Get how many of the most requested posts to load into the caches on startup from the
+   * $WARMUP_POSTS system variable or server.properties file.
+   *
+   * @param defaultValue The number to use if none is configured.
+   */
+  public static long getWarmupPosts(long defaultValue) {
+    return getServerSetting("WARMUP_POSTS", "server.warmup.posts", defaultValue);
+  }
+
+  /**
+   * Get how many posts to load into the caches at once on startup from the $WARMUP_CONCURRENCY
+   * system variable or server.properties file.
+   *
+   * @param defaultValue The number to use if none is configured.
+   */
+  public static long getWarmupConcurrency(long defaultValue) {
+    return getServerSetting("WARMUP_CONCURRENCY", "server.warmup.concurrency", defaultValue);
+  }
+
+  /**
+   * Get how long (in milliseconds) loading the caches on startup can take before the server says
+   * it's ready anyway from the $WARMUP_TIMEOUT_MILLIS system variable or server.properties file.
+   *
+   * @param defaultValue The time to use if none is configured.
+   */
+  public static long getWarmupTimeoutMillis(long defaultValue) {
+    return getServerSetting("WARMUP_TIMEOUT_MILLIS", "server.warmup.timeout.millis", defaultValue);
+  }
 }
@@ -0,0 +1,95 @@
+package com.codeforcommunity.database.compression;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Properties;
+import org.junit.jupiter.api.Test;
+
+/** Tests that post bodies come back out of every codec the way they went in. */
+public class BodyCodecTest {
+  /** Some text with characters that take 1, 2, 3 and 4 bytes in UTF-8. */
+  private static final String MIXED = "plain, café, 日本語, and an emoji: 😀!";
+
+  /** A body long enough to be worth compressing. */
+  private static String longBody() {
+    StringBuilder body = new StringBuilder();
+    for (int i = 0; i < 500; i++) {
+      body.append(i).append(' ').append(MIXED).append('\n');
+    }
+    return body.toString();
+  }
+
+  @Test
+  public void testRoundTrip() {
+    for (BodyCodec codec : BodyCodec.values()) {
+      for (String text : new String[] {"", "a", MIXED, longBody()}) {
+        assertEquals(text, codec.decode(codec.encode(text)), codec.name());
+      }
+    }
+  }
+
+  @Test
+  public void testCompressionShrinksLongBodies() {
+    String body = longBody();
+    int plainLength = BodyCodec.UTF_8.encode(body).length;
+    assertTrue(BodyCodec.GZIP.encode(body).length < plainLength);
+    assertTrue(BodyCodec.DEFLATE.encode(body).length < plainLength);
+  }
+
+  @Test
+  public void testDecodePrefix() {
+    String body = longBody();
+    for (BodyCodec codec : BodyCodec.values()) {
+      byte[] encoded = codec.encode(body);
+      // Every length up to past the end of MIXED, so the cut lands inside every kind of character.
+      for (int maxLength = 0; maxLength <= 60; maxLength++) {
+        assertEquals(body.substring(0, maxLength), codec.decodePrefix(encoded, maxLength));
+      }
+      // Asking for more than there is returns all of it.
+      assertEquals(MIXED, codec.decodePrefix(codec.encode(MIXED), MIXED.length() + 10));
+      assertEquals("", codec.decodePrefix(codec.encode(""), 50));
+    }
+  }
+
+  @Test
+  public void testFromName() {
+    assertSame(BodyCodec.GZIP, BodyCodec.fromName("gzip"));
+    assertSame(BodyCodec.DEFLATE, BodyCodec.fromName(" Deflate "));
+    assertThrows(IllegalArgumentException.class, () -> BodyCodec.fromName("zip"));
+  }
+
+  @Test
+  public void testThresholdBoundary() {
+    BodyCompression compression = new BodyCompression(10, BodyCodec.GZIP);
+    assertFalse(compression.shouldCompress(""));
+    assertFalse(compression.shouldCompress("0123456789"));
+    assertTrue(compression.shouldCompress("0123456789a"));
+
+    // A threshold of zero (or less) means never.
+    assertFalse(new BodyCompression(0, BodyCodec.GZIP).shouldCompress(longBody()));
+    assertFalse(BodyCompression.DISABLED.shouldCompress(longBody()));
+  }
+
+  @Test
+  public void testFromProperties() {
+    Properties properties = new Properties();
+    assertSame(BodyCompression.DISABLED, BodyCompression.fromProperties(properties));
+
+    properties.setProperty("database.compression.threshold", "20");
+    BodyCompression compression = BodyCompression.fromProperties(properties);
+    assertSame(BodyCodec.GZIP, compression.getCodec());
+    assertFalse(compression.shouldCompress("01234567890123456789"));
+    assertTrue(compression.shouldCompress("01234567890123456789!"));
+
+    properties.setProperty("database.compression.algorithm", "deflate");
+    assertSame(BodyCodec.DEFLATE, BodyCompression.fromProperties(properties).getCodec());
+
+    // UTF-8 doesn't compress anything, so it isn't allowed in the database.
+    properties.setProperty("database.compression.algorithm", "utf_8");
+    assertThrows(IllegalArgumentException.class, () -> BodyCompression.fromProperties(properties));
+  }
+}
@@ -0,0 +1,271 @@
+package com.codeforcommunity.database.durable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.codeforcommunity.database.records.CommentRecord;
+import com.codeforcommunity.database.records.PostRecord;
+import com.codeforcommunity.database.records.Timestamps;
+import com.codeforcommunity.database.seeder.Seeder;
+import com.codeforcommunity.database.table.IMutationListener;
+import com.codeforcommunity.database.tableImpl.StubCommentTableImpl;
+import com.codeforcommunity.database.tableImpl.StubPostTableImpl;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests that the in-memory tables come back exactly as they were after being reopened from their
+ * log and snapshots.
+ */
+public class DurableStoreTest {
+  // JUnit creates (and afterwards deletes) a new temporary directory for each test.
+  @TempDir Path directory;
+
+  private StubPostTableImpl postTable;
+  private StubCommentTableImpl commentTable;
+
+  /**
+   * Open the store in the test's directory with new, empty tables, like the server does when it
+   * starts up.
+   */
+  private DurableStore open() {
+    postTable = new StubPostTableImpl();
+    commentTable = new StubCommentTableImpl();
+    // Use a snapshot interval long enough that only the snapshots we ask for happen.
+    return DurableStore.open(directory, FsyncPolicy.ALWAYS, 50, 3_600_000, postTable, commentTable);
+  }
+
+  /** Make a few changes of every kind. */
+  private void makeChanges() {
+    postTable.clapPost(0);
+    postTable.clapPost(0);
+    commentTable.clapComment(1, 0);
+    commentTable.deleteComment(1, 1);
+    postTable.deletePost(2);
+    commentTable.deleteCommentsByPostId(2);
+    postTable.savePost(new PostRecord("author", "title", "body"));
+    commentTable.saveComment(new CommentRecord(0, "author", "body"));
+  }
+
+  /**
+   * Check that the reopened tables match the given ones.
+   *
+   * @param expectedPosts The post table before it was reopened.
+   * @param expectedComments The comment table before it was reopened.
+   */
+  private void assertSameAs(
+      StubPostTableImpl expectedPosts, StubCommentTableImpl expectedComments) {
+    assertEquals(expectedPosts.getAllPosts().size(), postTable.getAllPosts().size());
+    for (PostRecord expected : expectedPosts.getAllPosts()) {
+      PostRecord actual = postTable.getById(expected.getId());
+      assertEquals(expected.getTitle(), actual.getTitle());
+      assertEquals(expected.getBody(), actual.getBody());
+      assertEquals(expected.getClapCount(), actual.getClapCount());
+
+      assertEquals(
+          expectedComments.getCommentCountForPost(expected.getId()),
+          commentTable.getCommentCountForPost(expected.getId()));
+      for (CommentRecord comment : expectedComments.getByPostId(expected.getId())) {
+        assertTrue(commentTable.commentExists(comment.getPostId(), comment.getId()));
+      }
+    }
+    // IDs must carry on from where they left off, and never be reused.
+    assertEquals(expectedPosts.getNextPostId(), postTable.getNextPostId());
+  }
+
+  @Test
+  public void testRecoverFromLog() {
+    DurableStore store = open();
+    Seeder.seedDatabase(5, postTable, commentTable);
+    makeChanges();
+    store.close();
+    StubPostTableImpl posts = postTable;
+    StubCommentTableImpl comments = commentTable;
+
+    open().close();
+    assertSameAs(posts, comments);
+    assertFalse(postTable.postExists(2));
+    assertFalse(commentTable.commentExists(1, 1));
+  }
+
+  @Test
+  public void testRecoverFromSnapshotAndLog() {
+    DurableStore store = open();
+    Seeder.seedDatabase(5, postTable, commentTable);
+    store.snapshot();
+    // These changes are only in the log.
+    makeChanges();
+    store.close();
+    StubPostTableImpl posts = postTable;
+    StubCommentTableImpl comments = commentTable;
+
+    DurableStore reopened = open();
+    assertSameAs(posts, comments);
+
+    // Snapshot again and make sure recovering from only the snapshot works too.
+    reopened.snapshot();
+    reopened.close();
+    DurableStore again = open();
+    assertEquals(0, again.getReplayedRecords());
+    again.close();
+    assertSameAs(posts, comments);
+  }
+
+  @Test
+  public void testChangesToLazilyLoadedRecordsAreKept() {
+    DurableStore store = open();
+    Seeder.seedDatabase(5, postTable, commentTable);
+    store.snapshot();
+    store.close();
+
+    // Nothing has been loaded from the snapshot yet, so these are the first uses of these records.
+    store = open();
+    postTable.deletePost(3);
+    commentTable.deleteCommentsByPostId(3);
+    postTable.clapPost(4);
+    commentTable.deleteComment(4, 0);
+    int claps = postTable.getById(4).getClapCount();
+    store.snapshot();
+    store.close();
+
+    open().close();
+    assertFalse(postTable.postExists(3));
+    assertEquals(0, commentTable.getCommentCountForPost(3));
+    assertEquals(claps, (int) postTable.getById(4).getClapCount());
+    assertFalse(commentTable.commentExists(4, 0));
+    assertEquals(4, postTable.getAllPosts().size());
+  }
+
+  @Test
+  public void testReadingEveryPostDoesNotLoadIt() {
+    DurableStore store = open();
+    Seeder.seedDatabase(200, postTable, commentTable);
+    List<Integer> newest = ids(postTable.getNewestPosts(10, 0));
+    String author = postTable.getById(7).getAuthor();
+    List<Integer> byAuthor = ids(postTable.getPostsByAuthor(author, Timestamps.NONE, 0, 5));
+    // Every seeded title is "Post #" and a number.
+    List<Integer> found = ids(postTable.searchPosts("post", 5, 0));
+    assertEquals(5, found.size());
+    store.snapshot();
+    store.close();
+
+    // These are what the server does while it starts up, before any requests come in.
+    store = open();
+    assertEquals(200, postTable.getAllPosts().size());
+    assertEquals(0, postTable.getLoadedPostCount());
+    // Searching finds the posts that haven't been loaded.
+    assertEquals(found, ids(postTable.searchPosts("post", 5, 0)));
+    assertEquals(newest, ids(postTable.getNewestPosts(10, 0)));
+    assertEquals(byAuthor, ids(postTable.getPostsByAuthor(author, Timestamps.NONE, 0, 5)));
+    // Only the pages that were asked for were loaded.
+    assertTrue(
+        postTable.getLoadedPostCount() <= found.size() + newest.size() + byAuthor.size(),
+        postTable.getLoadedPostCount() + " posts were loaded");
+
+    // Changing a post that hasn't been loaded yet keeps the indexes up to date.
+    int oldest = newest.get(newest.size() - 1) - 1;
+    postTable.deletePost(newest.get(0));
+    postTable.clapPost(oldest);
+    List<Integer> after = ids(postTable.getNewestPosts(10, 0));
+    assertEquals(newest.subList(1, newest.size()), after.subList(0, newest.size() - 1));
+    assertEquals(oldest, (int) after.get(newest.size() - 1));
+    assertEquals(199, postTable.getAllPosts().size());
+    store.close();
+  }
+
+  /** @return The IDs of the given posts, in the same order. */
+  private static List<Integer> ids(List<PostRecord> posts) {
+    return posts.stream().map(PostRecord::getId).collect(Collectors.toList());
+  }
+
+  /** Sleep for a moment. */
+  private static void pause() {
+    try {
+      Thread.sleep(0, 200_000);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Test
+  public void testSnapshotWhileWriting() throws Exception {
+    DurableStore store = open();
+    Seeder.seedDatabase(5, postTable, commentTable);
+    // Hold each change up for a moment after it's logged, so the snapshots are much more likely to
+    // run into one that's been logged but not finished.
+    postTable.addMutationListener(
+        new IMutationListener() {
+          @Override
+          public void postSaved(PostRecord post) {
+            pause();
+          }
+
+          @Override
+          public void postDeleted(int postId) {
+            pause();
+          }
+        });
+
+    // Have a few threads save posts (deleting every other one they save) and comment on them, while
+    // snapshots are taken as fast as they can be.
+    int threads = 4;
+    int perThread = 300;
+    Set<Integer> kept = ConcurrentHashMap.newKeySet();
+    AtomicBoolean writing = new AtomicBoolean(true);
+    ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+    Future<?> snapshots =
+        executor.submit(
+            () -> {
+              while (writing.get()) {
+                store.snapshot();
+              }
+            });
+    List<Future<?>> writers = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      writers.add(
+          executor.submit(
+              () -> {
+                for (int i = 0; i < perThread; i++) {
+                  PostRecord post = new PostRecord("author", "title " + i, "body");
+                  postTable.savePost(post);
+                  commentTable.saveComment(new CommentRecord(post.getId(), "author", "body"));
+                  if (i % 2 == 0) {
+                    postTable.deletePost(post.getId());
+                    commentTable.deleteCommentsByPostId(post.getId());
+                  } else {
+                    kept.add(post.getId());
+                  }
+                }
+              }));
+    }
+    for (Future<?> writer : writers) {
+      writer.get(1, TimeUnit.MINUTES);
+    }
+    writing.set(false);
+    snapshots.get(1, TimeUnit.MINUTES);
+    executor.shutdown();
+    store.close();
+
+    // Every post that was kept (and its comment) must come back, and none that were deleted.
+    open().close();
+    Set<Integer> recovered =
+        postTable.getAllPosts().stream().map(PostRecord::getId).collect(Collectors.toSet());
+    assertEquals(5 + kept.size(), recovered.size());
+    assertTrue(recovered.containsAll(kept));
+    for (int postId : kept) {
+      assertEquals(1, commentTable.getCommentCountForPost(postId));
+    }
+  }
+}
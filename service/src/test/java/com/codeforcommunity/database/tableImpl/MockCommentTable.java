@@ -1,6 +1,7 @@
 package com.codeforcommunity.database.tableImpl;
 
 import com.codeforcommunity.database.records.CommentRecord;
+import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -17,9 +18,17 @@ public class MockCommentTable extends StubCommentTableImpl {
    * available in the test directory so that we can use it in tests without providing access to
    * everything else.
    *
-   * @return The map that composes this db.
+   * @return A copy of the map that composes this db, as post IDs to comment IDs to comments.
    */
   public Map<Integer, Map<Integer, CommentRecord>> getUnderlyingDb() {
-    return this.commentMap;
+    Map<Integer, Map<Integer, CommentRecord>> db = new HashMap<>();
+    for (Map.Entry<Integer, PostComments> entry : this.commentMap.entrySet()) {
+      Map<Integer, CommentRecord> comments = new HashMap<>();
+      for (CommentRecord comment : entry.getValue().all()) {
+        comments.put(comment.getId(), comment);
+      }
+      db.put(entry.getKey(), comments);
+    }
+    return db;
   }
 }
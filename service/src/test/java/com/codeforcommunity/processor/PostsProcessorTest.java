@@ -4,22 +4,42 @@ import static com.codeforcommunity.database.seeder.Seeder.STUB_POST_COUNT;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import com.codeforcommunity.api.DeadlineExceededException;
+import com.codeforcommunity.database.collections.PrefixIndex;
 import com.codeforcommunity.database.records.CommentRecord;
 import com.codeforcommunity.database.records.PostRecord;
 import com.codeforcommunity.database.seeder.Seeder;
+import com.codeforcommunity.database.tableImpl.CachingCommentTableImpl;
+import com.codeforcommunity.database.tableImpl.CachingPostTableImpl;
 import com.codeforcommunity.database.tableImpl.MockCommentTable;
 import com.codeforcommunity.database.tableImpl.MockPostTable;
+import com.codeforcommunity.dto.request.CommentSort;
 import com.codeforcommunity.dto.request.CreateCommentRequest;
 import com.codeforcommunity.dto.request.CreatePostRequest;
 import com.codeforcommunity.dto.response.Comment;
 import com.codeforcommunity.dto.response.CommentsResponse;
 import com.codeforcommunity.dto.response.PostSummary;
+import com.codeforcommunity.dto.response.PostsPageResponse;
 import com.codeforcommunity.dto.response.PostsResponse;
 import com.codeforcommunity.dto.response.SinglePostResponse;
+import com.codeforcommunity.dto.response.TitleSuggestion;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -139,6 +159,31 @@ public class PostsProcessorTest {
     }
   }
 
+  @Test
+  public void testGetPostSummaryMatchesFeed() {
+    // A post's summary on its own should be exactly what the feed shows for it, since the cached
+    // feed swaps one in for the other.
+    for (PostSummary inFeed : processor.getPosts().getPosts()) {
+      PostSummary alone = processor.getPostSummary(inFeed.getId());
+      assertEquals(inFeed.getTitle(), alone.getTitle());
+      assertEquals(inFeed.getAuthor(), alone.getAuthor());
+      assertEquals(inFeed.getDateCreated(), alone.getDateCreated());
+      assertEquals(inFeed.getPreview(), alone.getPreview());
+      assertEquals(inFeed.getClapCount(), alone.getClapCount());
+      assertEquals(inFeed.getCommentCount(), alone.getCommentCount());
+    }
+
+    // And it should keep up with claps and comments.
+    PostSummary before = processor.getPostSummary(1);
+    processor.clapPost(1);
+    processor.createComment(1, new CreateCommentRequest("Summer", "Me too!"));
+    PostSummary after = processor.getPostSummary(1);
+    assertEquals(before.getClapCount() + 1, after.getClapCount());
+    assertEquals(before.getCommentCount() + 1, after.getCommentCount());
+
+    assertThrows(IllegalArgumentException.class, () -> processor.getPostSummary(-1));
+  }
+
   @ParameterizedTest
   @ValueSource(ints = {-1, STUB_POST_COUNT + 1})
   public void testGetCommentsInvalidPostId(int postId) {
@@ -175,6 +220,45 @@ public class PostsProcessorTest {
     assertEquals(STUB_POST_COUNT + 1, postMap.size());
   }
 
+  @Test
+  public void testAuthorsAreShared() {
+    // Build the author's name at runtime, so the two posts don't start out sharing a String.
+    processor.createPost(new CreatePostRequest(new String("Shared Author"), "One", "body"));
+    processor.createPost(new CreatePostRequest(new String("Shared Author"), "Two", "body"));
+
+    Map<Integer, PostRecord> postMap = postTable.getUnderlyingDb();
+    PostRecord first = postMap.get(postMap.size() - 2);
+    PostRecord second = postMap.get(postMap.size() - 1);
+    // The table should keep just one copy of the name.
+    assertSame(first.getAuthor(), second.getAuthor());
+    // Compacting the body and storing the date as a number shouldn't change what we get back.
+    assertEquals("body", second.getBody());
+    assertFalse(second.getDateCreated().isBlank());
+  }
+
+  @Test
+  public void testReadsDontChangeUnderneath() {
+    // Lists handed out by the tables are snapshots, so later writes shouldn't show up in them.
+    List<PostRecord> posts = postTable.getAllPosts();
+    List<CommentRecord> comments = commentTable.getByPostId(0);
+    int commentCount = comments.size();
+
+    processor.deletePost(1);
+    processor.createPost(new CreatePostRequest("author", "title", "body"));
+    processor.createComment(0, new CreateCommentRequest("author", "body"));
+    processor.deleteComment(0, 0);
+
+    assertEquals(STUB_POST_COUNT, posts.size());
+    assertEquals(1, (int) posts.get(1).getId());
+    assertEquals(commentCount, comments.size());
+    assertEquals(0, (int) comments.get(0).getId());
+
+    // While new reads see the changes.
+    assertEquals(STUB_POST_COUNT, postTable.getAllPosts().size());
+    assertEquals(commentCount, commentTable.getByPostId(0).size());
+    assertFalse(commentTable.commentExists(0, 0));
+  }
+
   @Test
   public void testCreateComment() {
     // Create new comment.
@@ -216,8 +300,10 @@ public class PostsProcessorTest {
 
     // Clap the post.
     processor.clapPost(1);
-    // Check that the value changed.
-    assertEquals(clapCount + 1, post.getClapCount());
+    // Check that the value changed. Clapping replaces the post with a new record rather than
+    // changing the one we already have, so get it again.
+    assertEquals(clapCount + 1, postTable.getById(1).getClapCount());
+    assertEquals(clapCount, post.getClapCount());
   }
 
   @ParameterizedTest
@@ -249,8 +335,10 @@ public class PostsProcessorTest {
 
     // Clap the comment.
     processor.clapComment(0, commentId);
-    // Check that the value changed.
-    assertEquals(clapCount + 1, comment.getClapCount());
+    // Check that the value changed. Like with posts, clapping replaces the comment with a new
+    // record rather than changing the one we already have, so get it again.
+    assertEquals(clapCount + 1, commentTable.getByPostId(0).get(commentId).getClapCount());
+    assertEquals(clapCount, comment.getClapCount());
   }
 
   @ParameterizedTest
@@ -367,4 +455,405 @@ public class PostsProcessorTest {
       assertEquals(message, e.getMessage());
     }
   }
+
+  @Test
+  public void testSearchPosts() {
+    // Every seeded post's title is "Post #<i>", so every post should match.
+    PostsResponse page = processor.searchPosts("post", 5, 0);
+    assertEquals(5, page.getPosts().size());
+    // Make sure the summaries have their comment counts filled in.
+    for (PostSummary post : page.getPosts()) {
+      assertNotNull(post.getCommentCount());
+    }
+    // Paging past the end should return whatever is left.
+    assertEquals(STUB_POST_COUNT - 10, processor.searchPosts("post", 10, 10).getPosts().size());
+
+    // A post whose title matches should rank above the others.
+    processor.createPost(new CreatePostRequest("author", "A post about zebras", "body"));
+    assertEquals(
+        "A post about zebras", processor.searchPosts("zebras", 5, 0).getPosts().get(0).getTitle());
+    // And nonsense shouldn't match anything.
+    assertTrue(processor.searchPosts("qwertyuiop", 5, 0).getPosts().isEmpty());
+  }
+
+  @Test
+  public void testGetNewestPosts() {
+    processor.createPost(new CreatePostRequest("Feed Author", "First", "body"));
+    processor.createPost(new CreatePostRequest("Feed Author", "Second", "body"));
+    processor.createPost(new CreatePostRequest("Someone Else", "Third", "body"));
+
+    // The newest post comes first. Posts made in the same millisecond are ordered by ID.
+    List<PostSummary> newest = processor.getNewestPosts(2, 0).getPosts();
+    assertEquals("Third", newest.get(0).getTitle());
+    assertEquals("Second", newest.get(1).getTitle());
+    assertEquals("First", processor.getNewestPosts(2, 2).getPosts().get(0).getTitle());
+    assertEquals(STUB_POST_COUNT + 3, processor.getNewestPosts(100, 0).getPosts().size());
+  }
+
+  @Test
+  public void testGetPostsByAuthor() {
+    for (int i = 0; i < 5; i++) {
+      processor.createPost(new CreatePostRequest("Feed Author", "Post " + i, "body"));
+    }
+    processor.createPost(new CreatePostRequest("Someone Else", "Not theirs", "body"));
+
+    // Page through two at a time, following the cursors.
+    PostsPageResponse page = processor.getPostsByAuthor("Feed Author", null, 2);
+    assertEquals("Post 4", page.getPosts().get(0).getTitle());
+    assertEquals("Post 3", page.getPosts().get(1).getTitle());
+    assertNotNull(page.getPosts().get(0).getCommentCount());
+
+    // Posts deleted or created between pages don't shift the later pages.
+    processor.deletePost(page.getPosts().get(0).getId());
+    processor.createPost(new CreatePostRequest("Feed Author", "Post 5", "body"));
+    page = processor.getPostsByAuthor("Feed Author", page.getNextCursor(), 2);
+    assertEquals("Post 2", page.getPosts().get(0).getTitle());
+    assertEquals("Post 1", page.getPosts().get(1).getTitle());
+
+    // The last page is short, and has no cursor.
+    page = processor.getPostsByAuthor("Feed Author", page.getNextCursor(), 2);
+    assertEquals(1, page.getPosts().size());
+    assertEquals("Post 0", page.getPosts().get(0).getTitle());
+    assertNull(page.getNextCursor());
+
+    assertTrue(processor.getPostsByAuthor("Nobody", null, 5).getPosts().isEmpty());
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> processor.getPostsByAuthor("Feed Author", "not a cursor", 5));
+  }
+
+  @Test
+  public void testSearchIndexIsKeptUpToDate() {
+    // The first search builds the index.
+    assertEquals(STUB_POST_COUNT, processor.searchPosts("post", 100, 0).getPosts().size());
+
+    // After that, deleted posts drop out of it, and new ones show up in it.
+    processor.deletePost(3);
+    processor.createPost(new CreatePostRequest("author", "Giraffes", "giraffes giraffes"));
+    List<PostSummary> results = processor.searchPosts("post", 100, 0).getPosts();
+    assertEquals(STUB_POST_COUNT - 1, results.size());
+    assertTrue(results.stream().noneMatch(post -> post.getId() == 3));
+    assertEquals("Giraffes", processor.searchPosts("giraffes", 5, 0).getPosts().get(0).getTitle());
+
+    // Rebuilding it from scratch gives the same results.
+    postTable.reindex();
+    assertEquals(results.size(), processor.searchPosts("post", 100, 0).getPosts().size());
+  }
+
+  @Test
+  public void testAutocompleteTitles() {
+    TitleAutocomplete autocomplete = new TitleAutocomplete(postTable);
+    postTable.addMutationListener(autocomplete);
+    autocomplete.rebuild();
+    processor = new PostsProcessor(postTable, commentTable, autocomplete, null);
+
+    // Every seeded title starts with "Post #".
+    assertEquals(5, processor.autocompleteTitles("post #", 5).getSuggestions().size());
+
+    // New posts are suggested straight away, most clapped first.
+    processor.createPost(new CreatePostRequest("author", "Autumn leaves", "body"));
+    processor.createPost(new CreatePostRequest("author", "Autocomplete explained", "body"));
+    List<TitleSuggestion> suggestions = processor.autocompleteTitles("AUT", 5).getSuggestions();
+    assertEquals("Autocomplete explained", suggestions.get(0).getTitle());
+    processor.clapPost(suggestions.get(1).getId());
+    suggestions = processor.autocompleteTitles("aut", 5).getSuggestions();
+    assertEquals("Autumn leaves", suggestions.get(0).getTitle());
+    assertEquals(1, (int) suggestions.get(0).getClapCount());
+
+    // And deleted ones stop being suggested.
+    processor.deletePost(suggestions.get(0).getId());
+    assertEquals(1, processor.autocompleteTitles("aut", 5).getSuggestions().size());
+    assertTrue(processor.autocompleteTitles("zzz", 5).getSuggestions().isEmpty());
+  }
+
+  @Test
+  public void testAutocompleteRebuildKeepsChanges() {
+    // A table that lets us change things while autocomplete is reading every post.
+    AtomicInteger clapWhileReading = new AtomicInteger(-1);
+    List<Integer> suggestedWhileReading = new ArrayList<>();
+    TitleAutocomplete[] autocomplete = new TitleAutocomplete[1];
+    MockPostTable slowTable =
+        new MockPostTable() {
+          @Override
+          public List<PostRecord> getAllPosts() {
+            // The posts are read before the clap, so the clap isn't in them.
+            List<PostRecord> posts = super.getAllPosts();
+            int postId = clapWhileReading.get();
+            if (postId >= 0) {
+              clapPost(postId);
+              suggestedWhileReading.add(autocomplete[0].complete("post #", 5).size());
+            }
+            return posts;
+          }
+        };
+    Seeder.seedDatabase(STUB_POST_COUNT, slowTable, new MockCommentTable());
+    autocomplete[0] = new TitleAutocomplete(slowTable);
+    slowTable.addMutationListener(autocomplete[0]);
+    autocomplete[0].rebuild();
+    int postId = autocomplete[0].complete("post #", 1).get(0).getId();
+    slowTable.clapPost(postId);
+    assertEquals(1, autocomplete[0].complete("post #", 1).get(0).getWeight());
+
+    // Rebuilding again while the post's clapped again doesn't lose the clap, and the old titles are
+    // suggested until the rebuild's done.
+    clapWhileReading.set(postId);
+    autocomplete[0].rebuild();
+    assertEquals(List.of(5), suggestedWhileReading);
+    PrefixIndex.Entry top = autocomplete[0].complete("post #", 1).get(0);
+    assertEquals(postId, top.getId());
+    assertEquals(2, top.getWeight());
+  }
+
+  @Test
+  public void testGetRelatedPosts() {
+    RelatedPosts relatedPosts = new RelatedPosts(postTable);
+    postTable.addMutationListener(relatedPosts);
+    relatedPosts.rebuild();
+    processor = new PostsProcessor(postTable, commentTable, null, relatedPosts);
+
+    // Make families of near-duplicate posts. Each family has its own words, and each post changes
+    // a few of them, so the exact answer is the rest of its family.
+    int families = 10;
+    int familySize = 4;
+    for (int family = 0; family < families; family++) {
+      for (int member = 0; member < familySize; member++) {
+        StringBuilder body = new StringBuilder();
+        for (int word = 0; word < 60; word++) {
+          body.append(word % 20 == member ? "changed" + member : "f" + family + "w" + word);
+          body.append(' ');
+        }
+        processor.createPost(
+            new CreatePostRequest("author", "Family " + family, body.toString().trim()));
+      }
+    }
+
+    // Count how many of each post's family were found.
+    Map<String, List<Integer>> idsByTitle =
+        postTable.getAllPosts().stream()
+            .collect(
+                Collectors.groupingBy(
+                    PostRecord::getTitle,
+                    Collectors.mapping(PostRecord::getId, Collectors.toList())));
+    int found = 0;
+    for (int family = 0; family < families; family++) {
+      List<Integer> ids = idsByTitle.get("Family " + family);
+      for (int id : ids) {
+        List<PostSummary> related = processor.getRelatedPosts(id, familySize - 1).getPosts();
+        assertTrue(related.stream().noneMatch(post -> post.getId() == id));
+        found += related.stream().filter(post -> ids.contains(post.getId())).count();
+      }
+    }
+    double recall = (double) found / (families * familySize * (familySize - 1));
+    assertTrue(recall >= 0.9, "Recall was " + recall);
+
+    // Deleted posts aren't related to anything any more.
+    int deleted = idsByTitle.get("Family 0").get(0);
+    processor.deletePost(deleted);
+    assertTrue(
+        processor.getRelatedPosts(idsByTitle.get("Family 0").get(1), 5).getPosts().stream()
+            .noneMatch(post -> post.getId() == deleted));
+    assertThrows(IllegalArgumentException.class, () -> processor.getRelatedPosts(deleted, 5));
+  }
+
+  @Test
+  public void testCachingTablesSeeEveryChange() {
+    processor =
+        new PostsProcessor(
+            new CachingPostTableImpl(postTable, 4, 60_000, 60_000),
+            new CachingCommentTableImpl(commentTable, 4, 60_000));
+
+    // Load a post and its comments into the caches, then change them through the processor.
+    int comments = processor.getCommentsForPost(0).getComments().size();
+    int claps = processor.getSinglePost(0).getClapCount();
+    processor.getPosts();
+    processor.clapPost(0);
+    processor.createComment(0, new CreateCommentRequest("author", "body"));
+    assertEquals(claps + 1, (int) processor.getSinglePost(0).getClapCount());
+    PostSummary summary =
+        processor.getPosts().getPosts().stream().filter(post -> post.getId() == 0).findAny().get();
+    assertEquals(comments + 1, (int) summary.getCommentCount());
+    assertEquals(comments + 1, processor.getCommentsForPost(0).getComments().size());
+
+    processor.deleteComment(0, comments);
+    assertEquals(comments, processor.getCommentsForPost(0).getComments().size());
+    assertThrows(IllegalArgumentException.class, () -> processor.clapComment(0, comments));
+
+    processor.deletePost(0);
+    assertThrows(IllegalArgumentException.class, () -> processor.getSinglePost(0));
+  }
+
+  @Test
+  public void testMissingPostsSkipTheTable() {
+    AtomicInteger checks = new AtomicInteger();
+    MockPostTable countingTable =
+        new MockPostTable() {
+          @Override
+          public boolean postExists(int postId) {
+            checks.incrementAndGet();
+            return super.postExists(postId);
+          }
+        };
+    Seeder.seedDatabase(STUB_POST_COUNT, countingTable, new MockCommentTable());
+    CachingPostTableImpl cachingTable = new CachingPostTableImpl(countingTable, 16, 60_000, 60_000);
+    cachingTable.rebuildIdFilter();
+    processor = new PostsProcessor(cachingTable, commentTable);
+
+    // Almost every ID that was never used should be turned away by the filter alone.
+    int missing = 1000;
+    for (int postId = STUB_POST_COUNT + 1; postId <= STUB_POST_COUNT + missing; postId++) {
+      int id = postId;
+      assertThrows(IllegalArgumentException.class, () -> processor.getSinglePost(id));
+    }
+    assertTrue(checks.get() < missing / 20, checks.get() + " IDs went to the table");
+
+    // A new post is found straight away.
+    processor.createPost(new CreatePostRequest("author", "title", "body"));
+    int created = countingTable.getUnderlyingDb().keySet().stream().max(Integer::compare).get();
+    assertEquals(created, processor.getSinglePost(created).getId());
+
+    // A deleted post gets past the filter, but the table is only asked about it once.
+    processor.deletePost(0);
+    assertThrows(IllegalArgumentException.class, () -> processor.getSinglePost(0));
+    int checksAfterDelete = checks.get();
+    assertThrows(IllegalArgumentException.class, () -> processor.getSinglePost(0));
+    assertEquals(checksAfterDelete, checks.get());
+  }
+
+  @Test
+  public void testGetSortedComments() {
+    // Add a few comments of our own, and clap the middle one the most.
+    for (int i = 0; i < 3; i++) {
+      processor.createComment(0, new CreateCommentRequest("author", "body " + i));
+    }
+    int newest = commentTable.getUnderlyingDb().get(0).size() - 1;
+    for (int i = 0; i < 1000; i++) {
+      processor.clapComment(0, newest - 1);
+    }
+
+    List<Comment> top = processor.getCommentsForPost(0, CommentSort.TOP, 2).getComments();
+    assertEquals(2, top.size());
+    assertEquals(newest - 1, top.get(0).getId());
+    assertTrue(top.get(0).getClapCount() >= top.get(1).getClapCount());
+
+    List<Comment> recent = processor.getCommentsForPost(0, CommentSort.NEW, 2).getComments();
+    assertEquals(
+        List.of(newest, newest - 1), List.of(recent.get(0).getId(), recent.get(1).getId()));
+
+    // Asking for more than there are should return all of them.
+    assertEquals(
+        newest + 1, processor.getCommentsForPost(0, CommentSort.TOP, 100_000).getComments().size());
+  }
+
+  @Test
+  public void testConcurrentWrites() throws InterruptedException {
+    int threads = 8;
+    int perThread = 1000;
+    int clapsBefore = postTable.getUnderlyingDb().get(0).getClapCount();
+    int commentsBefore = commentTable.getCommentCountForPost(0);
+
+    // Have every thread clap and comment on the same post at the same time.
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    for (int t = 0; t < threads; t++) {
+      executor.execute(
+          () -> {
+            for (int i = 0; i < perThread; i++) {
+              processor.clapPost(0);
+              processor.createComment(0, new CreateCommentRequest("author", "body"));
+            }
+          });
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+    // No clap or comment should have been lost, and every comment should have its own ID.
+    int total = threads * perThread;
+    assertEquals(clapsBefore + total, postTable.getUnderlyingDb().get(0).getClapCount());
+    assertEquals(commentsBefore + total, commentTable.getCommentCountForPost(0));
+    assertEquals(commentsBefore + total, commentTable.getUnderlyingDb().get(0).size());
+  }
+
+  @Test
+  public void testCoalescedReads() throws Exception {
+    // Hold up every check for whether a post exists until we say so, so that reads pile up.
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger checks = new AtomicInteger();
+    MockPostTable slowTable =
+        new MockPostTable() {
+          @Override
+          public boolean postExists(int postId) {
+            checks.incrementAndGet();
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              throw new IllegalStateException(e);
+            }
+            return super.postExists(postId);
+          }
+        };
+    Seeder.seedDatabase(STUB_POST_COUNT, slowTable, new MockCommentTable());
+    CoalescingPostsProcessor coalescing =
+        new CoalescingPostsProcessor(new PostsProcessor(slowTable, commentTable));
+
+    int threads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(threads * 2);
+    long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+    List<Future<SinglePostResponse>> posts = new ArrayList<>();
+    List<Future<SinglePostResponse>> missing = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      posts.add(executor.submit(() -> coalescing.withDeadline(deadline).getSinglePost(1)));
+      missing.add(executor.submit(() -> coalescing.getSinglePost(STUB_POST_COUNT + 1)));
+    }
+    // Wait until all but the first read of each post are waiting on it.
+    while (coalescing.getCoalescedReads() < 2 * (threads - 1)) {
+      if (System.nanoTime() - deadline > 0) {
+        // Let the reads go, so they don't hold up the other tests.
+        release.countDown();
+        executor.shutdownNow();
+        fail("Only " + coalescing.getCoalescedReads() + " reads were coalesced.");
+      }
+      Thread.sleep(1);
+    }
+    release.countDown();
+
+    // Every read of the post should have gotten the one result...
+    SinglePostResponse first = posts.get(0).get(1, TimeUnit.MINUTES);
+    assertEquals(1, first.getId());
+    for (Future<SinglePostResponse> post : posts) {
+      assertSame(first, post.get(1, TimeUnit.MINUTES));
+    }
+    // ...and every read of the missing post the one exception.
+    for (Future<SinglePostResponse> post : missing) {
+      ExecutionException e =
+          assertThrows(ExecutionException.class, () -> post.get(1, TimeUnit.MINUTES));
+      assertTrue(e.getCause() instanceof IllegalArgumentException);
+    }
+    executor.shutdown();
+
+    assertEquals(2, checks.get());
+    assertEquals(2, coalescing.getExecutedReads());
+    assertEquals((double) (threads - 1) / threads, coalescing.getCoalescingRatio(), 1e-9);
+
+    // Once they're done, the next read goes to the tables again.
+    coalescing.getSinglePost(1);
+    assertEquals(3, checks.get());
+  }
+
+  @Test
+  public void testExpiredDeadline() {
+    // A deadline in the past should stop the request before it does any work.
+    long expired = System.nanoTime() - 1;
+    assertThrows(DeadlineExceededException.class, () -> processor.withDeadline(expired).getPosts());
+    assertThrows(
+        DeadlineExceededException.class,
+        () -> processor.withDeadline(expired).createPost(new CreatePostRequest("a", "b", "c")));
+    // Make sure nothing was created.
+    assertEquals(STUB_POST_COUNT, postTable.getUnderlyingDb().size());
+  }
+
+  @Test
+  public void testDeadlineNotExpired() {
+    // A deadline far enough in the future shouldn't change anything.
+    long deadline = System.nanoTime() + 60_000_000_000L;
+    assertEquals(STUB_POST_COUNT, processor.withDeadline(deadline).getPosts().getPosts().size());
+  }
 }